@@ -0,0 +1,44 @@
+// JMH benchmarks for the cosmo-core hot paths.
+//
+//   ./gradlew :cosmo-benchmarks:jmh
+//   ./gradlew :cosmo-benchmarks:jmh -Pjmh.includes=RecurrenceExpander
+//
+// Fixtures are generated from a fixed seed (see CalendarFixtures), so runs are
+// reproducible offline.  Results are written to build/results/jmh.
+
+plugins {
+    java
+    id("me.champeau.jmh") version "0.7.2"
+}
+
+java {
+    toolchain {
+        languageVersion = JavaLanguageVersion.of(17)
+    }
+}
+
+repositories {
+    mavenCentral()
+    maven {
+        name = "OSAF's repository"
+        url = uri("https://eccosolutions.github.io/cosmo/maven")
+    }
+}
+
+dependencies {
+    jmh(platform("org.springframework.boot:spring-boot-dependencies:2.7.18"))
+    jmh(project(":cosmo-core"))
+    jmh("org.mnode.ical4j:ical4j:3.0.29")
+    jmh("org.springframework.boot:spring-boot-starter-data-jpa")
+    jmh("org.apache.derby:derby")
+    jmh("org.apache.derby:derbytools")
+}
+
+jmh {
+    jmhVersion = "1.37"
+    fork = 1
+    warmupIterations = 3
+    iterations = 5
+    resultFormat = "JSON"
+    findProperty("jmh.includes")?.let { includes = listOf(it.toString()) }
+}
@@ -0,0 +1,86 @@
+package org.osaf.cosmo.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.fortuna.ical4j.model.Calendar;
+import net.fortuna.ical4j.model.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.osaf.cosmo.calendar.query.CalendarFilter;
+import org.osaf.cosmo.calendar.query.CalendarFilterEvaluater;
+import org.osaf.cosmo.calendar.query.ComponentFilter;
+import org.osaf.cosmo.calendar.query.PropertyFilter;
+import org.osaf.cosmo.calendar.query.TextMatchFilter;
+import org.osaf.cosmo.calendar.query.TimeRangeFilter;
+import org.osaf.cosmo.calendar.util.CalendarUtils;
+
+/**
+ * Evaluating a CalDAV calendar-query filter in memory against a
+ * collection of events: a time-range filter alone, and a time-range
+ * filter combined with a text match on SUMMARY.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CalendarFilterEvaluaterBenchmark {
+
+    @Param("200")
+    public int count;
+
+    private List<Calendar> calendars;
+    private CalendarFilter timeRange;
+    private CalendarFilter timeRangeAndText;
+
+    @Setup
+    public void setup() throws Exception {
+        calendars = new ArrayList<>(count);
+        for (String ics : CalendarFixtures.events(count))
+            calendars.add(CalendarUtils.parseCalendar(ics));
+
+        timeRange = filter(null);
+        timeRangeAndText = filter("review");
+    }
+
+    private static CalendarFilter filter(String summary) throws Exception {
+        ComponentFilter eventFilter = new ComponentFilter("VEVENT");
+        eventFilter.setTimeRangeFilter(new TimeRangeFilter(
+                new DateTime("20250301T000000Z"), new DateTime("20250401T000000Z")));
+        if (summary != null) {
+            PropertyFilter summaryFilter = new PropertyFilter("SUMMARY");
+            summaryFilter.setTextMatchFilter(new TextMatchFilter(summary));
+            eventFilter.getPropFilters().add(summaryFilter);
+        }
+
+        ComponentFilter calendarFilter = new ComponentFilter("VCALENDAR");
+        calendarFilter.getComponentFilters().add(eventFilter);
+
+        CalendarFilter filter = new CalendarFilter();
+        filter.setFilter(calendarFilter);
+        return filter;
+    }
+
+    @Benchmark
+    public void timeRange(Blackhole bh) {
+        evaluate(timeRange, bh);
+    }
+
+    @Benchmark
+    public void timeRangeAndText(Blackhole bh) {
+        evaluate(timeRangeAndText, bh);
+    }
+
+    private void evaluate(CalendarFilter filter, Blackhole bh) {
+        CalendarFilterEvaluater evaluater = new CalendarFilterEvaluater();
+        for (Calendar calendar : calendars)
+            bh.consume(evaluater.evaluate(calendar, filter));
+    }
+}
@@ -0,0 +1,238 @@
+package org.osaf.cosmo.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.fortuna.ical4j.model.TimeZoneRegistryFactory;
+
+/**
+ * Generates realistic calendar data for the benchmarks.
+ * <p>
+ * Every event is derived from a fixed seed and its index, so the same
+ * index always gives the same event regardless of how many are
+ * generated, and runs are reproducible offline.  The mix roughly follows
+ * a working calendar: mostly single timed events, some all-day events,
+ * weekly meetings, daily series with cancelled and moved occurrences,
+ * and open-ended monthly series.  Timed events use the America/New_York
+ * timezone, some have attendees and alarms.
+ * <p>
+ * <code>main</code> writes the fixtures to a directory for use outside
+ * JMH.
+ */
+public final class CalendarFixtures {
+
+    public static final long SEED = 20070212L;
+    public static final String TZID = "America/New_York";
+
+    /** events start in the two years from this date */
+    public static final LocalDate FIRST_DAY = LocalDate.of(2024, 1, 1);
+
+    private static final String CRLF = "\r\n";
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss");
+
+    private static final String[] SUMMARIES = {
+        "Team standup", "Design review", "1:1", "Lunch", "Dentist",
+        "Quarterly planning", "Customer call", "Release retrospective",
+        "Interview", "Budget meeting", "Gym", "School pickup"
+    };
+    private static final String[] LOCATIONS = {
+        "Room 101", "Main office", "Video call", "Cafe", "Board room"
+    };
+
+    public enum Kind {
+        SINGLE, ALL_DAY, WEEKLY, DAILY_WITH_EXCEPTIONS, MONTHLY_INFINITE
+    }
+
+    private static String vtimezone;
+
+    private CalendarFixtures() {
+    }
+
+    /**
+     * @return the kind of event generated for an index
+     */
+    public static Kind kind(int index) {
+        int pick = new Random(SEED + index).nextInt(100);
+        if (pick < 55)
+            return Kind.SINGLE;
+        if (pick < 65)
+            return Kind.ALL_DAY;
+        if (pick < 85)
+            return Kind.WEEKLY;
+        if (pick < 95)
+            return Kind.DAILY_WITH_EXCEPTIONS;
+        return Kind.MONTHLY_INFINITE;
+    }
+
+    /**
+     * @return the first index at or after <code>from</code> that generates
+     *         an event of the given kind
+     */
+    public static int indexOf(Kind kind, int from) {
+        int index = from;
+        while (kind(index) != kind)
+            index++;
+        return index;
+    }
+
+    /**
+     * @return VCALENDAR containing the event for an index (master and
+     *         any modifications) and its VTIMEZONE
+     */
+    public static String event(int index) {
+        StringBuilder sb = new StringBuilder();
+        beginCalendar(sb);
+        appendEvent(sb, index);
+        endCalendar(sb);
+        return sb.toString();
+    }
+
+    /**
+     * @return VCALENDAR for each of the first <code>count</code> events
+     */
+    public static List<String> events(int count) {
+        List<String> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            events.add(event(i));
+        return events;
+    }
+
+    /**
+     * @return single VCALENDAR containing the first <code>count</code>
+     *         events, like a calendar export
+     */
+    public static String collection(int count) {
+        StringBuilder sb = new StringBuilder();
+        beginCalendar(sb);
+        for (int i = 0; i < count; i++)
+            appendEvent(sb, i);
+        endCalendar(sb);
+        return sb.toString();
+    }
+
+    private static void beginCalendar(StringBuilder sb) {
+        line(sb, "BEGIN:VCALENDAR");
+        line(sb, "VERSION:2.0");
+        line(sb, "PRODID:-//cosmo//benchmark fixtures//EN");
+        sb.append(vtimezone());
+    }
+
+    private static void endCalendar(StringBuilder sb) {
+        line(sb, "END:VCALENDAR");
+    }
+
+    private static synchronized String vtimezone() {
+        if (vtimezone == null) {
+            vtimezone = TimeZoneRegistryFactory.getInstance().createRegistry()
+                .getTimeZone(TZID).getVTimeZone().toString();
+        }
+        return vtimezone;
+    }
+
+    private static void appendEvent(StringBuilder sb, int index) {
+        Random random = new Random(SEED + index);
+        Kind kind = kind(index);
+        random.nextInt(100); // consumed by kind()
+
+        String uid = "fixture-" + index + "@cosmo";
+        LocalDateTime start = FIRST_DAY.plusDays(random.nextInt(730))
+            .atTime(8 + random.nextInt(10), random.nextBoolean() ? 0 : 30);
+        int minutes = 30 * (1 + random.nextInt(3));
+        String summary = SUMMARIES[random.nextInt(SUMMARIES.length)];
+        String location = LOCATIONS[random.nextInt(LOCATIONS.length)];
+        boolean attendees = random.nextInt(10) < 3;
+        boolean alarm = random.nextInt(10) < 2;
+
+        line(sb, "BEGIN:VEVENT");
+        line(sb, "UID:" + uid);
+        line(sb, "DTSTAMP:20240101T000000Z");
+        line(sb, "SUMMARY:" + summary);
+        line(sb, "LOCATION:" + location);
+        line(sb, "DESCRIPTION:" + summary + " (fixture " + index + ")");
+
+        if (kind == Kind.ALL_DAY) {
+            line(sb, "DTSTART;VALUE=DATE:" + DATE.format(start));
+            line(sb, "DTEND;VALUE=DATE:" + DATE.format(start.plusDays(1 + random.nextInt(2))));
+        } else {
+            line(sb, "DTSTART;TZID=" + TZID + ":" + DATE_TIME.format(start));
+            line(sb, "DTEND;TZID=" + TZID + ":" + DATE_TIME.format(start.plusMinutes(minutes)));
+        }
+
+        switch (kind) {
+        case WEEKLY:
+            line(sb, "RRULE:FREQ=WEEKLY;BYDAY=MO,WE;UNTIL="
+                    + DATE_TIME.format(start.plusWeeks(26 + random.nextInt(52))) + "Z");
+            break;
+        case DAILY_WITH_EXCEPTIONS:
+            line(sb, "RRULE:FREQ=DAILY;COUNT=60");
+            line(sb, "EXDATE;TZID=" + TZID + ":" + DATE_TIME.format(start.plusDays(3))
+                    + "," + DATE_TIME.format(start.plusDays(10)));
+            break;
+        case MONTHLY_INFINITE:
+            line(sb, "RRULE:FREQ=MONTHLY;BYMONTHDAY=" + start.getDayOfMonth());
+            break;
+        default:
+            break;
+        }
+
+        if (attendees) {
+            line(sb, "ORGANIZER;CN=Organizer:mailto:organizer@example.com");
+            for (int i = 0; i < 1 + random.nextInt(5); i++)
+                line(sb, "ATTENDEE;CN=Attendee " + i + ";PARTSTAT=ACCEPTED:mailto:attendee" + i + "@example.com");
+        }
+
+        if (alarm) {
+            line(sb, "BEGIN:VALARM");
+            line(sb, "ACTION:DISPLAY");
+            line(sb, "DESCRIPTION:" + summary);
+            line(sb, "TRIGGER:-PT15M");
+            line(sb, "END:VALARM");
+        }
+        line(sb, "END:VEVENT");
+
+        // moved occurrences
+        if (kind == Kind.DAILY_WITH_EXCEPTIONS) {
+            for (int day : new int[] {5, 20}) {
+                LocalDateTime occurrence = start.plusDays(day);
+                LocalDateTime moved = occurrence.plusHours(2);
+                line(sb, "BEGIN:VEVENT");
+                line(sb, "UID:" + uid);
+                line(sb, "DTSTAMP:20240101T000000Z");
+                line(sb, "RECURRENCE-ID;TZID=" + TZID + ":" + DATE_TIME.format(occurrence));
+                line(sb, "SUMMARY:" + summary + " (moved)");
+                line(sb, "DTSTART;TZID=" + TZID + ":" + DATE_TIME.format(moved));
+                line(sb, "DTEND;TZID=" + TZID + ":" + DATE_TIME.format(moved.plusMinutes(minutes)));
+                line(sb, "END:VEVENT");
+            }
+        }
+    }
+
+    private static void line(StringBuilder sb, String line) {
+        sb.append(line).append(CRLF);
+    }
+
+    /**
+     * Write the fixtures as .ics files.
+     * <p>
+     * Usage: <code>CalendarFixtures directory [count]</code>
+     */
+    public static void main(String[] args) throws IOException {
+        Path dir = Paths.get(args.length > 0 ? args[0] : "fixtures");
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        Files.createDirectories(dir);
+        for (int i = 0; i < count; i++)
+            Files.write(dir.resolve("event-" + i + ".ics"), event(i).getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve("collection-" + count + ".ics"),
+                collection(count).getBytes(StandardCharsets.UTF_8));
+    }
+}
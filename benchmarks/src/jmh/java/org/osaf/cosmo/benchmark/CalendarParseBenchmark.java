@@ -0,0 +1,60 @@
+package org.osaf.cosmo.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import net.fortuna.ical4j.model.Calendar;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.osaf.cosmo.calendar.util.CalendarUtils;
+
+/**
+ * Parsing iCalendar data, per event kind and for a whole collection
+ * export.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CalendarParseBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Event {
+        @Param
+        public CalendarFixtures.Kind kind;
+
+        String ics;
+
+        @Setup
+        public void setup() {
+            ics = CalendarFixtures.event(CalendarFixtures.indexOf(kind, 0));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Collection {
+        @Param("500")
+        public int count;
+
+        String ics;
+
+        @Setup
+        public void setup() {
+            ics = CalendarFixtures.collection(count);
+        }
+    }
+
+    @Benchmark
+    public Calendar parseEvent(Event state) throws Exception {
+        return CalendarUtils.parseCalendar(state.ics);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Calendar parseCollection(Collection state) throws Exception {
+        return CalendarUtils.parseCalendar(state.ics);
+    }
+}
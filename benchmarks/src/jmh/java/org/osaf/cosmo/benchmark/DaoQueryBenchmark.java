@@ -0,0 +1,207 @@
+package org.osaf.cosmo.benchmark;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import net.fortuna.ical4j.model.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.osaf.cosmo.BaseCosmoConfig;
+import org.osaf.cosmo.calendar.EntityConverter;
+import org.osaf.cosmo.calendar.query.CalendarFilter;
+import org.osaf.cosmo.calendar.query.ComponentFilter;
+import org.osaf.cosmo.calendar.query.TimeRangeFilter;
+import org.osaf.cosmo.calendar.util.CalendarUtils;
+import org.osaf.cosmo.dao.hibernate.CalendarDaoImpl;
+import org.osaf.cosmo.dao.hibernate.ContentDaoImpl;
+import org.osaf.cosmo.dao.hibernate.UserDaoImpl;
+import org.osaf.cosmo.hibernate.CompoundInterceptor;
+import org.osaf.cosmo.model.CollectionItem;
+import org.osaf.cosmo.model.ContentItem;
+import org.osaf.cosmo.model.ICalendarItem;
+import org.osaf.cosmo.model.Item;
+import org.osaf.cosmo.model.NoteItem;
+import org.osaf.cosmo.model.User;
+import org.osaf.cosmo.model.hibernate.HibCalendarCollectionStamp;
+import org.osaf.cosmo.model.hibernate.HibCollectionItem;
+import org.osaf.cosmo.model.hibernate.HibEntityFactory;
+import org.osaf.cosmo.model.hibernate.HibUser;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * DAO queries against an in-memory Derby database holding a calendar
+ * collection of <code>count</code> events: time-range queries with
+ * and without expansion, a CalDAV calendar-query, path resolution and
+ * loading a collection's children (as done by a sync).
+ * <p>
+ * Each invocation runs in its own read-only transaction, so the
+ * persistence context doesn't carry results over between invocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DaoQueryBenchmark {
+
+    private static final String USERNAME = "bench";
+    private static final String COLLECTION = "calendar";
+
+    @Param("500")
+    public int count;
+
+    private ConfigurableApplicationContext context;
+    private TransactionTemplate readOnly;
+    private CalendarDaoImpl calendarDao;
+    private ContentDaoImpl contentDao;
+
+    private String collectionUid;
+    private String eventPath;
+    private DateTime rangeStart;
+    private DateTime rangeEnd;
+    private CalendarFilter filter;
+
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @EnableTransactionManagement
+    @EntityScan(basePackages = "org.osaf.cosmo.model.hibernate")
+    public static class BenchmarkConfig extends BaseCosmoConfig {
+        public BenchmarkConfig() {
+            super(CompoundInterceptor::registerInterceptor);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        context = new SpringApplicationBuilder(BenchmarkConfig.class)
+            .web(WebApplicationType.NONE)
+            .properties(
+                "spring.datasource.url=jdbc:derby:memory:bench;create=true",
+                "spring.datasource.driver-class-name=org.apache.derby.jdbc.EmbeddedDriver",
+                "spring.jpa.hibernate.ddl-auto=create",
+                "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.DerbyTenSevenDialect",
+                "spring.jpa.properties.hibernate.jdbc.batch_size=25",
+                "spring.jpa.properties.hibernate.order_inserts=true",
+                "spring.jpa.properties.hibernate.order_updates=true",
+                "spring.jpa.properties.hibernate.session_factory.interceptor="
+                    + CompoundInterceptor.class.getName())
+            .run();
+
+        calendarDao = context.getBean(CalendarDaoImpl.class);
+        contentDao = context.getBean(ContentDaoImpl.class);
+        UserDaoImpl userDao = context.getBean(UserDaoImpl.class);
+        PlatformTransactionManager transactionManager = context.getBean(PlatformTransactionManager.class);
+
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        collectionUid = tx.execute(status -> seed(userDao));
+        eventPath = "/" + USERNAME + "/" + COLLECTION + "/" + eventName(count / 2);
+
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        rangeStart = new DateTime("20250301T000000Z");
+        rangeEnd = new DateTime("20250401T000000Z");
+
+        ComponentFilter eventFilter = new ComponentFilter("VEVENT");
+        eventFilter.setTimeRangeFilter(new TimeRangeFilter(rangeStart, rangeEnd));
+        ComponentFilter calendarFilter = new ComponentFilter("VCALENDAR");
+        calendarFilter.getComponentFilters().add(eventFilter);
+        filter = new CalendarFilter();
+        filter.setFilter(calendarFilter);
+    }
+
+    private String seed(UserDaoImpl userDao) {
+        User user = new HibUser();
+        user.setUsername(USERNAME);
+        user.setPassword(USERNAME);
+        user.setEmail(USERNAME + "@example.com");
+        user.setFirstName("Bench");
+        user.setLastName("Mark");
+        user.setAdmin(Boolean.FALSE);
+        userDao.createUser(user);
+        CollectionItem root = contentDao.createRootItem(user);
+
+        HibCollectionItem calendar = new HibCollectionItem();
+        calendar.setName(COLLECTION);
+        calendar.setOwner(user);
+        calendar.addStamp(new HibCalendarCollectionStamp(calendar));
+        calendar = (HibCollectionItem) contentDao.createCollection(root, calendar);
+
+        EntityConverter converter = new EntityConverter(new HibEntityFactory());
+        for (int i = 0; i < count; i++) {
+            // in conversion order, so that masters come before their modifications
+            Set<ContentItem> items = new LinkedHashSet<>();
+            try {
+                for (NoteItem note : converter.convertEventCalendar(
+                        CalendarUtils.parseCalendar(CalendarFixtures.event(i)))) {
+                    note.setOwner(user);
+                    if (note.getModifies() == null)
+                        note.setName(eventName(i));
+                    items.add(note);
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException("can't parse fixture " + i, e);
+            }
+            contentDao.createContentItems(calendar, items);
+        }
+        return calendar.getUid();
+    }
+
+    private static String eventName(int index) {
+        return "fixture-" + index + ".ics";
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (context != null)
+            context.close();
+    }
+
+    private CollectionItem collection() {
+        return (CollectionItem) contentDao.findItemByUid(collectionUid);
+    }
+
+    @Benchmark
+    public Set<ContentItem> findEvents() {
+        return readOnly.execute(status ->
+            calendarDao.findEvents(collection(), rangeStart, rangeEnd, false));
+    }
+
+    @Benchmark
+    public Set<ContentItem> findEventsExpanded() {
+        return readOnly.execute(status ->
+            calendarDao.findEvents(collection(), rangeStart, rangeEnd, true));
+    }
+
+    @Benchmark
+    public Set<ICalendarItem> calendarQuery() {
+        return readOnly.execute(status ->
+            calendarDao.findCalendarItems(collection(), filter));
+    }
+
+    @Benchmark
+    public Item findItemByPath() {
+        return readOnly.execute(status -> contentDao.findItemByPath(eventPath));
+    }
+
+    @Benchmark
+    public int loadChildren() {
+        return readOnly.execute(status ->
+            contentDao.loadChildren(collection(), null).size());
+    }
+}
@@ -0,0 +1,96 @@
+package org.osaf.cosmo.benchmark;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.osaf.cosmo.calendar.EntityConverter;
+import org.osaf.cosmo.calendar.util.CalendarUtils;
+import org.osaf.cosmo.eim.EimRecordSet;
+import org.osaf.cosmo.eim.eimml.EimmlStreamReader;
+import org.osaf.cosmo.eim.eimml.EimmlStreamWriter;
+import org.osaf.cosmo.eim.schema.contentitem.ContentItemGenerator;
+import org.osaf.cosmo.eim.schema.event.EventGenerator;
+import org.osaf.cosmo.eim.schema.note.NoteGenerator;
+import org.osaf.cosmo.model.NoteItem;
+import org.osaf.cosmo.model.Stamp;
+import org.osaf.cosmo.model.hibernate.HibEntityFactory;
+import org.osaf.cosmo.model.hibernate.HibItem;
+import org.osaf.cosmo.model.hibernate.HibStamp;
+
+/**
+ * Writing and reading a collection of events as EIMML, the format
+ * used by the morse code sync protocol.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EimmlBenchmark {
+
+    @Param("200")
+    public int count;
+
+    private List<EimRecordSet> recordsets;
+    private String eimml;
+
+    @Setup
+    public void setup() throws Exception {
+        HibEntityFactory factory = new HibEntityFactory();
+        EntityConverter converter = new EntityConverter(factory);
+        Date modified = new Date(0);
+
+        recordsets = new ArrayList<>(count);
+        for (String ics : CalendarFixtures.events(count)) {
+            for (NoteItem note : converter.convertEventCalendar(CalendarUtils.parseCalendar(ics))) {
+                if (note.getUid() == null)
+                    note.setUid(factory.generateUid());
+                ((HibItem) note).setModifiedDate(modified);
+                for (Stamp stamp : note.getStamps())
+                    ((HibStamp) stamp).setModifiedDate(modified);
+                recordsets.add(toRecordSet(note));
+            }
+        }
+        eimml = write();
+    }
+
+    private static EimRecordSet toRecordSet(NoteItem note) {
+        EimRecordSet recordset = new EimRecordSet();
+        recordset.setUuid(note.getUid());
+        recordset.addRecords(new ContentItemGenerator(note).generateRecords());
+        recordset.addRecords(new NoteGenerator(note).generateRecords());
+        recordset.addRecords(new EventGenerator(note).generateRecords(-1));
+        return recordset;
+    }
+
+    @Benchmark
+    public String write() throws Exception {
+        StringWriter out = new StringWriter();
+        EimmlStreamWriter writer = new EimmlStreamWriter(out);
+        writer.writeStartDocument();
+        writer.writeCollection("benchmark-collection", "Benchmark", null);
+        for (EimRecordSet recordset : recordsets)
+            writer.writeRecordSet(recordset);
+        writer.close();
+        return out.toString();
+    }
+
+    @Benchmark
+    public void read(Blackhole bh) throws Exception {
+        EimmlStreamReader reader = new EimmlStreamReader(new StringReader(eimml));
+        while (reader.hasNext())
+            bh.consume(reader.nextRecordSet());
+        reader.close();
+    }
+}
@@ -0,0 +1,56 @@
+package org.osaf.cosmo.benchmark;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import net.fortuna.ical4j.model.Calendar;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.osaf.cosmo.calendar.EntityConverter;
+import org.osaf.cosmo.calendar.util.CalendarUtils;
+import org.osaf.cosmo.model.NoteItem;
+import org.osaf.cosmo.model.hibernate.HibEntityFactory;
+
+/**
+ * Converting between iCalendar and the content model: an event
+ * calendar into note items, and a master note back into a calendar.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EntityConverterBenchmark {
+
+    @Param({"SINGLE", "WEEKLY", "DAILY_WITH_EXCEPTIONS"})
+    public CalendarFixtures.Kind kind;
+
+    private final EntityConverter converter = new EntityConverter(new HibEntityFactory());
+
+    private Calendar calendar;
+    private NoteItem master;
+
+    @Setup
+    public void setup() throws Exception {
+        calendar = CalendarUtils.parseCalendar(
+                CalendarFixtures.event(CalendarFixtures.indexOf(kind, 0)));
+        for (NoteItem note : converter.convertEventCalendar(calendar)) {
+            if (note.getModifies() == null)
+                master = note;
+        }
+    }
+
+    @Benchmark
+    public Set<NoteItem> calendarToNotes() {
+        return converter.convertEventCalendar(calendar);
+    }
+
+    @Benchmark
+    public Calendar noteToCalendar() {
+        return converter.convertContent(master);
+    }
+}
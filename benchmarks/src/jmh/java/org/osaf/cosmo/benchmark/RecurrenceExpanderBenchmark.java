@@ -0,0 +1,69 @@
+package org.osaf.cosmo.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import net.fortuna.ical4j.model.Calendar;
+import net.fortuna.ical4j.model.Date;
+import net.fortuna.ical4j.model.DateTime;
+import net.fortuna.ical4j.model.TimeZone;
+import net.fortuna.ical4j.model.TimeZoneRegistryFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.osaf.cosmo.calendar.InstanceList;
+import org.osaf.cosmo.calendar.RecurrenceExpander;
+import org.osaf.cosmo.calendar.util.CalendarUtils;
+
+/**
+ * Expanding recurring events, for a month and a year of occurrences,
+ * and calculating the range used for the time-range index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RecurrenceExpanderBenchmark {
+
+    @Param({"WEEKLY", "DAILY_WITH_EXCEPTIONS", "MONTHLY_INFINITE"})
+    public CalendarFixtures.Kind kind;
+
+    private final RecurrenceExpander expander = new RecurrenceExpander();
+
+    private Calendar calendar;
+    private TimeZone timezone;
+    private Date monthStart;
+    private Date monthEnd;
+    private Date yearStart;
+    private Date yearEnd;
+
+    @Setup
+    public void setup() throws Exception {
+        calendar = CalendarUtils.parseCalendar(
+                CalendarFixtures.event(CalendarFixtures.indexOf(kind, 0)));
+        timezone = TimeZoneRegistryFactory.getInstance()
+            .createRegistry().getTimeZone(CalendarFixtures.TZID);
+        monthStart = new DateTime("20250301T000000Z");
+        monthEnd = new DateTime("20250401T000000Z");
+        yearStart = new DateTime("20250101T000000Z");
+        yearEnd = new DateTime("20260101T000000Z");
+    }
+
+    @Benchmark
+    public InstanceList expandMonth() {
+        return expander.getOcurrences(calendar, monthStart, monthEnd, timezone);
+    }
+
+    @Benchmark
+    public InstanceList expandYear() {
+        return expander.getOcurrences(calendar, yearStart, yearEnd, timezone);
+    }
+
+    @Benchmark
+    public Date[] recurrenceRange() {
+        return expander.calculateRecurrenceRange(calendar);
+    }
+}
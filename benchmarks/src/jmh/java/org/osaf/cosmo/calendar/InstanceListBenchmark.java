@@ -0,0 +1,63 @@
+package org.osaf.cosmo.calendar;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.fortuna.ical4j.model.Calendar;
+import net.fortuna.ical4j.model.Component;
+import net.fortuna.ical4j.model.Date;
+import net.fortuna.ical4j.model.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.osaf.cosmo.benchmark.CalendarFixtures;
+import org.osaf.cosmo.calendar.util.CalendarUtils;
+
+/**
+ * Building an {@link InstanceList} for a year: a weekly master alone,
+ * and a daily master followed by its moved occurrences.  Lives in this
+ * package to reach <code>addMaster</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class InstanceListBenchmark {
+
+    private Component weekly;
+    private List<Component> dailyWithExceptions;
+    private Date rangeStart;
+    private Date rangeEnd;
+
+    @Setup
+    public void setup() throws Exception {
+        weekly = events(CalendarFixtures.Kind.WEEKLY).get(0);
+        dailyWithExceptions = events(CalendarFixtures.Kind.DAILY_WITH_EXCEPTIONS);
+        rangeStart = new DateTime("20240101T000000Z");
+        rangeEnd = new DateTime("20260101T000000Z");
+    }
+
+    private static List<Component> events(CalendarFixtures.Kind kind) throws Exception {
+        Calendar calendar = CalendarUtils.parseCalendar(
+                CalendarFixtures.event(CalendarFixtures.indexOf(kind, 0)));
+        return calendar.getComponents(Component.VEVENT);
+    }
+
+    @Benchmark
+    public InstanceList addMaster() {
+        InstanceList instances = new InstanceList();
+        instances.addMaster(weekly, rangeStart, rangeEnd);
+        return instances;
+    }
+
+    @Benchmark
+    public InstanceList addMasterAndOverrides() {
+        InstanceList instances = new InstanceList();
+        for (Component comp : dailyWithExceptions)
+            instances.addComponent(comp, rangeStart, rangeEnd);
+        return instances;
+    }
+}
@@ -9,7 +9,8 @@ allprojects {
     group = "com.github.eccosolutions" // was group = "org.osaf.cosmo"
 }
 
-subprojects {
+// benchmarks aren't published
+configure(subprojects.filter { it.name != "cosmo-benchmarks" }) {
     apply(plugin = "maven-publish")
     apply(plugin = "java-library")
 
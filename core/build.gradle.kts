@@ -37,6 +37,7 @@ dependencies {
     implementation("commons-beanutils:commons-beanutils:1.9.4")
     implementation("commons-lang:commons-lang:2.6")
     implementation("commons-io:commons-io:1.4")
+    implementation("io.micrometer:micrometer-core")
     compileOnly("javax.servlet:javax.servlet-api:3.0.1")
     implementation("org.apache.jackrabbit:jackrabbit-jcr-webdav:1.0-osaf-20061023")
     implementation("org.mnode.ical4j:ical4j:3.0.29")
@@ -44,6 +45,8 @@ dependencies {
     implementation("org.springframework.boot:spring-boot-starter-data-jpa")
     implementation("org.springframework.boot:spring-boot-starter-validation")
     implementation("org.springframework:spring-web")
+    implementation("org.hibernate:hibernate-jcache")
+    runtimeOnly("org.ehcache:ehcache")
     runtimeOnly("org.slf4j:slf4j-api")
     runtimeOnly("org.slf4j:log4j-over-slf4j")
 
@@ -80,9 +83,21 @@ tasks.getByName<BootJar>("bootJar") {
     enabled = false
 }
 
+// Precompiled VTIMEZONEs for CosmoICUTimeZoneRegistry.warmUp(), so that
+// warming up doesn't have to convert every icu timezone at startup
+val timezoneSnapshot by tasks.registering(JavaExec::class) {
+    val snapshot = layout.buildDirectory.file("generated/timezones/timezones.ics")
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass = "org.osaf.cosmo.calendar.CosmoICUTimeZoneRegistry"
+    argumentProviders.add(CommandLineArgumentProvider { listOf(snapshot.get().asFile.path) })
+    outputs.file(snapshot)
+    doFirst { snapshot.get().asFile.parentFile.mkdirs() }
+}
+
 tasks.getByName<Jar>("jar") {
     enabled = true
     archiveClassifier = "" //use empty string to override Spring Boot adding 'plain'
+    from(timezoneSnapshot)
 
 }
 tasks.withType<Test> {
@@ -1,7 +1,11 @@
 package org.osaf.cosmo;
 
 import java.util.function.Consumer;
+import javax.persistence.EntityManagerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.hibernate.Interceptor;
+import org.osaf.cosmo.aop.MetricsInterceptor;
 import org.osaf.cosmo.calendar.query.CalendarQueryProcessor;
 import org.osaf.cosmo.calendar.query.impl.StandardCalendarQueryProcessor;
 import org.osaf.cosmo.dao.CalendarDao;
@@ -9,22 +13,34 @@ import org.osaf.cosmo.dao.ContentDao;
 import org.osaf.cosmo.dao.ServerPropertyDao;
 import org.osaf.cosmo.dao.UserDao;
 import org.osaf.cosmo.dao.hibernate.CalendarDaoImpl;
+import org.osaf.cosmo.dao.hibernate.CollectionSyncStateBackfill;
 import org.osaf.cosmo.dao.hibernate.ContentDaoImpl;
 import org.osaf.cosmo.dao.hibernate.DefaultItemPathTranslator;
 import org.osaf.cosmo.dao.hibernate.ItemPathTranslator;
 import org.osaf.cosmo.dao.hibernate.ServerPropertyDaoImpl;
+import org.osaf.cosmo.dao.hibernate.TombstoneCompactor;
 import org.osaf.cosmo.dao.hibernate.UserDaoImpl;
 import org.osaf.cosmo.dao.hibernate.query.ItemFilterProcessor;
 import org.osaf.cosmo.dao.hibernate.query.StandardItemFilterProcessor;
 import org.osaf.cosmo.model.hibernate.AuditableObjectInterceptor;
 import org.osaf.cosmo.model.hibernate.EventStampInterceptor;
 import org.osaf.cosmo.model.hibernate.HibEntityFactory;
+import org.osaf.cosmo.server.StatusMonitor;
 import org.osaf.cosmo.service.impl.StandardContentService;
 import org.osaf.cosmo.service.impl.StandardServerPropertyService;
 import org.osaf.cosmo.service.impl.StandardUserService;
 import org.osaf.cosmo.service.lock.LockManager;
 import org.osaf.cosmo.service.lock.SingleVMLockManager;
+import org.osaf.cosmo.service.password.DelegatingPasswordEncoder;
+import org.osaf.cosmo.service.password.MessageDigestPasswordEncoder;
+import org.osaf.cosmo.service.password.PasswordEncoder;
+import org.osaf.cosmo.service.password.Pbkdf2PasswordEncoder;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.aspectj.AspectJExpressionPointcut;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.annotation.Bean;
+import org.springframework.transaction.PlatformTransactionManager;
 
 /**
  * You could use @EntityScan at top level, but it's painful in Spring init if not doing Spring Boot
@@ -61,12 +77,23 @@ public abstract class BaseCosmoConfig {
         return new HibEntityFactory();
     }
 
+    /**
+     * New passwords are hashed with PBKDF2, MD5 hashes stored by earlier
+     * versions are rehashed as their users authenticate.
+     */
+    @Bean
+    public PasswordEncoder cosmoPasswordEncoder() {
+        return new DelegatingPasswordEncoder(new Pbkdf2PasswordEncoder(),
+            new MessageDigestPasswordEncoder(StandardUserService.DEFAULT_DIGEST_ALGORITHM));
+    }
+
     @Bean(initMethod="init", destroyMethod="destroy")
     public StandardUserService cosmoUserService(ContentDao contentDao,
-        UserDao cosmoUserDao) {
+        UserDao cosmoUserDao, PasswordEncoder cosmoPasswordEncoder) {
         var userService = new StandardUserService();
         userService.setContentDao(contentDao);
         userService.setUserDao(cosmoUserDao);
+        userService.setPasswordEncoder(cosmoPasswordEncoder);
         return userService;
     }
 
@@ -96,6 +123,36 @@ public abstract class BaseCosmoConfig {
         return contentService;
     }
 
+    /**
+     * Creates the change sequences of collections created before they
+     * were kept.
+     */
+    @Bean(initMethod="init")
+    public CollectionSyncStateBackfill collectionSyncStateBackfill(
+        EntityManagerFactory entityManagerFactory,
+        PlatformTransactionManager transactionManager) {
+        var backfill = new CollectionSyncStateBackfill();
+        backfill.setEntityManagerFactory(entityManagerFactory);
+        backfill.setTransactionManager(transactionManager);
+        return backfill;
+    }
+
+    /**
+     * Purges tombstones and event log entries older than 30 days, once a
+     * day, so that neither grows without bound.
+     */
+    @Bean(initMethod="init", destroyMethod="destroy")
+    public TombstoneCompactor tombstoneCompactor(
+        EntityManagerFactory entityManagerFactory,
+        PlatformTransactionManager transactionManager) {
+        var compactor = new TombstoneCompactor();
+        compactor.setEntityManagerFactory(entityManagerFactory);
+        compactor.setTransactionManager(transactionManager);
+        compactor.setRetentionMillis(TombstoneCompactor.DEFAULT_RETENTION_MILLIS);
+        compactor.setIntervalMillis(TombstoneCompactor.DEFAULT_INTERVAL_MILLIS);
+        return compactor;
+    }
+
     @Bean(initMethod="init")
     public CalendarDaoImpl calendarDao(ItemFilterProcessor itemFilterProcessor) {
         var calendarDao = new CalendarDaoImpl();
@@ -124,4 +181,49 @@ public abstract class BaseCosmoConfig {
         processor.setContentDao(contentDao);
         return processor;
     }
+
+    /**
+     * Status MBean, reporting the service and DAO timings recorded in the
+     * application's MeterRegistry, or in one of its own if there isn't one.
+     */
+    @Bean
+    public StatusMonitor cosmoStatusMonitor(ObjectProvider<MeterRegistry> meterRegistry) {
+        return new StatusMonitor(meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+    }
+
+    /**
+     * Times all service methods, outside of their transactions, with a
+     * percentile histogram.
+     */
+    @Bean
+    public Advisor cosmoServiceMetricsAdvisor(ObjectProvider<StatusMonitor> cosmoStatusMonitor) {
+        return metricsAdvisor("execution(* org.osaf.cosmo.service.*Service.*(..))",
+            MetricsInterceptor.SERVICE_METRIC, true, cosmoStatusMonitor);
+    }
+
+    /**
+     * Times the DAO operations, other than their lifecycle methods.
+     */
+    @Bean
+    public Advisor cosmoDaoMetricsAdvisor(ObjectProvider<StatusMonitor> cosmoStatusMonitor) {
+        return metricsAdvisor("execution(* org.osaf.cosmo.dao.*Dao.*(..))"
+                + " && !execution(* org.osaf.cosmo.dao.Dao.*(..))",
+            MetricsInterceptor.DAO_METRIC, false, cosmoStatusMonitor);
+    }
+
+    // advisors are created while bean post processors are registered, so
+    // the registry is looked up on the first call rather than here, once
+    // it can be post processed
+    private static Advisor metricsAdvisor(String expression, String metricName,
+        boolean percentileHistogram, ObjectProvider<StatusMonitor> statusMonitor) {
+        var interceptor = new MetricsInterceptor();
+        interceptor.setMeterRegistrySupplier(() -> statusMonitor.getObject().getMeterRegistry());
+        interceptor.setMetricName(metricName);
+        interceptor.setPercentileHistogram(percentileHistogram);
+        var pointcut = new AspectJExpressionPointcut();
+        pointcut.setExpression(expression);
+        var advisor = new DefaultPointcutAdvisor(pointcut, interceptor);
+        advisor.setOrder(1);
+        return advisor;
+    }
 }
@@ -0,0 +1,138 @@
+package org.osaf.cosmo.aop;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.support.AopUtils;
+
+/**
+ * Interceptor that times each call of the methods it advises.
+ * <p>
+ * Each call is recorded in a timer named <code>metricName</code>
+ * tagged with the class of the target object (not the interface that
+ * declares the method) and the method, the outcome (<code>success</code>
+ * or <code>error</code>) and the class of any exception thrown.  A
+ * timer counts as well as times, so it gives throughput and error
+ * rates.  It also publishes the 50th, 95th and 99th percentiles, and if
+ * <code>percentileHistogram</code> is set, a histogram for registries
+ * that aggregate percentiles themselves.  The histogram adds a few dozen
+ * buckets to every timer, so it is best kept to coarse grained calls.
+ * <p>
+ * The <code>MeterRegistry</code> can be given as a supplier, which is
+ * called on the first advised call, so that advisors created while the
+ * application context is still starting up don't create the registry
+ * before it can be configured.  If neither is set, a
+ * <code>SimpleMeterRegistry</code> is used.
+ */
+public class MetricsInterceptor extends OrderedAdvice implements MethodInterceptor {
+
+    public static final String SERVICE_METRIC = "cosmo.service";
+    public static final String DAO_METRIC = "cosmo.dao";
+
+    public static final String TAG_CLASS = "class";
+    public static final String TAG_METHOD = "method";
+    public static final String TAG_OUTCOME = "outcome";
+    public static final String TAG_EXCEPTION = "exception";
+
+    private volatile MeterRegistry meterRegistry;
+    private Supplier<MeterRegistry> meterRegistrySupplier = SimpleMeterRegistry::new;
+    private String metricName = SERVICE_METRIC;
+    private boolean percentileHistogram = false;
+
+    // timers of successful calls, the common case, by target class and method
+    private final ConcurrentMap<Class<?>, ConcurrentMap<Method, Timer>> timers = new ConcurrentHashMap<>();
+
+    public Object invoke(MethodInvocation mi) throws Throwable {
+        MeterRegistry registry = getMeterRegistry();
+        Clock clock = registry.config().clock();
+        long start = clock.monotonicTime();
+        try {
+            Object result = mi.proceed();
+            Class<?> targetClass = getTargetClass(mi);
+            timers.computeIfAbsent(targetClass, c -> new ConcurrentHashMap<>())
+                .computeIfAbsent(mi.getMethod(), m -> timer(registry, targetClass, m, "success", "none"))
+                .record(clock.monotonicTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (Throwable e) {
+            timer(registry, getTargetClass(mi), mi.getMethod(), "error", e.getClass().getSimpleName())
+                .record(clock.monotonicTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    private static Class<?> getTargetClass(MethodInvocation mi) {
+        return mi.getThis() != null ? AopUtils.getTargetClass(mi.getThis())
+            : mi.getMethod().getDeclaringClass();
+    }
+
+    private Timer timer(MeterRegistry registry,
+                        Class<?> targetClass,
+                        Method method,
+                        String outcome,
+                        String exception) {
+        return Timer.builder(metricName)
+            .tag(TAG_CLASS, targetClass.getSimpleName())
+            .tag(TAG_METHOD, method.getName())
+            .tag(TAG_OUTCOME, outcome)
+            .tag(TAG_EXCEPTION, exception)
+            .publishPercentiles(0.5, 0.95, 0.99)
+            .publishPercentileHistogram(percentileHistogram)
+            .register(registry);
+    }
+
+    public MeterRegistry getMeterRegistry() {
+        MeterRegistry registry = meterRegistry;
+        if (registry == null) {
+            synchronized (this) {
+                if (meterRegistry == null)
+                    meterRegistry = meterRegistrySupplier.get();
+                registry = meterRegistry;
+            }
+        }
+        return registry;
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        timers.clear();
+    }
+
+    /**
+     * @param meterRegistrySupplier supplier of the registry, called on the
+     *        first advised call
+     */
+    public void setMeterRegistrySupplier(Supplier<MeterRegistry> meterRegistrySupplier) {
+        synchronized (this) {
+            this.meterRegistrySupplier = meterRegistrySupplier;
+            this.meterRegistry = null;
+        }
+        timers.clear();
+    }
+
+    public String getMetricName() {
+        return metricName;
+    }
+
+    public void setMetricName(String metricName) {
+        this.metricName = metricName;
+        timers.clear();
+    }
+
+    public boolean isPercentileHistogram() {
+        return percentileHistogram;
+    }
+
+    public void setPercentileHistogram(boolean percentileHistogram) {
+        this.percentileHistogram = percentileHistogram;
+        timers.clear();
+    }
+}
@@ -0,0 +1,203 @@
+package org.osaf.cosmo.calendar;
+
+import net.fortuna.ical4j.model.Calendar;
+import net.fortuna.ical4j.model.Component;
+import net.fortuna.ical4j.model.ComponentList;
+import net.fortuna.ical4j.model.DateTime;
+import net.fortuna.ical4j.model.Parameter;
+import net.fortuna.ical4j.model.Period;
+import net.fortuna.ical4j.model.PeriodList;
+import net.fortuna.ical4j.model.Property;
+import net.fortuna.ical4j.model.PropertyList;
+import net.fortuna.ical4j.model.TimeZone;
+import net.fortuna.ical4j.model.component.CalendarComponent;
+import net.fortuna.ical4j.model.component.VEvent;
+import net.fortuna.ical4j.model.component.VFreeBusy;
+import net.fortuna.ical4j.model.parameter.FbType;
+import net.fortuna.ical4j.model.property.FreeBusy;
+import net.fortuna.ical4j.model.property.Status;
+import net.fortuna.ical4j.model.property.Transp;
+import org.osaf.cosmo.calendar.util.Dates;
+
+/**
+ * The busy time of calendar data within a time range, as the periods
+ * of each free/busy type: BUSY, BUSY-TENTATIVE and BUSY-UNAVAILABLE.
+ */
+public class BusyPeriods {
+
+    private final PeriodList busyPeriods;
+    private final PeriodList busyTentativePeriods;
+    private final PeriodList busyUnavailablePeriods;
+
+    public BusyPeriods() {
+        this(new PeriodList(), new PeriodList(), new PeriodList());
+    }
+
+    /**
+     * @param busyPeriods list to add the BUSY periods to
+     * @param busyTentativePeriods list to add the BUSY-TENTATIVE periods to
+     * @param busyUnavailablePeriods list to add the BUSY-UNAVAILABLE periods to
+     */
+    public BusyPeriods(PeriodList busyPeriods, PeriodList busyTentativePeriods,
+                       PeriodList busyUnavailablePeriods) {
+        this.busyPeriods = busyPeriods;
+        this.busyTentativePeriods = busyTentativePeriods;
+        this.busyUnavailablePeriods = busyUnavailablePeriods;
+    }
+
+    public PeriodList getBusyPeriods() {
+        return busyPeriods;
+    }
+
+    public PeriodList getBusyTentativePeriods() {
+        return busyTentativePeriods;
+    }
+
+    public PeriodList getBusyUnavailablePeriods() {
+        return busyUnavailablePeriods;
+    }
+
+    /**
+     * @param type free/busy type, null for BUSY
+     * @return periods of the type, null if the type isn't a busy type
+     */
+    public PeriodList getPeriods(FbType type) {
+        if (type == null || FbType.BUSY.equals(type))
+            return busyPeriods;
+        if (FbType.BUSY_TENTATIVE.equals(type))
+            return busyTentativePeriods;
+        if (FbType.BUSY_UNAVAILABLE.equals(type))
+            return busyUnavailablePeriods;
+        return null;
+    }
+
+    /**
+     * Add a period of a free/busy type.  Periods of other than the busy
+     * types are ignored.
+     * @param type free/busy type, null for BUSY
+     * @param period period
+     */
+    public void add(FbType type, Period period) {
+        PeriodList periods = getPeriods(type);
+        if (periods != null)
+            periods.add(period);
+    }
+
+    /**
+     * Add the busy time of the events and free/busy components of a
+     * calendar that falls within a time range.  Event instances are
+     * clipped to the range; transparent and cancelled events are free.
+     * @param calendar calendar data
+     * @param timezone timezone used to resolve floating times, null for UTC
+     * @param range time range
+     */
+    public void addCalendar(Calendar calendar, TimeZone timezone, Period range) {
+
+        // Create list of instances within the specified time-range
+        InstanceList instances = new InstanceList();
+        instances.setUTC(true);
+        instances.setTimezone(timezone);
+
+        // Look at each VEVENT/VFREEBUSY component only
+        ComponentList overrides = new ComponentList();
+        for (CalendarComponent comp : calendar.getComponents()) {
+            if (comp instanceof VEvent) {
+                VEvent vcomp = (VEvent) comp;
+                // See if this is the master instance
+                if (vcomp.getRecurrenceId() == null) {
+                    instances.addComponent(vcomp, range.getStart(),
+                            range.getEnd());
+                } else {
+                    overrides.add(vcomp);
+                }
+            } else if (comp instanceof VFreeBusy) {
+                // Add all FREEBUSY BUSY/BUSY-TENTATIVE/BUSY-UNAVAILABLE to the
+                // periods
+                PropertyList<FreeBusy> fbs = comp.getProperties().getProperties(Property.FREEBUSY);
+                for (FreeBusy fb :  fbs) {
+                    FbType fbt = fb.getParameters().getParameter(
+                            Parameter.FBTYPE);
+                    PeriodList periods = getPeriods(fbt);
+                    if (periods != null)
+                        addRelevantPeriods(periods, fb.getPeriods(), range);
+                }
+            }
+        }
+
+        for (Component comp : (Iterable<Component>) overrides) {
+            instances.addComponent(comp, range.getStart(),
+                    range.getEnd());
+        }
+
+        // See if there is nothing to do (should not really happen)
+        if (instances.isEmpty()) {
+            return;
+        }
+
+        // Add start/end period for each instance
+        for (String ikey : (Iterable<String>) instances.keySet()) {
+            Instance instance = (Instance) instances.get(ikey);
+
+            // Check that the VEVENT has the proper busy status
+            if (Transp.TRANSPARENT.equals(instance.getComp().getProperties()
+                    .getProperty(Property.TRANSP))) {
+                continue;
+            }
+            if (Status.VEVENT_CANCELLED.equals(instance.getComp()
+                    .getProperties().getProperty(Property.STATUS))) {
+                continue;
+            }
+
+            // Can only have DATE-TIME values in PERIODs
+            DateTime start, end = null;
+
+            start = (DateTime) instance.getStart();
+            end = (DateTime) instance.getEnd();
+
+            if (start.compareTo(range.getStart()) < 0) {
+                start = (DateTime) Dates.getInstance(range.getStart(), start);
+            }
+            if (end.compareTo(range.getEnd()) > 0) {
+                end = (DateTime) Dates.getInstance(range.getEnd(), end);
+            }
+            if (Status.VEVENT_TENTATIVE.equals(instance.getComp()
+                    .getProperties().getProperty(Property.STATUS))) {
+                busyTentativePeriods.add(new Period(start, end));
+            } else {
+                busyPeriods.add(new Period(start, end));
+            }
+
+        }
+    }
+
+    /**
+     * Add all periods of another instance.
+     */
+    public void addAll(BusyPeriods other) {
+        busyPeriods.addAll(other.busyPeriods);
+        busyTentativePeriods.addAll(other.busyTentativePeriods);
+        busyUnavailablePeriods.addAll(other.busyUnavailablePeriods);
+    }
+
+    /**
+     * @return new instance with the overlapping and adjacent periods of
+     *         each type merged
+     */
+    public BusyPeriods normalise() {
+        return new BusyPeriods(busyPeriods.normalise(),
+                busyTentativePeriods.normalise(),
+                busyUnavailablePeriods.normalise());
+    }
+
+    /**
+     * Add all periods that intersect a given period to the result PeriodList.
+     */
+    private static void addRelevantPeriods(PeriodList results, PeriodList periods,
+            Period range) {
+
+        for (Period p : periods) {
+            if (p.intersects(range))
+                results.add(p);
+        }
+    }
+}
@@ -0,0 +1,547 @@
+package org.osaf.cosmo.calendar;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+import net.fortuna.ical4j.model.Component;
+import net.fortuna.ical4j.model.Date;
+import net.fortuna.ical4j.model.DateList;
+import net.fortuna.ical4j.model.DateTime;
+import net.fortuna.ical4j.model.Dur;
+import net.fortuna.ical4j.model.Parameter;
+import net.fortuna.ical4j.model.Period;
+import net.fortuna.ical4j.model.Property;
+import net.fortuna.ical4j.model.PropertyList;
+import net.fortuna.ical4j.model.TimeZone;
+import net.fortuna.ical4j.model.parameter.Value;
+import net.fortuna.ical4j.model.property.ExDate;
+import net.fortuna.ical4j.model.property.ExRule;
+import net.fortuna.ical4j.model.property.RDate;
+import net.fortuna.ical4j.model.property.RRule;
+import net.fortuna.ical4j.util.Dates;
+
+/**
+ * The instances of a (possibly) recurring component, expanded with the
+ * same rules as {@link InstanceList} but kept in sorted arrays of epoch
+ * millis rather than a map of <code>Instance</code>s keyed by the text
+ * of their recurrence id.  Expanding a series therefore doesn't allocate
+ * a key string, a map entry and copies of the dates for each occurrence,
+ * and an occurrence is only turned into an <code>Instance</code> or
+ * <code>Date</code>s when a caller asks for it.
+ * <p>
+ * Instances are identified by the time of their recurrence id, so an
+ * override replaces the instance at the same time even if its
+ * RECURRENCE-ID is written with a different timezone than the master
+ * DTSTART.  As with <code>InstanceList</code>, the master component must
+ * be added before its overrides.  Not thread safe.
+ */
+public class CompactInstanceList {
+
+    private static final int OVERRIDDEN = 1;
+    private static final int FUTURE = 2;
+    // in range if it ends at the start of the range, as for master instances
+    private static final int INCLUSIVE_END = 4;
+
+    // holds the UTC and timezone settings and the expansion rules
+    private final InstanceList rules = new InstanceList();
+
+    private int size = 0;
+    private long[] rids = new long[8];
+    private long[] starts = new long[8];
+    private long[] ends = new long[8];
+    private Source[] sources = new Source[8];
+
+    // whether expanding over a narrower range is the same as filtering
+    private boolean narrowable = true;
+
+    public CompactInstanceList() {
+    }
+
+    /**
+     * @see InstanceList#isUTC()
+     */
+    public boolean isUTC() {
+        return rules.isUTC();
+    }
+
+    /**
+     * @see InstanceList#setUTC(boolean)
+     */
+    public void setUTC(boolean isUTC) {
+        rules.setUTC(isUTC);
+    }
+
+    /**
+     * @see InstanceList#getTimezone()
+     */
+    public TimeZone getTimezone() {
+        return rules.getTimezone();
+    }
+
+    /**
+     * @see InstanceList#setTimezone(TimeZone)
+     */
+    public void setTimezone(TimeZone timezone) {
+        rules.setTimezone(timezone);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param index instance index, instances are in recurrence id order
+     * @return time of the recurrence id of the instance
+     */
+    public long getRidTime(int index) {
+        checkIndex(index);
+        return rids[index];
+    }
+
+    /**
+     * @param index instance index
+     * @return start time of the instance
+     */
+    public long getStartTime(int index) {
+        checkIndex(index);
+        return starts[index];
+    }
+
+    /**
+     * @param index instance index
+     * @return end time of the instance
+     */
+    public long getEndTime(int index) {
+        checkIndex(index);
+        return ends[index];
+    }
+
+    /**
+     * @param index instance index
+     * @return component the instance is an instance of
+     */
+    public Component getComponent(int index) {
+        checkIndex(index);
+        return sources[index].comp;
+    }
+
+    /**
+     * @param index instance index
+     * @return true if the instance is an override
+     */
+    public boolean isOverridden(int index) {
+        checkIndex(index);
+        return (sources[index].flags & OVERRIDDEN) != 0;
+    }
+
+    /**
+     * @param ridTime time of a recurrence id
+     * @return index of the instance with the recurrence id, or a negative
+     *         number if there is none
+     */
+    public int indexOf(long ridTime) {
+        int index = Arrays.binarySearch(rids, 0, size, ridTime);
+        return index >= 0 ? index : -1;
+    }
+
+    /**
+     * @param index instance index
+     * @return recurrence id of the instance, as it would be in the
+     *         <code>Instance</code>
+     */
+    public Date getRid(int index) {
+        checkIndex(index);
+        Date rid = toDate(rids[index], sources[index].ridType);
+        // normalised to UTC if not floating, as by Instance
+        if (rid instanceof DateTime && !((DateTime) rid).isUtc()
+                && ((DateTime) rid).getTimeZone() != null)
+            ((DateTime) rid).setUtc(true);
+        return rid;
+    }
+
+    /**
+     * @param index instance index
+     * @return new <code>Instance</code> equal to the one
+     *         <code>InstanceList</code> holds for the recurrence id
+     */
+    public Instance getInstance(int index) {
+        checkIndex(index);
+        Source source = sources[index];
+        return new Instance(source.comp,
+                toDate(starts[index], source.startType),
+                toDate(ends[index], source.endType),
+                toDate(rids[index], source.ridType),
+                (source.flags & OVERRIDDEN) != 0,
+                (source.flags & FUTURE) != 0);
+    }
+
+    /**
+     * Instances within a range inside the range this list was expanded
+     * over.  This is only possible for instances of components with
+     * DATE-TIME starts, a master duration of an exact length and no
+     * THISANDFUTURE overrides, expanded over DATE-TIME ranges that
+     * aren't floating; otherwise the instances in range depend on more
+     * than their times.
+     *
+     * @param rangeStart start of the narrower range
+     * @param rangeEnd end of the narrower range
+     * @return new list with the same instances as expanding over the
+     *         narrower range would give, or null if that can't be told
+     *         from these instances
+     */
+    public CompactInstanceList narrow(Date rangeStart, Date rangeEnd) {
+        if (!narrowable || !isFixedTime(rangeStart) || !isFixedTime(rangeEnd))
+            return null;
+
+        CompactInstanceList narrowed = new CompactInstanceList();
+        narrowed.setUTC(isUTC());
+        narrowed.setTimezone(getTimezone());
+
+        long start = rangeStart.getTime();
+        long end = rangeEnd.getTime();
+        for (int i = 0; i < size; i++) {
+            if (starts[i] < end && (ends[i] > start ||
+                    (ends[i] == start && (sources[i].flags & INCLUSIVE_END) != 0)))
+                narrowed.put(rids[i], starts[i], ends[i], sources[i]);
+        }
+        return narrowed;
+    }
+
+    /**
+     * @see InstanceList#addComponent(Component, Date, Date)
+     */
+    public void addComponent(Component comp, Date rangeStart, Date rangeEnd) {
+        if (comp.getProperties().getProperty(Property.RECURRENCE_ID) == null) {
+            addMaster(comp, rangeStart, rangeEnd);
+        } else {
+            addOverride(comp, rangeStart, rangeEnd);
+        }
+    }
+
+    /**
+     * Add a master component if it falls within the specified time range.
+     *
+     * @see InstanceList#addMaster(Component, Date, Date)
+     */
+    public void addMaster(Component comp, Date rangeStart, Date rangeEnd) {
+
+        InstanceList.FirstInstance first = rules.getFirstInstance(comp);
+        if (first == null) {
+            return;
+        }
+
+        Date start = first.start;
+        Date end = first.end;
+        Dur duration = first.duration;
+        long exactDuration = getExactMillis(duration);
+
+        if (!(start instanceof DateTime) || exactDuration < 0
+                || !isFixedTime(rangeStart) || !isFixedTime(rangeEnd))
+            narrowable = false;
+
+        // Always add first instance if included in range..
+        if (rules.dateBefore(start, rangeEnd) &&
+                (rules.dateAfter(end, rangeStart) ||
+                 rules.dateEquals(end, rangeStart))) {
+            put(start.getTime(), start.getTime(), end.getTime(),
+                    new Source(comp, start, end, start, INCLUSIVE_END));
+        }
+
+        // recurrence dates..
+        PropertyList<RDate> rDates = comp.getProperties()
+                .getProperties(Property.RDATE);
+        for (RDate rdate : rDates) {
+            // Both PERIOD and DATE/DATE-TIME values allowed
+            if (Value.PERIOD.equals(rdate.getParameters().getParameter(
+                    Parameter.VALUE))) {
+                for (Period period : rdate.getPeriods()) {
+                    Date periodStart = rules.adjustFloatingDateIfNecessary(period.getStart());
+                    Date periodEnd = rules.adjustFloatingDateIfNecessary(period.getEnd());
+                    // Add period if it overlaps range
+                    if (periodStart.before(rangeEnd)
+                            && periodEnd.after(rangeStart)) {
+                        put(periodStart.getTime(), periodStart.getTime(), periodEnd.getTime(),
+                                new Source(comp, periodStart, periodEnd, periodStart, 0));
+                    }
+                }
+            } else {
+                for (Date startDate : rdate.getDates()) {
+                    startDate = rules.convertToUTCIfNecessary(startDate);
+                    startDate = rules.adjustFloatingDateIfNecessary(startDate);
+                    if (!(startDate instanceof DateTime))
+                        narrowable = false;
+                    Date endDate = org.osaf.cosmo.calendar.util.Dates.getInstance(duration
+                            .getTime(startDate), startDate);
+                    // Add RDATE if it overlaps range
+                    if (rules.inRange(startDate, endDate, rangeStart, rangeEnd)) {
+                        put(startDate.getTime(), startDate.getTime(), endDate.getTime(),
+                                new Source(comp, startDate, startDate, startDate, 0));
+                    }
+                }
+            }
+        }
+
+        // recurrence rules..
+        PropertyList<RRule> rRules = comp.getProperties()
+                .getProperties(Property.RRULE);
+
+        // Adjust startRange to account for instances that occur before
+        // the startRange, and end after it
+        Date adjustedRangeStart = null;
+        Date adjustedRangeEnd = null;
+
+        if (!rRules.isEmpty()) {
+            adjustedRangeStart = rules.adjustStartRangeIfNecessary(rangeStart, start, duration);
+            adjustedRangeEnd = rules.adjustEndRangeIfNecessary(rangeEnd, start);
+        }
+
+        // all occurrences of the rules share their dates' types
+        Source occurrence = new Source(comp, start, start, start, INCLUSIVE_END);
+        for (RRule rrule : rRules) {
+            DateList startDates = rrule.getRecur().getDates(start, adjustedRangeStart,
+                    adjustedRangeEnd,
+                    (start instanceof DateTime) ? Value.DATE_TIME : Value.DATE);
+            for (Date sd : startDates) {
+                long startTime = sd.getTime();
+                // Workaround for https://github.com/ical4j/ical4j/issues/603
+                if (startTime >= adjustedRangeEnd.getTime())
+                    continue;
+                long endTime = exactDuration >= 0 ? startTime + exactDuration
+                        : duration.getTime(sd).getTime();
+                put(startTime, startTime, endTime, occurrence);
+            }
+        }
+
+        // exception dates..
+        PropertyList<ExDate> exDates = comp.getProperties().getProperties(
+                Property.EXDATE);
+        for (ExDate exDate : exDates) {
+            for (Date sd : exDate.getDates()) {
+                sd = rules.convertToUTCIfNecessary(sd);
+                sd = rules.adjustFloatingDateIfNecessary(sd);
+                remove(sd.getTime());
+            }
+        }
+
+        // exception rules..
+        PropertyList<ExRule> exRules = comp.getProperties().getProperties(
+                Property.EXRULE);
+        if (!exRules.isEmpty() && adjustedRangeStart == null) {
+            adjustedRangeStart = rules.adjustStartRangeIfNecessary(rangeStart, start, duration);
+            adjustedRangeEnd = rules.adjustEndRangeIfNecessary(rangeEnd, start);
+        }
+
+        for (ExRule exrule : exRules) {
+            DateList startDates = exrule.getRecur().getDates(start, adjustedRangeStart,
+                    adjustedRangeEnd,
+                    (start instanceof DateTime) ? Value.DATE_TIME : Value.DATE);
+            for (Date sd : startDates) {
+                remove(sd.getTime());
+            }
+        }
+    }
+
+    /**
+     * Add an override component if it falls within the specified time range.
+     *
+     * @see InstanceList#addOverride(Component, Date, Date)
+     * @return true if the override component modifies instance list and false
+     *         if the override component has no effect on instance list
+     */
+    public boolean addOverride(Component comp, Date rangeStart, Date rangeEnd) {
+
+        boolean modified = false;
+
+        // Verify if component is an override
+        if (comp.getProperties().getProperty(Property.RECURRENCE_ID) == null)
+            return false;
+
+        // We need a DTSTART.
+        InstanceList.FirstInstance first = rules.getFirstInstance(comp);
+        if (first == null)
+            return false;
+
+        Date dtstart = first.start;
+        Date dtend = first.end;
+
+        Date riddt = rules.getRecurrenceId(comp);
+        riddt = rules.convertToUTCIfNecessary(riddt);
+        if (riddt instanceof DateTime)
+            riddt = rules.adjustFloatingDateIfNecessary(riddt);
+
+        boolean future = rules.getRange(comp);
+        long ridTime = riddt.getTime();
+
+        if (!(dtstart instanceof DateTime) || future
+                || !isFixedTime(rangeStart) || !isFixedTime(rangeEnd))
+            narrowable = false;
+
+        // Replace the master instance if it exists
+        if (remove(ridTime))
+            modified = true;
+
+        // Add modification instance if its in the range
+        if (dtstart.before(rangeEnd) && dtend.after(rangeStart)) {
+            put(ridTime, dtstart.getTime(), dtend.getTime(),
+                    new Source(comp, dtstart, dtend, riddt,
+                            OVERRIDDEN | (future ? FUTURE : 0)));
+            modified = true;
+        }
+
+        // TODO Ignoring THISANDPRIOR
+        if (future && applyThisAndFuture(comp, dtstart, dtend, riddt))
+            modified = true;
+
+        return modified;
+    }
+
+    /*
+     * Replace the instances after a THISANDFUTURE override with versions
+     * adjusted to match the override component, applying the same time
+     * shift and duration.  Overridden instances are left alone.  See
+     * InstanceList for the policy for overlapping THISANDFUTURE overrides.
+     */
+    private boolean applyThisAndFuture(Component comp, Date dtstart, Date dtend, Date riddt) {
+        boolean timeShift = (dtstart.compareTo(riddt) != 0);
+        Dur offsetTime = (timeShift ? new Dur(riddt, dtstart) : null);
+        Dur newDuration = (timeShift ? new Dur(dtstart, dtend) : null);
+
+        // the instances replaced keep the types of their dates, unless
+        // shifted, so one source is needed per source replaced
+        IdentityHashMap<Source, Source> replacements = new IdentityHashMap<>();
+        boolean modified = false;
+
+        int index = Arrays.binarySearch(rids, 0, size, riddt.getTime());
+        index = index >= 0 ? index + 1 : -index - 1;
+        for (; index < size; index++) {
+            Source old = sources[index];
+            if ((old.flags & OVERRIDDEN) != 0)
+                continue;
+
+            if (timeShift) {
+                Date originalstart = getRid(index);
+                Value originalvalue = originalstart instanceof DateTime ?
+                    Value.DATE_TIME : Value.DATE;
+                Date start = Dates.getInstance(offsetTime.getTime(originalstart),
+                        originalvalue);
+                Date end = Dates.getInstance(newDuration.getTime(start),
+                        originalvalue);
+                starts[index] = start.getTime();
+                ends[index] = end.getTime();
+                sources[index] = new Source(comp, start, end, old.ridType, 0);
+            } else {
+                Source replacement = replacements.get(old);
+                if (replacement == null) {
+                    replacement = new Source(comp, old.startType, old.endType, old.ridType, 0);
+                    replacements.put(old, replacement);
+                }
+                sources[index] = replacement;
+            }
+            modified = true;
+        }
+        return modified;
+    }
+
+    /*
+     * Put an instance, replacing the instance with the same recurrence id.
+     * Expansion mostly appends in order.
+     */
+    private void put(long rid, long start, long end, Source source) {
+        int index = size > 0 && rids[size - 1] < rid ? -size - 1
+            : Arrays.binarySearch(rids, 0, size, rid);
+        if (index < 0) {
+            index = -index - 1;
+            if (size == rids.length) {
+                int capacity = size * 2;
+                rids = Arrays.copyOf(rids, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                sources = Arrays.copyOf(sources, capacity);
+            }
+            int moved = size - index;
+            if (moved > 0) {
+                System.arraycopy(rids, index, rids, index + 1, moved);
+                System.arraycopy(starts, index, starts, index + 1, moved);
+                System.arraycopy(ends, index, ends, index + 1, moved);
+                System.arraycopy(sources, index, sources, index + 1, moved);
+            }
+            size++;
+        }
+        rids[index] = rid;
+        starts[index] = start;
+        ends[index] = end;
+        sources[index] = source;
+    }
+
+    private boolean remove(long rid) {
+        int index = Arrays.binarySearch(rids, 0, size, rid);
+        if (index < 0)
+            return false;
+        int moved = size - index - 1;
+        if (moved > 0) {
+            System.arraycopy(rids, index + 1, rids, index, moved);
+            System.arraycopy(starts, index + 1, starts, index, moved);
+            System.arraycopy(ends, index + 1, ends, index, moved);
+            System.arraycopy(sources, index + 1, sources, index, moved);
+        }
+        sources[--size] = null;
+        return true;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+    }
+
+    /**
+     * @return the duration in millis if adding it to any date gives the
+     *         same time as <code>Dur.getTime()</code>, which is the case
+     *         for durations without weeks or days, otherwise -1
+     */
+    private static long getExactMillis(Dur duration) {
+        if (duration.isNegative() || duration.getWeeks() != 0 || duration.getDays() != 0)
+            return -1;
+        return ((duration.getHours() * 60L + duration.getMinutes()) * 60L
+                + duration.getSeconds()) * 1000L;
+    }
+
+    /*
+     * True for a DATE-TIME in UTC or with a timezone, the only dates that
+     * compare by time alone.
+     */
+    private static boolean isFixedTime(Date date) {
+        return date instanceof DateTime && !ICalendarUtils.isFloating(date);
+    }
+
+    /*
+     * Date at a time, of the same type and with the same timezone as a
+     * given date.
+     */
+    private static Date toDate(long time, Date type) {
+        return org.osaf.cosmo.calendar.util.Dates.getInstance(new java.util.Date(time), type);
+    }
+
+    /**
+     * Component and date types of instances, shared by all occurrences
+     * expanded from the same rule.
+     */
+    private static final class Source {
+        final Component comp;
+        final Date startType;
+        final Date endType;
+        final Date ridType;
+        final int flags;
+
+        Source(Component comp, Date startType, Date endType, Date ridType, int flags) {
+            this.comp = comp;
+            this.startType = startType;
+            this.endType = endType;
+            this.ridType = ridType;
+            this.flags = flags;
+        }
+    }
+}
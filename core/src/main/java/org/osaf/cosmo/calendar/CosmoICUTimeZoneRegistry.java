@@ -16,28 +16,52 @@
 package org.osaf.cosmo.calendar;
 
 
+import java.io.FileWriter;
 import java.io.IOException;
-import java.util.HashMap;
+import java.io.InputStream;
+import java.io.Writer;
 import java.util.Map;
 import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
+import net.fortuna.ical4j.data.CalendarBuilder;
+import net.fortuna.ical4j.data.CalendarOutputter;
+import net.fortuna.ical4j.data.ParserException;
+import net.fortuna.ical4j.model.Calendar;
+import net.fortuna.ical4j.model.Component;
 import net.fortuna.ical4j.model.TimeZone;
 import net.fortuna.ical4j.model.TimeZoneRegistry;
+import net.fortuna.ical4j.model.component.CalendarComponent;
 import net.fortuna.ical4j.model.component.VTimeZone;
+import net.fortuna.ical4j.model.property.ProdId;
+import net.fortuna.ical4j.model.property.Version;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.osaf.cosmo.CosmoConstants;
 import org.osaf.cosmo.calendar.util.TimeZoneUtils;
 
 /**
  * Implementation of a <code>TimeZoneRegistry</code>. This implementation will
  * use VTIMEZONE definitions provided by icu 3.8
+ * <p>
+ * The definitions are shared by all registries in a concurrent cache.
+ * Each is converted from icu once, on first use, unless the cache has
+ * been warmed up by {@link #warmUp()}, which loads the precompiled
+ * snapshot of all definitions on the classpath at
+ * <code>/timezones.ics</code> (written by {@link #writeSnapshot(Writer)}
+ * as part of the build) and converts any it doesn't contain.  After
+ * warming up, lookups never convert or parse.
  */
 public class CosmoICUTimeZoneRegistry implements TimeZoneRegistry {
 
-    private final Log log = LogFactory.getLog(CosmoICUTimeZoneRegistry.class);
+    private static final Log log = LogFactory.getLog(CosmoICUTimeZoneRegistry.class);
 
-    private static final Map<String, TimeZone> DEFAULT_TIMEZONES = new HashMap<>();
+    /** classpath location of the precompiled VTIMEZONE snapshot */
+    public static final String SNAPSHOT = "/timezones.ics";
+
+    private static final Map<String, TimeZone> DEFAULT_TIMEZONES = new ConcurrentHashMap<>();
 
     private static final Properties ALIASES = new Properties();
     static {
@@ -51,7 +75,7 @@ public class CosmoICUTimeZoneRegistry implements TimeZoneRegistry {
         }
     }
 
-    private final Map<String, TimeZone> timezones = new HashMap<>();
+    private final Map<String, TimeZone> timezones = new ConcurrentHashMap<>();
 
     /**
      * Default constructor.
@@ -89,31 +113,116 @@ public class CosmoICUTimeZoneRegistry implements TimeZoneRegistry {
      * @see net.fortuna.ical4j.model.TimeZoneRegistry#getTimeZone(java.lang.String)
      */
     public final TimeZone getTimeZone(final String id) {
+        if (id == null)
+            return null;
         TimeZone timezone = timezones.get(id);
         if (timezone == null) {
-            timezone = DEFAULT_TIMEZONES.get(id);
-            if (timezone == null) {
-                synchronized (DEFAULT_TIMEZONES) {
-                    try {
-                        VTimeZone vTimeZone = TimeZoneUtils.getVTimeZone(id);
-                        if (vTimeZone != null) {
-                            timezone = new TimeZone(vTimeZone);
-                            DEFAULT_TIMEZONES.put(timezone.getID(), timezone);
-                        }
-                    }
-                    catch (Exception e) {
-                        log.warn("Error occurred loading VTimeZone", e);
-                    }
-                }
-                if(timezone==null) {
-                    // if timezone not found with identifier, try loading an alias..
-                    String alias = ALIASES.getProperty(id);
-                    if (alias != null) {
-                        return getTimeZone(alias);
-                    }
+            timezone = getDefaultTimeZone(id);
+            if(timezone==null) {
+                // if timezone not found with identifier, try loading an alias..
+                String alias = ALIASES.getProperty(id);
+                if (alias != null) {
+                    return getTimeZone(alias);
                 }
             }
         }
         return timezone;
     }
+
+    private static TimeZone getDefaultTimeZone(String id) {
+        TimeZone timezone = DEFAULT_TIMEZONES.get(id);
+        if (timezone != null || !TimeZoneUtils.getTimeZoneIds().contains(id))
+            return timezone;
+        // concurrent first lookups of a zone wait for a single conversion
+        return DEFAULT_TIMEZONES.computeIfAbsent(id, CosmoICUTimeZoneRegistry::loadTimeZone);
+    }
+
+    private static TimeZone loadTimeZone(String id) {
+        try {
+            VTimeZone vTimeZone = TimeZoneUtils.getVTimeZone(id);
+            if (vTimeZone != null)
+                return new TimeZone(vTimeZone);
+        }
+        catch (Exception e) {
+            log.warn("Error occurred loading VTimeZone", e);
+        }
+        return null;
+    }
+
+    /**
+     * Fills the shared cache with every supported timezone, from the
+     * snapshot if there is one on the classpath and by converting the
+     * icu definition otherwise.  Safe to call concurrently with lookups
+     * and more than once.
+     * @return number of timezones in the cache
+     */
+    public static int warmUp() {
+        long start = System.currentTimeMillis();
+        int fromSnapshot = loadSnapshot();
+        for (String id : TimeZoneUtils.getTimeZoneIds())
+            getDefaultTimeZone(id);
+        if (log.isInfoEnabled())
+            log.info("cached " + DEFAULT_TIMEZONES.size() + " timezones (" + fromSnapshot
+                    + " from snapshot) in " + (System.currentTimeMillis() - start) + "ms");
+        return DEFAULT_TIMEZONES.size();
+    }
+
+    private static int loadSnapshot() {
+        InputStream in = CosmoICUTimeZoneRegistry.class.getResourceAsStream(SNAPSHOT);
+        if (in == null)
+            return 0;
+
+        try (in) {
+            return loadSnapshot(in, DEFAULT_TIMEZONES);
+        }
+        catch (IOException | ParserException e) {
+            log.warn("Error loading timezone snapshot " + SNAPSHOT, e);
+            return 0;
+        }
+    }
+
+    /**
+     * Adds the timezones of a snapshot to a cache, keeping any already
+     * in it.
+     * @return number of timezones added
+     */
+    static int loadSnapshot(InputStream in, Map<String, TimeZone> cache)
+            throws IOException, ParserException {
+        int loaded = 0;
+        Calendar snapshot = new CalendarBuilder().build(in);
+        for (CalendarComponent comp : snapshot.getComponents(Component.VTIMEZONE)) {
+            VTimeZone vtz = (VTimeZone) comp;
+            String id = vtz.getTimeZoneId().getValue();
+            if (cache.putIfAbsent(id, new TimeZone(vtz)) == null)
+                loaded++;
+        }
+        return loaded;
+    }
+
+    /**
+     * Writes a VCALENDAR containing the VTIMEZONE of every supported
+     * timezone, for use as the snapshot loaded by {@link #warmUp()}.
+     */
+    public static void writeSnapshot(Writer out) throws Exception {
+        Calendar snapshot = new Calendar();
+        snapshot.getProperties().add(new ProdId(CosmoConstants.PRODUCT_ID));
+        snapshot.getProperties().add(Version.VERSION_2_0);
+        for (String id : new TreeSet<>(TimeZoneUtils.getTimeZoneIds())) {
+            VTimeZone vtz = TimeZoneUtils.getVTimeZone(id);
+            if (vtz != null)
+                snapshot.getComponents().add(vtz);
+        }
+        new CalendarOutputter(false).output(snapshot, out);
+    }
+
+    /**
+     * Writes the snapshot to the file given as the only argument.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1)
+            throw new IllegalArgumentException("Usage: CosmoICUTimeZoneRegistry <file>");
+        try (Writer out = new FileWriter(args[0])) {
+            writeSnapshot(out);
+        }
+    }
 }
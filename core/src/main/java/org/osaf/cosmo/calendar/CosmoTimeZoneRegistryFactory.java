@@ -15,6 +15,8 @@
  */
 package org.osaf.cosmo.calendar;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import net.fortuna.ical4j.model.TimeZoneRegistry;
 import net.fortuna.ical4j.model.TimeZoneRegistryFactory;
 
@@ -23,10 +25,25 @@ import net.fortuna.ical4j.model.TimeZoneRegistryFactory;
  * creates and returns a CosmoICUTimeZoneRegistry instance.  This
  * allows Cosmo to provide its own timezone registiry to plug
  * into ical4j.
+ * <p>
+ * If the system property <code>cosmo.timezone.warmup</code> is
+ * <code>true</code>, the first factory created starts warming up the
+ * timezone cache on a background thread (see
+ * {@link CosmoICUTimeZoneRegistry#warmUp()}).
  */
 public class CosmoTimeZoneRegistryFactory extends TimeZoneRegistryFactory {
 
-    public CosmoTimeZoneRegistryFactory() {}
+    public static final String WARM_UP_PROPERTY = "cosmo.timezone.warmup";
+
+    private static final AtomicBoolean WARMING_UP = new AtomicBoolean();
+
+    public CosmoTimeZoneRegistryFactory() {
+        if (Boolean.getBoolean(WARM_UP_PROPERTY) && WARMING_UP.compareAndSet(false, true)) {
+            Thread warmUp = new Thread(CosmoICUTimeZoneRegistry::warmUp, "cosmo-timezone-warmup");
+            warmUp.setDaemon(true);
+            warmUp.start();
+        }
+    }
     
     /* (non-Javadoc)
      * @see net.fortuna.ical4j.model.TimeZoneRegistryFactory#createRegistry()
@@ -15,6 +15,7 @@
  */
 package org.osaf.cosmo.calendar;
 
+import net.fortuna.ical4j.data.FoldingWriter;
 import net.fortuna.ical4j.model.Calendar;
 import net.fortuna.ical4j.model.Date;
 import net.fortuna.ical4j.model.TimeZone;
@@ -22,6 +23,7 @@ import net.fortuna.ical4j.model.*;
 import net.fortuna.ical4j.model.component.*;
 import net.fortuna.ical4j.model.parameter.XParameter;
 import net.fortuna.ical4j.model.property.*;
+import net.fortuna.ical4j.util.Strings;
 import org.apache.commons.lang.StringUtils;
 import org.osaf.cosmo.CosmoConstants;
 import org.osaf.cosmo.calendar.util.CalendarUtils;
@@ -29,6 +31,10 @@ import org.osaf.cosmo.icalendar.ICalendarConstants;
 import org.osaf.cosmo.model.*;
 import org.osaf.cosmo.model.hibernate.HibEventExceptionStamp;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.Map.Entry;
 
@@ -216,6 +222,8 @@ public class EntityConverter {
 
     /**
      * Returns an icalendar representation of a calendar collection.
+     * The whole calendar is built in memory; to export large collections
+     * use {@link #writeCollection(CollectionItem, Iterable, OutputStream)}.
      * @param collection calendar collection
      * @return icalendar representation of collection
      */
@@ -273,6 +281,82 @@ public class EntityConverter {
         return calendar;
     }
 
+    /**
+     * Writes an icalendar representation of a calendar collection to a
+     * stream without building it in memory first, as
+     * {@link #convertCollection(CollectionItem)} does.
+     * <p>
+     * The children are iterated twice: first to collect the VTIMEZONEs,
+     * one per tzid, which are written first, and then to write the other
+     * components of each child in turn.  Only the timezones and the
+     * calendar of the current child are held in memory, so with a paged
+     * <code>children</code> such as
+     * {@link org.osaf.cosmo.dao.ContentDao#iterateChildren(CollectionItem, int)}
+     * memory use doesn't grow with the size of the collection.  The
+     * output is folded like <code>CalendarOutputter</code> output but
+     * isn't validated.  The stream is flushed but not closed.
+     * </p>
+     * @param collection calendar collection
+     * @param children children of the collection
+     * @param out stream to write UTF-8 encoded icalendar data to
+     * @return false, having written nothing, if the collection is not a
+     *         calendar collection
+     */
+    public boolean writeCollection(CollectionItem collection,
+                                   Iterable<? extends Item> children,
+                                   OutputStream out) throws IOException {
+
+        // verify collection is a calendar
+        if (StampUtils.getCalendarCollectionStamp(collection) == null)
+            return false;
+
+        // first VTIMEZONE for each tzid wins, as in convertCollection()
+        LinkedHashMap<String, CalendarComponent> tzIdx = new LinkedHashMap<>();
+        for (Item item : children) {
+            Calendar childCalendar = convertChild(item);
+            if (childCalendar == null)
+                continue;
+            for (CalendarComponent comp : childCalendar.getComponents(Component.VTIMEZONE)) {
+                Property tzId = comp.getProperties().getProperty(Property.TZID);
+                tzIdx.putIfAbsent(tzId.getValue(), comp);
+            }
+        }
+
+        FoldingWriter writer = new FoldingWriter(
+                new OutputStreamWriter(out, StandardCharsets.UTF_8),
+                FoldingWriter.REDUCED_FOLD_LENGTH);
+
+        writer.write(Calendar.BEGIN + ':' + Calendar.VCALENDAR + Strings.LINE_SEPARATOR);
+        writer.write(new ProdId(CosmoConstants.PRODUCT_ID).toString());
+        writer.write(Version.VERSION_2_0.toString());
+        writer.write(CalScale.GREGORIAN.toString());
+
+        for (CalendarComponent comp : tzIdx.values())
+            writer.write(comp.toString());
+        tzIdx.clear();
+
+        for (Item item : children) {
+            Calendar childCalendar = convertChild(item);
+            if (childCalendar == null)
+                continue;
+            for (CalendarComponent comp : childCalendar.getComponents()) {
+                if (!Component.VTIMEZONE.equals(comp.getName()))
+                    writer.write(comp.toString());
+            }
+        }
+
+        writer.write(Calendar.END + ':' + Calendar.VCALENDAR + Strings.LINE_SEPARATOR);
+        writer.flush();
+        return true;
+    }
+
+    // returns null for items that can't be converted
+    private Calendar convertChild(Item item) {
+        if (!(item instanceof ContentItem))
+            return null;
+        return convertContent((ContentItem) item);
+    }
+
     /**
      * Returns a calendar representing the item.
      * <p>
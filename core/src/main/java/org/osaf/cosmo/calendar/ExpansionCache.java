@@ -0,0 +1,217 @@
+package org.osaf.cosmo.calendar;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.fortuna.ical4j.model.Date;
+import net.fortuna.ical4j.model.DateTime;
+import net.fortuna.ical4j.model.TimeZone;
+
+/**
+ * Bounded, least recently used cache of the expansions of recurring items
+ * into {@link CompactInstanceList}s, so that a series shared by many
+ * users, such as a meeting room or a team rota, is expanded once rather
+ * than for every query over it.
+ * <p>
+ * Expansions are cached by item id, which unlike the uid isn't reused by
+ * an item created after another is removed, and kept for the item version
+ * they were expanded from; looking up an item with a different version
+ * evicts its expansions, as an update to an item or one of its
+ * modifications changes the version of the master.  Up to
+ * <code>maxWindowsPerItem</code> time ranges are kept per item, and a
+ * lookup for a range inside one of them is answered by narrowing it when
+ * {@link CompactInstanceList#narrow(Date, Date)} allows.  Only ranges
+ * of DATE-TIMEs in UTC or with a timezone are cached.
+ * <p>
+ * Cached lists are shared between callers and must not be modified.  Set
+ * <code>maxCachedItems</code> to 0 to disable caching.
+ */
+public class ExpansionCache {
+
+    public static final int DEFAULT_MAX_CACHED_ITEMS = 500;
+    public static final int DEFAULT_MAX_WINDOWS_PER_ITEM = 4;
+
+    private int maxCachedItems = DEFAULT_MAX_CACHED_ITEMS;
+    private int maxWindowsPerItem = DEFAULT_MAX_WINDOWS_PER_ITEM;
+
+    // guards expansionCache and the expansions in it
+    private final Object cacheLock = new Object();
+
+    // item id -> expansions, in access order so the eldest entry is the least recently used
+    private final LinkedHashMap<Long, Expansions> expansionCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Expansions> eldest) {
+            return size() > maxCachedItems;
+        }
+    };
+
+    /**
+     * @param itemId item id
+     * @param version item version
+     * @param rangeStart expand start date
+     * @param rangeEnd expand end date
+     * @param timezone timezone used for floating dates, null for the
+     *        system default
+     * @return cached instances of the item in the range, or null if none
+     *         are cached
+     */
+    public CompactInstanceList get(Long itemId, Integer version, Date rangeStart,
+            Date rangeEnd, TimeZone timezone) {
+        if (!isCacheable(itemId, version, rangeStart, rangeEnd))
+            return null;
+
+        ArrayList<Window> windows;
+        synchronized (cacheLock) {
+            Expansions expansions = expansionCache.get(itemId);
+            if (expansions == null)
+                return null;
+            if (!expansions.version.equals(version)) {
+                expansionCache.remove(itemId);
+                return null;
+            }
+            windows = new ArrayList<>(expansions.windows);
+        }
+
+        // the key serializes the timezone, so only make it for a cached
+        // item, and outside the lock
+        String timezoneKey = getTimezoneKey(timezone);
+        long start = rangeStart.getTime();
+        long end = rangeEnd.getTime();
+        ArrayList<Window> covering = new ArrayList<>();
+        for (Window window : windows) {
+            if (!window.timezoneKey.equals(timezoneKey))
+                continue;
+            if (window.start == start && window.end == end)
+                return window.instances;
+            if (window.start <= start && window.end >= end)
+                covering.add(window);
+        }
+
+        // cached lists aren't modified, so they can be narrowed unlocked
+        for (Window window : covering) {
+            CompactInstanceList narrowed = window.instances.narrow(rangeStart, rangeEnd);
+            if (narrowed != null)
+                return narrowed;
+        }
+        return null;
+    }
+
+    /**
+     * Cache the instances of an item expanded over a range, replacing
+     * any expansions of other versions of the item.
+     *
+     * @param itemId item id
+     * @param version item version
+     * @param rangeStart expand start date
+     * @param rangeEnd expand end date
+     * @param timezone timezone used for floating dates
+     * @param instances instances, which must not be modified afterwards
+     */
+    public void put(Long itemId, Integer version, Date rangeStart,
+            Date rangeEnd, TimeZone timezone, CompactInstanceList instances) {
+        if (!isCacheable(itemId, version, rangeStart, rangeEnd))
+            return;
+
+        Window window = new Window(rangeStart.getTime(), rangeEnd.getTime(),
+                getTimezoneKey(timezone), instances);
+        synchronized (cacheLock) {
+            if (maxCachedItems <= 0)
+                return;
+            Expansions expansions = expansionCache.get(itemId);
+            if (expansions == null || !expansions.version.equals(version)) {
+                expansions = new Expansions(version);
+                expansionCache.put(itemId, expansions);
+            }
+            expansions.windows.add(window);
+            // the oldest range goes first
+            if (expansions.windows.size() > maxWindowsPerItem)
+                expansions.windows.remove(0);
+        }
+    }
+
+    /**
+     * Evict the expansions of an item.
+     * @param itemId item id
+     */
+    public void evict(Long itemId) {
+        synchronized (cacheLock) {
+            expansionCache.remove(itemId);
+        }
+    }
+
+    /**
+     * @return number of items with cached expansions
+     */
+    public int getCachedItemCount() {
+        synchronized (cacheLock) {
+            return expansionCache.size();
+        }
+    }
+
+    public int getMaxCachedItems() {
+        return maxCachedItems;
+    }
+
+    public void setMaxCachedItems(int maxCachedItems) {
+        synchronized (cacheLock) {
+            this.maxCachedItems = maxCachedItems;
+            expansionCache.clear();
+        }
+    }
+
+    public int getMaxWindowsPerItem() {
+        return maxWindowsPerItem;
+    }
+
+    public void setMaxWindowsPerItem(int maxWindowsPerItem) {
+        synchronized (cacheLock) {
+            this.maxWindowsPerItem = Math.max(1, maxWindowsPerItem);
+            expansionCache.clear();
+        }
+    }
+
+    private boolean isCacheable(Long itemId, Integer version, Date rangeStart, Date rangeEnd) {
+        return maxCachedItems > 0 && itemId != null && version != null
+                && isFixedTime(rangeStart) && isFixedTime(rangeEnd);
+    }
+
+    private static boolean isFixedTime(Date date) {
+        return date instanceof DateTime && !ICalendarUtils.isFloating(date);
+    }
+
+    // floating times are resolved with the whole definition
+    // of the timezone, not just its id
+    private static String getTimezoneKey(TimeZone timezone) {
+        return timezone == null ? "" : timezone.getVTimeZone().toString();
+    }
+
+    /**
+     * Expansions of one version of an item.
+     */
+    private static final class Expansions {
+        final Integer version;
+        final ArrayList<Window> windows = new ArrayList<>();
+
+        Expansions(Integer version) {
+            this.version = version;
+        }
+    }
+
+    /**
+     * Instances expanded over a range.
+     */
+    private static final class Window {
+        final long start;
+        final long end;
+        final String timezoneKey;
+        final CompactInstanceList instances;
+
+        Window(long start, long end, String timezoneKey, CompactInstanceList instances) {
+            this.start = start;
+            this.end = end;
+            this.timezoneKey = timezoneKey;
+            this.instances = instances;
+        }
+    }
+}
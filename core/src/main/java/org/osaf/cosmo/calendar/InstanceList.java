@@ -109,53 +109,14 @@ public class InstanceList extends TreeMap<String, Instance> {
      */
     protected void addMaster(Component comp, Date rangeStart, Date rangeEnd) {
 
-        Date start = getStartDate(comp);
-
-        if (start == null) {
+        FirstInstance first = getFirstInstance(comp);
+        if (first == null) {
             return;
         }
 
-        Value startValue = start instanceof DateTime ? Value.DATE_TIME : Value.DATE;
-
-        start = convertToUTCIfNecessary(start);
-
-        if(start instanceof DateTime) {
-            // adjust floating time if timezone is present
-            start = adjustFloatingDateIfNecessary(start);
-        }
-
-        Dur duration;
-        Date end = getEndDate(comp);
-        if (end == null) {
-            if (startValue.equals(Value.DATE_TIME)) {
-                // Its an timed event with no duration
-                duration = new Dur(0, 0, 0, 0);
-            } else {
-                // Its an all day event so duration is one day
-                duration = new Dur(1, 0, 0, 0);
-            }
-            end = org.osaf.cosmo.calendar.util.Dates.getInstance(duration.getTime(start), start);
-        } else {
-            end = convertToUTCIfNecessary(end);
-            if(startValue.equals(Value.DATE_TIME)) {
-                // Adjust floating end time if timezone present
-                end = adjustFloatingDateIfNecessary(end);
-                // Handle case where dtend is before dtstart, in which the duration
-                // will be 0, since it is a timed event
-                if(end.before(start)) {
-                    end = org.osaf.cosmo.calendar.util.Dates.getInstance(
-                            new Dur(0, 0, 0, 0).getTime(start), start);
-                }
-            } else {
-                // Handle case where dtend is before dtstart, in which the duration
-                // will be 1 day since its an all-day event
-                if(end.before(start)) {
-                    end = org.osaf.cosmo.calendar.util.Dates.getInstance(
-                            new Dur(1, 0, 0, 0).getTime(start), start);
-                }
-            }
-            duration = new Dur(start, end);
-        }
+        Date start = first.start;
+        Date end = first.end;
+        Dur duration = first.duration;
 
         // Always add first instance if included in range..
         if (dateBefore(start, rangeEnd) &&
@@ -276,52 +237,12 @@ public class InstanceList extends TreeMap<String, Instance> {
         // First check to see that the appropriate properties are present.
 
         // We need a DTSTART.
-        Date dtstart = getStartDate(comp);
-        if (dtstart == null)
+        FirstInstance first = getFirstInstance(comp);
+        if (first == null)
             return false;
 
-        Value startValue = dtstart instanceof DateTime ? Value.DATE_TIME : Value.DATE;
-
-        dtstart = convertToUTCIfNecessary(dtstart);
-
-        if(dtstart instanceof DateTime) {
-            // adjust floating time if timezone is present
-            dtstart = adjustFloatingDateIfNecessary(dtstart);
-        }
-
-        // We need either DTEND or DURATION.
-        Date dtend = getEndDate(comp);
-        if (dtend == null) {
-            Dur duration;
-            if (startValue.equals(Value.DATE_TIME)) {
-                // Its an timed event with no duration
-                duration = new Dur(0, 0, 0, 0);
-            } else {
-                // Its an all day event so duration is one day
-                duration = new Dur(1, 0, 0, 0);
-            }
-            dtend = org.osaf.cosmo.calendar.util.Dates.getInstance(duration.getTime(dtstart), dtstart);
-        } else {
-            // Convert to UTC if needed
-            dtend = convertToUTCIfNecessary(dtend);
-            if(startValue.equals(Value.DATE_TIME)) {
-                // Adjust floating end time if timezone present
-                dtend = adjustFloatingDateIfNecessary(dtend);
-                // Handle case where dtend is before dtstart, in which the duration
-                // will be 0, since it is a timed event
-                if(dtend.before(dtstart)) {
-                    dtend = org.osaf.cosmo.calendar.util.Dates.getInstance(
-                            new Dur(0, 0, 0, 0).getTime(dtstart), dtstart);
-                }
-            } else {
-                // Handle case where dtend is before dtstart, in which the duration
-                // will be 1 day since its an all-day event
-                if(dtend.before(dtstart)) {
-                    dtend = org.osaf.cosmo.calendar.util.Dates.getInstance(
-                            new Dur(1, 0, 0, 0).getTime(dtstart), dtstart);
-                }
-            }
-        }
+        Date dtstart = first.start;
+        Date dtend = first.end;
 
         // Now create the map entry
         Date riddt = getRecurrenceId(comp);
@@ -444,6 +365,68 @@ public class InstanceList extends TreeMap<String, Instance> {
         return modified;
     }
 
+    /**
+     * Start and end of the first instance of a component, converted to
+     * UTC and adjusted for floating times as necessary, and its duration.
+     * The end is DTEND or DTSTART plus DURATION, defaulting to no time for
+     * a DATE-TIME start and one day for a DATE start, and is moved to that
+     * default if it comes before the start.
+     *
+     * @param comp
+     * @return first instance, null if the component has no DTSTART
+     */
+    FirstInstance getFirstInstance(Component comp) {
+        Date start = getStartDate(comp);
+
+        if (start == null) {
+            return null;
+        }
+
+        Value startValue = start instanceof DateTime ? Value.DATE_TIME : Value.DATE;
+
+        start = convertToUTCIfNecessary(start);
+
+        if(start instanceof DateTime) {
+            // adjust floating time if timezone is present
+            start = adjustFloatingDateIfNecessary(start);
+        }
+
+        Dur duration;
+        Date end = getEndDate(comp);
+        if (end == null) {
+            if (startValue.equals(Value.DATE_TIME)) {
+                // Its an timed event with no duration
+                duration = new Dur(0, 0, 0, 0);
+            } else {
+                // Its an all day event so duration is one day
+                duration = new Dur(1, 0, 0, 0);
+            }
+            end = org.osaf.cosmo.calendar.util.Dates.getInstance(duration.getTime(start), start);
+        } else {
+            end = convertToUTCIfNecessary(end);
+            if(startValue.equals(Value.DATE_TIME)) {
+                // Adjust floating end time if timezone present
+                end = adjustFloatingDateIfNecessary(end);
+                // Handle case where dtend is before dtstart, in which the duration
+                // will be 0, since it is a timed event
+                if(end.before(start)) {
+                    end = org.osaf.cosmo.calendar.util.Dates.getInstance(
+                            new Dur(0, 0, 0, 0).getTime(start), start);
+                }
+            } else {
+                // Handle case where dtend is before dtstart, in which the duration
+                // will be 1 day since its an all-day event
+                if(end.before(start)) {
+                    end = org.osaf.cosmo.calendar.util.Dates.getInstance(
+                            new Dur(1, 0, 0, 0).getTime(start), start);
+                }
+            }
+            duration = new Dur(start, end);
+        }
+
+        return new FirstInstance(start, end, duration);
+    }
+
     private Date getStartDate(Component comp) {
         DtStart prop = comp.getProperties().getProperty(
                 Property.DTSTART);
@@ -463,13 +446,13 @@ public class InstanceList extends TreeMap<String, Instance> {
         return (dtEnd != null) ? dtEnd.getDate() : null;
     }
 
-    private Date getRecurrenceId(Component comp) {
+    Date getRecurrenceId(Component comp) {
         RecurrenceId rid = comp.getProperties().getProperty(
                 Property.RECURRENCE_ID);
         return (rid != null) ? rid.getDate() : null;
     }
 
-    private boolean getRange(Component comp) {
+    boolean getRange(Component comp) {
         RecurrenceId rid = comp.getProperties().getProperty(
                 Property.RECURRENCE_ID);
         if (rid == null)
@@ -482,7 +465,7 @@ public class InstanceList extends TreeMap<String, Instance> {
      * If the InstanceList is configured to convert all date/times to UTC,
      * then convert the given Date instance into a UTC DateTime.
      */
-    private Date convertToUTCIfNecessary(Date date) {
+    Date convertToUTCIfNecessary(Date date) {
         if(!isUTC)
             return date;
 
@@ -496,7 +479,7 @@ public class InstanceList extends TreeMap<String, Instance> {
      * want to adjust the range back an hour to catch the instance that is
      * already occurring.
      */
-    private Date adjustStartRangeIfNecessary(Date startRange, Date start, Dur dur) {
+    Date adjustStartRangeIfNecessary(Date startRange, Date start, Dur dur) {
 
         // If start is a Date, then we need to convert startRange to
         // a Date using the timezone present
@@ -529,7 +512,7 @@ public class InstanceList extends TreeMap<String, Instance> {
      * Adjust endRange for Date instances.  First convert the UTC endRange
      * into a Date instance, then add a second
      */
-    private Date adjustEndRangeIfNecessary(Date endRange, Date start) {
+    Date adjustEndRangeIfNecessary(Date endRange, Date start) {
 
         // If instance is DateTime or timezone is not present, then
         // do nothing
@@ -559,7 +542,7 @@ public class InstanceList extends TreeMap<String, Instance> {
      * date/time and for floating DateTimes, the the recurrenceId associated
      * with the Instance loses its "floating" property.
      */
-    private Date adjustFloatingDateIfNecessary(Date date) {
+    Date adjustFloatingDateIfNecessary(Date date) {
         if(timezone==null || ! (date instanceof DateTime))
             return date;
 
@@ -575,21 +558,36 @@ public class InstanceList extends TreeMap<String, Instance> {
 
     }
 
-    private boolean dateBefore(Date date1, Date date2) {
+    boolean dateBefore(Date date1, Date date2) {
         return ICalendarUtils.beforeDate(date1, date2, timezone);
     }
 
-    private boolean dateAfter(Date date1, Date date2) {
+    boolean dateAfter(Date date1, Date date2) {
         return ICalendarUtils.afterDate(date1, date2, timezone);
     }
 
-    private boolean dateEquals(Date date1, Date date2) {
+    boolean dateEquals(Date date1, Date date2) {
         return ICalendarUtils.equalsDate(date1, date2, timezone);
     }
 
-    private boolean inRange(Date dateStart, Date dateEnd, Date rangeStart, Date rangeEnd) {
+    boolean inRange(Date dateStart, Date dateEnd, Date rangeStart, Date rangeEnd) {
         return  dateBefore(dateStart, rangeEnd)
                 && dateAfter(dateEnd, rangeStart);
     }
 
+    /**
+     * Start, end and duration of the first instance of a component.
+     */
+    static final class FirstInstance {
+        final Date start;
+        final Date end;
+        final Dur duration;
+
+        FirstInstance(Date start, Date end, Dur duration) {
+            this.start = start;
+            this.end = end;
+            this.duration = duration;
+        }
+    }
+
 }
@@ -68,15 +68,28 @@ import java.util.List;
 public class RecurrenceExpander {
 
     // By default, expand to 1 year in the future. Anything more should require that we provide a date range of interest
-    private static final Date MAX_EXPAND_DATE = new Date(LocalDateTime.now()
-            .plusMonths(Integer.getInteger("cosmo.RecurrenceExpander.monthsFromToday", 12))
-            .toInstant(ZoneOffset.UTC).toEpochMilli());
+    private static final int MONTHS_FROM_TODAY =
+            Integer.getInteger("cosmo.RecurrenceExpander.monthsFromToday", 12);
 
 
     public RecurrenceExpander() {
         super();
     }
 
+    /**
+     * The date up to which bounded recurrence rules are expanded when
+     * calculating a recurrence range.  The horizon rolls forward with
+     * the current time, so a long-running server keeps indexing series
+     * the same way as a freshly started one.
+     * @return <code>cosmo.RecurrenceExpander.monthsFromToday</code> (default
+     *         12) months from now
+     */
+    public static Date getMaxExpandDate() {
+        return new Date(LocalDateTime.now(ZoneOffset.UTC)
+                .plusMonths(MONTHS_FROM_TODAY)
+                .toInstant(ZoneOffset.UTC).toEpochMilli());
+    }
+
     /**
      * Return start and end Date that represent the start of the first
      * occurrence of a recurring component and the end of the last
@@ -205,6 +218,7 @@ public class RecurrenceExpander {
         }
 
         // recurrence rules..
+        Date maxExpandDate = getMaxExpandDate();
         PropertyList<RRule> rRules = comp.getProperties()
                 .getProperties(Property.RRULE);
         for (RRule rrule : rRules) {
@@ -221,7 +235,7 @@ public class RecurrenceExpander {
             // adjustedRangeStart, rangeEnd, (Value)
             // start.getParameters().getParameter(Parameter.VALUE));
             DateList startDates = rrule.getRecur().getDates(start, start,
-                    MAX_EXPAND_DATE,
+                    maxExpandDate,
                     (start instanceof DateTime) ? Value.DATE_TIME : Value.DATE);
 
             // Dates are sorted, so get the last occurence, and calculate the end
@@ -270,20 +284,8 @@ public class RecurrenceExpander {
      *         time range
      */
     public InstanceList getOcurrences(Calendar calendar, Date rangeStart, Date rangeEnd, TimeZone timezone) {
-        ComponentList<VEvent> vevents = calendar.getComponents().getComponents(
-                Component.VEVENT);
-
         List<Component> exceptions = new ArrayList<>();
-        Component masterComp = null;
-
-        // get list of exceptions (VEVENT with RECURRENCEID)
-        for (VEvent event : vevents) {
-            if (event.getRecurrenceId() != null)
-                exceptions.add(event);
-            else
-                masterComp = event;
-
-        }
+        Component masterComp = getMasterEvent(calendar, exceptions);
 
         return getOcurrences(masterComp, exceptions, rangeStart, rangeEnd, timezone);
     }
@@ -323,6 +325,29 @@ public class RecurrenceExpander {
         return instances;
     }
 
+    /**
+     * Expand recurring compnent for given time-range into a
+     * <code>CompactInstanceList</code>, for callers that don't need an
+     * <code>Instance</code> for every occurrence.
+     * @param component recurring component to expand
+     * @param modifications modifications to recurring component
+     * @param rangeStart expand start date
+     * @param rangeEnd expand end date
+     * @param timezone Optional timezone to use for floating dates.  If null, the
+     *        system default is used.
+     * @return CompactInstanceList containing all occurences of recurring event
+     *         during time range
+     */
+    public CompactInstanceList getCompactOccurrences(Component component, List<Component> modifications, Date rangeStart, Date rangeEnd, TimeZone timezone) {
+        CompactInstanceList instances = new CompactInstanceList();
+        instances.setTimezone(timezone);
+        instances.addMaster(component, rangeStart, rangeEnd);
+        for(Component mod: modifications)
+            instances.addOverride(mod, rangeStart, rangeEnd);
+
+        return instances;
+    }
+
 
     /**
      * Determine if date is a valid occurence in recurring calendar component
@@ -346,14 +371,32 @@ public class RecurrenceExpander {
         Date rangeEnd =
             org.osaf.cosmo.calendar.util.Dates.getInstance(cal.getTime(), occurrence);
 
-        InstanceList instances = getOcurrences(calendar, occurrence, rangeEnd, null);
+        List<Component> exceptions = new ArrayList<>();
+        Component masterComp = getMasterEvent(calendar, exceptions);
+        CompactInstanceList instances = getCompactOccurrences(masterComp,
+                exceptions, occurrence, rangeEnd, null);
+
+        return instances.indexOf(occurrence.getTime()) >= 0;
+    }
 
-        for (Instance instance : instances.values()) {
-            if (instance.getRid().getTime() == occurrence.getTime())
-                return true;
-        }
+    /**
+     * @param calendar calendar containing recurring event and modifications
+     * @param exceptions list to add the modifications (VEVENT with
+     *        RECURRENCE-ID) to
+     * @return master event
+     */
+    private Component getMasterEvent(Calendar calendar, List<Component> exceptions) {
+        ComponentList<VEvent> vevents = calendar.getComponents().getComponents(
+                Component.VEVENT);
 
-        return false;
+        Component masterComp = null;
+        for (VEvent event : vevents) {
+            if (event.getRecurrenceId() != null)
+                exceptions.add(event);
+            else
+                masterComp = event;
+        }
+        return masterComp;
     }
 
     private Date getStartDate(Component comp) {
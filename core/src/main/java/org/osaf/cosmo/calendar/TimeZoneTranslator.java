@@ -16,7 +16,11 @@
 package org.osaf.cosmo.calendar;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 import net.fortuna.ical4j.model.TimeZone;
 import net.fortuna.ical4j.model.TimeZoneRegistry;
@@ -29,12 +33,28 @@ import org.osaf.cosmo.calendar.util.TimeZoneUtils;
  * an equivalent Olson timezone.  Translation relies on a set of
  * known timezone aliases, plus timezone rule comparison to
  * the set of Olson timezones.
+ * <p>
+ * Aliases and Olson ids are indexed by a normalised form (case,
+ * whitespace and ':' versus '.' in offsets don't matter), and the
+ * Olson id found for each distinct timezone id or definition is
+ * remembered, so translating the same non-Olson timezone again is a
+ * map lookup.
  */
 public class TimeZoneTranslator {
 
+    // upper bound on remembered translations, as ids come from clients
+    private static final int MAX_MEMOISED = 10000;
+    private static final String NO_MATCH = "";
+
     // mapping of known timezone aliases to Olson tzids
     private final Properties ALIASES = new Properties();
 
+    // normalised aliases and Olson tzids to Olson tzids
+    private final Map<String, String> normalisedIds = new HashMap<>();
+
+    private final Map<String, String> translatedIds = new ConcurrentHashMap<>();
+    private final Map<String, String> translatedDefinitions = new ConcurrentHashMap<>();
+
     private final TimeZoneRegistry REGISTRY = TimeZoneRegistryFactory.getInstance()
             .createRegistry();
 
@@ -47,6 +67,11 @@ public class TimeZoneTranslator {
         } catch (IOException e) {
             throw new RuntimeException("Error parsing tz aliases");
         }
+
+        for (String id : TimeZoneUtils.getTimeZoneIds())
+            normalisedIds.put(normalise(id), id);
+        for (String alias : ALIASES.stringPropertyNames())
+            normalisedIds.put(normalise(alias), ALIASES.getProperty(alias));
     }
 
     public static TimeZoneTranslator getInstance() {
@@ -60,31 +85,21 @@ public class TimeZoneTranslator {
      */
     public TimeZone translateToOlsonTz(TimeZone timezone) {
 
-        // First use registry to find Olson tz
-        TimeZone translatedTz = REGISTRY.getTimeZone(timezone.getID());
-        if(translatedTz!=null)
-            return translatedTz;
-
-        // Next check for known aliases
-        String aliasedTzId = ALIASES.getProperty(timezone.getID());
-
-        // If an aliased id was found, return the Olson tz from the registry
-        if(aliasedTzId!=null)
-            return REGISTRY.getTimeZone(aliasedTzId);
-
-        // Try to find a substring match
-        translatedTz = findSubStringMatch(timezone.getID());
+        TimeZone translatedTz = translateToOlsonTz(timezone.getID());
         if(translatedTz!=null)
             return translatedTz;
 
         // Try to find equivalent timezone based on rule match
-        // TODO: fix as this really doesn't work
-        //String equivalentId = TimeZoneUtils.getEquivalentTimeZoneId(timezone.getVTimeZone());
-        //if(equivalentId!=null)
-            //return REGISTRY.getTimeZone(equivalentId);
+        if (timezone.getVTimeZone() == null)
+            return null;
+        String definition = timezone.getVTimeZone().toString();
+        String equivalentId = translatedDefinitions.get(definition);
+        if (equivalentId == null) {
+            equivalentId = TimeZoneUtils.getEquivalentTimeZoneId(timezone.getVTimeZone());
+            equivalentId = memoise(translatedDefinitions, definition, equivalentId);
+        }
 
-        // failed to find match
-        return null;
+        return equivalentId != NO_MATCH ? REGISTRY.getTimeZone(equivalentId) : null;
     }
 
     /**
@@ -99,22 +114,39 @@ public class TimeZoneTranslator {
         if(translatedTz!=null)
             return translatedTz;
 
+        String translatedId = translatedIds.get(tzId);
+        if (translatedId == null)
+            translatedId = memoise(translatedIds, tzId, translateId(tzId));
+
+        return translatedId != NO_MATCH ? REGISTRY.getTimeZone(translatedId) : null;
+    }
+
+    private String translateId(String tzId) {
+
         // Next check for known aliases
         String aliasedTzId = ALIASES.getProperty(tzId);
+        if(aliasedTzId!=null)
+            return aliasedTzId;
 
-        // If an aliased id was found, return the Olson tz from the registry
+        // then for aliases and ids that only differ in form
+        aliasedTzId = normalisedIds.get(normalise(tzId));
         if(aliasedTzId!=null)
-            return REGISTRY.getTimeZone(aliasedTzId);
+            return aliasedTzId;
 
         // Try to find a substring match
-        translatedTz = findSubStringMatch(tzId);
-        if(translatedTz!=null)
-            return translatedTz;
+        return findSubStringMatchId(tzId);
+    }
 
-        // failed to find match
-        return null;
+    private static String memoise(Map<String, String> memo, String key, String id) {
+        String value = id != null ? id : NO_MATCH;
+        if (memo.size() < MAX_MEMOISED)
+            memo.put(key, value);
+        return value;
     }
 
+    private static String normalise(String tzId) {
+        return tzId.trim().replaceAll("\\s+", " ").replace(':', '.').toLowerCase(Locale.ENGLISH);
+    }
 
     /**
      * Attempt to find a matching Olson timezone by searching for
@@ -125,9 +157,17 @@ public class TimeZoneTranslator {
      * @return matching Olson timezone, null if no match found
      */
     protected TimeZone findSubStringMatch(String tzname) {
-        for(String id: TimeZoneUtils.getTimeZoneIds())
-            if(tzname.endsWith(id))
-                return REGISTRY.getTimeZone(id);
+        String id = findSubStringMatchId(tzname);
+        return id != null ? REGISTRY.getTimeZone(id) : null;
+    }
+
+    // looks up each suffix of the name, longest first
+    private String findSubStringMatchId(String tzname) {
+        for (int i = 0; i < tzname.length(); i++) {
+            String suffix = tzname.substring(i);
+            if (TimeZoneUtils.getTimeZoneIds().contains(suffix))
+                return suffix;
+        }
 
         return null;
     }
@@ -19,6 +19,7 @@ import net.fortuna.ical4j.model.*;
 import net.fortuna.ical4j.model.component.*;
 import net.fortuna.ical4j.model.parameter.Range;
 import net.fortuna.ical4j.model.property.*;
+import org.osaf.cosmo.calendar.CompactInstanceList;
 import org.osaf.cosmo.calendar.ICalendarUtils;
 import org.osaf.cosmo.calendar.Instance;
 import org.osaf.cosmo.calendar.InstanceList;
@@ -87,7 +88,7 @@ public class OutputFilter {
         Calendar newCal = new Calendar();
         newCal.getProperties().addAll(calendar.getProperties());
 
-        InstanceList instances = new InstanceList();
+        CompactInstanceList instances = new CompactInstanceList();
         ComponentList overrides = new ComponentList();
 
         // Limit range
@@ -0,0 +1,167 @@
+package org.osaf.cosmo.calendar.query;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Compiles <code>CalendarFilter</code>s into {@link CompiledCalendarFilter}s
+ * and keeps a bounded, least recently used cache of them by filter shape,
+ * so that the same query run again, typically for each item of a report,
+ * isn't compiled again.  The filter classes are mutable and don't
+ * implement <code>equals()</code>, so the shape is a key string built from
+ * everything a compiled filter depends on.
+ * <p>
+ * Building the key costs about as much as compiling, so the compiled
+ * filter is also remembered for the filter instance itself, for as long
+ * as the instance is in use, and a report matching each item with the
+ * same filter builds the key once.  A filter must therefore not be
+ * changed once it has been compiled.  Set <code>maxCachedFilters</code>
+ * to 0 to disable caching.
+ */
+public class CalendarFilterCompiler {
+
+    public static final int DEFAULT_MAX_CACHED_FILTERS = 100;
+
+    private int maxCachedFilters = DEFAULT_MAX_CACHED_FILTERS;
+
+    // guards filterCache and instanceCache
+    private final Object cacheLock = new Object();
+
+    // filter key -> compiled filter, in access order so the eldest entry is the least recently used
+    private final LinkedHashMap<String, CompiledCalendarFilter> filterCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CompiledCalendarFilter> eldest) {
+            return size() > maxCachedFilters;
+        }
+    };
+
+    // filter instance -> compiled filter; filters don't override equals(),
+    // so entries are by identity, and go with their filter
+    private final WeakHashMap<CalendarFilter, CompiledCalendarFilter> instanceCache = new WeakHashMap<>();
+
+    /**
+     * @param filter filter to compile
+     * @return compiled filter, possibly cached from an earlier compilation
+     *         of a filter of the same shape
+     */
+    public CompiledCalendarFilter compile(CalendarFilter filter) {
+        if(maxCachedFilters<=0)
+            return CompiledCalendarFilter.compile(filter);
+
+        synchronized (cacheLock) {
+            CompiledCalendarFilter compiled = instanceCache.get(filter);
+            if(compiled!=null)
+                return compiled;
+        }
+
+        String key = getKey(filter);
+        synchronized (cacheLock) {
+            CompiledCalendarFilter compiled = filterCache.get(key);
+            if(compiled!=null) {
+                instanceCache.put(filter, compiled);
+                return compiled;
+            }
+        }
+
+        // compiled outside the lock; a race only compiles the same filter twice
+        CompiledCalendarFilter compiled = CompiledCalendarFilter.compile(filter);
+        synchronized (cacheLock) {
+            filterCache.put(key, compiled);
+            instanceCache.put(filter, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * @return number of cached filters
+     */
+    public int getCachedFilterCount() {
+        synchronized (cacheLock) {
+            return filterCache.size();
+        }
+    }
+
+    public int getMaxCachedFilters() {
+        return maxCachedFilters;
+    }
+
+    public void setMaxCachedFilters(int maxCachedFilters) {
+        synchronized (cacheLock) {
+            this.maxCachedFilters = maxCachedFilters;
+            filterCache.clear();
+            instanceCache.clear();
+        }
+    }
+
+    /**
+     * @param filter filter
+     * @return key that is equal for two filters only if they
+     *         compile to filters that match the same calendars
+     */
+    static String getKey(CalendarFilter filter) {
+        StringBuilder sb = new StringBuilder();
+        appendComp(sb, filter.getFilter());
+        return sb.toString();
+    }
+
+    private static void appendComp(StringBuilder sb, ComponentFilter filter) {
+        sb.append("C(");
+        appendString(sb, filter.getName());
+        if(filter.getIsNotDefinedFilter()!=null)
+            sb.append(" !");
+        appendTimeRange(sb, filter.getTimeRangeFilter());
+        for(Iterator<ComponentFilter> it=filter.getComponentFilters().iterator();it.hasNext();)
+            appendComp(sb, it.next());
+        for(Iterator<PropertyFilter> it=filter.getPropFilters().iterator();it.hasNext();)
+            appendProp(sb, it.next());
+        sb.append(')');
+    }
+
+    private static void appendProp(StringBuilder sb, PropertyFilter filter) {
+        sb.append("P(");
+        appendString(sb, filter.getName());
+        if(filter.getIsNotDefinedFilter()!=null)
+            sb.append(" !");
+        appendTimeRange(sb, filter.getTimeRangeFilter());
+        appendTextMatch(sb, filter.getTextMatchFilter());
+        for(Iterator<ParamFilter> it=filter.getParamFilters().iterator();it.hasNext();)
+            appendParam(sb, it.next());
+        sb.append(')');
+    }
+
+    private static void appendParam(StringBuilder sb, ParamFilter filter) {
+        sb.append("A(");
+        appendString(sb, filter.getName());
+        if(filter.getIsNotDefinedFilter()!=null)
+            sb.append(" !");
+        appendTextMatch(sb, filter.getTextMatchFilter());
+        sb.append(')');
+    }
+
+    private static void appendTimeRange(StringBuilder sb, TimeRangeFilter filter) {
+        if(filter==null)
+            return;
+        sb.append(" T(").append(filter.getPeriod().toString());
+        // floating times are resolved with the whole definition
+        // of the timezone, not just its id
+        if(filter.getTimezone()!=null)
+            sb.append(',').append(filter.getTimezone().toString());
+        sb.append(')');
+    }
+
+    private static void appendTextMatch(StringBuilder sb, TextMatchFilter filter) {
+        if(filter==null)
+            return;
+        sb.append(" M(").append(filter.isCaseless() ? 'i' : 's')
+            .append(filter.isNegateCondition() ? '!' : '=');
+        appendString(sb, filter.getValue());
+        sb.append(')');
+    }
+
+    // length prefixed, so that no value can be mistaken for key syntax
+    private static void appendString(StringBuilder sb, String value) {
+        sb.append(value.length()).append(':').append(value);
+    }
+}
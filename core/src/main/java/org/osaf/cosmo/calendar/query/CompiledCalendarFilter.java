@@ -0,0 +1,483 @@
+package org.osaf.cosmo.calendar.query;
+
+import java.util.Iterator;
+import java.util.List;
+
+import net.fortuna.ical4j.model.Calendar;
+import net.fortuna.ical4j.model.Component;
+import net.fortuna.ical4j.model.ComponentList;
+import net.fortuna.ical4j.model.Date;
+import net.fortuna.ical4j.model.DateTime;
+import net.fortuna.ical4j.model.Parameter;
+import net.fortuna.ical4j.model.ParameterList;
+import net.fortuna.ical4j.model.Period;
+import net.fortuna.ical4j.model.PeriodList;
+import net.fortuna.ical4j.model.Property;
+import net.fortuna.ical4j.model.PropertyList;
+import net.fortuna.ical4j.model.TimeZone;
+import net.fortuna.ical4j.model.component.VAlarm;
+import net.fortuna.ical4j.model.component.VAvailability;
+import net.fortuna.ical4j.model.component.VEvent;
+import net.fortuna.ical4j.model.component.VFreeBusy;
+import net.fortuna.ical4j.model.component.VJournal;
+import net.fortuna.ical4j.model.component.VTimeZone;
+import net.fortuna.ical4j.model.component.VToDo;
+import net.fortuna.ical4j.model.property.DateProperty;
+import net.fortuna.ical4j.model.property.DtEnd;
+import net.fortuna.ical4j.model.property.DtStart;
+import net.fortuna.ical4j.model.property.FreeBusy;
+
+import org.osaf.cosmo.calendar.CompactInstanceList;
+import org.osaf.cosmo.calendar.ICalendarUtils;
+
+/**
+ * A <code>CalendarFilter</code> compiled into an immutable predicate
+ * on calendars.  Compiling resolves everything that doesn't depend on
+ * the calendar once: which CalDAV rule each filter element follows,
+ * upper cased component names, lower cased text to match and the
+ * timezones of time ranges.  Matching a calendar is then a single pass
+ * over its components that only keeps state on the call stack, so a
+ * compiled filter can be shared between threads and cached (see
+ * {@link CalendarFilterCompiler}).  Later changes to the filter it was
+ * compiled from are not seen.
+ * <p>
+ * Matches the same calendars as evaluating the filter with
+ * {@link CalendarFilterEvaluater}.
+ */
+public final class CompiledCalendarFilter {
+
+    private static final String COMP_VCALENDAR = "VCALENDAR";
+
+    private static final ComponentList NO_COMPONENTS = new ComponentList();
+
+    // null if the root filter isn't VCALENDAR, which matches nothing
+    private final CompFilter[] compFilters;
+
+    private CompiledCalendarFilter(CompFilter[] compFilters) {
+        this.compFilters = compFilters;
+    }
+
+    /**
+     * @param filter filter to compile
+     * @return compiled filter
+     */
+    public static CompiledCalendarFilter compile(CalendarFilter filter) {
+        ComponentFilter rootFilter = filter.getFilter();
+
+        // root filter must be "VCALENDAR"
+        if(!COMP_VCALENDAR.equalsIgnoreCase(rootFilter.getName()))
+            return new CompiledCalendarFilter(null);
+
+        return new CompiledCalendarFilter(compileComps(rootFilter.getComponentFilters()));
+    }
+
+    /**
+     * @param calendar calendar to match
+     * @return true if the calendar matches the filter
+     */
+    public boolean matches(Calendar calendar) {
+        if(compFilters==null)
+            return false;
+
+        // If any component filter fails to match, then the calendar filter
+        // does not match
+        for(CompFilter compFilter: compFilters) {
+            if(!compFilter.matches(calendar.getComponents(), null))
+                return false;
+        }
+        return true;
+    }
+
+    private static CompFilter[] compileComps(List<ComponentFilter> filters) {
+        CompFilter[] compiled = new CompFilter[filters.size()];
+        for(int i=0; i<compiled.length; i++)
+            compiled[i] = new CompFilter(filters.get(i));
+        return compiled;
+    }
+
+    private static PropFilter[] compileProps(List<PropertyFilter> filters) {
+        PropFilter[] compiled = new PropFilter[filters.size()];
+        for(int i=0; i<compiled.length; i++)
+            compiled[i] = new PropFilter(filters.get(i));
+        return compiled;
+    }
+
+    private static ParamFilterNode[] compileParams(List<ParamFilter> filters) {
+        ParamFilterNode[] compiled = new ParamFilterNode[filters.size()];
+        for(int i=0; i<compiled.length; i++)
+            compiled[i] = new ParamFilterNode(filters.get(i));
+        return compiled;
+    }
+
+    /** Which of the CalDAV rules a filter element follows */
+    private enum Rule {
+        /** empty: the component, property or parameter exists */
+        IS_DEFINED,
+        /** is-not-defined: it doesn't exist */
+        IS_NOT_DEFINED,
+        /** it exists and all the conditions inside the filter match */
+        MATCH
+    }
+
+    private static final class CompFilter {
+        private final String name;
+        private final Rule rule;
+        private final TimeRange timeRange;
+        private final CompFilter[] compFilters;
+        private final PropFilter[] propFilters;
+
+        CompFilter(ComponentFilter filter) {
+            name = filter.getName().toUpperCase();
+            timeRange = filter.getTimeRangeFilter()!=null
+                ? new TimeRange(filter.getTimeRangeFilter()) : null;
+            compFilters = compileComps(filter.getComponentFilters());
+            propFilters = compileProps(filter.getPropFilters());
+
+            if(filter.getIsNotDefinedFilter()!=null)
+                rule = Rule.IS_NOT_DEFINED;
+            else if(compFilters.length==0 && propFilters.length==0 && timeRange==null)
+                rule = Rule.IS_DEFINED;
+            else
+                rule = Rule.MATCH;
+        }
+
+        /**
+         * @param components components in scope
+         * @param parent component the components in scope belong to,
+         *        null for the calendar
+         */
+        boolean matches(ComponentList components, Component parent) {
+            ComponentList comps = components.getComponents(name);
+            if(rule==Rule.IS_DEFINED)
+                return !comps.isEmpty();
+            if(rule==Rule.IS_NOT_DEFINED)
+                return comps.isEmpty();
+            if(comps.isEmpty())
+                return false;
+
+            if(timeRange!=null && !timeRange.matchesComponents(comps, parent))
+                return false;
+
+            // a sub-component filter matches if it matches within any
+            // of the components
+            for(CompFilter compFilter: compFilters) {
+                if(!matchesAny(comps, compFilter))
+                    return false;
+            }
+
+            // a property filter matches if any of the components has a
+            // matching property
+            for(PropFilter propFilter: propFilters) {
+                if(!matchesAny(comps, propFilter))
+                    return false;
+            }
+
+            return true;
+        }
+
+        private static boolean matchesAny(ComponentList comps, CompFilter filter) {
+            for(Iterator<Component> it=comps.iterator();it.hasNext();) {
+                Component comp = it.next();
+                if(filter.matches(getSubComponents(comp), comp))
+                    return true;
+            }
+            return false;
+        }
+
+        private static boolean matchesAny(ComponentList comps, PropFilter filter) {
+            for(Iterator<Component> it=comps.iterator();it.hasNext();) {
+                if(filter.matches(it.next()))
+                    return true;
+            }
+            return false;
+        }
+
+        private static ComponentList getSubComponents(Component component) {
+            if(component instanceof VEvent)
+                return ((VEvent) component).getAlarms();
+            else if(component instanceof VTimeZone)
+                return ((VTimeZone) component).getObservances();
+            else if(component instanceof VToDo)
+                return ((VToDo) component).getAlarms();
+
+            return NO_COMPONENTS;
+        }
+    }
+
+    private static final class PropFilter {
+        private final String name;
+        private final Rule rule;
+        private final TimeRange timeRange;
+        private final TextMatch textMatch;
+        private final ParamFilterNode[] paramFilters;
+
+        PropFilter(PropertyFilter filter) {
+            name = filter.getName();
+            timeRange = filter.getTimeRangeFilter()!=null
+                ? new TimeRange(filter.getTimeRangeFilter()) : null;
+            textMatch = filter.getTextMatchFilter()!=null
+                ? new TextMatch(filter.getTextMatchFilter()) : null;
+            paramFilters = compileParams(filter.getParamFilters());
+
+            if(filter.getIsNotDefinedFilter()!=null)
+                rule = Rule.IS_NOT_DEFINED;
+            else if(paramFilters.length==0 && timeRange==null && textMatch==null)
+                rule = Rule.IS_DEFINED;
+            else
+                rule = Rule.MATCH;
+        }
+
+        boolean matches(Component component) {
+            PropertyList props = component.getProperties(name);
+            if(rule==Rule.IS_DEFINED)
+                return !props.isEmpty();
+            if(rule==Rule.IS_NOT_DEFINED)
+                return props.isEmpty();
+            if(props.isEmpty())
+                return false;
+
+            if(timeRange!=null && !timeRange.matchesProperties(props))
+                return false;
+
+            // parameter filters only look at the properties whose
+            // value matched
+            if(textMatch!=null) {
+                PropertyList matched = new PropertyList();
+                for(Iterator<Property> it=props.iterator();it.hasNext();) {
+                    Property prop = it.next();
+                    if(textMatch.matches(prop.getValue()))
+                        matched.add(prop);
+                }
+                if(matched.isEmpty())
+                    return false;
+                props = matched;
+            }
+
+            for(ParamFilterNode paramFilter: paramFilters) {
+                if(!matchesAny(props, paramFilter))
+                    return false;
+            }
+
+            return true;
+        }
+
+        private static boolean matchesAny(PropertyList props, ParamFilterNode filter) {
+            for(Iterator<Property> it=props.iterator();it.hasNext();) {
+                if(filter.matches(it.next()))
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    private static final class ParamFilterNode {
+        private final String name;
+        private final Rule rule;
+        private final TextMatch textMatch;
+
+        ParamFilterNode(ParamFilter filter) {
+            name = filter.getName();
+            textMatch = filter.getTextMatchFilter()!=null
+                ? new TextMatch(filter.getTextMatchFilter()) : null;
+
+            if(filter.getIsNotDefinedFilter()!=null)
+                rule = Rule.IS_NOT_DEFINED;
+            else if(textMatch==null)
+                rule = Rule.IS_DEFINED;
+            else
+                rule = Rule.MATCH;
+        }
+
+        boolean matches(Property property) {
+            ParameterList params = property.getParameters(name);
+            if(rule==Rule.IS_DEFINED)
+                return !params.isEmpty();
+            if(rule==Rule.IS_NOT_DEFINED)
+                return params.isEmpty();
+
+            for(Iterator<Parameter> it=params.iterator();it.hasNext();) {
+                if(textMatch.matches(it.next().getValue()))
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    private static final class TextMatch {
+        private final String value;
+        private final boolean caseless;
+        private final boolean negate;
+
+        TextMatch(TextMatchFilter filter) {
+            caseless = filter.isCaseless();
+            negate = filter.isNegateCondition();
+            value = caseless ? filter.getValue().toLowerCase() : filter.getValue();
+        }
+
+        boolean matches(String text) {
+            boolean matched = caseless
+                ? text.toLowerCase().contains(value) : text.contains(value);
+            return negate ? !matched : matched;
+        }
+    }
+
+    private static final class TimeRange {
+        private final Period period;
+        private final DateTime start;
+        private final DateTime end;
+        private final TimeZone timezone;
+
+        TimeRange(TimeRangeFilter filter) {
+            period = filter.getPeriod();
+            start = period.getStart();
+            end = period.getEnd();
+            timezone = filter.getTimezone()!=null
+                ? new TimeZone(filter.getTimezone()) : null;
+        }
+
+        boolean matchesComponents(ComponentList comps, Component parent) {
+            Component comp = (Component) comps.get(0);
+
+            if(comp instanceof VEvent || comp instanceof VAvailability)
+                return matchesVEvents(comps);
+            else if(comp instanceof VFreeBusy)
+                return matchesVFreeBusy((VFreeBusy) comp);
+            else if(comp instanceof VToDo)
+                return matchesVToDos(comps);
+            else if(comp instanceof VJournal)
+                return matchesVJournal((VJournal) comp);
+            else if(comp instanceof VAlarm)
+                return matchesVAlarms(comps, parent);
+            else
+                return false;
+        }
+
+        boolean matchesProperties(PropertyList props) {
+            for(Iterator<Property> it=props.iterator();it.hasNext();) {
+                Property property = it.next();
+                if(!(property instanceof DateProperty))
+                    continue;
+
+                Date date = ((DateProperty) property).getDate();
+                if((date.before(end) && date.after(start)) || date.equals(start))
+                    return true;
+            }
+            return false;
+        }
+
+        private CompactInstanceList newInstanceList() {
+            CompactInstanceList instances = new CompactInstanceList();
+            if(timezone!=null)
+                instances.setTimezone(timezone);
+            return instances;
+        }
+
+        /*
+         * See CalendarFilterEvaluater for the rules of each component
+         * type.  Only master components are expanded.
+         */
+        private boolean matchesVEvents(ComponentList comps) {
+            CompactInstanceList instances = newInstanceList();
+            for(Iterator<Component> it=comps.iterator();it.hasNext();) {
+                Component comp = it.next();
+                if(comp.getProperty(Property.RECURRENCE_ID)==null)
+                    instances.addComponent(comp, start, end);
+            }
+            return !instances.isEmpty();
+        }
+
+        private boolean matchesVFreeBusy(VFreeBusy freeBusy) {
+            DtStart dtStart = freeBusy.getStartDate();
+            DtEnd dtEnd = freeBusy.getEndDate();
+
+            if(dtStart!=null && dtEnd!=null) {
+                CompactInstanceList instances = newInstanceList();
+                instances.addComponent(freeBusy, start, end);
+                return !instances.isEmpty();
+            }
+
+            PropertyList props = freeBusy.getProperties(Property.FREEBUSY);
+            for(Iterator<FreeBusy> it=props.iterator();it.hasNext();) {
+                PeriodList periods = it.next().getPeriods();
+                for(Iterator<Period> periodIt=periods.iterator();periodIt.hasNext();) {
+                    Period fbPeriod = periodIt.next();
+                    if(start.before(fbPeriod.getEnd()) && end.after(fbPeriod.getStart()))
+                        return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean matchesVJournal(VJournal journal) {
+            if(journal.getStartDate()==null)
+                return false;
+
+            CompactInstanceList instances = newInstanceList();
+            instances.addComponent(journal, start, end);
+            return !instances.isEmpty();
+        }
+
+        private boolean matchesVToDos(ComponentList comps) {
+            VToDo master = null;
+            for(Iterator<Component> it=comps.iterator();it.hasNext();) {
+                Component comp = it.next();
+                if(comp.getProperty(Property.RECURRENCE_ID)==null)
+                    master = (VToDo) comp;
+            }
+            if(master==null)
+                return false;
+
+            // If there is no DTSTART, evaluate using special rules
+            if(master.getStartDate()==null)
+                return isVToDoInRange(master);
+
+            CompactInstanceList instances = newInstanceList();
+            instances.addComponent(master, start, end);
+            return !instances.isEmpty();
+        }
+
+        private boolean isVToDoInRange(VToDo vtodo) {
+            if(vtodo.getDue() != null) {
+                //(start  <  DUE)      AND (end >= DUE)
+                Date dueDate = vtodo.getDue().getDate();
+                return start.compareTo(dueDate) < 0 && end.compareTo(dueDate) >= 0;
+            } else if(vtodo.getCreated()!=null && vtodo.getDateCompleted()!=null) {
+                //((start <= CREATED)  OR  (start <= COMPLETED))
+                //AND
+                //((end   >= CREATED)  OR  (end   >= COMPLETED))
+                Date createDate = vtodo.getCreated().getDate();
+                Date completeDate = vtodo.getDateCompleted().getDate();
+                return (start.compareTo(createDate)<=0 || start.compareTo(completeDate)<=0)
+                    && (end.compareTo(createDate)>=0 || end.compareTo(completeDate)>=0);
+            } else if(vtodo.getDateCompleted()!=null) {
+                //(start  <= COMPLETED) AND (end  >= COMPLETED)
+                Date completeDate = vtodo.getDateCompleted().getDate();
+                return start.compareTo(completeDate)<=0 && end.compareTo(completeDate)>=0;
+            } else if(vtodo.getCreated()!=null) {
+                //(end    >  CREATED)
+                return end.compareTo(vtodo.getCreated().getDate()) > 0;
+            } else {
+                return true;
+            }
+        }
+
+        private boolean matchesVAlarms(ComponentList comps, Component parent) {
+            // VALARM must have parent VEVENT or VTODO
+            if(parent==null)
+                return false;
+
+            // See if trigger-time overlaps the time range for each VALARM
+            for(Iterator<Component> it=comps.iterator();it.hasNext();) {
+                VAlarm alarm = (VAlarm) it.next();
+                if(alarm.getTrigger()==null)
+                    continue;
+
+                for(Date triggerDate: ICalendarUtils.getTriggerDates(alarm, parent)) {
+                    if(start.compareTo(triggerDate)<=0 && end.after(triggerDate))
+                       return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -20,29 +20,20 @@ import java.util.Set;
 import java.util.UUID;
 import net.fortuna.ical4j.model.Calendar;
 import net.fortuna.ical4j.model.Component;
-import net.fortuna.ical4j.model.ComponentList;
 import net.fortuna.ical4j.model.DateTime;
-import net.fortuna.ical4j.model.Parameter;
 import net.fortuna.ical4j.model.Period;
 import net.fortuna.ical4j.model.PeriodList;
-import net.fortuna.ical4j.model.Property;
-import net.fortuna.ical4j.model.PropertyList;
 import net.fortuna.ical4j.model.TimeZone;
-import net.fortuna.ical4j.model.component.CalendarComponent;
-import net.fortuna.ical4j.model.component.VEvent;
 import net.fortuna.ical4j.model.component.VFreeBusy;
 import net.fortuna.ical4j.model.parameter.FbType;
 import net.fortuna.ical4j.model.property.FreeBusy;
-import net.fortuna.ical4j.model.property.Status;
-import net.fortuna.ical4j.model.property.Transp;
 import net.fortuna.ical4j.model.property.Uid;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.osaf.cosmo.calendar.BusyPeriods;
 import org.osaf.cosmo.calendar.EntityConverter;
-import org.osaf.cosmo.calendar.Instance;
-import org.osaf.cosmo.calendar.InstanceList;
 import org.osaf.cosmo.calendar.query.CalendarFilter;
-import org.osaf.cosmo.calendar.query.CalendarFilterEvaluater;
+import org.osaf.cosmo.calendar.query.CalendarFilterCompiler;
 import org.osaf.cosmo.calendar.query.CalendarQueryProcessor;
 import org.osaf.cosmo.calendar.query.ComponentFilter;
 import org.osaf.cosmo.calendar.query.TimeRangeFilter;
@@ -69,6 +60,7 @@ public class StandardCalendarQueryProcessor implements CalendarQueryProcessor {
     private CalendarDao calendarDao = null;
     private ContentDao contentDao = null;
     private final EntityConverter entityConverter = new EntityConverter(null);
+    private final CalendarFilterCompiler filterCompiler = new CalendarFilterCompiler();
 
     /* (non-Javadoc)
      * @see org.osaf.cosmo.calendar.query.CalendarQueryProcessor#filterQuery(org.osaf.cosmo.model.CollectionItem, org.osaf.cosmo.calendar.query.CalendarFilter)
@@ -93,7 +85,7 @@ public class StandardCalendarQueryProcessor implements CalendarQueryProcessor {
 
         Calendar calendar = entityConverter.convertContent(item);
         if(calendar!=null)
-            return new CalendarFilterEvaluater().evaluate(calendar, filter);
+            return filterCompiler.compile(filter).matches(calendar);
         else
             return false;
     }
@@ -164,6 +156,15 @@ public class StandardCalendarQueryProcessor implements CalendarQueryProcessor {
         if(ccs==null)
             return;
 
+        // Use the free/busy index if it covers the period
+        BusyPeriods indexed = calendarDao.findBusyPeriods(collection, period);
+        if(indexed!=null) {
+            busyPeriods.addAll(indexed.getBusyPeriods());
+            busyTentativePeriods.addAll(indexed.getBusyTentativePeriods());
+            busyUnavailablePeriods.addAll(indexed.getBusyUnavailablePeriods());
+            return;
+        }
+
         HashSet<ContentItem> results = new HashSet<>();
         TimeZone tz = ccs.getTimezone();
 
@@ -186,103 +187,8 @@ public class StandardCalendarQueryProcessor implements CalendarQueryProcessor {
     protected void addBusyPeriods(Calendar calendar, TimeZone timezone,
             Period freeBusyRange, PeriodList busyPeriods,
             PeriodList busyTentativePeriods, PeriodList busyUnavailablePeriods) {
-
-        // Create list of instances within the specified time-range
-        InstanceList instances = new InstanceList();
-        instances.setUTC(true);
-        instances.setTimezone(timezone);
-
-        // Look at each VEVENT/VFREEBUSY component only
-        ComponentList overrides = new ComponentList();
-        for (CalendarComponent comp : calendar.getComponents()) {
-            if (comp instanceof VEvent) {
-                VEvent vcomp = (VEvent) comp;
-                // See if this is the master instance
-                if (vcomp.getRecurrenceId() == null) {
-                    instances.addComponent(vcomp, freeBusyRange.getStart(),
-                            freeBusyRange.getEnd());
-                } else {
-                    overrides.add(vcomp);
-                }
-            } else if (comp instanceof VFreeBusy) {
-                // Add all FREEBUSY BUSY/BUSY-TENTATIVE/BUSY-UNAVAILABLE to the
-                // periods
-                PropertyList<FreeBusy> fbs = comp.getProperties().getProperties(Property.FREEBUSY);
-                for (FreeBusy fb :  fbs) {
-                    FbType fbt = fb.getParameters().getParameter(
-                            Parameter.FBTYPE);
-                    if ((fbt == null) || FbType.BUSY.equals(fbt)) {
-                        addRelevantPeriods(busyPeriods, fb.getPeriods(),
-                                freeBusyRange);
-                    } else if (FbType.BUSY_TENTATIVE.equals(fbt)) {
-                        addRelevantPeriods(busyTentativePeriods, fb
-                                .getPeriods(), freeBusyRange);
-                    } else if (FbType.BUSY_UNAVAILABLE.equals(fbt)) {
-                        addRelevantPeriods(busyUnavailablePeriods, fb
-                                .getPeriods(), freeBusyRange);
-                    }
-                }
-            }
-        }
-
-        for (Component comp : (Iterable<Component>) overrides) {
-            instances.addComponent(comp, freeBusyRange.getStart(),
-                    freeBusyRange.getEnd());
-        }
-
-        // See if there is nothing to do (should not really happen)
-        if (instances.isEmpty()) {
-            return;
-        }
-
-        // Add start/end period for each instance
-        for (String ikey : (Iterable<String>) instances.keySet()) {
-            Instance instance = (Instance) instances.get(ikey);
-
-            // Check that the VEVENT has the proper busy status
-            if (Transp.TRANSPARENT.equals(instance.getComp().getProperties()
-                    .getProperty(Property.TRANSP))) {
-                continue;
-            }
-            if (Status.VEVENT_CANCELLED.equals(instance.getComp()
-                    .getProperties().getProperty(Property.STATUS))) {
-                continue;
-            }
-
-            // Can only have DATE-TIME values in PERIODs
-            DateTime start, end = null;
-
-            start = (DateTime) instance.getStart();
-            end = (DateTime) instance.getEnd();
-
-            if (start.compareTo(freeBusyRange.getStart()) < 0) {
-                start = (DateTime) org.osaf.cosmo.calendar.util.Dates.getInstance(freeBusyRange
-                        .getStart(), start);
-            }
-            if (end.compareTo(freeBusyRange.getEnd()) > 0) {
-                end = (DateTime) org.osaf.cosmo.calendar.util.Dates.getInstance(freeBusyRange.getEnd(),
-                        end);
-            }
-            if (Status.VEVENT_TENTATIVE.equals(instance.getComp()
-                    .getProperties().getProperty(Property.STATUS))) {
-                busyTentativePeriods.add(new Period(start, end));
-            } else {
-                busyPeriods.add(new Period(start, end));
-            }
-
-        }
-    }
-
-    /**
-     * Add all periods that intersect a given period to the result PeriodList.
-     */
-    private void addRelevantPeriods(PeriodList results, PeriodList periods,
-            Period range) {
-
-        for (Period p : periods) {
-            if (p.intersects(range))
-                results.add(p);
-        }
+        new BusyPeriods(busyPeriods, busyTentativePeriods, busyUnavailablePeriods)
+            .addCalendar(calendar, timezone, freeBusyRange);
     }
 
     private CalendarFilter[] createQueryFilters(CollectionItem collection, Period period) {
@@ -15,17 +15,25 @@
  */
 package org.osaf.cosmo.calendar.util;
 
+import com.ibm.icu.util.BasicTimeZone;
 import com.ibm.icu.util.TimeZone;
+import com.ibm.icu.util.TimeZoneTransition;
 import net.fortuna.ical4j.model.Property;
 import net.fortuna.ical4j.model.Recur;
 import net.fortuna.ical4j.model.component.Observance;
 import net.fortuna.ical4j.model.component.VTimeZone;
 import net.fortuna.ical4j.model.property.RRule;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 
 /**
@@ -143,19 +151,100 @@ public class TimeZoneUtils {
 
     /**
      * Return equivalent Olson timezone id that corresponds to given
-     * VTIMEZONE definition
+     * VTIMEZONE definition.  Two timezones are equivalent if they have
+     * the same offsets and transitions over the ten years from the
+     * start of the current year.  The lookup uses an index of the rule
+     * fingerprints of all known timezones, built on first use; of
+     * several equivalent timezones the most widely used one, by the
+     * number of known aliases to it, is returned.
      * @param vtz VTIMEZONE
      * @return equivalent timezone id (null if no equivalent timezone found)
      */
     public static String getEquivalentTimeZoneId(VTimeZone vtz) {
 
         com.ibm.icu.util.VTimeZone icuvtz = com.ibm.icu.util.VTimeZone.create(new StringReader(vtz.toString()));
-        for(String id: ALL_TIMEZONE_IDS) {
-            com.ibm.icu.util.TimeZone tz = com.ibm.icu.util.TimeZone.getTimeZone(id);
-            if(icuvtz.hasSameRules(tz))
-                return id;
+        if (icuvtz == null)
+            return null;
+
+        String fingerprint = EquivalenceIndex.fingerprint(icuvtz);
+        return fingerprint != null ? EquivalenceIndex.BY_FINGERPRINT.get(fingerprint) : null;
+    }
+
+    /**
+     * Index of timezone ids by the fingerprint of their rules.
+     */
+    private static final class EquivalenceIndex {
+
+        private static final long WINDOW_START;
+        private static final long WINDOW_END;
+        private static final Map<String, String> BY_FINGERPRINT;
+
+        static {
+            java.util.Calendar cal = java.util.Calendar.getInstance(java.util.TimeZone.getTimeZone("UTC"));
+            cal.clear();
+            cal.set(java.util.Calendar.getInstance().get(java.util.Calendar.YEAR), java.util.Calendar.JANUARY, 1);
+            WINDOW_START = cal.getTimeInMillis();
+            cal.add(java.util.Calendar.YEAR, 10);
+            WINDOW_END = cal.getTimeInMillis();
+
+            Map<String, Integer> aliasCounts = countAliasTargets();
+            Comparator<String> preferred = Comparator
+                .comparing((String id) -> -aliasCounts.getOrDefault(id, 0))
+                .thenComparing(id -> isOlsonId(id) ? 0 : 1)
+                .thenComparing(Comparator.naturalOrder());
+
+            Map<String, String> index = new HashMap<>();
+            for (String id : ALL_TIMEZONE_IDS) {
+                String fingerprint = fingerprint(TimeZone.getTimeZone(id));
+                if (fingerprint == null)
+                    continue;
+                index.merge(fingerprint, id,
+                        (current, candidate) -> preferred.compare(candidate, current) < 0 ? candidate : current);
+            }
+            BY_FINGERPRINT = Collections.unmodifiableMap(index);
         }
 
-        return null;
+        /**
+         * @return offsets at the start of the window followed by every
+         *         transition in it, or null if the timezone doesn't
+         *         provide its transitions
+         */
+        static String fingerprint(TimeZone tz) {
+            if (!(tz instanceof BasicTimeZone))
+                return null;
+            BasicTimeZone btz = (BasicTimeZone) tz;
+
+            int[] offsets = new int[2];
+            btz.getOffset(WINDOW_START, false, offsets);
+            StringBuilder sb = new StringBuilder();
+            sb.append(offsets[0]).append(',').append(offsets[1]);
+
+            TimeZoneTransition transition = btz.getNextTransition(WINDOW_START, false);
+            while (transition != null && transition.getTime() < WINDOW_END) {
+                sb.append(';').append(transition.getTime())
+                  .append(',').append(transition.getTo().getRawOffset())
+                  .append(',').append(transition.getTo().getDSTSavings());
+                transition = btz.getNextTransition(transition.getTime(), false);
+            }
+            return sb.toString();
+        }
+
+        private static boolean isOlsonId(String id) {
+            return id.indexOf('/') > 0 && !id.startsWith("Etc/") && !id.startsWith("SystemV/");
+        }
+
+        private static Map<String, Integer> countAliasTargets() {
+            Map<String, Integer> counts = new HashMap<>();
+            Properties aliases = new Properties();
+            try (InputStream in = TimeZoneUtils.class.getResourceAsStream("/timezone.alias")) {
+                if (in != null)
+                    aliases.load(in);
+            } catch (IOException e) {
+                // ranking falls back to the form of the id
+            }
+            for (String alias : aliases.stringPropertyNames())
+                counts.merge(aliases.getProperty(alias), 1, Integer::sum);
+            return counts;
+        }
     }
 }
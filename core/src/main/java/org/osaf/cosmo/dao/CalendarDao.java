@@ -18,7 +18,9 @@ package org.osaf.cosmo.dao;
 import java.util.Set;
 
 import net.fortuna.ical4j.model.DateTime;
+import net.fortuna.ical4j.model.Period;
 
+import org.osaf.cosmo.calendar.BusyPeriods;
 import org.osaf.cosmo.calendar.query.CalendarFilter;
 import org.osaf.cosmo.model.CollectionItem;
 import org.osaf.cosmo.model.ContentItem;
@@ -79,4 +81,18 @@ public interface CalendarDao {
                                              DateTime rangeStart, DateTime rangeEnd,
                                              boolean expandRecurringEvents);
 
+    /**
+     * Find the busy time of the items in a calendar collection within a
+     * period using the free/busy index, in which the instances of
+     * recurring events are already expanded.  Items changed since they
+     * were indexed are evaluated directly.
+     *
+     * @param collection calendar collection
+     * @param period period
+     * @return busy periods clipped to the period, or null if the index
+     *         of the collection doesn't cover the period
+     */
+    @Transactional(readOnly = true)
+    BusyPeriods findBusyPeriods(CollectionItem collection, Period period);
+
 }
@@ -16,11 +16,16 @@
 package org.osaf.cosmo.dao;
 
 import java.util.Date;
+import java.util.List;
 import java.util.Set;
 
+import org.osaf.cosmo.model.CollectionChanges;
 import org.osaf.cosmo.model.CollectionItem;
 import org.osaf.cosmo.model.ContentItem;
+import org.osaf.cosmo.model.ItemChangeRecord;
+import org.osaf.cosmo.model.SyncToken;
 import org.osaf.cosmo.model.User;
+import org.osaf.cosmo.util.KeysetPage;
 import org.springframework.transaction.annotation.Transactional;
 
 /**
@@ -99,6 +104,44 @@ public interface ContentDao extends ItemDao {
      */
     ContentItem updateContent(ContentItem content);
 
+    /**
+     * Create new content items in a parent collection.  Implementations
+     * may defer writing until all items have been created so that the
+     * inserts can be batched.
+     *
+     * @param parent
+     *            parent collection of content
+     * @param contentItems
+     *            content items to create
+     */
+    default void createContentItems(CollectionItem parent, Set<ContentItem> contentItems) {
+        for (ContentItem content : contentItems)
+            createContent(parent, content);
+    }
+
+    /**
+     * Create, update and remove content items.  An item without a creation
+     * date is created in the parent collections, an item with
+     * ContentItem.isActive==false is removed, and any other item is
+     * updated.  Implementations may defer writing until all items have
+     * been processed so that the statements can be batched.
+     *
+     * @param parents
+     *            parent collections of new content items
+     * @param contentItems
+     *            content items to create, update or remove
+     */
+    default void updateContentItems(Set<CollectionItem> parents, Set<ContentItem> contentItems) {
+        for (ContentItem content : contentItems) {
+            if (content.getCreationDate() == null)
+                createContent(parents, content);
+            else if (content.getIsActive() == Boolean.FALSE)
+                removeContent(content);
+            else
+                updateContent(content);
+        }
+    }
+
 
     /**
      * Remove content item
@@ -139,7 +182,80 @@ public interface ContentDao extends ItemDao {
      * @param timestamp timestamp
      * @return children of collection that have been updated since
      *         timestamp, or all children if timestamp is null
+     * @throws org.osaf.cosmo.model.SyncTokenExpiredException if the
+     *         timestamp predates the tombstones kept for the collection,
+     *         so the children removed since can't all be found
      */
     @Transactional(readOnly = true)
     Set<ContentItem> loadChildren(CollectionItem collection, Date timestamp);
+
+    /**
+     * Find the changes to the children of a collection made in a period:
+     * the items added to, changed in and removed from the collection,
+     * oldest first.  An item changed more than once has a record for
+     * each change.
+     * @param collection collection
+     * @param start start of the period (inclusive)
+     * @param end end of the period (inclusive)
+     * @return changes made to children of the collection in the period
+     */
+    @Transactional(readOnly = true)
+    List<ItemChangeRecord> findItemChangeRecords(CollectionItem collection,
+                                                 Date start, Date end);
+
+    /**
+     * Get the sync token for the current state of a collection.
+     * @param collection collection
+     * @return sync token for the collection
+     */
+    @Transactional(readOnly = true)
+    SyncToken getSyncToken(CollectionItem collection);
+
+    /**
+     * Find the children of a collection added, changed or removed since
+     * a sync token was handed out.  Only uids are returned, found from
+     * the change sequence recorded with each membership and tombstone
+     * rather than from modification dates.  If no token is specified,
+     * then the uids of all children are returned.
+     * @param collection collection
+     * @param token sync token handed out for the collection, or null
+     * @return changes since the token and the token for the state of
+     *         the collection they lead to
+     * @throws org.osaf.cosmo.model.InvalidSyncTokenException if the
+     *         token can't be used to sync the collection
+     * @throws org.osaf.cosmo.model.SyncTokenExpiredException if the
+     *         token predates the tombstones kept for the collection
+     */
+    @Transactional(readOnly = true)
+    CollectionChanges findChangesSince(CollectionItem collection, SyncToken token);
+
+    /**
+     * Load a page of the children of a collection, ordered by name,
+     * using keyset pagination: the page continues after the cursor of
+     * the previous page, so every page costs the same to load.
+     * @param collection collection
+     * @param cursor cursor of the previous page, null for the first page
+     * @param pageSize maximum number of children in the page
+     * @return page of children of collection
+     * @throws IllegalArgumentException if the cursor is invalid
+     */
+    @Transactional(readOnly = true)
+    KeysetPage<ContentItem> loadChildrenPage(CollectionItem collection,
+                                             String cursor, int pageSize);
+
+    /**
+     * Iterate over all children of a collection, loading them a page at
+     * a time.  Unlike {@link #loadChildren(CollectionItem, Date)} the
+     * children aren't all held in memory at once, so implementations
+     * may evict the items of a page from the persistence context once
+     * iteration moves on to the next page.  The iterable must be used
+     * within a transaction and can be iterated more than once.
+     * @param collection collection
+     * @param pageSize number of children to load at a time
+     * @return children of collection
+     */
+    @Transactional(readOnly = true)
+    default Iterable<ContentItem> iterateChildren(CollectionItem collection, int pageSize) {
+        return loadChildren(collection, null);
+    }
 }
@@ -20,6 +20,7 @@ import java.util.Set;
 import org.osaf.cosmo.model.DuplicateEmailException;
 import org.osaf.cosmo.model.DuplicateUsernameException;
 import org.osaf.cosmo.model.User;
+import org.osaf.cosmo.util.KeysetPage;
 import org.springframework.dao.DataRetrievalFailureException;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -38,6 +39,25 @@ public interface UserDao extends Dao {
     @Transactional(readOnly = true)
     Set<User> getUsers();
 
+    /**
+     * Returns a page of user accounts in the given order, using keyset
+     * pagination: the page continues after the cursor of the previous
+     * page, so every page costs the same to fetch.  Users sharing a sort
+     * value are ordered by id, so pages never overlap or skip users.
+     *
+     * @param sortType order of the users; ADMIN, ACTIVATED and LOCKED
+     * are not supported
+     * @param ascending true for ascending order
+     * @param cursor cursor of the previous page, null for the first page
+     * @param pageSize maximum number of users in the page
+     *
+     * @throws IllegalArgumentException if the cursor is invalid or was
+     * made for another order
+     */
+    @Transactional(readOnly = true)
+    KeysetPage<User> getUsers(User.SortType sortType, boolean ascending,
+                              String cursor, int pageSize);
+
     /**
      * Returns the user account identified by the given username.
      *
@@ -20,21 +20,29 @@ import javax.persistence.TypedQuery;
 import net.fortuna.ical4j.model.Calendar;
 import net.fortuna.ical4j.model.DateTime;
 import net.fortuna.ical4j.model.Period;
+import net.fortuna.ical4j.model.parameter.FbType;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.osaf.cosmo.calendar.BusyPeriods;
 import org.osaf.cosmo.calendar.EntityConverter;
 import org.osaf.cosmo.calendar.query.CalendarFilter;
-import org.osaf.cosmo.calendar.query.CalendarFilterEvaluater;
+import org.osaf.cosmo.calendar.query.CompiledCalendarFilter;
 import org.osaf.cosmo.dao.CalendarDao;
 import org.osaf.cosmo.dao.hibernate.query.CalendarFilterConverter;
 import org.osaf.cosmo.dao.hibernate.query.ItemFilterProcessor;
+import org.osaf.cosmo.model.CalendarCollectionStamp;
 import org.osaf.cosmo.model.CollectionItem;
 import org.osaf.cosmo.model.ContentItem;
 import org.osaf.cosmo.model.ICalendarItem;
 import org.osaf.cosmo.model.Item;
+import org.osaf.cosmo.model.StampUtils;
 import org.osaf.cosmo.model.filter.EventStampFilter;
 import org.osaf.cosmo.model.filter.ItemFilter;
 import org.osaf.cosmo.model.filter.NoteItemFilter;
+import org.osaf.cosmo.model.hibernate.BaseModelObject;
+import org.osaf.cosmo.model.hibernate.HibBusyIndexState;
+import org.osaf.cosmo.model.hibernate.HibBusyPeriod;
+import org.osaf.cosmo.model.hibernate.HibItem;
 
 import java.util.HashSet;
 import java.util.Set;
@@ -80,7 +88,8 @@ public class CalendarDaoImpl extends HibernateSessionSupport implements Calendar
             else
                 itemsToProcess = collection.getChildren();
 
-            CalendarFilterEvaluater evaluater = new CalendarFilterEvaluater();
+            // compile once rather than interpreting the filter for each item
+            CompiledCalendarFilter compiledFilter = CompiledCalendarFilter.compile(filter);
 
             // Evaluate filter against all calendar items
             for (Item child : itemsToProcess) {
@@ -92,7 +101,7 @@ public class CalendarDaoImpl extends HibernateSessionSupport implements Calendar
                     Calendar calendar = entityConverter.convertContent(content);
 
                     if(calendar!=null) {
-                        if (evaluater.evaluate(calendar, filter) == true)
+                        if (compiledFilter.matches(calendar))
                             results.add(content);
                     }
                 }
@@ -154,6 +163,57 @@ public class CalendarDaoImpl extends HibernateSessionSupport implements Calendar
     }
 
 
+    /* (non-Javadoc)
+     * @see org.osaf.cosmo.dao.CalendarDao#findBusyPeriods(org.osaf.cosmo.model.CollectionItem, net.fortuna.ical4j.model.Period)
+     */
+    public BusyPeriods findBusyPeriods(CollectionItem collection, Period period) {
+        CalendarCollectionStamp ccs = StampUtils.getCalendarCollectionStamp(collection);
+        if (ccs == null)
+            return null;
+
+        long start = period.getStart().getTime();
+        long end = period.getEnd().getTime();
+
+        try {
+            Long collectionId = ((BaseModelObject) collection).getId();
+            HibBusyIndexState state = entityManager.find(HibBusyIndexState.class, collectionId);
+            if (state == null || !state.covers(start, end, ccs.getTimezoneName()))
+                return null;
+
+            BusyPeriods busy = new BusyPeriods();
+            TypedQuery<HibBusyPeriod> query = entityManager.createNamedQuery(
+                    "busyPeriod.by.collection.range", HibBusyPeriod.class);
+            query.setParameter("collectionId", collectionId);
+            query.setParameter("start", start);
+            query.setParameter("end", end);
+            setManualFlush(query);
+            for (HibBusyPeriod indexed : query.getResultList()) {
+                busy.add(new FbType(indexed.getType()), new Period(
+                        FreeBusyIndexer.utcDateTime(Math.max(indexed.getStartTime(), start)),
+                        FreeBusyIndexer.utcDateTime(Math.min(indexed.getEndTime(), end))));
+            }
+
+            // items changed since they were indexed
+            TypedQuery<Long> staleQuery = entityManager.createNamedQuery(
+                    "staleBusyItem.itemIds.by.collection", Long.class);
+            staleQuery.setParameter("collectionId", collectionId);
+            setManualFlush(staleQuery);
+            for (Long itemId : staleQuery.getResultList()) {
+                ContentItem content = FreeBusyIndexer.indexedContent(
+                        entityManager.find(HibItem.class, itemId), collection);
+                Calendar calendar = content != null ? entityConverter.convertContent(content) : null;
+                if (calendar != null)
+                    busy.addCalendar(calendar, ccs.getTimezone(), period);
+            }
+
+            return busy;
+        } catch (PersistenceException e) {
+            currentSession().clear();
+            throw convertJpaAccessException(e);
+        }
+    }
+
+
     public ItemFilterProcessor getItemFilterProcessor() {
         return itemFilterProcessor;
     }
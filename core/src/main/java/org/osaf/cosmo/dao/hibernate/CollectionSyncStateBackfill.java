@@ -0,0 +1,70 @@
+package org.osaf.cosmo.dao.hibernate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Schema update that creates the change sequence of every collection
+ * that doesn't have one yet, that is of the collections created before
+ * change sequences were kept.  Collections created since get theirs when
+ * they are created, or, if created by an older server during a rolling
+ * deploy, on their first change.
+ * <p>
+ * Requires an <code>EntityManagerFactory</code> and the
+ * <code>PlatformTransactionManager</code> for it.  <code>init()</code>
+ * runs the update in a single statement; it only inserts missing rows,
+ * so it can run at every startup.
+ */
+public class CollectionSyncStateBackfill {
+    private static final Log log =
+        LogFactory.getLog(CollectionSyncStateBackfill.class);
+
+    private EntityManagerFactory entityManagerFactory;
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Sanity checks required properties and creates the missing change
+     * sequences.
+     */
+    public void init() {
+        if (entityManagerFactory == null)
+            throw new IllegalStateException("entityManagerFactory is required");
+        if (transactionManager == null)
+            throw new IllegalStateException("transactionManager is required");
+
+        int created = backfill();
+        if (created > 0)
+            log.info("created change sequences of " + created + " collections");
+    }
+
+    /**
+     * Create the change sequence of every collection without one.
+     * @return number of change sequences created
+     */
+    public int backfill() {
+        EntityManager entityManager =
+            SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory);
+        try {
+            return new TransactionTemplate(transactionManager).execute(status ->
+                entityManager.createNamedQuery("collectionSync.insert.missing")
+                    .executeUpdate());
+        } catch (PersistenceException e) {
+            throw HibernateSessionSupport.convertJpaAccessException(e);
+        }
+    }
+
+    public void setEntityManagerFactory(EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+}
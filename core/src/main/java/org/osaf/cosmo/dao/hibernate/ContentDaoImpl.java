@@ -20,9 +20,13 @@ import javax.persistence.TypedQuery;
 import org.hibernate.Hibernate;
 import org.osaf.cosmo.dao.ContentDao;
 import org.osaf.cosmo.model.*;
+import org.osaf.cosmo.model.hibernate.HibBusyIndexState;
 import org.osaf.cosmo.model.hibernate.HibCollectionItem;
+import org.osaf.cosmo.model.hibernate.HibCollectionSyncState;
+import org.osaf.cosmo.model.hibernate.HibEventLogEntry;
 import org.osaf.cosmo.model.hibernate.HibItem;
 import org.osaf.cosmo.model.hibernate.HibItemTombstone;
+import org.osaf.cosmo.util.KeysetPage;
 
 import javax.validation.ConstraintViolationException;
 import java.util.*;
@@ -33,6 +37,11 @@ import java.util.*;
  */
 public class ContentDaoImpl extends ItemDaoImpl implements ContentDao {
 
+    // children by name, then id; rows are the item id and name
+    private static final Keyset<Object[]> CHILD_KEYSET = new Keyset<>("name", true,
+            Keyset.Key.<Object[]>string("item.name", row -> (String) row[1]),
+            Keyset.Key.<Object[]>id("item.id", row -> (Long) row[0]));
+
     private boolean shouldUpdateCollectionTimestamp = Boolean.getBoolean("cosmo.updateCollectionTimestamp");
 
     /*
@@ -65,6 +74,9 @@ public class ContentDaoImpl extends ItemDaoImpl implements ContentDao {
             ((HibItem) collection).addParent(parent);
 
             currentSession().save(collection);
+            // start the change sequence up front, so that the first
+            // concurrent changes don't race to create it
+            entityManager.persist(new HibCollectionSyncState(getBaseModelObject(collection).getId()));
             currentSession().flush();
 
             return collection;
@@ -96,19 +108,7 @@ public class ContentDaoImpl extends ItemDaoImpl implements ContentDao {
 
                 // Because we batch all the db operations, we must check
                 // for duplicate icalUid within the same request
-                if (item instanceof NoteItem note && note.getIcalUid() != null) {
-                    if (item.getIsActive()) {
-                        NoteItem dup = icalUidMap.get(note.getIcalUid());
-                        if (dup != null && !dup.getUid().equals(item.getUid()))
-                            throw new IcalUidInUseException("iCal uid"
-                                    + note.getIcalUid()
-                                    + " already in use for collection "
-                                    + collection.getUid(), item.getUid(), dup
-                                    .getUid());
-                    }
-
-                    icalUidMap.put(note.getIcalUid(), note);
-                }
+                checkForDuplicateICalUid(icalUidMap, item, collection.getUid());
 
                 // create item
                 if(getBaseModelObject(item).getId() == null) {
@@ -277,11 +277,86 @@ public class ContentDaoImpl extends ItemDaoImpl implements ContentDao {
 
         try {
             currentSession().refresh(collection);
-            removeCollectionRecursive(collection);
+            List<Long> removedIds = new ArrayList<>();
+            removeCollectionRecursive(collection, removedIds);
+            currentSession().flush();
+
+            // the change logs, sequences and free/busy indexes of
+            // removed collections are of no further use
+            entityManager.createNamedQuery("logEntry.delete.by.collections")
+                .setParameter("parentIds", removedIds)
+                .executeUpdate();
+            entityManager.createNamedQuery("collectionSync.delete.by.collections")
+                .setParameter("collectionIds", removedIds)
+                .executeUpdate();
+            entityManager.createNamedQuery("busyIndex.delete.by.collections")
+                .setParameter("collectionIds", removedIds)
+                .executeUpdate();
+            entityManager.createNamedQuery("busyPeriod.delete.by.collections")
+                .setParameter("collectionIds", removedIds)
+                .executeUpdate();
+            entityManager.createNamedQuery("staleBusyItem.delete.by.collections")
+                .setParameter("collectionIds", removedIds)
+                .executeUpdate();
+        } catch (PersistenceException e) {
+            currentSession().clear();
+            throw convertJpaAccessException(e);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.osaf.cosmo.dao.ContentDao#createContentItems(org.osaf.cosmo.model.CollectionItem, java.util.Set)
+     */
+    @Override
+    public void createContentItems(CollectionItem parent, Set<ContentItem> contentItems) {
+
+        // Items aren't flushed until the end, so duplicate icalUids
+        // within the same request must be checked here
+        HashMap<String, NoteItem> icalUidMap = new HashMap<>();
+
+        try {
+            for (ContentItem content : contentItems) {
+                checkForDuplicateICalUid(icalUidMap, content, parent.getUid());
+                createContentInternal(parent, content);
+            }
+            currentSession().flush();
+        } catch (PersistenceException e) {
+            currentSession().clear();
+            throw convertJpaAccessException(e);
+        } catch (ConstraintViolationException ise) {
+            logConstraintViolationException(ise);
+            throw ise;
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.osaf.cosmo.dao.ContentDao#updateContentItems(java.util.Set, java.util.Set)
+     */
+    @Override
+    public void updateContentItems(Set<CollectionItem> parents, Set<ContentItem> contentItems) {
+
+        HashMap<String, NoteItem> icalUidMap = new HashMap<>();
+
+        try {
+            for (ContentItem content : contentItems) {
+                if (content.getCreationDate() == null) {
+                    for (CollectionItem parent : parents)
+                        checkForDuplicateICalUid(icalUidMap, content, parent.getUid());
+                    createContentInternal(parents, content);
+                } else if (content.getIsActive() == Boolean.FALSE) {
+                    currentSession().refresh(content);
+                    removeContentRecursive(content);
+                } else {
+                    updateContentInternal(content);
+                }
+            }
             currentSession().flush();
         } catch (PersistenceException e) {
             currentSession().clear();
             throw convertJpaAccessException(e);
+        } catch (ConstraintViolationException ise) {
+            logConstraintViolationException(ise);
+            throw ise;
         }
     }
 
@@ -330,6 +405,14 @@ public class ContentDaoImpl extends ItemDaoImpl implements ContentDao {
      */
     public Set<ContentItem> loadChildren(CollectionItem collection, Date timestamp) {
         try {
+            if (timestamp != null) {
+                // removals up to the purge can't be found from tombstones
+                Date purged = getSyncState(collection).getPurgedTimestamp();
+                if (purged != null && !timestamp.after(purged))
+                    throw new SyncTokenExpiredException("timestamp " + timestamp.getTime()
+                            + " predates the tombstones kept for collection " + collection.getUid());
+            }
+
             Set<ContentItem> children = new HashSet<>();
             TypedQuery<ContentItem> query =
                 timestamp == null ? entityManager.createNamedQuery("contentItem.by.parent",
@@ -358,6 +441,222 @@ public class ContentDaoImpl extends ItemDaoImpl implements ContentDao {
     }
 
 
+    /* (non-Javadoc)
+     * @see org.osaf.cosmo.dao.ContentDao#findItemChangeRecords(org.osaf.cosmo.model.CollectionItem, java.util.Date, java.util.Date)
+     */
+    @Override
+    public List<ItemChangeRecord> findItemChangeRecords(CollectionItem collection,
+            Date start, Date end) {
+        try {
+            TypedQuery<HibEventLogEntry> query = entityManager.createNamedQuery(
+                    "logEntry.by.collection.date", HibEventLogEntry.class)
+                .setParameter("parentId", getBaseModelObject(collection).getId())
+                .setParameter("startDate", start)
+                .setParameter("endDate", end);
+            setManualFlush(query);
+
+            List<ItemChangeRecord> records = new ArrayList<>();
+            for (HibEventLogEntry entry : query.getResultList()) {
+                ItemChangeRecord record = new ItemChangeRecord();
+                record.setAction(ItemChangeRecord.toAction(entry.getType()));
+                record.setDate(entry.getDate());
+                record.setItemUuid(entry.getUid1());
+                record.setItemDisplayName(entry.getStrval1());
+                record.setModifiedBy(entry.getStrval2());
+                records.add(record);
+            }
+            return records;
+        } catch (PersistenceException e) {
+            currentSession().clear();
+            throw convertJpaAccessException(e);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.osaf.cosmo.dao.ContentDao#getSyncToken(org.osaf.cosmo.model.CollectionItem)
+     */
+    @Override
+    public SyncToken getSyncToken(CollectionItem collection) {
+        try {
+            return new SyncToken(collection.getUid(), getSyncState(collection).getChangeSequence());
+        } catch (PersistenceException e) {
+            currentSession().clear();
+            throw convertJpaAccessException(e);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.osaf.cosmo.dao.ContentDao#findChangesSince(org.osaf.cosmo.model.CollectionItem, org.osaf.cosmo.model.SyncToken)
+     */
+    @Override
+    public CollectionChanges findChangesSince(CollectionItem collection, SyncToken token) {
+        if (token != null && !token.getCollectionUid().equals(collection.getUid()))
+            throw new InvalidSyncTokenException("sync token " + token
+                    + " does not belong to collection " + collection.getUid());
+
+        try {
+            Long id = getBaseModelObject(collection).getId();
+            HibCollectionSyncState state = getSyncState(collection);
+            long until = state.getChangeSequence();
+            SyncToken next = new SyncToken(collection.getUid(), until);
+
+            if (token == null) {
+                TypedQuery<String> query = entityManager.createNamedQuery(
+                        "collectionSync.uids.by.collection", String.class)
+                    .setParameter("collectionId", id);
+                setManualFlush(query);
+                return new CollectionChanges(next, new HashSet<>(query.getResultList()),
+                        new HashSet<>());
+            }
+
+            if (token.getSequence() > until)
+                throw new InvalidSyncTokenException("sync token " + token
+                        + " is ahead of collection " + collection.getUid());
+            if (token.getSequence() < state.getPurgedSequence())
+                throw new SyncTokenExpiredException("sync token " + token
+                        + " predates the tombstones kept for collection " + collection.getUid());
+
+            TypedQuery<String> changed = entityManager.createNamedQuery(
+                    "collectionSync.changedUids.by.collection.sequence", String.class)
+                .setParameter("collectionId", id)
+                .setParameter("since", token.getSequence())
+                .setParameter("until", until);
+            setManualFlush(changed);
+            TypedQuery<String> removed = entityManager.createNamedQuery(
+                    "collectionSync.removedUids.by.collection.sequence", String.class)
+                .setParameter("collectionId", id)
+                .setParameter("since", token.getSequence())
+                .setParameter("until", until);
+            setManualFlush(removed);
+
+            Set<String> changedUids = new HashSet<>(changed.getResultList());
+            Set<String> removedUids = new HashSet<>(removed.getResultList());
+            // re-added since removal
+            removedUids.removeAll(changedUids);
+            return new CollectionChanges(next, changedUids, removedUids);
+        } catch (PersistenceException e) {
+            currentSession().clear();
+            throw convertJpaAccessException(e);
+        }
+    }
+
+    private HibCollectionSyncState getSyncState(CollectionItem collection) {
+        Long id = getBaseModelObject(collection).getId();
+        HibCollectionSyncState state = entityManager.find(HibCollectionSyncState.class, id);
+        // nothing changed since the sequence was introduced
+        return state != null ? state : new HibCollectionSyncState(id);
+    }
+
+    /* (non-Javadoc)
+     * @see org.osaf.cosmo.dao.ContentDao#loadChildrenPage(org.osaf.cosmo.model.CollectionItem, java.lang.String, int)
+     */
+    @Override
+    public KeysetPage<ContentItem> loadChildrenPage(CollectionItem collection,
+            String cursor, int pageSize) {
+        if (pageSize < 1)
+            throw new IllegalArgumentException("pageSize must be at least 1");
+
+        try {
+            // find the keys of the page first, so that the limit applies
+            // to children rather than to rows of the fetch joins
+            TypedQuery<Object[]> keyQuery = entityManager.createQuery(
+                    "select item.id, item.name from HibContentItem item join item.parentDetails pd"
+                    + " where pd.primaryKey.collection=:parent"
+                    + (cursor != null ? " and " + CHILD_KEYSET.after() : "")
+                    + " order by " + CHILD_KEYSET.orderBy(), Object[].class)
+                .setParameter("parent", collection)
+                .setMaxResults(pageSize + 1);
+            if (cursor != null)
+                CHILD_KEYSET.bind(keyQuery, cursor);
+            setManualFlush(keyQuery);
+            return CHILD_KEYSET.page(keyQuery.getResultList(), pageSize, this::loadChildrenByKeys);
+        } catch (PersistenceException e) {
+            currentSession().clear();
+            throw convertJpaAccessException(e);
+        }
+    }
+
+    private List<ContentItem> loadChildrenByKeys(List<Object[]> keys) {
+        if (keys.isEmpty())
+            return Collections.emptyList();
+
+        List<Long> ids = new ArrayList<>(keys.size());
+        for (Object[] key : keys)
+            ids.add((Long) key[0]);
+
+        TypedQuery<ContentItem> query = entityManager.createQuery(
+                "select distinct item from HibContentItem item left join fetch item.stamps"
+                + " left join fetch item.attributes where item.id in (:ids)", ContentItem.class)
+            .setParameter("ids", ids);
+        setManualFlush(query);
+
+        Map<Long, ContentItem> byId = new HashMap<>();
+        for (ContentItem item : query.getResultList())
+            byId.put(((HibItem) item).getId(), item);
+        List<ContentItem> children = new ArrayList<>(ids.size());
+        for (Long id : ids)
+            children.add(byId.get(id));
+        return children;
+    }
+
+    /* (non-Javadoc)
+     * @see org.osaf.cosmo.dao.ContentDao#iterateChildren(org.osaf.cosmo.model.CollectionItem, int)
+     */
+    @Override
+    public Iterable<ContentItem> iterateChildren(CollectionItem collection, int pageSize) {
+        if (pageSize < 1)
+            throw new IllegalArgumentException("pageSize must be at least 1");
+        return () -> new ChildIterator(collection, pageSize);
+    }
+
+    /**
+     * Pages through the children of a collection in id order, selecting
+     * the ids of a page first and then fetching those items with their
+     * stamps and attributes.  The items of a page are evicted from the
+     * session when the next page is loaded.
+     */
+    private class ChildIterator implements Iterator<ContentItem> {
+        private final CollectionItem collection;
+        private final int pageSize;
+        private List<ContentItem> page = Collections.emptyList();
+        private int index = 0;
+        private String cursor = null;
+        private boolean lastPage = false;
+
+        ChildIterator(CollectionItem collection, int pageSize) {
+            this.collection = collection;
+            this.pageSize = pageSize;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (index < page.size())
+                return true;
+            if (lastPage)
+                return false;
+            nextPage();
+            return index < page.size();
+        }
+
+        @Override
+        public ContentItem next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return page.get(index++);
+        }
+
+        private void nextPage() {
+            for (ContentItem item : page)
+                entityManager.detach(item);
+
+            KeysetPage<ContentItem> next = loadChildrenPage(collection, cursor, pageSize);
+            page = next.getItems();
+            index = 0;
+            cursor = next.getNextCursor();
+            lastPage = cursor == null;
+        }
+    }
+
     @Override
     public void initializeItem(Item item) {
         super.initializeItem(item);
@@ -420,6 +719,7 @@ public class ContentDaoImpl extends ItemDaoImpl implements ContentDao {
     }
 
     private void removeContentRecursive(ContentItem content) {
+        getItemPathTranslator().evictItem(content);
         removeContentCommon(content);
 
         // Remove modifications
@@ -450,20 +750,25 @@ public class ContentDaoImpl extends ItemDaoImpl implements ContentDao {
     private void removeContentCommon(ContentItem content) {
         // Add a tombstone to each parent collection to track
         // when the removal occurred.
+        lockSyncStates(content.getParents());
         for (CollectionItem parent : content.getParents()) {
-            getHibItem(parent).addTombstone(new HibItemTombstone(parent,content));
+            HibItemTombstone tombstone = new HibItemTombstone(parent, content);
+            getHibItem(parent).addTombstone(tombstone);
             currentSession().update(parent);
+            tombstone.setChangeSequence(
+                    logItemChange(parent, content, ItemChangeRecord.Action.ITEM_REMOVED));
         }
     }
 
-    private void removeCollectionRecursive(CollectionItem collection) {
+    private void removeCollectionRecursive(CollectionItem collection, List<Long> removedIds) {
         // Removing a collection does not automatically remove
         // its children.  Instead, the association to all the
         // children is removed, and any children who have no
         // parent collection are then removed.
+        getItemPathTranslator().evictItem(collection);
         for(Item item: collection.getChildren()) {
             if(item instanceof CollectionItem) {
-                removeCollectionRecursive((CollectionItem) item);
+                removeCollectionRecursive((CollectionItem) item, removedIds);
             } else if(item instanceof ContentItem) {
                 ((HibItem) item).removeParent(collection);
                 if(item.getParents().isEmpty())
@@ -473,6 +778,7 @@ public class ContentDaoImpl extends ItemDaoImpl implements ContentDao {
             }
         }
 
+        removedIds.add(getBaseModelObject(collection).getId());
         currentSession().delete(collection);
     }
 
@@ -485,8 +791,12 @@ public class ContentDaoImpl extends ItemDaoImpl implements ContentDao {
         if(!note.getParents().contains(collection))
             return;
 
-        getHibItem(collection).addTombstone(new HibItemTombstone(collection, note));
+        getItemPathTranslator().evictItem(note);
+        HibItemTombstone tombstone = new HibItemTombstone(collection, note);
+        getHibItem(collection).addTombstone(tombstone);
         ((HibItem) note).removeParent(collection);
+        tombstone.setChangeSequence(
+                logItemChange(collection, note, ItemChangeRecord.Action.ITEM_REMOVED));
 
         for(NoteItem mod: note.getModifications())
             removeNoteItemFromCollectionInternal(mod, collection);
@@ -555,6 +865,10 @@ public class ContentDaoImpl extends ItemDaoImpl implements ContentDao {
 
 
         currentSession().save(content);
+
+        lockSyncStates(content.getParents());
+        for (CollectionItem parent : content.getParents())
+            logItemChange(parent, content, ItemChangeRecord.Action.ITEM_ADDED);
     }
 
     protected void createContentInternal(Set<CollectionItem> parents, ContentItem content) {
@@ -616,6 +930,10 @@ public class ContentDaoImpl extends ItemDaoImpl implements ContentDao {
 
 
         currentSession().save(content);
+
+        lockSyncStates(content.getParents());
+        for (CollectionItem parent : content.getParents())
+            logItemChange(parent, content, ItemChangeRecord.Action.ITEM_ADDED);
     }
 
     protected void updateContentInternal(ContentItem content) {
@@ -632,12 +950,16 @@ public class ContentDaoImpl extends ItemDaoImpl implements ContentDao {
             throw new IllegalArgumentException("content must have owner");
 
         content.updateTimestamp();
+        getItemPathTranslator().evictItemIfRenamed(content);
 
         if(isNoteModification(content)) {
             // ensure master is dirty so that etag gets updated
             ((NoteItem) content).getModifies().updateTimestamp();
         }
 
+        lockSyncStates(content.getParents());
+        for (CollectionItem parent : content.getParents())
+            logItemChange(parent, content, ItemChangeRecord.Action.ITEM_CHANGED);
     }
 
     protected void updateCollectionInternal(CollectionItem collection) {
@@ -650,6 +972,24 @@ public class ContentDaoImpl extends ItemDaoImpl implements ContentDao {
             throw new IllegalArgumentException("collection must have owner");
 
         collection.updateTimestamp();
+        getItemPathTranslator().evictItemIfRenamed(collection);
+        invalidateBusyIndexIfTimezoneChanged(collection);
+    }
+
+    /**
+     * Drop the free/busy index of a collection that is no longer a
+     * calendar or whose timezone changed, as the index resolved floating
+     * times in the old timezone.  {@link FreeBusyIndexer} rebuilds it.
+     */
+    private void invalidateBusyIndexIfTimezoneChanged(CollectionItem collection) {
+        HibBusyIndexState state = entityManager.find(HibBusyIndexState.class,
+                getBaseModelObject(collection).getId());
+        if (state == null)
+            return;
+
+        CalendarCollectionStamp ccs = StampUtils.getCalendarCollectionStamp(collection);
+        if (ccs == null || !Objects.equals(state.getTimezone(), ccs.getTimezoneName()))
+            entityManager.remove(state);
     }
 
     /**
@@ -755,6 +1095,29 @@ public class ContentDaoImpl extends ItemDaoImpl implements ContentDao {
             checkForDuplicateICalUid(item, parent);
     }
 
+    /**
+     * Check for a duplicate icalUid among the items of a request whose
+     * db operations are only flushed at the end.
+     */
+    private void checkForDuplicateICalUid(Map<String, NoteItem> icalUidMap,
+            ContentItem item, String collectionUid) {
+        // modifications share the icalUid of their master
+        if (item instanceof NoteItem note && note.getIcalUid() != null
+                && note.getModifies() == null) {
+            if (item.getIsActive()) {
+                NoteItem dup = icalUidMap.get(note.getIcalUid());
+                if (dup != null && !dup.getUid().equals(item.getUid()))
+                    throw new IcalUidInUseException("iCal uid"
+                            + note.getIcalUid()
+                            + " already in use for collection "
+                            + collectionUid, item.getUid(), dup
+                            .getUid());
+            }
+
+            icalUidMap.put(note.getIcalUid(), note);
+        }
+    }
+
     private boolean isNoteModification(Item item) {
         return item instanceof NoteItem noteItem && noteItem.getModifies() != null;
 
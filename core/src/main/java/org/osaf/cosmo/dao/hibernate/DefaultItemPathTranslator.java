@@ -15,26 +15,76 @@
  */
 package org.osaf.cosmo.dao.hibernate;
 
-import javax.persistence.TypedQuery;
+import javax.persistence.Query;
 import org.hibernate.Session;
+import org.hibernate.proxy.HibernateProxy;
 import org.osaf.cosmo.model.CollectionItem;
 import org.osaf.cosmo.model.Item;
+import org.osaf.cosmo.model.hibernate.BaseModelObject;
+import org.osaf.cosmo.model.hibernate.HibItem;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Default implementation for ItempPathTranslator. This implementation expects
  * paths to be of the format: /username/parent1/parent2/itemname
- *
+ * <p>
+ * A path is resolved with a single query that joins one item per path
+ * segment, so the cost does not grow in round trips with the depth of
+ * the path.
+ * <p>
+ * If <code>maxCachedPaths</code> is greater than 0, resolved paths (and
+ * every parent path along the way) are kept in a bounded, least recently
+ * used cache of path to item id.  On a cache hit each item along the path
+ * is loaded by primary key and checked against the name of its segment
+ * and the item of the segment before, so an entry made stale by another
+ * node is never returned.  Entries are evicted through
+ * {@link #evictItem(Item)} and {@link #evictItemIfRenamed(Item)} when
+ * items are removed, moved or renamed.  The cache is local to the VM and
+ * off by default.
  */
 public class DefaultItemPathTranslator implements ItemPathTranslator {
 
+    public static final int DEFAULT_MAX_CACHED_PATHS = 0;
+
     @PersistenceContext
     private EntityManager entityManager;
 
+    private int maxCachedPaths = DEFAULT_MAX_CACHED_PATHS;
+
+    // guards pathCache, pathsByItem and generation
+    private final Object cacheLock = new Object();
+
+    // path key -> item id, in access order so the eldest entry is the least recently used
+    private final LinkedHashMap<String, Long> pathCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            if (size() <= maxCachedPaths)
+                return false;
+            unindexPath(eldest.getKey(), eldest.getValue());
+            return true;
+        }
+    };
+
+    // item id -> path keys that resolve to it
+    private final HashMap<Long, Set<String>> pathsByItem = new HashMap<>();
+
+    // incremented on every eviction, so that a resolution that raced with
+    // an eviction doesn't put a stale path back into the cache
+    private long generation = 0;
+
     private Session getCurrentSession() {
         return entityManager.unwrap(Session.class);
     }
@@ -90,6 +140,68 @@ public class DefaultItemPathTranslator implements ItemPathTranslator {
         return path.substring(lastIndex+1);
     }
 
+    /* (non-Javadoc)
+     * @see org.osaf.cosmo.dao.hibernate.ItemPathTranslator#evictItem(org.osaf.cosmo.model.Item)
+     */
+    public void evictItem(Item item) {
+        Long id = getDbId(item);
+        if (id == null)
+            return;
+
+        Set<String> evicted;
+        synchronized (cacheLock) {
+            Set<String> keys = pathsByItem.get(id);
+            if (keys == null)
+                return;
+            evicted = new HashSet<>(keys);
+            evictPaths(evicted);
+        }
+        evictAgainAfterCompletion(evicted);
+    }
+
+    /* (non-Javadoc)
+     * @see org.osaf.cosmo.dao.hibernate.ItemPathTranslator#evictItemIfRenamed(org.osaf.cosmo.model.Item)
+     */
+    public void evictItemIfRenamed(Item item) {
+        Long id = getDbId(item);
+        if (id == null)
+            return;
+
+        Set<String> evicted = new HashSet<>();
+        synchronized (cacheLock) {
+            Set<String> keys = pathsByItem.get(id);
+            if (keys == null)
+                return;
+            for (String key : keys) {
+                if (!key.substring(key.lastIndexOf('/') + 1).equals(item.getName()))
+                    evicted.add(key);
+            }
+            if (evicted.isEmpty())
+                return;
+            evictPaths(evicted);
+        }
+        evictAgainAfterCompletion(evicted);
+    }
+
+    public int getMaxCachedPaths() {
+        return maxCachedPaths;
+    }
+
+    /**
+     * @param maxCachedPaths maximum number of resolved paths to keep,
+     *                       0 disables the cache
+     */
+    public void setMaxCachedPaths(int maxCachedPaths) {
+        synchronized (cacheLock) {
+            this.maxCachedPaths = maxCachedPaths;
+            if (maxCachedPaths <= 0) {
+                pathCache.clear();
+                pathsByItem.clear();
+                generation++;
+            }
+        }
+    }
+
     protected Item findItemByPath(Session session, String path) {
 
         if(path == null || path.isEmpty())
@@ -99,26 +211,9 @@ public class DefaultItemPathTranslator implements ItemPathTranslator {
             path = path.substring(1);
 
         String[] segments = path.split("/");
-        String username = segments[0];
-
-        String rootName = segments[0];
-        Item rootItem = findRootItemByOwnerAndName(session, username,
-                rootName);
-
-        // If parent item doesn't exist don't go any further
-        if (rootItem == null)
-            return null;
-
-        Item parentItem = rootItem;
-        for (int i = 1; i < segments.length; i++) {
-            parentItem = findItemByParentAndName(session, parentItem,
-                    segments[i]);
-            // if any parent item doesn't exist then bail now
-            if (parentItem == null)
-                return null;
-        }
 
-        return parentItem;
+        // the first segment is both the username and the name of the root item
+        return resolvePath(session, segments, null, "");
     }
 
     protected Item findItemByPath(Session session, String path, CollectionItem root) {
@@ -134,34 +229,237 @@ public class DefaultItemPathTranslator implements ItemPathTranslator {
         if (segments.length == 0)
             return null;
 
-        Item parentItem = root;
-        for (String segment : segments) {
-            parentItem = findItemByParentAndName(session, parentItem, segment);
-            // if any parent item doesn't exist then bail now
-            if (parentItem == null)
+        // paths relative to a root are cached under that root's id
+        return resolvePath(session, segments, root, "#" + getDbId(root));
+    }
+
+    /**
+     * Resolve the segments from the cache if possible, otherwise with a
+     * single query that joins an item for each segment.
+     * @param root the collection the segments are relative to, or null if
+     *             the first segment is the owner's root item
+     * @param keyPrefix prefix for cache keys, distinguishing relative paths
+     */
+    private Item resolvePath(Session session, String[] segments,
+            CollectionItem root, String keyPrefix) {
+        String key = keyPrefix + "/" + String.join("/", segments);
+
+        long startGeneration;
+        Long[] cachedIds;
+        synchronized (cacheLock) {
+            startGeneration = generation;
+            cachedIds = maxCachedPaths > 0 ? getCachedIds(keyPrefix, segments) : null;
+        }
+
+        if (cachedIds != null) {
+            Item item = loadCachedPath(session, segments, root, cachedIds);
+            if (item != null)
+                return item;
+
+            // stale entry, e.g. changed by another node
+            evictItemPath(key);
+            synchronized (cacheLock) {
+                startGeneration = generation;
+            }
+        }
+
+        Object[] items = queryPath(session, segments, root);
+        if (items == null)
+            return null;
+
+        cachePath(keyPrefix, segments, items, startGeneration);
+        return (Item) items[items.length - 1];
+    }
+
+    /**
+     * @return the cached item id for each segment, or null if any segment
+     *         isn't cached.  Must hold the cacheLock.
+     */
+    private Long[] getCachedIds(String keyPrefix, String[] segments) {
+        Long[] ids = new Long[segments.length];
+        StringBuilder key = new StringBuilder(keyPrefix);
+        for (int i = 0; i < segments.length; i++) {
+            key.append('/').append(segments[i]);
+            ids[i] = pathCache.get(key.toString());
+            if (ids[i] == null)
                 return null;
         }
+        return ids;
+    }
+
+    /**
+     * Load the cached items of a path, checking that each still has the
+     * name of its segment and is a child of the item before it.
+     * @return the item of the last segment, or null if the path has changed
+     */
+    private Item loadCachedPath(Session session, String[] segments,
+            CollectionItem root, Long[] ids) {
+        Item parent = root;
+        for (int i = 0; i < segments.length; i++) {
+            Item item = session.get(HibItem.class, ids[i]);
+            if (item instanceof HibernateProxy)
+                item = (Item) ((HibernateProxy) item).getHibernateLazyInitializer().getImplementation();
+            if (item == null || !segments[i].equals(item.getName()))
+                return null;
 
-        return parentItem;
+            if (parent == null) {
+                // the owner's root item
+                if (!item.getParents().isEmpty()
+                        || !segments[0].equals(item.getOwner().getUsername()))
+                    return null;
+            } else if (!hasParent(item, getDbId(parent))) {
+                return null;
+            }
+            parent = item;
+        }
+        return parent;
+    }
+
+    private static boolean hasParent(Item item, Long parentId) {
+        for (CollectionItem parent : item.getParents()) {
+            if (parentId != null && parentId.equals(getDbId(parent)))
+                return true;
+        }
+        return false;
     }
 
-    protected Item findRootItemByOwnerAndName(Session session,
-            String username, String name) {
-        var hibQuery = session.createNamedQuery(
-                "item.by.ownerName.name.nullParent", Item.class)
-                .setParameter("username", username).setParameter("name", name);
+    /**
+     * @return the item for each segment, or null if any segment doesn't exist
+     */
+    private Object[] queryPath(Session session, String[] segments, CollectionItem root) {
+        StringBuilder selectBuf = new StringBuilder("select ");
+        StringBuilder fromBuf = new StringBuilder(" from ");
+        StringBuilder whereBuf = new StringBuilder(" where ");
+
+        int first = 0;
+        if (root == null) {
+            selectBuf.append("i0");
+            fromBuf.append("HibItem i0, HibUser u");
+            whereBuf.append("i0.owner=u and u.username=:username and i0.name=:name0 and size(i0.parentDetails)=0");
+            first = 1;
+        }
+
+        for (int i = first; i < segments.length; i++) {
+            String alias = "i" + i;
+            if (i > 0) {
+                selectBuf.append(", ");
+                fromBuf.append(", ");
+                whereBuf.append(" and ");
+            }
+            selectBuf.append(alias);
+            fromBuf.append("HibItem ").append(alias).append(" join ").append(alias)
+                    .append(".parentDetails pd").append(i);
+            whereBuf.append("pd").append(i).append(".primaryKey.collection=")
+                    .append(i == 0 ? ":root" : "i" + (i - 1))
+                    .append(" and ").append(alias).append(".name=:name").append(i);
+        }
 
-        var results = hibQuery.getResultList();
-        return results.isEmpty() ? null : (Item) results.get(0);
+        Query hibQuery = session.createQuery(selectBuf.append(fromBuf).append(whereBuf).toString());
+        if (root == null)
+            hibQuery.setParameter("username", segments[0]);
+        else
+            hibQuery.setParameter("root", root);
+        for (int i = 0; i < segments.length; i++)
+            hibQuery.setParameter("name" + i, segments[i]);
+        hibQuery.setMaxResults(1);
+
+        List<?> results = hibQuery.getResultList();
+        if (results.isEmpty())
+            return null;
+
+        Object row = results.get(0);
+        return row instanceof Object[] ? (Object[]) row : new Object[] { row };
+    }
+
+    private void cachePath(String keyPrefix, String[] segments, Object[] items,
+            long startGeneration) {
+        synchronized (cacheLock) {
+            if (maxCachedPaths <= 0 || generation != startGeneration)
+                return;
+
+            // cache each parent path too, so that changes to a parent evict its children
+            StringBuilder key = new StringBuilder(keyPrefix);
+            for (int i = 0; i < items.length; i++) {
+                key.append('/').append(segments[i]);
+                Long id = getDbId((Item) items[i]);
+                String path = key.toString();
+                Long previous = pathCache.put(path, id);
+                if (previous != null && !previous.equals(id))
+                    unindexPath(path, previous);
+                pathsByItem.computeIfAbsent(id, k -> new HashSet<>()).add(path);
+            }
+        }
+    }
+
+    private void evictItemPath(String key) {
+        Set<String> evicted = Set.of(key);
+        synchronized (cacheLock) {
+            evictPaths(evicted);
+        }
+    }
+
+    /**
+     * Remove the paths and all paths beneath them.  Must hold the cacheLock.
+     */
+    private void evictPaths(Set<String> keys) {
+        generation++;
+        List<String> prefixes = new ArrayList<>(keys.size());
+        for (String key : keys)
+            prefixes.add(key + "/");
+
+        for (Iterator<Map.Entry<String, Long>> it = pathCache.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, Long> entry = it.next();
+            if (keys.contains(entry.getKey()) || startsWithAny(entry.getKey(), prefixes)) {
+                unindexPath(entry.getKey(), entry.getValue());
+                it.remove();
+            }
+        }
     }
 
-    protected Item findItemByParentAndName(Session session, Item parent,
-            String name) {
-        var hibQuery = session.createNamedQuery("item.by.parent.name", Item.class)
-                .setParameter("parent", parent).setParameter("name", name);
+    /**
+     * A transaction that changed paths may still be resolved with the old
+     * paths by other transactions until it completes, so evict again once it
+     * has committed.  If it rolled back then whatever was cached during it
+     * can't be trusted, so start again.
+     */
+    private void evictAgainAfterCompletion(final Set<String> keys) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive())
+            return;
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                synchronized (cacheLock) {
+                    if (status == STATUS_COMMITTED) {
+                        evictPaths(keys);
+                    } else {
+                        pathCache.clear();
+                        pathsByItem.clear();
+                        generation++;
+                    }
+                }
+            }
+        });
+    }
 
-        var results = hibQuery.getResultList();
-        return results.isEmpty() ? null : results.get(0);
+    private void unindexPath(String key, Long id) {
+        Set<String> keys = pathsByItem.get(id);
+        if (keys == null)
+            return;
+        keys.remove(key);
+        if (keys.isEmpty())
+            pathsByItem.remove(id);
     }
 
+    private static boolean startsWithAny(String key, List<String> prefixes) {
+        for (String prefix : prefixes) {
+            if (key.startsWith(prefix))
+                return true;
+        }
+        return false;
+    }
+
+    private static Long getDbId(Item item) {
+        return item instanceof BaseModelObject ? ((BaseModelObject) item).getId() : null;
+    }
 }
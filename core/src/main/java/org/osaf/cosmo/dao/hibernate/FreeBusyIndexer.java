@@ -0,0 +1,367 @@
+package org.osaf.cosmo.dao.hibernate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceException;
+
+import net.fortuna.ical4j.model.Calendar;
+import net.fortuna.ical4j.model.DateTime;
+import net.fortuna.ical4j.model.Period;
+import net.fortuna.ical4j.model.PeriodList;
+import net.fortuna.ical4j.model.parameter.FbType;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.osaf.cosmo.calendar.BusyPeriods;
+import org.osaf.cosmo.calendar.EntityConverter;
+import org.osaf.cosmo.model.CalendarCollectionStamp;
+import org.osaf.cosmo.model.CollectionItem;
+import org.osaf.cosmo.model.ContentItem;
+import org.osaf.cosmo.model.Item;
+import org.osaf.cosmo.model.NoteItem;
+import org.osaf.cosmo.model.StampUtils;
+import org.osaf.cosmo.model.hibernate.HibBusyIndexState;
+import org.osaf.cosmo.model.hibernate.HibBusyPeriod;
+import org.osaf.cosmo.model.hibernate.HibCollectionItem;
+import org.osaf.cosmo.model.hibernate.HibItem;
+import org.osaf.cosmo.model.hibernate.HibStaleBusyItem;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Background job that maintains the free/busy index of calendar
+ * collections, which {@link CalendarDaoImpl#findBusyPeriods} answers
+ * free/busy queries from.
+ * <p>
+ * The index holds the busy periods of each item of a collection,
+ * expanded and merged over a window that reaches from
+ * <code>pastMillis</code> before to <code>futureMillis</code> after the
+ * time it was built.  Each run first (re)builds the index of the
+ * calendar collections that have none or whose window is more than half
+ * used up: it starts a new window, drops the indexed periods and marks
+ * every item of the collection stale.  It then indexes the stale items,
+ * at most <code>batchSize</code> per transaction.  Items are also marked
+ * stale whenever they are added to, changed in or removed from an
+ * indexed collection; queries evaluate stale items directly, so the
+ * index is never out of date, only less effective until the next run.
+ * <p>
+ * Requires an <code>EntityManagerFactory</code> and the
+ * <code>PlatformTransactionManager</code> for it, and <code>init()</code>
+ * to be called before use.  If <code>intervalMillis</code> is greater
+ * than zero, <code>init()</code> schedules a run every
+ * <code>intervalMillis</code> on a daemon thread, which
+ * <code>destroy()</code> stops.
+ */
+public class FreeBusyIndexer {
+    private static final Log log =
+        LogFactory.getLog(FreeBusyIndexer.class);
+
+    public static final long DEFAULT_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    public static final long DEFAULT_PAST_MILLIS = TimeUnit.DAYS.toMillis(31);
+    public static final long DEFAULT_FUTURE_MILLIS = TimeUnit.DAYS.toMillis(366);
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    private long intervalMillis = DEFAULT_INTERVAL_MILLIS;
+    private long pastMillis = DEFAULT_PAST_MILLIS;
+    private long futureMillis = DEFAULT_FUTURE_MILLIS;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    private EntityManagerFactory entityManagerFactory;
+    private PlatformTransactionManager transactionManager;
+
+    private EntityManager entityManager;
+    private TransactionTemplate batchTransaction;
+    private ScheduledExecutorService scheduler;
+
+    private final EntityConverter entityConverter = new EntityConverter(null);
+
+    /**
+     * Initializes the job, sanity checking required properties and
+     * scheduling the periodic run.
+     */
+    public void init() {
+        if (entityManagerFactory == null)
+            throw new IllegalStateException("entityManagerFactory is required");
+        if (transactionManager == null)
+            throw new IllegalStateException("transactionManager is required");
+        if (batchSize < 1)
+            throw new IllegalStateException("batchSize must be at least 1");
+        if (pastMillis < 0)
+            throw new IllegalStateException("pastMillis cannot be negative");
+        if (futureMillis < 1)
+            throw new IllegalStateException("futureMillis must be positive");
+
+        entityManager = SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory);
+        batchTransaction = new TransactionTemplate(transactionManager);
+
+        if (intervalMillis > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "cosmo-free-busy-indexer");
+                t.setDaemon(true);
+                return t;
+            });
+            scheduler.scheduleWithFixedDelay(this::run, intervalMillis,
+                    intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops the periodic run.
+     */
+    public void destroy() {
+        if (scheduler != null)
+            scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    private void run() {
+        try {
+            int indexed = index();
+            if (log.isDebugEnabled())
+                log.debug("indexed busy periods of " + indexed + " items");
+        } catch (RuntimeException e) {
+            // keep the schedule going
+            log.error("error indexing busy periods", e);
+        }
+    }
+
+    /**
+     * Build the index of the calendar collections that have none or
+     * whose window is more than half used up, and index all stale items.
+     * @return number of items indexed
+     */
+    public int index() {
+        long now = System.currentTimeMillis();
+        long lastCollectionId = -1;
+        while (true) {
+            List<Long> collectionIds = findCollectionsToRebuild(now, lastCollectionId);
+            if (collectionIds.isEmpty())
+                break;
+            for (Long collectionId : collectionIds) {
+                rebuild(collectionId, now);
+                lastCollectionId = collectionId;
+            }
+        }
+
+        int indexed = 0;
+        while (true) {
+            Integer batch = indexBatch();
+            if (batch == null)
+                return indexed;
+            indexed += batch;
+        }
+    }
+
+    private List<Long> findCollectionsToRebuild(long now, long lastCollectionId) {
+        try {
+            return batchTransaction.execute(status -> entityManager.createQuery(
+                    "select s.item.id from HibCalendarCollectionStamp s where s.item.id>:lastId"
+                    + " and not exists (select st.collectionId from HibBusyIndexState st"
+                    + " where st.collectionId=s.item.id and st.untilTime>=:threshold)"
+                    + " order by s.item.id", Long.class)
+                .setParameter("lastId", lastCollectionId)
+                .setParameter("threshold", now + futureMillis / 2)
+                .setMaxResults(batchSize)
+                .getResultList());
+        } catch (PersistenceException e) {
+            throw HibernateSessionSupport.convertJpaAccessException(e);
+        }
+    }
+
+    private void rebuild(Long collectionId, long now) {
+        try {
+            batchTransaction.execute(status -> {
+                // removed since it was found
+                HibCollectionItem collection = entityManager.find(HibCollectionItem.class, collectionId);
+                if (collection == null)
+                    return null;
+
+                // writers mark items stale holding this lock, so every
+                // item is either seen here or marked by its writer
+                ItemDaoImpl.lockSyncState(entityManager, collectionId);
+
+                CalendarCollectionStamp ccs = StampUtils.getCalendarCollectionStamp(collection);
+                if (ccs == null)
+                    return null;
+
+                HibBusyIndexState state = entityManager.find(HibBusyIndexState.class, collectionId);
+                if (state == null) {
+                    state = new HibBusyIndexState(collectionId);
+                    entityManager.persist(state);
+                    ItemDaoImpl.busyIndexCreated(collectionId);
+                }
+                state.reset(now - pastMillis, now + futureMillis, ccs.getTimezoneName());
+
+                List<Long> collectionIds = Collections.singletonList(collectionId);
+                entityManager.createNamedQuery("busyPeriod.delete.by.collections")
+                    .setParameter("collectionIds", collectionIds)
+                    .executeUpdate();
+                entityManager.createNamedQuery("staleBusyItem.delete.by.collections")
+                    .setParameter("collectionIds", collectionIds)
+                    .executeUpdate();
+
+                List<Long> itemIds = entityManager.createQuery(
+                        "select d.primaryKey.item.id from HibCollectionItemDetails d"
+                        + " where d.primaryKey.collection.id=:collectionId", Long.class)
+                    .setParameter("collectionId", collectionId)
+                    .getResultList();
+                for (Long itemId : itemIds)
+                    entityManager.persist(new HibStaleBusyItem(collectionId, itemId));
+                return null;
+            });
+        } catch (PersistenceException e) {
+            throw HibernateSessionSupport.convertJpaAccessException(e);
+        }
+    }
+
+    private Integer indexBatch() {
+        try {
+            return batchTransaction.execute(status -> {
+                List<HibStaleBusyItem> stale = entityManager.createQuery(
+                        "select s from HibStaleBusyItem s order by s.id", HibStaleBusyItem.class)
+                    .setMaxResults(batchSize)
+                    .getResultList();
+
+                if (stale.isEmpty())
+                    return null;
+
+                List<Long> ids = new ArrayList<>(stale.size());
+                Map<Long, Set<Long>> itemIdsByCollection = new LinkedHashMap<>();
+                for (HibStaleBusyItem s : stale) {
+                    ids.add(s.getId());
+                    itemIdsByCollection.computeIfAbsent(s.getCollectionId(),
+                            k -> new LinkedHashSet<>()).add(s.getItemId());
+                }
+
+                int indexed = 0;
+                for (Map.Entry<Long, Set<Long>> entry : itemIdsByCollection.entrySet())
+                    indexed += index(entry.getKey(), entry.getValue());
+
+                // markers added meanwhile stay, and the items are indexed
+                // again by the next batch
+                entityManager.createQuery("delete from HibStaleBusyItem s where s.id in (:ids)")
+                    .setParameter("ids", ids)
+                    .executeUpdate();
+                return indexed;
+            });
+        } catch (PersistenceException e) {
+            throw HibernateSessionSupport.convertJpaAccessException(e);
+        }
+    }
+
+    private int index(Long collectionId, Set<Long> itemIds) {
+        for (Long itemId : itemIds)
+            entityManager.createNamedQuery("busyPeriod.delete.by.collection.item")
+                .setParameter("collectionId", collectionId)
+                .setParameter("itemId", itemId)
+                .executeUpdate();
+
+        HibBusyIndexState state = entityManager.find(HibBusyIndexState.class, collectionId);
+        HibCollectionItem collection = entityManager.find(HibCollectionItem.class, collectionId);
+        if (state == null || collection == null)
+            return 0;
+
+        // a timezone change invalidates the index until it's rebuilt
+        CalendarCollectionStamp ccs = StampUtils.getCalendarCollectionStamp(collection);
+        if (ccs == null || !Objects.equals(state.getTimezone(), ccs.getTimezoneName()))
+            return 0;
+
+        Period window = new Period(utcDateTime(state.getFromTime()),
+                utcDateTime(state.getUntilTime()));
+        int indexed = 0;
+        for (Long itemId : itemIds) {
+            ContentItem content = indexedContent(entityManager.find(HibItem.class, itemId), collection);
+            Calendar calendar = content != null ? entityConverter.convertContent(content) : null;
+            if (calendar == null)
+                continue;
+
+            BusyPeriods busy = new BusyPeriods();
+            busy.addCalendar(calendar, ccs.getTimezone(), window);
+            busy = busy.normalise();
+            persistPeriods(collectionId, itemId, FbType.BUSY, busy.getBusyPeriods());
+            persistPeriods(collectionId, itemId, FbType.BUSY_TENTATIVE, busy.getBusyTentativePeriods());
+            persistPeriods(collectionId, itemId, FbType.BUSY_UNAVAILABLE, busy.getBusyUnavailablePeriods());
+            indexed++;
+        }
+        return indexed;
+    }
+
+    private void persistPeriods(Long collectionId, Long itemId, FbType type, PeriodList periods) {
+        for (Period period : periods)
+            entityManager.persist(new HibBusyPeriod(collectionId, itemId, type.getValue(),
+                    period.getStart().getTime(), period.getEnd().getTime()));
+    }
+
+    /**
+     * @param item item, possibly null
+     * @param collection collection
+     * @return the item if it's content of the collection that has busy
+     *         periods of its own, null otherwise; the periods of a
+     *         modification are those of its master
+     */
+    static ContentItem indexedContent(Item item, CollectionItem collection) {
+        if (!(item instanceof ContentItem content) || !item.getParents().contains(collection))
+            return null;
+        if (item instanceof NoteItem note && StampUtils.getEventStamp(note) == null)
+            return null;
+        return content;
+    }
+
+    static DateTime utcDateTime(long millis) {
+        DateTime dateTime = new DateTime(millis);
+        dateTime.setUtc(true);
+        return dateTime;
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public void setIntervalMillis(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+    }
+
+    public long getPastMillis() {
+        return pastMillis;
+    }
+
+    public void setPastMillis(long pastMillis) {
+        this.pastMillis = pastMillis;
+    }
+
+    public long getFutureMillis() {
+        return futureMillis;
+    }
+
+    public void setFutureMillis(long futureMillis) {
+        this.futureMillis = futureMillis;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setEntityManagerFactory(EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+}
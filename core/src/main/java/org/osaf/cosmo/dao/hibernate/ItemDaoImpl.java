@@ -15,12 +15,20 @@
  */
 package org.osaf.cosmo.dao.hibernate;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
 import javax.persistence.PersistenceException;
 import javax.validation.ConstraintViolation;
 import javax.validation.ConstraintViolationException;
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.FlushMode;
@@ -32,22 +40,32 @@ import org.osaf.cosmo.dao.ItemDao;
 import org.osaf.cosmo.dao.hibernate.query.ItemFilterProcessor;
 import org.osaf.cosmo.model.CollectionItem;
 import org.osaf.cosmo.model.CollectionItemDetails;
+import org.osaf.cosmo.model.ContentItem;
 import org.osaf.cosmo.model.DuplicateItemNameException;
 import org.osaf.cosmo.model.EventStamp;
 import org.osaf.cosmo.model.HomeCollectionItem;
 import org.osaf.cosmo.model.ICalendarItem;
 import org.osaf.cosmo.model.Item;
+import org.osaf.cosmo.model.ItemChangeRecord;
 import org.osaf.cosmo.model.ItemNotFoundException;
 import org.osaf.cosmo.model.ModelValidationException;
+import org.osaf.cosmo.model.NoteItem;
 import org.osaf.cosmo.model.UidInUseException;
 import org.osaf.cosmo.model.User;
 import org.osaf.cosmo.model.filter.ItemFilter;
 import org.osaf.cosmo.model.hibernate.BaseModelObject;
+import org.osaf.cosmo.model.hibernate.HibBusyIndexState;
 import org.osaf.cosmo.model.hibernate.HibCollectionItem;
+import org.osaf.cosmo.model.hibernate.HibCollectionItemDetails;
+import org.osaf.cosmo.model.hibernate.HibCollectionSyncState;
+import org.osaf.cosmo.model.hibernate.HibEventLogEntry;
 import org.osaf.cosmo.model.hibernate.HibEventStamp;
 import org.osaf.cosmo.model.hibernate.HibHomeCollectionItem;
 import org.osaf.cosmo.model.hibernate.HibItem;
 import org.osaf.cosmo.model.hibernate.HibItemTombstone;
+import org.osaf.cosmo.model.hibernate.HibStaleBusyItem;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /**
  * Implementation of ItemDao using Hibernate persistent objects.
@@ -57,6 +75,10 @@ public abstract class ItemDaoImpl extends HibernateSessionSupport implements Ite
 
     private static final Log log = LogFactory.getLog(ItemDaoImpl.class);
 
+    // transaction resource key of the ids of collections found without
+    // a free/busy index
+    private static final Object UNINDEXED_COLLECTIONS_KEY = new Object();
+
     private ItemPathTranslator itemPathTranslator = null;
     private ItemFilterProcessor itemFilterProcessor = null;
 
@@ -190,6 +212,9 @@ public abstract class ItemDaoImpl extends HibernateSessionSupport implements Ite
             newItem.setDisplayName(newItem.getName());
             setBaseItemProps(newItem);
             currentSession().save(newItem);
+            // start the change sequence up front, so that the first
+            // concurrent changes don't race to create it
+            entityManager.persist(new HibCollectionSyncState(getBaseModelObject(newItem).getId()));
             currentSession().flush();
             return newItem;
         } catch (PersistenceException e) {
@@ -318,8 +343,10 @@ public abstract class ItemDaoImpl extends HibernateSessionSupport implements Ite
 
             verifyNotInLoop(item, parent);
 
+            itemPathTranslator.evictItem(item);
             item.setName(moveName);
             if(!parent.getUid().equals(oldParent.getUid())) {
+                lockSyncStates(Arrays.asList(oldParent, parent));
                 ((HibCollectionItem)parent).removeTombstone(item);
 
                 // Copy over existing CollectionItemDetails
@@ -327,8 +354,15 @@ public abstract class ItemDaoImpl extends HibernateSessionSupport implements Ite
                 ((HibItem) item).addParent(parent);
 
                 // Remove item from old parent collection
-                getHibItem(oldParent).addTombstone(new HibItemTombstone(oldParent, item));
+                HibItemTombstone tombstone = new HibItemTombstone(oldParent, item);
+                getHibItem(oldParent).addTombstone(tombstone);
                 ((HibItem) item).removeParent(oldParent);
+
+                tombstone.setChangeSequence(
+                        logItemChange(oldParent, item, ItemChangeRecord.Action.ITEM_REMOVED));
+                logItemChange(parent, item, ItemChangeRecord.Action.ITEM_ADDED);
+            } else {
+                logItemChange(parent, item, ItemChangeRecord.Action.ITEM_CHANGED);
             }
 
             currentSession().flush();
@@ -462,6 +496,9 @@ public abstract class ItemDaoImpl extends HibernateSessionSupport implements Ite
 
         // save Item before attempting deep copy
         currentSession().save(item2);
+        if (item2 instanceof CollectionItem)
+            entityManager.persist(new HibCollectionSyncState(getBaseModelObject(item2).getId()));
+        logItemChange(newParent, item2, ItemChangeRecord.Action.ITEM_ADDED);
         currentSession().flush();
 
         // copy children if collection and deepCopy = true
@@ -627,8 +664,12 @@ public abstract class ItemDaoImpl extends HibernateSessionSupport implements Ite
         if(!item.getParents().contains(collection))
             return;
 
-        getHibItem(collection).addTombstone(new HibItemTombstone(collection, item));
+        itemPathTranslator.evictItem(item);
+        HibItemTombstone tombstone = new HibItemTombstone(collection, item);
+        getHibItem(collection).addTombstone(tombstone);
         ((HibItem) item).removeParent(collection);
+        tombstone.setChangeSequence(
+                logItemChange(collection, item, ItemChangeRecord.Action.ITEM_REMOVED));
 
         // If the item belongs to no collection, then it should
         // be purged.
@@ -643,9 +684,184 @@ public abstract class ItemDaoImpl extends HibernateSessionSupport implements Ite
         currentSession().update(collection);
         ((HibCollectionItem)collection).removeTombstone(item);
         ((HibItem) item).addParent(collection);
+        logItemChange(collection, item, ItemChangeRecord.Action.ITEM_ADDED);
+    }
+
+    /**
+     * Append an entry to the change log of a collection, recording that
+     * an item was added to, changed in or removed from it, and advance
+     * the change sequence of the collection.  For an added or changed
+     * item the sequence is recorded with the item's membership of the
+     * collection; for a removed item the caller records it with the
+     * tombstone.  The item and collection must have ids, that is must
+     * have been saved.
+     * @param collection collection whose children changed
+     * @param item item that changed
+     * @param action what happened to the item
+     * @return the advanced change sequence of the collection
+     */
+    protected long logItemChange(CollectionItem collection,
+                                 Item item,
+                                 ItemChangeRecord.Action action) {
+        HibEventLogEntry entry = new HibEventLogEntry();
+        entry.setType(ItemChangeRecord.fromAction(action));
+        entry.setAuthType(HibEventLogEntry.AUTH_TYPE_USER);
+        entry.setAuthId(getBaseModelObject(item.getOwner()).getId());
+        entry.setId1(getBaseModelObject(collection).getId());
+        entry.setId2(getBaseModelObject(item).getId());
+        entry.setUid1(item.getUid());
+        entry.setStrval1(StringUtils.abbreviate(item.getDisplayName(), 255));
+
+        String modifiedBy = item instanceof ContentItem content ? content.getLastModifiedBy() : null;
+        entry.setStrval2(StringUtils.abbreviate(
+                modifiedBy != null ? modifiedBy : item.getOwner().getUsername(), 255));
+
+        currentSession().save(entry);
+
+        long sequence = nextChangeSequence(collection);
+        if (action != ItemChangeRecord.Action.ITEM_REMOVED) {
+            HibCollectionItemDetails details =
+                (HibCollectionItemDetails) item.getParentDetails(collection);
+            if (details != null)
+                details.setChangeSequence(sequence);
+        }
+        markBusyPeriodsStale(collection, item);
+        return sequence;
+    }
+
+    /**
+     * Mark the indexed busy periods of an item in a collection as out of
+     * date, if the collection has a free/busy index.  The busy periods
+     * of a modification are indexed with its master.  Must be called
+     * holding the lock on the change sequence of the collection, which
+     * {@link FreeBusyIndexer} takes when it (re)builds the index.
+     * @param collection collection whose children changed
+     * @param item item that changed
+     */
+    protected void markBusyPeriodsStale(CollectionItem collection, Item item) {
+        Long collectionId = getBaseModelObject(collection).getId();
+        if (!isBusyIndexed(collectionId))
+            return;
+
+        if (item instanceof NoteItem note && note.getModifies() != null)
+            item = note.getModifies();
+        entityManager.persist(new HibStaleBusyItem(collectionId,
+                getBaseModelObject(item).getId()));
+    }
+
+    /**
+     * Find whether a collection has a free/busy index.  A found index
+     * stays in the persistence context, and a collection found without
+     * one is remembered until the transaction completes, so that a bulk
+     * change to a collection looks the index up once rather than once
+     * per item.  Only {@link FreeBusyIndexer} creates an index, holding
+     * the lock on the change sequence of the collection, so none is
+     * created while the caller holds it other than in the same
+     * transaction, which {@link #busyIndexCreated(Long)} accounts for.
+     * @param collectionId collection id
+     * @return true if the collection has a free/busy index
+     */
+    private boolean isBusyIndexed(Long collectionId) {
+        Set<Long> unindexed = getUnindexedCollections();
+        if (unindexed != null && unindexed.contains(collectionId))
+            return false;
+        if (entityManager.find(HibBusyIndexState.class, collectionId) != null)
+            return true;
+        if (unindexed != null)
+            unindexed.add(collectionId);
+        return false;
+    }
+
+    /**
+     * Forget that a collection was found without a free/busy index in
+     * the current transaction, as one was created for it.
+     * @param collectionId collection id
+     */
+    static void busyIndexCreated(Long collectionId) {
+        Set<Long> unindexed = getUnindexedCollections();
+        if (unindexed != null)
+            unindexed.remove(collectionId);
+    }
+
+    /**
+     * @return ids of the collections found without a free/busy index in
+     *         the current transaction, null outside a transaction
+     */
+    @SuppressWarnings("unchecked")
+    private static Set<Long> getUnindexedCollections() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive())
+            return null;
+
+        Set<Long> unindexed = (Set<Long>)
+            TransactionSynchronizationManager.getResource(UNINDEXED_COLLECTIONS_KEY);
+        if (unindexed == null) {
+            unindexed = new HashSet<>();
+            TransactionSynchronizationManager.bindResource(UNINDEXED_COLLECTIONS_KEY, unindexed);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(UNINDEXED_COLLECTIONS_KEY);
+                }
+            });
+        }
+        return unindexed;
+    }
+
+    /**
+     * Advance the change sequence of a collection.  The sequence row
+     * stays locked until the transaction completes, so concurrent
+     * changes to the collection are committed in sequence order.
+     * @param collection collection whose children changed
+     * @return the advanced change sequence
+     */
+    protected long nextChangeSequence(CollectionItem collection) {
+        return lockSyncState(entityManager, getBaseModelObject(collection).getId())
+            .nextChangeSequence();
+    }
+
+    /**
+     * Lock the change sequences of collections in the order of their ids,
+     * so that transactions changing items in several of the same
+     * collections can't deadlock by locking them in a different order.
+     * Must be called before logging a change to more than one collection.
+     * @param collections collections whose children are about to change
+     */
+    protected void lockSyncStates(Collection<CollectionItem> collections) {
+        List<Long> collectionIds = new ArrayList<>(collections.size());
+        for (CollectionItem collection : collections)
+            collectionIds.add(getBaseModelObject(collection).getId());
+        Collections.sort(collectionIds);
+        for (Long collectionId : collectionIds)
+            lockSyncState(entityManager, collectionId);
+    }
+
+    /**
+     * Find the change sequence of a collection, locking it until the
+     * transaction completes.  Every collection has one from when it is
+     * created, or from {@link CollectionSyncStateBackfill} if it was
+     * created before change sequences were kept.  A collection created
+     * by an older server after the backfill ran, as during a rolling
+     * deploy, gets one here.
+     * @param entityManager entity manager
+     * @param collectionId collection id
+     * @return locked change sequence of the collection
+     */
+    static HibCollectionSyncState lockSyncState(EntityManager entityManager, Long collectionId) {
+        HibCollectionSyncState state = entityManager.find(
+                HibCollectionSyncState.class, collectionId, LockModeType.PESSIMISTIC_WRITE);
+        if (state != null)
+            return state;
+
+        // the key rejects the insert of a concurrent first change
+        entityManager.createNamedQuery("collectionSync.insert.missing.by.collection")
+            .setParameter("collectionId", collectionId)
+            .executeUpdate();
+        return entityManager.find(
+                HibCollectionSyncState.class, collectionId, LockModeType.PESSIMISTIC_WRITE);
     }
 
     protected void removeItemInternal(Item item) {
+        itemPathTranslator.evictItem(item);
         currentSession().delete(item);
     }
 
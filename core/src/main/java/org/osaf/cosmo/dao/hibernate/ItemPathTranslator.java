@@ -26,4 +26,18 @@ public interface ItemPathTranslator {
     public Item findItemByPath(String path, CollectionItem root);
     public String getItemName(String path);
     public Item findItemParent(String path);
+
+    /**
+     * Forget any cached resolution of paths to the item, or to items
+     * beneath it.  Called when the item is removed or moved.
+     * @param item item that has been removed or moved
+     */
+    public default void evictItem(Item item) {}
+
+    /**
+     * Forget any cached resolution of paths to the item, or to items
+     * beneath it, that no longer end with the item's name.
+     * @param item item that may have been renamed
+     */
+    public default void evictItemIfRenamed(Item item) {}
 }
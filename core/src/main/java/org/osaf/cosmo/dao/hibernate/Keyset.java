@@ -0,0 +1,155 @@
+package org.osaf.cosmo.dao.hibernate;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+
+import javax.persistence.Query;
+
+import org.osaf.cosmo.util.KeysetCursor;
+import org.osaf.cosmo.util.KeysetPage;
+
+/**
+ * Sort keys of a keyset (seek method) paginated query.  The keys must
+ * be non-null and, taken together, unique, which is usually achieved by
+ * ending with the id.  A page continues after the key values of the last
+ * row of the previous page, which are carried in the cursor, so the
+ * database can seek to the start of the page instead of skipping over
+ * all rows before it.
+ *
+ * @param <T> type of the rows the key values are taken from
+ */
+final class Keyset<T> {
+
+    private final String sort;
+    private final boolean ascending;
+    private final List<Key<T>> keys;
+
+    @SafeVarargs
+    Keyset(String name, boolean ascending, Key<T>... keys) {
+        this.sort = name + ":" + (ascending ? "asc" : "desc");
+        this.ascending = ascending;
+        this.keys = List.of(keys);
+    }
+
+    /**
+     * @return JPQL condition selecting the rows after the cursor, using
+     *         the parameters bound by {@link #bind(Query, String)}.  With
+     *         more than one key, the first key is also bounded on its own,
+     *         so the database can range scan an index on it rather than
+     *         evaluate the disjunction on every row.
+     */
+    String after() {
+        String op = ascending ? " > " : " < ";
+        StringBuilder sb = new StringBuilder("(");
+        if (keys.size() > 1)
+            sb.append(keys.get(0).expression).append(ascending ? " >= " : " <= ")
+                .append(":k0 and (");
+        for (int i = 0; i < keys.size(); i++) {
+            if (i > 0)
+                sb.append(" or ");
+            sb.append('(');
+            for (int j = 0; j < i; j++)
+                sb.append(keys.get(j).expression).append(" = :k").append(j).append(" and ");
+            sb.append(keys.get(i).expression).append(op).append(":k").append(i);
+            sb.append(')');
+        }
+        if (keys.size() > 1)
+            sb.append(')');
+        return sb.append(')').toString();
+    }
+
+    /**
+     * @return JPQL order by list
+     */
+    String orderBy() {
+        StringBuilder sb = new StringBuilder();
+        for (Key<T> key : keys) {
+            if (sb.length() > 0)
+                sb.append(", ");
+            sb.append(key.expression).append(ascending ? " asc" : " desc");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Bind the key values of a cursor to the parameters of
+     * {@link #after()}.
+     * @throws IllegalArgumentException if the cursor is malformed or
+     *         wasn't made for this sort
+     */
+    void bind(Query query, String cursor) {
+        List<String> values = KeysetCursor.decode(cursor, sort, keys.size());
+        for (int i = 0; i < keys.size(); i++)
+            query.setParameter("k" + i, keys.get(i).parse(values.get(i), cursor));
+    }
+
+    /**
+     * @param rows rows fetched with a limit of one more than the page
+     *        size, so that it is known whether there is a next page
+     * @param pageSize page size
+     * @param converter converts the rows to the page elements
+     * @return page
+     */
+    <E> KeysetPage<E> page(List<T> rows, int pageSize, Function<List<T>, List<E>> converter) {
+        if (rows.size() <= pageSize)
+            return new KeysetPage<>(converter.apply(rows), null);
+
+        List<T> pageRows = rows.subList(0, pageSize);
+        T last = pageRows.get(pageSize - 1);
+        List<String> values = new ArrayList<>(keys.size());
+        for (Key<T> key : keys)
+            values.add(key.format(last));
+        return new KeysetPage<>(converter.apply(pageRows), KeysetCursor.encode(sort, values));
+    }
+
+    /**
+     * A sort key: a JPQL expression and how to get its value from a row.
+     */
+    static final class Key<T> {
+        private enum Type { STRING, LONG, DATE }
+
+        private final String expression;
+        private final Type type;
+        private final Function<T, Object> value;
+
+        private Key(String expression, Type type, Function<T, Object> value) {
+            this.expression = expression;
+            this.type = type;
+            this.value = value;
+        }
+
+        static <T> Key<T> string(String expression, Function<T, String> value) {
+            return new Key<>(expression, Type.STRING, value::apply);
+        }
+
+        static <T> Key<T> id(String expression, Function<T, Long> value) {
+            return new Key<>(expression, Type.LONG, value::apply);
+        }
+
+        static <T> Key<T> date(String expression, Function<T, Date> value) {
+            return new Key<>(expression, Type.DATE, value::apply);
+        }
+
+        private String format(T row) {
+            Object v = value.apply(row);
+            return type == Type.DATE ? Long.toString(((Date) v).getTime()) : v.toString();
+        }
+
+        private Object parse(String v, String cursor) {
+            try {
+                switch (type) {
+                case LONG:
+                    return Long.valueOf(v);
+                case DATE:
+                    return new Date(Long.parseLong(v));
+                default:
+                    return v;
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid cursor " + cursor, e);
+            }
+        }
+    }
+}
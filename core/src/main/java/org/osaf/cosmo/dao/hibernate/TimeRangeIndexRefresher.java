@@ -0,0 +1,217 @@
+package org.osaf.cosmo.dao.hibernate;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.jpa.QueryHints;
+import org.hibernate.query.NativeQuery;
+import org.osaf.cosmo.calendar.RecurrenceExpander;
+import org.osaf.cosmo.model.hibernate.EventStampInterceptor;
+import org.osaf.cosmo.model.hibernate.HibBaseEventStamp;
+import org.osaf.cosmo.model.hibernate.HibEventStamp;
+import org.osaf.cosmo.model.hibernate.HibEventTimeRangeIndex;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Background job that keeps the time-range index of recurring events
+ * in step with the rolling expansion horizon of
+ * {@link RecurrenceExpander#getMaxExpandDate()}.
+ * <p>
+ * The index end date of a recurring series with a COUNT or UNTIL
+ * beyond the horizon is the last occurrence before the horizon at the
+ * time the event was saved.  As time passes that end date falls behind
+ * and queries past it stop matching the series.  Each run recalculates
+ * the index of the recurring events whose indexed end date hasn't
+ * passed yet, in batches of <code>batchSize</code> events, each batch
+ * in its own transaction, and updates the index columns of those whose
+ * range changed.  Only the index columns are written, so the events'
+ * modified dates and entity tags are left alone.
+ * <p>
+ * Requires an <code>EntityManagerFactory</code> and the
+ * <code>PlatformTransactionManager</code> for it, and <code>init()</code>
+ * to be called before use.  If <code>intervalMillis</code> is greater
+ * than zero, <code>init()</code> schedules a run every
+ * <code>intervalMillis</code> on a daemon thread, which
+ * <code>destroy()</code> stops.
+ */
+public class TimeRangeIndexRefresher {
+    private static final Log log =
+        LogFactory.getLog(TimeRangeIndexRefresher.class);
+
+    public static final long DEFAULT_INTERVAL_MILLIS = TimeUnit.DAYS.toMillis(1);
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    private static final DateTimeFormatter DATE_FORMAT =
+        DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private long intervalMillis = DEFAULT_INTERVAL_MILLIS;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    private EntityManagerFactory entityManagerFactory;
+    private PlatformTransactionManager transactionManager;
+
+    private EntityManager entityManager;
+    private TransactionTemplate batchTransaction;
+    private ScheduledExecutorService scheduler;
+
+    private final EventStampInterceptor indexCalculator = new EventStampInterceptor();
+
+    /**
+     * Initializes the job, sanity checking required properties and
+     * scheduling the periodic run.
+     */
+    public void init() {
+        if (entityManagerFactory == null)
+            throw new IllegalStateException("entityManagerFactory is required");
+        if (transactionManager == null)
+            throw new IllegalStateException("transactionManager is required");
+        if (batchSize < 1)
+            throw new IllegalStateException("batchSize must be at least 1");
+
+        entityManager = SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory);
+        batchTransaction = new TransactionTemplate(transactionManager);
+
+        if (intervalMillis > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "cosmo-time-range-index-refresher");
+                t.setDaemon(true);
+                return t;
+            });
+            scheduler.scheduleWithFixedDelay(this::run, intervalMillis,
+                    intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops the periodic run.
+     */
+    public void destroy() {
+        if (scheduler != null)
+            scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    private void run() {
+        try {
+            int updated = refresh();
+            if (log.isDebugEnabled())
+                log.debug("refreshed time-range index of " + updated + " recurring events");
+        } catch (RuntimeException e) {
+            // keep the schedule going
+            log.error("error refreshing time-range indexes", e);
+        }
+    }
+
+    /**
+     * Recalculate the time-range index of all recurring events with a
+     * finite indexed end date that hasn't passed yet.
+     * @return number of events whose index was updated
+     */
+    public int refresh() {
+        // a day of slack covers floating end dates in any timezone
+        String from = LocalDate.now(ZoneOffset.UTC).minusDays(1).format(DATE_FORMAT);
+        long lastId = -1;
+        int updated = 0;
+        while (true) {
+            BatchResult result = refreshBatch(from, lastId);
+            if (result == null)
+                return updated;
+            updated += result.updated;
+            lastId = result.lastId;
+        }
+    }
+
+    private BatchResult refreshBatch(String from, long lastId) {
+        try {
+            return batchTransaction.execute(status -> {
+                List<HibEventStamp> stamps = entityManager.createQuery(
+                        "select es from HibEventStamp es where es.timeRangeIndex.isRecurring=true"
+                        + " and es.timeRangeIndex.endDate<>:infinity"
+                        + " and es.timeRangeIndex.endDate>=:from"
+                        + " and es.id>:lastId order by es.id", HibEventStamp.class)
+                    .setParameter("infinity", HibBaseEventStamp.TIME_INFINITY)
+                    .setParameter("from", from)
+                    .setParameter("lastId", lastId)
+                    .setHint(QueryHints.HINT_READONLY, true)
+                    .setMaxResults(batchSize)
+                    .getResultList();
+
+                if (stamps.isEmpty())
+                    return null;
+
+                BatchResult result = new BatchResult();
+                for (HibEventStamp stamp : stamps) {
+                    result.lastId = stamp.getId();
+                    if (refreshIndex(stamp))
+                        result.updated++;
+                }
+                return result;
+            });
+        } catch (PersistenceException e) {
+            throw HibernateSessionSupport.convertJpaAccessException(e);
+        }
+    }
+
+    private boolean refreshIndex(HibEventStamp stamp) {
+        HibEventTimeRangeIndex current = stamp.getTimeRangeIndex();
+        HibEventTimeRangeIndex index = indexCalculator.calculateEventStampIndexes(stamp);
+        if (index == null
+                || (Objects.equals(index.getStartDate(), current.getStartDate())
+                    && Objects.equals(index.getEndDate(), current.getEndDate())))
+            return false;
+
+        entityManager.createNativeQuery(
+                "update cosmo_event_stamp set startdate=:startDate, enddate=:endDate"
+                + " where stampid=:id")
+            .unwrap(NativeQuery.class)
+            .addSynchronizedEntityClass(HibEventStamp.class)
+            .setParameter("startDate", index.getStartDate())
+            .setParameter("endDate", index.getEndDate())
+            .setParameter("id", stamp.getId())
+            .executeUpdate();
+        return true;
+    }
+
+    private static class BatchResult {
+        long lastId;
+        int updated;
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public void setIntervalMillis(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setEntityManagerFactory(EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+}
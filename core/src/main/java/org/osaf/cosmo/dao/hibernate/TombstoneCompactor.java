@@ -0,0 +1,281 @@
+package org.osaf.cosmo.dao.hibernate;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Background job that purges the tombstones of items removed from
+ * collections, and the item change entries of the event log, once they
+ * are older than the retention window.
+ * <p>
+ * Tombstones let sync clients find out which items were removed since
+ * they last synced, but are otherwise never removed, so collections with
+ * heavy churn keep accumulating them.  Each run finds the collections
+ * with tombstones older than <code>retentionMillis</code> and purges
+ * them a collection at a time, at most <code>batchSize</code> tombstones
+ * per transaction.  Along with each batch the highest change sequence
+ * purged and the latest removal time are recorded for the collection,
+ * after which sync tokens and <code>loadChildren()</code> timestamps
+ * before them are rejected with a
+ * {@link org.osaf.cosmo.model.SyncTokenExpiredException} and the client
+ * has to sync the collection in full.
+ * <p>
+ * The event log records every change to the items of a collection and
+ * likewise grows without bound, so entries older than
+ * <code>retentionMillis</code> are purged too, at most
+ * <code>batchSize</code> per transaction.  Change records are no longer
+ * found for the purged period.
+ * <p>
+ * Requires an <code>EntityManagerFactory</code> and the
+ * <code>PlatformTransactionManager</code> for it, and <code>init()</code>
+ * to be called before use.  If <code>intervalMillis</code> is greater
+ * than zero, <code>init()</code> schedules a run every
+ * <code>intervalMillis</code> on a daemon thread, which
+ * <code>destroy()</code> stops.
+ */
+public class TombstoneCompactor {
+    private static final Log log =
+        LogFactory.getLog(TombstoneCompactor.class);
+
+    public static final long DEFAULT_RETENTION_MILLIS = TimeUnit.DAYS.toMillis(30);
+    public static final long DEFAULT_INTERVAL_MILLIS = TimeUnit.DAYS.toMillis(1);
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private long retentionMillis = DEFAULT_RETENTION_MILLIS;
+    private long intervalMillis = DEFAULT_INTERVAL_MILLIS;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    private EntityManagerFactory entityManagerFactory;
+    private PlatformTransactionManager transactionManager;
+
+    private EntityManager entityManager;
+    private TransactionTemplate batchTransaction;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Initializes the job, sanity checking required properties and
+     * scheduling the periodic run.
+     */
+    public void init() {
+        if (entityManagerFactory == null)
+            throw new IllegalStateException("entityManagerFactory is required");
+        if (transactionManager == null)
+            throw new IllegalStateException("transactionManager is required");
+        if (batchSize < 1)
+            throw new IllegalStateException("batchSize must be at least 1");
+        if (retentionMillis < 0)
+            throw new IllegalStateException("retentionMillis cannot be negative");
+
+        entityManager = SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory);
+        batchTransaction = new TransactionTemplate(transactionManager);
+
+        if (intervalMillis > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "cosmo-tombstone-compactor");
+                t.setDaemon(true);
+                return t;
+            });
+            scheduler.scheduleWithFixedDelay(this::run, intervalMillis,
+                    intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops the periodic run.
+     */
+    public void destroy() {
+        if (scheduler != null)
+            scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    private void run() {
+        try {
+            int purged = compact();
+            if (log.isDebugEnabled())
+                log.debug("purged " + purged + " expired tombstones");
+        } catch (RuntimeException e) {
+            // keep the schedule going
+            log.error("error purging expired tombstones", e);
+        }
+        try {
+            int purged = purgeEventLog();
+            if (log.isDebugEnabled())
+                log.debug("purged " + purged + " expired event log entries");
+        } catch (RuntimeException e) {
+            log.error("error purging expired event log entries", e);
+        }
+    }
+
+    /**
+     * Purge the item tombstones of all collections that are older than
+     * the retention window.
+     * @return number of tombstones purged
+     */
+    public int compact() {
+        Date cutoff = new Date(System.currentTimeMillis() - retentionMillis);
+        long lastCollectionId = -1;
+        int purged = 0;
+        while (true) {
+            List<Long> collectionIds = findCollections(cutoff, lastCollectionId);
+            if (collectionIds.isEmpty())
+                return purged;
+            for (Long collectionId : collectionIds) {
+                purged += compact(collectionId, cutoff);
+                lastCollectionId = collectionId;
+            }
+        }
+    }
+
+    private List<Long> findCollections(Date cutoff, long lastCollectionId) {
+        try {
+            return batchTransaction.execute(status -> entityManager.createQuery(
+                    "select distinct ts.item.id from HibItemTombstone ts"
+                    + " where ts.timestamp<:cutoff and ts.item.id>:lastId"
+                    + " order by ts.item.id", Long.class)
+                .setParameter("cutoff", cutoff)
+                .setParameter("lastId", lastCollectionId)
+                .setMaxResults(batchSize)
+                .getResultList());
+        } catch (PersistenceException e) {
+            throw HibernateSessionSupport.convertJpaAccessException(e);
+        }
+    }
+
+    private int compact(Long collectionId, Date cutoff) {
+        int purged = 0;
+        while (true) {
+            int batch = compactBatch(collectionId, cutoff);
+            purged += batch;
+            if (batch < batchSize)
+                return purged;
+        }
+    }
+
+    private int compactBatch(Long collectionId, Date cutoff) {
+        try {
+            return batchTransaction.execute(status -> {
+                List<Object[]> tombstones = entityManager.createQuery(
+                        "select ts.id, ts.changeSequence, ts.timestamp from HibItemTombstone ts"
+                        + " where ts.item.id=:collectionId and ts.timestamp<:cutoff"
+                        + " order by ts.id", Object[].class)
+                    .setParameter("collectionId", collectionId)
+                    .setParameter("cutoff", cutoff)
+                    .setMaxResults(batchSize)
+                    .getResultList();
+
+                if (tombstones.isEmpty())
+                    return 0;
+
+                List<Long> ids = new ArrayList<>(tombstones.size());
+                long maxSequence = 0;
+                Date maxTimestamp = null;
+                for (Object[] tombstone : tombstones) {
+                    ids.add((Long) tombstone[0]);
+                    if (tombstone[1] != null)
+                        maxSequence = Math.max(maxSequence, (Long) tombstone[1]);
+                    Date timestamp = (Date) tombstone[2];
+                    if (maxTimestamp == null || timestamp.after(maxTimestamp))
+                        maxTimestamp = timestamp;
+                }
+
+                // record the purge under the lock writers advance the
+                // sequence with, so no sync sees a partial purge
+                ItemDaoImpl.lockSyncState(entityManager, collectionId)
+                    .purgedThrough(maxSequence, maxTimestamp);
+
+                entityManager.createQuery("delete from HibItemTombstone ts where ts.id in (:ids)")
+                    .setParameter("ids", ids)
+                    .executeUpdate();
+                return ids.size();
+            });
+        } catch (PersistenceException e) {
+            throw HibernateSessionSupport.convertJpaAccessException(e);
+        }
+    }
+
+    /**
+     * Purge the event log entries that are older than the retention
+     * window.
+     * @return number of entries purged
+     */
+    public int purgeEventLog() {
+        Date cutoff = new Date(System.currentTimeMillis() - retentionMillis);
+        int purged = 0;
+        while (true) {
+            int batch = purgeEventLogBatch(cutoff);
+            purged += batch;
+            if (batch < batchSize)
+                return purged;
+        }
+    }
+
+    private int purgeEventLogBatch(Date cutoff) {
+        try {
+            return batchTransaction.execute(status -> {
+                List<Long> ids = entityManager.createQuery(
+                        "select e.id from HibEventLogEntry e"
+                        + " where e.entryDate<:cutoff order by e.id", Long.class)
+                    .setParameter("cutoff", cutoff)
+                    .setMaxResults(batchSize)
+                    .getResultList();
+
+                if (ids.isEmpty())
+                    return 0;
+
+                entityManager.createQuery("delete from HibEventLogEntry e where e.id in (:ids)")
+                    .setParameter("ids", ids)
+                    .executeUpdate();
+                return ids.size();
+            });
+        } catch (PersistenceException e) {
+            throw HibernateSessionSupport.convertJpaAccessException(e);
+        }
+    }
+
+    public long getRetentionMillis() {
+        return retentionMillis;
+    }
+
+    public void setRetentionMillis(long retentionMillis) {
+        this.retentionMillis = retentionMillis;
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public void setIntervalMillis(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setEntityManagerFactory(EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+}
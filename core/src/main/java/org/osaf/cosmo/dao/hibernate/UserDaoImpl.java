@@ -16,11 +16,14 @@
 package org.osaf.cosmo.dao.hibernate;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 import javax.persistence.PersistenceException;
+import javax.persistence.TypedQuery;
 import javax.validation.ConstraintViolation;
 import javax.validation.ConstraintViolationException;
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.FlushMode;
@@ -31,6 +34,7 @@ import org.osaf.cosmo.model.DuplicateUsernameException;
 import org.osaf.cosmo.model.User;
 import org.osaf.cosmo.model.hibernate.BaseModelObject;
 import org.osaf.cosmo.model.hibernate.HibUser;
+import org.osaf.cosmo.util.KeysetPage;
 
 /**
  * Implemtation of UserDao using Hibernate persistence objects.
@@ -138,6 +142,54 @@ public class UserDaoImpl extends HibernateSessionSupport implements UserDao {
         }
     }
 
+    /* (non-Javadoc)
+     * @see org.osaf.cosmo.dao.UserDao#getUsers(org.osaf.cosmo.model.User.SortType, boolean, java.lang.String, int)
+     */
+    public KeysetPage<User> getUsers(User.SortType sortType, boolean ascending,
+                                     String cursor, int pageSize) {
+        if (pageSize < 1)
+            throw new IllegalArgumentException("pageSize must be at least 1");
+        Keyset<User> keyset = getUserKeyset(sortType, ascending);
+
+        try {
+            TypedQuery<User> query = entityManager.createQuery(
+                    "select u from HibUser u"
+                    + (cursor != null ? " where " + keyset.after() : "")
+                    + " order by " + keyset.orderBy(), User.class)
+                .setMaxResults(pageSize + 1);
+            if (cursor != null)
+                keyset.bind(query, cursor);
+            setManualFlush(query);
+            return keyset.page(query.getResultList(), pageSize, List::copyOf);
+        } catch (PersistenceException e) {
+            currentSession().clear();
+            throw convertJpaAccessException(e);
+        }
+    }
+
+    // the id makes every sort unique, so that pages don't overlap
+    private Keyset<User> getUserKeyset(User.SortType sortType, boolean ascending) {
+        Keyset.Key<User> id = Keyset.Key.id("u.id", u -> getBaseModelObject(u).getId());
+        String name = sortType.getUrlString();
+        switch (sortType) {
+        case USERNAME:
+            return new Keyset<>(name, ascending, Keyset.Key.string("u.username", User::getUsername), id);
+        case EMAIL:
+            return new Keyset<>(name, ascending, Keyset.Key.string("u.email", User::getEmail), id);
+        case NAME:
+            return new Keyset<>(name, ascending,
+                    Keyset.Key.<User>string("coalesce(u.lastName, '')", u -> StringUtils.defaultString(u.getLastName())),
+                    Keyset.Key.<User>string("coalesce(u.firstName, '')", u -> StringUtils.defaultString(u.getFirstName())),
+                    id);
+        case CREATED:
+            return new Keyset<>(name, ascending, Keyset.Key.date("u.creationDate", User::getCreationDate), id);
+        case LAST_MODIFIED:
+            return new Keyset<>(name, ascending, Keyset.Key.date("u.modifiedDate", User::getModifiedDate), id);
+        default:
+            throw new IllegalArgumentException("cannot page users by " + sortType);
+        }
+    }
+
     public void removeUser(String username) {
         try {
             User user = findUserByUsername(username);
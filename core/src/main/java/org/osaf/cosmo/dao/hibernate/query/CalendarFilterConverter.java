@@ -15,7 +15,9 @@
  */
 package org.osaf.cosmo.dao.hibernate.query;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 import net.fortuna.ical4j.model.TimeZone;
 
@@ -28,6 +30,7 @@ import org.osaf.cosmo.calendar.query.TimeRangeFilter;
 import org.osaf.cosmo.model.CollectionItem;
 import org.osaf.cosmo.model.EventStamp;
 import org.osaf.cosmo.model.filter.EventStampFilter;
+import org.osaf.cosmo.model.filter.FilterCriteria;
 import org.osaf.cosmo.model.filter.ItemFilter;
 import org.osaf.cosmo.model.filter.NoteItemFilter;
 import org.osaf.cosmo.model.filter.Restrictions;
@@ -75,38 +78,143 @@ public class CalendarFilterConverter {
     /**
      * Translate CalendarFilter into an ItemFilter that can be used
      * as a first pass.  All items returned may or may not match the
-     * specified CalendarFilter.
-     * @param calendarparent calendar
+     * specified CalendarFilter, but no item that matches is left out,
+     * so the items returned must be evaluated against the CalendarFilter.
+     * <p>
+     * A VEVENT comp-filter selects master notes with an event stamp by
+     * UID, or else notes with an event stamp whose own indexed time range
+     * overlaps the requested one, masters of matching modifications
+     * included.  A
+     * VTODO comp-filter selects master notes without an event stamp,
+     * narrowed by SUMMARY and DESCRIPTION, which are the display name
+     * and body of the note.  Anything else, such as time ranges of
+     * tasks, other properties, parameters and sub-components, is left
+     * to the evaluation.
+     * @param calendar parent calendar
      * @param calendarFilter filter to translate
      * @return ItemFilter that can be used as a first-pass, meaning
      *         not all items are guaranteed to match the CalendarFilter.
-     *         Further processing is required.
+     *         Further processing is required.  null if the filter
+     *         can't be narrowed down from all items of the calendar.
      */
     public ItemFilter getFirstPassFilter(CollectionItem calendar, CalendarFilter calendarFilter) {
         ComponentFilter rootFilter = calendarFilter.getFilter();
         if(!COMP_VCALENDAR.equalsIgnoreCase(rootFilter.getName()))
             return null;
         
-        // only support single comp-filer
-        if(rootFilter.getComponentFilters().size()!=1)
+        // comp-filters that require the component to exist
+        ArrayList<ComponentFilter> eventFilters = new ArrayList<>();
+        ArrayList<ComponentFilter> taskFilters = new ArrayList<>();
+        for(Iterator it = rootFilter.getComponentFilters().iterator(); it.hasNext();) {
+            ComponentFilter compFilter = (ComponentFilter) it.next();
+            if(compFilter.getIsNotDefinedFilter()!=null)
+                continue;
+            if(COMP_VEVENT.equalsIgnoreCase(compFilter.getName()))
+                eventFilters.add(compFilter);
+            else if(COMP_VTODO.equalsIgnoreCase(compFilter.getName()))
+                taskFilters.add(compFilter);
+        }
+        
+        // a note is either an event or a task
+        if(eventFilters.isEmpty()==taskFilters.isEmpty())
             return null;
         
-        ComponentFilter compFilter = (ComponentFilter) rootFilter.getComponentFilters().get(0);
+        if(!eventFilters.isEmpty())
+            return createFirstPassEventFilter(calendar, eventFilters);
+        else
+            return createFirstPassTaskFilter(calendar, taskFilters);
+    }
+    
+    private ItemFilter createFirstPassEventFilter(CollectionItem collection,
+                                                  List<ComponentFilter> compFilters) {
+        NoteItemFilter filter = new NoteItemFilter();
+        filter.setParent(collection);
+        EventStampFilter eventFilter = new EventStampFilter();
+        filter.getStampFilters().add(eventFilter);
         
-        // handle finding VTODO for now
-        if (COMP_VTODO.equalsIgnoreCase(compFilter.getName()))
-            return createFirstPassTaskFilter(calendar);
-
-        return null;
+        TimeRangeFilter timeRange = null;
+        FilterCriteria uid = null;
+        for(ComponentFilter compFilter: compFilters) {
+            if(timeRange==null)
+                timeRange = compFilter.getTimeRangeFilter();
+            
+            // modifications have the UID of their master, but may have
+            // their own SUMMARY and DESCRIPTION
+            for(Iterator it = compFilter.getPropFilters().iterator(); it.hasNext();) {
+                PropertyFilter propFilter = (PropertyFilter) it.next();
+                if(PROP_UID.equalsIgnoreCase(propFilter.getName()) && uid==null)
+                    uid = getFirstPassTextCriteria(propFilter);
+            }
+        }
+        
+        if(uid!=null || timeRange==null) {
+            // the UID is only stored on the master, which is evaluated
+            // together with all of its modifications
+            filter.setIsModification(false);
+            filter.setIcalUid(uid);
+        } else {
+            // A modification can be moved outside the indexed time range
+            // of its master, so modifications match on their own index
+            // and bring in their master with the results.
+            eventFilter.setPeriod(timeRange.getPeriod());
+            if(timeRange.getTimezone()!=null)
+                eventFilter.setTimezone(new TimeZone(timeRange.getTimezone()));
+            // the evaluation expands recurring events itself
+            filter.setFilterProperty(EventStampFilter.PROPERTY_DO_TIMERANGE_SECOND_PASS, "false");
+        }
+        
+        return filter;
     }
     
-    private ItemFilter createFirstPassTaskFilter(CollectionItem collection) {
+    private ItemFilter createFirstPassTaskFilter(CollectionItem collection,
+                                                 List<ComponentFilter> compFilters) {
         NoteItemFilter filter = new NoteItemFilter();
         filter.setParent(collection);
         filter.setIsModification(false);
         filter.getStampFilters().add(new StampFilter(EventStamp.class, true));
+        
+        for(ComponentFilter compFilter: compFilters) {
+            for(Iterator it = compFilter.getPropFilters().iterator(); it.hasNext();) {
+                PropertyFilter propFilter = (PropertyFilter) it.next();
+                if(PROP_SUMMARY.equalsIgnoreCase(propFilter.getName())) {
+                    if(filter.getDisplayName()!=null)
+                        continue;
+                    // SUMMARY is missing exactly when the display name is
+                    if(propFilter.getIsNotDefinedFilter()!=null)
+                        filter.setDisplayName(Restrictions.isNull());
+                    else if(propFilter.getTextMatchFilter()==null)
+                        filter.setDisplayName(Restrictions.isNotNull());
+                    else
+                        filter.setDisplayName(getFirstPassTextCriteria(propFilter));
+                } else if(PROP_DESCRIPTION.equalsIgnoreCase(propFilter.getName())) {
+                    // a missing body has no attribute to compare to null
+                    if(filter.getBody()==null)
+                        filter.setBody(getFirstPassTextCriteria(propFilter));
+                }
+            }
+        }
+        
         return filter;
     }
+    
+    /**
+     * @return criteria that a property value matching the text-match
+     *         of a prop-filter must meet, null if there is none.  Like
+     *         patterns are at least as wide as the text-match, but a
+     *         negated like pattern isn't, so negated text-matches are
+     *         left to the evaluation.
+     */
+    private FilterCriteria getFirstPassTextCriteria(PropertyFilter propFilter) {
+        TextMatchFilter textMatch = propFilter.getTextMatchFilter();
+        if(propFilter.getIsNotDefinedFilter()!=null || textMatch==null
+                || textMatch.isNegateCondition())
+            return null;
+        
+        if(textMatch.isCaseless())
+            return Restrictions.ilike(textMatch.getValue());
+        else
+            return Restrictions.like(textMatch.getValue());
+    }
         
     private void handleCompFilter(ComponentFilter compFilter, NoteItemFilter itemFilter) {
         
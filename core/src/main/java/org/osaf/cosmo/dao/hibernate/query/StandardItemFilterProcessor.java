@@ -27,8 +27,8 @@ import javax.persistence.EntityManager;
 import javax.persistence.TypedQuery;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.osaf.cosmo.calendar.Instance;
-import org.osaf.cosmo.calendar.InstanceList;
+import org.osaf.cosmo.calendar.CompactInstanceList;
+import org.osaf.cosmo.calendar.ExpansionCache;
 import org.osaf.cosmo.calendar.RecurrenceExpander;
 import org.osaf.cosmo.model.ContentItem;
 import org.osaf.cosmo.model.EventStamp;
@@ -51,6 +51,7 @@ import org.osaf.cosmo.model.filter.NoteItemFilter;
 import org.osaf.cosmo.model.filter.NullExpression;
 import org.osaf.cosmo.model.filter.StampFilter;
 import org.osaf.cosmo.model.filter.TextAttributeFilter;
+import org.osaf.cosmo.model.hibernate.HibItem;
 import org.osaf.cosmo.model.hibernate.HibNoteItem;
 
 /**
@@ -62,8 +63,22 @@ public class StandardItemFilterProcessor implements ItemFilterProcessor {
 
     private static final Log log = LogFactory.getLog(StandardItemFilterProcessor.class);
 
+    private ExpansionCache expansionCache = new ExpansionCache();
+
     public StandardItemFilterProcessor() {}
 
+    public ExpansionCache getExpansionCache() {
+        return expansionCache;
+    }
+
+    /**
+     * @param expansionCache cache of recurring event expansions, which
+     *        may be shared with other processors
+     */
+    public void setExpansionCache(ExpansionCache expansionCache) {
+        this.expansionCache = expansionCache;
+    }
+
     /* (non-Javadoc)
      * @see org.osaf.cosmo.dao.hibernate.query.ItemFilterProcessor#processFilter(org.hibernate.Session, org.osaf.cosmo.model.filter.ItemFilter)
      */
@@ -234,19 +249,26 @@ public class StandardItemFilterProcessor implements ItemFilterProcessor {
                 appendWhere(whereBuf, "(es.timeRangeIndex.isRecurring=false and i.modifies is null)");
         }
 
-        // handle time range
+        // handle time range, binding the range as parameters so that the
+        // query string (and Hibernate's cached plan for it) only depends
+        // on the shape of the filter, not on the range requested
         if(filter.getPeriod()!=null) {
            whereBuf.append(" and ( ");
-           whereBuf.append("(es.timeRangeIndex.isFloating=true and es.timeRangeIndex.startDate < '").append(filter.getFloatEnd()).append("'");
-           whereBuf.append(" and es.timeRangeIndex.endDate > '").append(filter.getFloatStart()).append("')");
+           whereBuf.append("(es.timeRangeIndex.isFloating=true and es.timeRangeIndex.startDate < :floatEnd");
+           whereBuf.append(" and es.timeRangeIndex.endDate > :floatStart)");
 
-           whereBuf.append(" or (es.timeRangeIndex.isFloating=false and es.timeRangeIndex.startDate < '").append(filter.getUTCEnd()).append("'");
-           whereBuf.append(" and es.timeRangeIndex.endDate > '").append(filter.getUTCStart()).append("')");
+           whereBuf.append(" or (es.timeRangeIndex.isFloating=false and es.timeRangeIndex.startDate < :utcEnd");
+           whereBuf.append(" and es.timeRangeIndex.endDate > :utcStart)");
 
            // edge case where start==end
-           whereBuf.append(" or (es.timeRangeIndex.startDate=es.timeRangeIndex.endDate and (es.timeRangeIndex.startDate='").append(filter.getFloatStart()).append("' or es.timeRangeIndex.startDate='").append(filter.getUTCStart()).append("'))");
+           whereBuf.append(" or (es.timeRangeIndex.startDate=es.timeRangeIndex.endDate and (es.timeRangeIndex.startDate=:floatStart or es.timeRangeIndex.startDate=:utcStart))");
 
            whereBuf.append(")");
+
+           params.put("floatStart", filter.getFloatStart());
+           params.put("floatEnd", filter.getFloatEnd());
+           params.put("utcStart", filter.getUTCStart());
+           params.put("utcEnd", filter.getUTCEnd());
         }
     }
 
@@ -406,11 +428,20 @@ public class StandardItemFilterProcessor implements ItemFilterProcessor {
         }
 
         // Otherwise, expand the recurring item to determine if it actually
-        // occurs in the time range specified
-        RecurrenceExpander expander = new RecurrenceExpander();
-        InstanceList instances = expander.getOcurrences(eventStamp.getEvent(),
-                eventStamp.getExceptions(), filter.getPeriod().getStart(),
-                filter.getPeriod().getEnd(), filter.getTimezone());
+        // occurs in the time range specified, unless the expansion of this
+        // version of the item over the time range is cached
+        HibItem hibNote = (HibItem) note;
+        CompactInstanceList instances = expansionCache.get(hibNote.getId(), hibNote.getVersion(),
+                filter.getPeriod().getStart(), filter.getPeriod().getEnd(),
+                filter.getTimezone());
+        if (instances == null) {
+            RecurrenceExpander expander = new RecurrenceExpander();
+            instances = expander.getCompactOccurrences(eventStamp.getEvent(),
+                    eventStamp.getExceptions(), filter.getPeriod().getStart(),
+                    filter.getPeriod().getEnd(), filter.getTimezone());
+            expansionCache.put(hibNote.getId(), hibNote.getVersion(), filter.getPeriod().getStart(),
+                    filter.getPeriod().getEnd(), filter.getTimezone(), instances);
+        }
 
         // If recurring event occurs in range, add master unless the filter
         // is configured to not return the master
@@ -422,12 +453,12 @@ public class StandardItemFilterProcessor implements ItemFilterProcessor {
             return results;
 
         // Otherwise, add an occurence item for each occurrence
-        for (Entry<String, Instance> entry : instances.entrySet()) {
+        for (int i = 0; i < instances.size(); i++) {
             // Ignore overrides as they are separate items that should have
             // already been added
-            if (!entry.getValue().isOverridden()) {
+            if (!instances.isOverridden(i)) {
                 results.add(
-                    NoteOccurrenceUtil.createNoteOccurrence(entry.getValue().getRid(), note));
+                    NoteOccurrenceUtil.createNoteOccurrence(instances.getRid(i), note));
             }
         }
 
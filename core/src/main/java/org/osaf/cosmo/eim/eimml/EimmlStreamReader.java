@@ -15,6 +15,7 @@
  */
 package org.osaf.cosmo.eim.eimml;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.math.BigDecimal;
@@ -48,6 +49,17 @@ import org.osaf.cosmo.eim.TextField;
  * records. Clients can easily and efficiently retrieve all records in
  * the next set without requiring the rest of the stream to be
  * processed.
+ * <p>
+ * {@link #nextRecordSet()} reads a whole recordset into memory,
+ * including the values of blob and clob fields.  To process large
+ * streams in bounded memory, use the pull methods instead:
+ * {@link #nextRecordSetStart()} returns the next recordset without its
+ * records, {@link #nextRecord()} the next record of that recordset
+ * without its fields, and {@link #nextField()} the next field of that
+ * record.  The value of a blob or clob field returned by
+ * <code>nextField()</code> is read from the underlying stream as the
+ * client consumes it, and is only valid until the next call to any of
+ * the pull methods; unread data is skipped.
  */
 public class EimmlStreamReader implements EimmlConstants, XMLStreamConstants {
     private static final Log log = LogFactory.getLog(EimmlStreamReader.class);
@@ -60,6 +72,10 @@ public class EimmlStreamReader implements EimmlConstants, XMLStreamConstants {
     private String name;
     private Long hue;
 
+    private boolean inRecordSet;
+    private EimRecord currentRecord;
+    private ElementTextReader pendingValue;
+
     /**
      * Reads the document header and root element, positioning the
      * cursor just before the first recordset.
@@ -111,9 +127,17 @@ public class EimmlStreamReader implements EimmlConstants, XMLStreamConstants {
         return hue;
     }
 
-    /** */
+    /**
+     * Skips what is left of the current recordset, if any.
+     */
     public boolean hasNext()
         throws EimmlStreamException {
+        try {
+            skipRecordSet();
+        } catch (XMLStreamException e) {
+            close();
+            throw new EimmlStreamException("Error reading next recordset", e);
+        }
         if (xmlReader.isEndElement() &&
             xmlReader.getName().equals(QN_COLLECTION))
             return false;
@@ -144,6 +168,64 @@ public class EimmlStreamReader implements EimmlConstants, XMLStreamConstants {
         }
     }
 
+    /**
+     * Returns the next recordset in the stream without any records,
+     * skipping what is left of the current recordset. Returns null if
+     * there are no more recordsets in the stream.
+     */
+    public EimRecordSet nextRecordSetStart()
+        throws EimmlStreamException {
+        try {
+            skipRecordSet();
+            return readRecordSetStart();
+        } catch (XMLStreamException e) {
+            close();
+            throw new EimmlStreamException("Error reading next recordset", e);
+        }
+    }
+
+    /**
+     * Returns the next record of the current recordset without any
+     * fields, skipping what is left of the current record. Returns null
+     * if there are no more records in the recordset.
+     */
+    public EimRecord nextRecord()
+        throws EimmlStreamException {
+        if (! inRecordSet)
+            throw new EimmlStreamException("nextRecord called outside a recordset");
+        try {
+            skipRecord();
+            return readRecordStart();
+        } catch (XMLStreamException e) {
+            close();
+            throw new EimmlStreamException("Error reading next record", e);
+        }
+    }
+
+    /**
+     * Returns the next field of the current record, which is also
+     * added to the record. Returns null if there are no more fields
+     * in the record.
+     */
+    public EimRecordField nextField()
+        throws EimmlStreamException {
+        if (currentRecord == null)
+            throw new EimmlStreamException("nextField called outside a record");
+        try {
+            return readNextField(false);
+        } catch (XMLStreamException e) {
+            close();
+            throw new EimmlStreamException("Error reading next field", e);
+        } catch (RuntimeException e) {
+            close();
+            Throwable t = e.getCause();
+            if(t!=null && t instanceof XMLStreamException)
+                throw new EimmlStreamException("Error reading next field", t);
+
+            throw e;
+        }
+    }
+
     /** */
     public void close() {
         try {
@@ -204,6 +286,42 @@ public class EimmlStreamReader implements EimmlConstants, XMLStreamConstants {
     // leaves the cursor positioned at either the next recordset
     // element or the collection end element
     private EimRecordSet readNextRecordSet()
+        throws EimmlStreamException, XMLStreamException {
+        skipRecordSet();
+
+        EimRecordSet recordset = readRecordSetStart();
+        if (recordset == null)
+            return null;
+
+        EimRecord record;
+        while ((record = readRecordStart()) != null) {
+            while (readNextField(true) != null)
+                ;
+            recordset.addRecord(record);
+        }
+
+        return recordset;
+    }
+
+    // moves past the rest of the current recordset, if any
+    private void skipRecordSet()
+        throws EimmlStreamException, XMLStreamException {
+        while (inRecordSet) {
+            skipRecord();
+            readRecordStart();
+        }
+    }
+
+    // moves past the rest of the current record, if any
+    private void skipRecord()
+        throws EimmlStreamException, XMLStreamException {
+        while (currentRecord != null)
+            readNextField(true);
+    }
+
+    // leaves the cursor positioned at the first record element or
+    // the recordset end element
+    private EimRecordSet readRecordSetStart()
         throws EimmlStreamException, XMLStreamException {
         // finish stream on </collection>
         if (xmlReader.isEndElement() &&
@@ -236,32 +354,25 @@ public class EimmlStreamReader implements EimmlConstants, XMLStreamConstants {
 
         // move to next <record> or </recordset>
         nextTag();
-
-        while (xmlReader.hasNext()) {
-            // complete on </recordset>
-            if (xmlReader.isEndElement() &&
-                xmlReader.getName().equals(QN_RECORDSET))
-                break;
-
-            EimRecord record = readNextRecord();
-            if (record == null)
-                throw new EimmlValidationException("Expected another record");
-
-            recordset.addRecord(record);
-
-            // move to next <record> or </recordset>
-            nextTag();
-        }
-
-        // move to next <recordset> or </collection>
-        nextTag();
+        inRecordSet = true;
 
         return recordset;
     }
 
-    // leaves cursor on </record>
-    private EimRecord readNextRecord()
+    // leaves the cursor positioned at the first field element or the
+    // record end element, or if there are no more records at either
+    // the next recordset element or the collection end element
+    private EimRecord readRecordStart()
         throws EimmlStreamException, XMLStreamException {
+        // complete on </recordset>
+        if (xmlReader.isEndElement() &&
+            xmlReader.getName().equals(QN_RECORDSET)) {
+            // move to next <recordset> or </collection>
+            nextTag();
+            inRecordSet = false;
+            return null;
+        }
+
         // begin at <record>
         if (! (xmlReader.isStartElement() &&
                xmlReader.getLocalName().equals(EL_RECORD)))
@@ -284,78 +395,187 @@ public class EimmlStreamReader implements EimmlConstants, XMLStreamConstants {
 
         // move to next field element or </record>
         nextTag();
+        currentRecord = record;
 
-        while (xmlReader.hasNext()) {
-            // complete on </record>
-            if (xmlReader.isEndElement() &&
-                xmlReader.getLocalName().equals(EL_RECORD))
-                break;
-
-            if (! xmlReader.isStartElement())
-                throw new EimmlValidationException("Expected field element but got " + xmlReader.getName());
-
-            String name = xmlReader.getLocalName();
-
-            boolean isKey = BooleanUtils.
-                toBoolean(xmlReader.getAttributeValue(NS_CORE, ATTR_KEY));
-            boolean isEmpty = BooleanUtils.
-                toBoolean(xmlReader.getAttributeValue(null, ATTR_EMPTY));
-            boolean isMissing = BooleanUtils.
-                toBoolean(xmlReader.getAttributeValue(null, ATTR_MISSING));
-            String type = xmlReader.getAttributeValue(NS_CORE, ATTR_TYPE);
-            if (StringUtils.isBlank(type))
-                throw new EimmlValidationException(xmlReader.getName() + " element requires " + ATTR_TYPE + " attribute");
-
-            String text = xmlReader.getElementText();
-            if (isEmpty) {
-                if (! (type.equals(TYPE_TEXT) || type.equals(TYPE_CLOB) ||
-                       type.equals(TYPE_BLOB)))
-                    throw new EimmlValidationException("Invalid empty attribute on field element " + xmlReader.getName());
-                if (text != null)
-//                     if (log.isDebugEnabled())
-//                         log.debug("emptying non-null text for field " + xmlReader.getName());
-                text = "";
-            } else if (text.isEmpty())
-                text = null;
-
-            EimRecordField field = null;
-            if (type.equals(TYPE_BYTES)) {
-                byte[] value = EimmlTypeConverter.toBytes(text);
-                field = new BytesField(name, value);
-            } else if (type.equals(TYPE_TEXT)) {
-                String value = EimmlTypeConverter.toText(text,
-                                                         documentEncoding);
-                field = new TextField(name, value);
-            } else if (type.equals(TYPE_BLOB)) {
-                InputStream value = EimmlTypeConverter.toBlob(text);
-                field = new BlobField(name, value);
-            } else if (type.equals(TYPE_CLOB)) {
-                Reader value = EimmlTypeConverter.toClob(text);
-                field = new ClobField(name, value);
-            } else if (type.equals(TYPE_INTEGER)) {
-                Integer value = EimmlTypeConverter.toInteger(text);
-                field = new IntegerField(name, value);
-            } else if (type.equals(TYPE_DATETIME)) {
-                Calendar value = EimmlTypeConverter.toDateTime(text);
-                field = new DateTimeField(name, value);
-            } else if (type.equals(TYPE_DECIMAL)) {
-                BigDecimal value = EimmlTypeConverter.toDecimal(text);
-                field = new DecimalField(name, value);
-            } else {
-                throw new EimmlValidationException("Unrecognized field type");
-            }
+        return record;
+    }
 
-            field.setMissing(isMissing);
+    // leaves the cursor positioned at the next field element or the
+    // record end element, or if there are no more fields at either the
+    // next record element or the recordset end element.  If the field
+    // is a blob or clob that isn't to be materialized, the cursor is
+    // left in the field element for the value to be read from.
+    private EimRecordField readNextField(boolean materialize)
+        throws EimmlStreamException, XMLStreamException {
+        if (pendingValue != null) {
+            pendingValue.skipToEnd();
+            pendingValue = null;
+            // move to next field element or </record>
+            nextTag();
+        }
 
-            if (isKey)
-                record.addKeyField(field);
-            else
-                record.addField(field);
+        // complete on </record>
+        if (xmlReader.isEndElement() &&
+            xmlReader.getLocalName().equals(EL_RECORD)) {
+            // move to next <record> or </recordset>
+            nextTag();
+            currentRecord = null;
+            return null;
+        }
 
+        if (! xmlReader.isStartElement())
+            throw new EimmlValidationException("Expected field element but got " + xmlReader.getName());
+
+        String name = xmlReader.getLocalName();
+
+        boolean isKey = BooleanUtils.
+            toBoolean(xmlReader.getAttributeValue(NS_CORE, ATTR_KEY));
+        boolean isEmpty = BooleanUtils.
+            toBoolean(xmlReader.getAttributeValue(null, ATTR_EMPTY));
+        boolean isMissing = BooleanUtils.
+            toBoolean(xmlReader.getAttributeValue(null, ATTR_MISSING));
+        String type = xmlReader.getAttributeValue(NS_CORE, ATTR_TYPE);
+        if (StringUtils.isBlank(type))
+            throw new EimmlValidationException(xmlReader.getName() + " element requires " + ATTR_TYPE + " attribute");
+
+        EimRecordField field = null;
+        if (! materialize && ! isEmpty &&
+            (type.equals(TYPE_BLOB) || type.equals(TYPE_CLOB))) {
+            field = readStreamedField(name, type);
+        } else {
+            field = readField(name, type, isEmpty);
             // move to next field element or </record>
             nextTag();
         }
 
-        return record;
+        field.setMissing(isMissing);
+
+        if (isKey)
+            currentRecord.addKeyField(field);
+        else
+            currentRecord.addField(field);
+
+        return field;
+    }
+
+    // leaves the cursor on the field end element
+    private EimRecordField readField(String name,
+                                     String type,
+                                     boolean isEmpty)
+        throws EimmlStreamException, XMLStreamException {
+        String text = xmlReader.getElementText();
+        if (isEmpty) {
+            if (! (type.equals(TYPE_TEXT) || type.equals(TYPE_CLOB) ||
+                   type.equals(TYPE_BLOB)))
+                throw new EimmlValidationException("Invalid empty attribute on field element " + xmlReader.getName());
+            if (text != null)
+//                 if (log.isDebugEnabled())
+//                     log.debug("emptying non-null text for field " + xmlReader.getName());
+            text = "";
+        } else if (text.isEmpty())
+            text = null;
+
+        if (type.equals(TYPE_BYTES)) {
+            byte[] value = EimmlTypeConverter.toBytes(text);
+            return new BytesField(name, value);
+        } else if (type.equals(TYPE_TEXT)) {
+            String value = EimmlTypeConverter.toText(text,
+                                                     documentEncoding);
+            return new TextField(name, value);
+        } else if (type.equals(TYPE_BLOB)) {
+            InputStream value = EimmlTypeConverter.toBlob(text);
+            return new BlobField(name, value);
+        } else if (type.equals(TYPE_CLOB)) {
+            Reader value = EimmlTypeConverter.toClob(text);
+            return new ClobField(name, value);
+        } else if (type.equals(TYPE_INTEGER)) {
+            Integer value = EimmlTypeConverter.toInteger(text);
+            return new IntegerField(name, value);
+        } else if (type.equals(TYPE_DATETIME)) {
+            Calendar value = EimmlTypeConverter.toDateTime(text);
+            return new DateTimeField(name, value);
+        } else if (type.equals(TYPE_DECIMAL)) {
+            BigDecimal value = EimmlTypeConverter.toDecimal(text);
+            return new DecimalField(name, value);
+        }
+        throw new EimmlValidationException("Unrecognized field type");
+    }
+
+    // leaves the cursor on the first event of the value, or if there
+    // is no value at the next field element or the record end element
+    private EimRecordField readStreamedField(String name,
+                                             String type)
+        throws XMLStreamException {
+        Reader value = null;
+        if (xmlReader.next() == END_ELEMENT) {
+            // move to next field element or </record>
+            nextTag();
+        } else {
+            pendingValue = new ElementTextReader();
+            value = pendingValue;
+        }
+
+        if (type.equals(TYPE_BLOB))
+            return new BlobField(name, EimmlTypeConverter.toBlob(value));
+        return new ClobField(name, value);
+    }
+
+    /**
+     * Reads the text content of the current element from the
+     * underlying stream, leaving the cursor on the element's end tag.
+     */
+    private class ElementTextReader extends Reader {
+        private int offset = 0;
+        private boolean done = false;
+
+        @Override
+        public int read(char[] cbuf, int off, int len)
+            throws IOException {
+            if (len == 0)
+                return 0;
+            try {
+                while (! done) {
+                    int event = xmlReader.getEventType();
+                    if (event == CHARACTERS || event == CDATA ||
+                        event == SPACE) {
+                        int remaining = xmlReader.getTextLength() - offset;
+                        if (remaining > 0) {
+                            int n = xmlReader.getTextCharacters(offset, cbuf, off,
+                                                                Math.min(len, remaining));
+                            offset += n;
+                            return n;
+                        }
+                    } else if (event == END_ELEMENT) {
+                        done = true;
+                        break;
+                    } else if (event == START_ELEMENT) {
+                        throw new IOException("Unexpected element " + xmlReader.getName() + " in field value");
+                    }
+                    // skip comments and processing instructions
+                    xmlReader.next();
+                    offset = 0;
+                }
+            } catch (XMLStreamException e) {
+                throw new IOException("Error reading field value", e);
+            }
+            return -1;
+        }
+
+        void skipToEnd()
+            throws EimmlStreamException, XMLStreamException {
+            if (done)
+                return;
+            while (xmlReader.getEventType() != END_ELEMENT) {
+                if (xmlReader.getEventType() == START_ELEMENT)
+                    throw new EimmlValidationException("Unexpected element " + xmlReader.getName() + " in field value");
+                xmlReader.next();
+            }
+            done = true;
+        }
+
+        @Override
+        public void close() {
+            // the value is skipped when the next field is read
+        }
     }
 }
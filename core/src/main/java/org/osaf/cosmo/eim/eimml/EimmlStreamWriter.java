@@ -15,7 +15,11 @@
  */
 package org.osaf.cosmo.eim.eimml;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
 import java.io.Writer;
+import java.util.Arrays;
 
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamConstants;
@@ -36,12 +40,19 @@ import org.osaf.cosmo.eim.EimRecordSet;
 import org.osaf.cosmo.eim.IntegerField;
 import org.osaf.cosmo.eim.TextField;
 
+import static java.util.Base64.getEncoder;
+
 /**
+ * Writes EIM recordsets as an EIMML stream.
+ *
+ * Blob and clob field values are copied to the stream a chunk at a
+ * time, so large values are never held in memory as a whole.
  */
 public class EimmlStreamWriter implements EimmlConstants, XMLStreamConstants {
     private static final Log log = LogFactory.getLog(EimmlStreamWriter.class);
     private static final XMLOutputFactory XML_OUTPUT_FACTORY =
         XMLOutputFactory.newInstance();
+    private static final int CHUNK_SIZE = 8192;
 
     private boolean writeCharacterData = false;
     private final XMLStreamWriter xmlWriter;
@@ -225,19 +236,21 @@ public class EimmlStreamWriter implements EimmlConstants, XMLStreamConstants {
     private void doWriteField(EimRecordField field,
                               boolean isKey)
         throws EimmlStreamException, XMLStreamException {
+        if (field instanceof BlobField) {
+            doWriteBlobField((BlobField) field, isKey);
+            return;
+        }
+        if (field instanceof ClobField) {
+            doWriteClobField((ClobField) field, isKey);
+            return;
+        }
+
         String value = null;
         String type = null;
-        if (field instanceof BlobField) {
-            value = EimmlTypeConverter.
-                fromBlob(((BlobField)field).getBlob());
-            type = TYPE_BLOB;
-        } else if (field instanceof BytesField) {
+        if (field instanceof BytesField) {
             value = EimmlTypeConverter.
                 fromBytes(((BytesField)field).getBytes());
             type = TYPE_BYTES;
-        } else if (field instanceof ClobField) {
-            value = EimmlTypeConverter.fromClob(((ClobField)field).getClob());
-            type = TYPE_CLOB;
         } else if (field instanceof DateTimeField) {
             value = EimmlTypeConverter.
                 fromDateTime(((DateTimeField)field).getCalendar());
@@ -260,14 +273,7 @@ public class EimmlStreamWriter implements EimmlConstants, XMLStreamConstants {
             throw new EimmlStreamException("Unrecognized field type");
         }
 
-        xmlWriter.writeStartElement(field.getRecord().getNamespace(),
-                                    field.getName());
-        xmlWriter.writeAttribute(NS_CORE, ATTR_TYPE, type);
-        if (isKey)
-            xmlWriter.writeAttribute(NS_CORE, ATTR_KEY, "true");
-
-        if(field.isMissing())
-            xmlWriter.writeAttribute(ATTR_MISSING, "true");
+        doWriteFieldStart(field, type, isKey);
 
         if (value != null) {
             if (isEmptyableType(type) && value.isEmpty())
@@ -283,6 +289,113 @@ public class EimmlStreamWriter implements EimmlConstants, XMLStreamConstants {
         xmlWriter.writeEndElement();
     }
 
+    // copies the value to the stream a chunk at a time rather than
+    // converting it to a string first
+    private void doWriteClobField(ClobField field,
+                                  boolean isKey)
+        throws EimmlStreamException, XMLStreamException {
+        doWriteFieldStart(field, TYPE_CLOB, isKey);
+
+        Reader value = field.getClob();
+        if (value != null) {
+            try {
+                char[] chunk = new char[CHUNK_SIZE];
+                int n = fill(value, chunk);
+                if (n == 0)
+                    xmlWriter.writeAttribute(ATTR_EMPTY, "true");
+                while (n > 0) {
+                    doWriteCharacters(chunk, n);
+                    n = fill(value, chunk);
+                }
+            } catch (IOException e) {
+                throw new EimmlConversionException("Unable to read clob value of field " + field.getName(), e);
+            }
+        }
+
+        xmlWriter.writeEndElement();
+    }
+
+    // Base64 encodes the value a chunk at a time; chunks are a
+    // multiple of three bytes so that they encode without padding
+    private void doWriteBlobField(BlobField field,
+                                  boolean isKey)
+        throws EimmlStreamException, XMLStreamException {
+        doWriteFieldStart(field, TYPE_BLOB, isKey);
+
+        InputStream value = field.getBlob();
+        if (value != null) {
+            try {
+                byte[] chunk = new byte[CHUNK_SIZE / 4 * 3];
+                int n = fill(value, chunk);
+                if (n == 0)
+                    xmlWriter.writeAttribute(ATTR_EMPTY, "true");
+                while (n > 0) {
+                    byte[] encoded = getEncoder().encode(n == chunk.length ? chunk : Arrays.copyOf(chunk, n));
+                    char[] chars = new char[encoded.length];
+                    for (int i = 0; i < encoded.length; i++)
+                        chars[i] = (char) encoded[i];
+                    doWriteCharacters(chars, chars.length);
+                    n = fill(value, chunk);
+                }
+            } catch (IOException e) {
+                throw new EimmlConversionException("Unable to read blob value of field " + field.getName(), e);
+            }
+        }
+
+        xmlWriter.writeEndElement();
+    }
+
+    private void doWriteFieldStart(EimRecordField field,
+                                   String type,
+                                   boolean isKey)
+        throws XMLStreamException {
+        xmlWriter.writeStartElement(field.getRecord().getNamespace(),
+                                    field.getName());
+        xmlWriter.writeAttribute(NS_CORE, ATTR_TYPE, type);
+        if (isKey)
+            xmlWriter.writeAttribute(NS_CORE, ATTR_KEY, "true");
+
+        if(field.isMissing())
+            xmlWriter.writeAttribute(ATTR_MISSING, "true");
+    }
+
+    private void doWriteCharacters(char[] text,
+                                   int len)
+        throws XMLStreamException {
+        if (writeCharacterData)
+            xmlWriter.writeCData(new String(text, 0, len));
+        else
+            xmlWriter.writeCharacters(text, 0, len);
+    }
+
+    // reads until the buffer is full or the stream ends
+    private static int fill(Reader in,
+                            char[] buf)
+        throws IOException {
+        int total = 0;
+        while (total < buf.length) {
+            int n = in.read(buf, total, buf.length - total);
+            if (n < 0)
+                break;
+            total += n;
+        }
+        return total;
+    }
+
+    // reads until the buffer is full or the stream ends
+    private static int fill(InputStream in,
+                            byte[] buf)
+        throws IOException {
+        int total = 0;
+        while (total < buf.length) {
+            int n = in.read(buf, total, buf.length - total);
+            if (n < 0)
+                break;
+            total += n;
+        }
+        return total;
+    }
+
     private boolean isEmptyableType(String type) {
         return (type.equals(TYPE_TEXT) ||
                 type.equals(TYPE_CLOB) ||
@@ -121,6 +121,16 @@ public class EimmlTypeConverter implements EimmlConstants {
         return new ByteArrayInputStream(decodeBase64String(value));
     }
 
+    /**
+     * Returns the given value as an input stream that decodes the
+     * Base64 encoded characters as they are read from the reader.
+     */
+    public static InputStream toBlob(Reader value) {
+        if (value == null)
+            return null;
+        return getDecoder().wrap(new AsciiInputStream(value));
+    }
+
     /**
      * Returns the given value as a Base64 encoded string.
      */
@@ -229,6 +239,45 @@ public class EimmlTypeConverter implements EimmlConstants {
         return new DecimalFormat(pattern.toString(), new DecimalFormatSymbols(Locale.US)).format(value);
     }
 
+    /**
+     * Presents the characters of a reader as bytes. Only suitable for
+     * US-ASCII data such as Base64 encoded values.
+     */
+    private static class AsciiInputStream extends InputStream {
+        private final Reader reader;
+        private char[] buffer = new char[0];
+
+        AsciiInputStream(Reader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public int read()
+            throws IOException {
+            int c = reader.read();
+            return c < 0 ? -1 : (c & 0xff);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len)
+            throws IOException {
+            if (len == 0)
+                return 0;
+            if (buffer.length < len)
+                buffer = new char[len];
+            int n = reader.read(buffer, 0, len);
+            for (int i = 0; i < n; i++)
+                b[off + i] = (byte) buffer[i];
+            return n;
+        }
+
+        @Override
+        public void close()
+            throws IOException {
+            reader.close();
+        }
+    }
+
     private static byte[] decodeBase64String(String value) {
         return getDecoder().decode(value.getBytes());
     }
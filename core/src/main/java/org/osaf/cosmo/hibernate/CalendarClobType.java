@@ -27,6 +27,7 @@ import org.hibernate.HibernateException;
 import org.hibernate.engine.jdbc.CharacterStream;
 import org.hibernate.engine.jdbc.ClobProxy;
 import org.hibernate.engine.jdbc.internal.CharacterStreamImpl;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
 import org.hibernate.type.AbstractSingleColumnStandardBasicType;
 import org.hibernate.type.descriptor.WrapperOptions;
 import org.hibernate.type.descriptor.java.AbstractTypeDescriptor;
@@ -36,6 +37,7 @@ import org.osaf.cosmo.calendar.util.CalendarUtils;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.io.Serializable;
 import java.net.URISyntaxException;
 import java.sql.Clob;
 import java.sql.SQLException;
@@ -67,39 +69,117 @@ public class CalendarClobType extends AbstractSingleColumnStandardBasicType<Cale
         return new CalendarMutabilityPlan();
     }
 
+    /**
+     * The mutability plan only gives snapshots, so when merging a
+     * detached calendar into the session we need a real copy.
+     */
+    @Override
+    protected Calendar getReplacement(Calendar original, Calendar target, SharedSessionContractImplementor session) {
+        if (original == null)
+            return null;
+        if (target != null && isEqual(original, target))
+            return original;
+        return copyCalendar(original);
+    }
+
     public Class returnedClass() {
         return Calendar.class;
     }
 
+    /**
+     * Snapshot of a calendar's state that Hibernate keeps for dirty
+     * checking, holding just the serialized form rather than a deep
+     * copy of the component tree.  It has no components or properties,
+     * and is only meant to be compared by its serialized form.
+     * Hibernate doesn't take snapshots in read-only sessions.
+     */
+    public static class CalendarSnapshot extends Calendar {
+        private final String serialized;
+
+        CalendarSnapshot(String serialized) {
+            this.serialized = serialized;
+        }
+
+        public String getSerialized() {
+            return serialized;
+        }
+
+        @Override
+        public String toString() {
+            return serialized;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Calendar && serialized.equals(obj.toString());
+        }
+
+        @Override
+        public int hashCode() {
+            return serialized.hashCode();
+        }
+    }
+
     private static class CalendarMutabilityPlan extends MutableMutabilityPlan<Calendar> {
         @Override
         protected Calendar deepCopyNotNull(Calendar value) {
-            final Calendar original = (Calendar) value;
-            try {
-                final Calendar copy = new Calendar(original);
-                // TODO: Remove the below availability mangling when the underlying iCal bug is fixed
-                final ComponentList vAvailabilities = copy.getComponents(Component.VAVAILABILITY);
-                final ComponentList originalAvailabilities = original.getComponents(Component.VAVAILABILITY);
-                for (int i = 0; i < vAvailabilities.size(); i++) {
-                    VAvailability vAvailability = (VAvailability) vAvailabilities.get(i);
-                    if (vAvailability.getAvailable().isEmpty()) {
-                        final VAvailability originalAvailability = (VAvailability) originalAvailabilities.get(i);
-                        // Check it's the same availability we're mangling
-                        assert originalAvailability.getProperty(Property.UID).equals(vAvailability.getProperty(Property.UID));
-                        vAvailability.getAvailable().addAll(originalAvailability.getAvailable());
-                    } else {
-                        log.warn("VAvailability.copy() has been fixed - remove the workaround in CalendarClobType.deepCopy()");
-                    }
+            if (value instanceof CalendarSnapshot)
+                return value;
+            return new CalendarSnapshot(value.toString());
+        }
+
+        /**
+         * Cache the serialized form, which is smaller than the calendar
+         * and always a faithful copy.
+         */
+        @Override
+        public Serializable disassemble(Calendar value) {
+            return value == null ? null : value.toString();
+        }
+
+        @Override
+        public Calendar assemble(Serializable cached) {
+            return cached == null ? null : parse((String) cached);
+        }
+    }
+
+    private static Calendar copyCalendar(Calendar original) {
+        try {
+            final Calendar copy = new Calendar(original);
+            // TODO: Remove the below availability mangling when the underlying iCal bug is fixed
+            final ComponentList vAvailabilities = copy.getComponents(Component.VAVAILABILITY);
+            final ComponentList originalAvailabilities = original.getComponents(Component.VAVAILABILITY);
+            for (int i = 0; i < vAvailabilities.size(); i++) {
+                VAvailability vAvailability = (VAvailability) vAvailabilities.get(i);
+                if (vAvailability.getAvailable().isEmpty()) {
+                    final VAvailability originalAvailability = (VAvailability) originalAvailabilities.get(i);
+                    // Check it's the same availability we're mangling
+                    assert originalAvailability.getProperty(Property.UID).equals(vAvailability.getProperty(Property.UID));
+                    vAvailability.getAvailable().addAll(originalAvailability.getAvailable());
+                } else {
+                    log.warn("VAvailability.copy() has been fixed - remove the workaround in CalendarClobType.copyCalendar()");
                 }
-                return copy;
-            } catch (IOException e) {
-                throw new HibernateException("Unable to read original calendar", e);
-            } catch (ParseException e) {
-                log.error("parse error with following ics:" + original.toString());
-                throw new HibernateException("Unable to parse original calendar", e);
-            } catch (URISyntaxException e) {
-                throw new HibernateException("Unknown syntax exception", e);
             }
+            return copy;
+        } catch (IOException e) {
+            throw new HibernateException("Unable to read original calendar", e);
+        } catch (ParseException e) {
+            log.error("parse error with following ics:" + original.toString());
+            throw new HibernateException("Unable to parse original calendar", e);
+        } catch (URISyntaxException e) {
+            throw new HibernateException("Unknown syntax exception", e);
+        }
+    }
+
+    private static Calendar parse(String string) {
+        try {
+            return CalendarUtils.parseCalendar(string);
+        } catch (ParserException e) {
+            log.error("error parsing icalendar from db", e);
+            // shouldn't happen because we always persist valid data
+            throw new HibernateException("cannot parse icalendar stream");
+        } catch (IOException ioe) {
+            throw new HibernateException("cannot read icalendar stream");
         }
     }
 
@@ -115,15 +195,26 @@ public class CalendarClobType extends AbstractSingleColumnStandardBasicType<Cale
 
         @Override
         public Calendar fromString(String string) {
-            try {
-                return CalendarUtils.parseCalendar(string);
-            } catch (ParserException e) {
-                log.error("error parsing icalendar from db", e);
-                // shouldn't happen because we always persist valid data
-                throw new HibernateException("cannot parse icalendar stream");
-            } catch (IOException ioe) {
-                throw new HibernateException("cannot read icalendar stream");
-            }
+            return parse(string);
+        }
+
+        /**
+         * Compare by serialized form when either side is a snapshot.
+         */
+        @Override
+        public boolean areEqual(Calendar one, Calendar another) {
+            if (one == another)
+                return true;
+            if (one == null || another == null)
+                return false;
+            if (one instanceof CalendarSnapshot || another instanceof CalendarSnapshot)
+                return one.toString().equals(another.toString());
+            return one.equals(another);
+        }
+
+        @Override
+        public int extractHashCode(Calendar value) {
+            return value.toString().hashCode();
         }
 
         @Override
@@ -0,0 +1,45 @@
+package org.osaf.cosmo.model;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Changes to the children of a collection since a sync token: the uids
+ * of the items added or changed, the uids of the items removed, and the
+ * token to present next time.
+ */
+public class CollectionChanges {
+
+    private final SyncToken syncToken;
+    private final Set<String> changedUids;
+    private final Set<String> removedUids;
+
+    public CollectionChanges(SyncToken syncToken,
+                             Set<String> changedUids,
+                             Set<String> removedUids) {
+        this.syncToken = syncToken;
+        this.changedUids = Collections.unmodifiableSet(changedUids);
+        this.removedUids = Collections.unmodifiableSet(removedUids);
+    }
+
+    /**
+     * @return token for the state of the collection the changes lead to
+     */
+    public SyncToken getSyncToken() {
+        return syncToken;
+    }
+
+    /**
+     * @return uids of the items added to or changed in the collection
+     */
+    public Set<String> getChangedUids() {
+        return changedUids;
+    }
+
+    /**
+     * @return uids of the items removed from the collection
+     */
+    public Set<String> getRemovedUids() {
+        return removedUids;
+    }
+}
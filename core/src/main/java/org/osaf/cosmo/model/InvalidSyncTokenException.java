@@ -0,0 +1,15 @@
+package org.osaf.cosmo.model;
+
+/**
+ * An exception indicating that a sync token presented for a collection
+ * can't be used to sync it, for example because it is malformed or
+ * belongs to another collection.  The client has to sync the whole
+ * collection again.
+ */
+public class InvalidSyncTokenException extends RuntimeException {
+
+    /** */
+    public InvalidSyncTokenException(String message) {
+        super(message);
+    }
+}
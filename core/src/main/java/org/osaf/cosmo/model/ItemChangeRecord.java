@@ -72,4 +72,15 @@ public class ItemChangeRecord {
         
         throw new IllegalStateException("Unknown action " + action);
     }
+
+    public static String fromAction(Action action) {
+        switch (action) {
+        case ITEM_ADDED:
+            return "ItemAdded";
+        case ITEM_REMOVED:
+            return "ItemRemoved";
+        default:
+            return "ItemUpdated";
+        }
+    }
 }
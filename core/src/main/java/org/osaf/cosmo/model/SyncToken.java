@@ -0,0 +1,100 @@
+package org.osaf.cosmo.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position in the change sequence of a collection, handed to sync
+ * clients as an opaque string.  A client presents the token it was
+ * given last to get only the changes made to the collection since.
+ * <p>
+ * The string form binds the token to its collection, so a token of one
+ * collection can't be used to sync another.
+ */
+public final class SyncToken {
+
+    private static final String VERSION = "1";
+
+    private final String collectionUid;
+    private final long sequence;
+
+    public SyncToken(String collectionUid, long sequence) {
+        if (collectionUid == null)
+            throw new IllegalArgumentException("collectionUid cannot be null");
+        if (sequence < 0)
+            throw new IllegalArgumentException("sequence cannot be negative");
+        this.collectionUid = collectionUid;
+        this.sequence = sequence;
+    }
+
+    /**
+     * @return uid of the collection the token belongs to
+     */
+    public String getCollectionUid() {
+        return collectionUid;
+    }
+
+    /**
+     * @return change sequence of the collection the token stands for
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return opaque string form of the token
+     */
+    public String format() {
+        String value = VERSION + ":" + sequence + ":" + collectionUid;
+        return Base64.getUrlEncoder().withoutPadding()
+            .encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parse the string form of a token of a collection.
+     * @param token string form of the token
+     * @param collection collection the token is presented for
+     * @return token
+     * @throws InvalidSyncTokenException if the string isn't a token of
+     *         the collection
+     */
+    public static SyncToken parse(String token, CollectionItem collection) {
+        String value;
+        try {
+            value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidSyncTokenException("malformed sync token " + token);
+        }
+
+        String[] parts = value.split(":", 3);
+        if (parts.length != 3 || !VERSION.equals(parts[0]))
+            throw new InvalidSyncTokenException("malformed sync token " + token);
+        if (!parts[2].equals(collection.getUid()))
+            throw new InvalidSyncTokenException("sync token " + token
+                    + " does not belong to collection " + collection.getUid());
+
+        try {
+            return new SyncToken(parts[2], Long.parseLong(parts[1]));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidSyncTokenException("malformed sync token " + token);
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof SyncToken))
+            return false;
+        SyncToken other = (SyncToken) obj;
+        return sequence == other.sequence && collectionUid.equals(other.collectionUid);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * collectionUid.hashCode() + Long.hashCode(sequence);
+    }
+
+    @Override
+    public String toString() {
+        return format();
+    }
+}
@@ -0,0 +1,14 @@
+package org.osaf.cosmo.model;
+
+/**
+ * An exception indicating that a sync token predates the tombstones kept
+ * for its collection, so the items removed since it was handed out are
+ * no longer known.  The client has to sync the whole collection again.
+ */
+public class SyncTokenExpiredException extends InvalidSyncTokenException {
+
+    /** */
+    public SyncTokenExpiredException(String message) {
+        super(message);
+    }
+}
@@ -57,4 +57,10 @@ public class Restrictions {
     public static FilterCriteria isNull() {
         return new NullExpression();
     }
+    
+    public static FilterCriteria isNotNull() {
+        NullExpression exp = new NullExpression();
+        exp.setNegated(true);
+        return exp;
+    }
 }
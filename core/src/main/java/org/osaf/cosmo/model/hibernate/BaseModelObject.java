@@ -21,7 +21,9 @@ import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.MappedSuperclass;
 import javax.persistence.Column;
-import javax.persistence.TableGenerator;
+
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 
 import org.apache.commons.lang.builder.ToStringBuilder;
 import org.apache.commons.lang.builder.ToStringStyle;
@@ -32,14 +34,25 @@ import org.apache.commons.lang.builder.ToStringStyle;
 @MappedSuperclass
 public abstract class BaseModelObject implements Serializable {
 
+    // Same table and row as the JPA @TableGenerator this replaces, but ids
+    // are allocated 50 at a time (so inserts aren't serialized on the
+    // generator row and can be batched).  The pooled-lo optimizer hands
+    // out the ids from the stored value upwards, which is safe on
+    // databases populated with an allocation size of 1.
     @Id
     @GeneratedValue(generator="generatorNameCosmo")
-    @TableGenerator(
+    @GenericGenerator(
         name = "generatorNameCosmo",
-        initialValue = 50,
-        pkColumnValue = "default",
-        allocationSize = 1,
-        table = "hibernate_sequences")
+        strategy = "org.hibernate.id.enhanced.TableGenerator",
+        parameters = {
+            @Parameter(name = "table_name", value = "hibernate_sequences"),
+            @Parameter(name = "segment_column_name", value = "sequence_name"),
+            @Parameter(name = "value_column_name", value = "next_val"),
+            @Parameter(name = "segment_value", value = "default"),
+            @Parameter(name = "initial_value", value = "51"),
+            @Parameter(name = "increment_size", value = "50"),
+            @Parameter(name = "optimizer", value = "pooled-lo")
+        })
     @Column(name="id", nullable=false) // oracle doesn't like using unique=true
     private Long id;
 
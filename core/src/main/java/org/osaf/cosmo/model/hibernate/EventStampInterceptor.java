@@ -24,20 +24,31 @@ import org.osaf.cosmo.calendar.util.Dates;
 import org.osaf.cosmo.model.EventStamp;
 
 import java.io.Serializable;
+import java.util.Set;
 
 /**
  * Hibernate Interceptor that updates BaseEventStamp timeRangeIndexes.
  */
 public class EventStampInterceptor extends EmptyInterceptor {
 
+    /** properties that contribute to the time-range index */
+    private static final Set<String> TEMPORAL_PROPERTIES = Set.of(
+            "DTSTART", "DTEND", "DURATION", "RRULE", "RDATE", "EXDATE",
+            "EXRULE", "RECURRENCE-ID");
 
     @Override
     public boolean onFlushDirty(Object object, Serializable id, Object[] currentState, Object[] previousState, String[] propertyNames, Type[] types) {
         if(! (object instanceof HibBaseEventStamp))
             return false;
 
-        // calculate time-range-index
         HibBaseEventStamp es = (HibBaseEventStamp) object;
+
+        // skip the (possibly expensive) recalculation when nothing that
+        // feeds the index changed, eg. only the SUMMARY was edited
+        if(canReuseIndex(es, currentState, previousState, propertyNames))
+            return false;
+
+        // calculate time-range-index
         HibEventTimeRangeIndex index = calculateEventStampIndexes(es);
 
         if(index==null)
@@ -78,12 +89,84 @@ public class EventStampInterceptor extends EmptyInterceptor {
         return false;
     }
 
+    /**
+     * Determine if the existing TimeRangeIndex of a dirty BaseEventStamp
+     * is still valid, which is the case when the calendar changed but none
+     * of its date, recurrence or timezone properties did.
+     */
+    private boolean canReuseIndex(HibBaseEventStamp eventStamp, Object[] currentState,
+                                  Object[] previousState, String[] propertyNames) {
+        // no snapshot (eg. update of a detached instance)
+        if(previousState==null || eventStamp.getTimeRangeIndex()==null
+                || eventStamp.getTimeRangeIndex().getStartDate()==null)
+            return false;
+
+        // the index of a modification without an end date depends on the
+        // duration of the master, which isn't part of this calendar
+        if(eventStamp instanceof HibEventExceptionStamp && eventStamp.getEndDate()==null)
+            return false;
+
+        for ( int i=0; i < propertyNames.length; i++ ) {
+            if ( "eventCalendar".equals( propertyNames[i] ) )
+                return !hasTemporalChange(previousState[i], currentState[i]);
+        }
+
+        return false;
+    }
+
+    /**
+     * Compare two calendars (or their serialized form) on the properties
+     * that are used to calculate the TimeRangeIndex: DTSTART, DTEND,
+     * DURATION, RRULE, RDATE, EXDATE, EXRULE, RECURRENCE-ID and the
+     * VTIMEZONE components.
+     */
+    static boolean hasTemporalChange(Object previous, Object current) {
+        if(previous==null || current==null)
+            return previous!=current;
+        return !temporalFingerprint(previous.toString()).equals(
+                temporalFingerprint(current.toString()));
+    }
+
+    /**
+     * Reduce a serialized calendar to the lines relevant to the
+     * TimeRangeIndex: component boundaries, the temporal properties
+     * and everything inside a VTIMEZONE.
+     */
+    static String temporalFingerprint(String calendar) {
+        StringBuilder fingerprint = new StringBuilder();
+        // unfold continuation lines first
+        String unfolded = calendar.replaceAll("\\r?\\n[ \\t]", "");
+        boolean inTimezone = false;
+        for(String line: unfolded.split("\\r?\\n")) {
+            String name = propertyName(line);
+            if("BEGIN".equals(name) || "END".equals(name)) {
+                if(line.toUpperCase().endsWith(":VTIMEZONE"))
+                    inTimezone = "BEGIN".equals(name);
+                fingerprint.append(line).append('\n');
+            } else if(inTimezone || TEMPORAL_PROPERTIES.contains(name)) {
+                fingerprint.append(line).append('\n');
+            }
+        }
+        return fingerprint.toString();
+    }
+
+    private static String propertyName(String line) {
+        int end = line.length();
+        int colon = line.indexOf(':');
+        int semicolon = line.indexOf(';');
+        if(colon >= 0)
+            end = colon;
+        if(semicolon >= 0 && semicolon < end)
+            end = semicolon;
+        return line.substring(0, end).toUpperCase();
+    }
+
     /**
      * Update the TimeRangeIndex property of the BaseEventStamp.
      * For recurring events, this means calculating the first start date
      * and the last end date for all occurences.
      */
-    protected HibEventTimeRangeIndex calculateEventStampIndexes(HibBaseEventStamp eventStamp) {
+    public HibEventTimeRangeIndex calculateEventStampIndexes(HibBaseEventStamp eventStamp) {
         Date startDate = eventStamp.getStartDate();
         Date endDate = eventStamp.getEndDate();
 
@@ -0,0 +1,91 @@
+package org.osaf.cosmo.model.hibernate;
+
+import java.util.Objects;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import org.hibernate.annotations.NamedQueries;
+import org.hibernate.annotations.NamedQuery;
+
+/**
+ * Window of the free/busy index of a calendar collection.  The busy
+ * periods of the collection's events are indexed from
+ * <code>fromTime</code> to <code>untilTime</code>, with floating times
+ * resolved in the collection's timezone at the time the index was
+ * built, so the index only answers queries within the window and while
+ * the collection's timezone is unchanged.
+ * <p>
+ * See {@link org.osaf.cosmo.dao.hibernate.FreeBusyIndexer}.
+ */
+@Entity
+@Table(name="cosmo_busy_index")
+@NamedQueries({
+    @NamedQuery(name = "busyIndex.delete.by.collections", query = "delete from HibBusyIndexState s where s.collectionId in (:collectionIds)")
+})
+public class HibBusyIndexState {
+
+    @Id
+    @Column(name = "collectionid", nullable = false)
+    private Long collectionId;
+
+    /** Time in millis from which busy periods are indexed */
+    @Column(name = "fromtime", nullable = false)
+    private long fromTime;
+
+    /** Time in millis until which busy periods are indexed */
+    @Column(name = "untiltime", nullable = false)
+    private long untilTime;
+
+    /** TZID of the collection's timezone, null for none */
+    @Column(name = "tzid", length=255)
+    private String timezone;
+
+    public HibBusyIndexState() {
+    }
+
+    public HibBusyIndexState(Long collectionId) {
+        this.collectionId = collectionId;
+    }
+
+    public Long getCollectionId() {
+        return collectionId;
+    }
+
+    public long getFromTime() {
+        return fromTime;
+    }
+
+    public long getUntilTime() {
+        return untilTime;
+    }
+
+    public String getTimezone() {
+        return timezone;
+    }
+
+    /**
+     * Start a new window.
+     * @param fromTime time in millis from which busy periods are indexed
+     * @param untilTime time in millis until which busy periods are indexed
+     * @param timezone TZID of the collection's timezone, null for none
+     */
+    public void reset(long fromTime, long untilTime, String timezone) {
+        this.fromTime = fromTime;
+        this.untilTime = untilTime;
+        this.timezone = timezone;
+    }
+
+    /**
+     * @param start start of the range in millis
+     * @param end end of the range in millis
+     * @param timezone TZID of the collection's current timezone
+     * @return true if the index can answer a query over the range
+     */
+    public boolean covers(long start, long end, String timezone) {
+        return fromTime <= start && end <= untilTime
+            && Objects.equals(this.timezone, timezone);
+    }
+}
@@ -0,0 +1,80 @@
+package org.osaf.cosmo.model.hibernate;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import org.hibernate.annotations.NamedQueries;
+import org.hibernate.annotations.NamedQuery;
+
+/**
+ * A period of busy time of an item in a calendar collection, as found
+ * in the free/busy index.  The instances of recurring events are
+ * expanded over the window of the index, and the periods of an item
+ * merged per free/busy type.  Times are UTC millis.
+ * <p>
+ * The item is referenced by id only, so removing items doesn't have to
+ * wait for the index; the periods of an item that has a
+ * {@link HibStaleBusyItem} are not used.
+ */
+@Entity
+@Table(name="cosmo_busy_period", indexes = {
+        @Index(name = "idx_busy_range", columnList = "collectionid, starttime"),
+        @Index(name = "idx_busy_item", columnList = "collectionid, itemid")
+})
+@NamedQueries({
+    @NamedQuery(name = "busyPeriod.by.collection.range", query = "select p from HibBusyPeriod p where p.collectionId=:collectionId and p.startTime<:end and p.endTime>:start and not exists (select s.id from HibStaleBusyItem s where s.collectionId=p.collectionId and s.itemId=p.itemId)"),
+    @NamedQuery(name = "busyPeriod.delete.by.collection.item", query = "delete from HibBusyPeriod p where p.collectionId=:collectionId and p.itemId=:itemId"),
+    @NamedQuery(name = "busyPeriod.delete.by.collections", query = "delete from HibBusyPeriod p where p.collectionId in (:collectionIds)")
+})
+public class HibBusyPeriod extends BaseModelObject {
+
+    @Column(name = "collectionid", nullable = false)
+    private Long collectionId;
+
+    @Column(name = "itemid", nullable = false)
+    private Long itemId;
+
+    /** FBTYPE of the period */
+    @Column(name = "fbtype", length=32, nullable = false)
+    private String type;
+
+    @Column(name = "starttime", nullable = false)
+    private long startTime;
+
+    @Column(name = "endtime", nullable = false)
+    private long endTime;
+
+    public HibBusyPeriod() {
+    }
+
+    public HibBusyPeriod(Long collectionId, Long itemId, String type,
+                         long startTime, long endTime) {
+        this.collectionId = collectionId;
+        this.itemId = itemId;
+        this.type = type;
+        this.startTime = startTime;
+        this.endTime = endTime;
+    }
+
+    public Long getCollectionId() {
+        return collectionId;
+    }
+
+    public Long getItemId() {
+        return itemId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getEndTime() {
+        return endTime;
+    }
+}
@@ -23,6 +23,7 @@ import javax.persistence.Embeddable;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
@@ -38,10 +39,14 @@ import org.osaf.cosmo.model.Item;
  * used to store extra attributes in the many-to-many
  * association of collection<-->item.  Extra information
  * that is stored include the date the item was added
- * to the collection.
+ * to the collection and the change sequence of the collection
+ * when the item was last added or changed.
  */
 @Entity
-@Table(name="cosmo_collection_item")
+@Table(
+    name="cosmo_collection_item",
+    indexes={@Index(name="idx_collitem_changeseq", columnList="collectionid, changeseq")}
+)
 //@AssociationOverrides({
 //@AssociationOverride(name="primaryKey.collection", joinColumns = @JoinColumn(name="collectionid")),
 //@AssociationOverride(name="primaryKey.item", joinColumns = @JoinColumn(name="itemid"))
@@ -55,6 +60,9 @@ public class HibCollectionItemDetails implements CollectionItemDetails {
     @Type(type="long_timestamp")
     private final Date creationDate = new Date();
 
+    @Column(name = "changeseq")
+    private Long changeSequence;
+
     public HibCollectionItemDetails() {}
 
     public HibCollectionItemDetails(CollectionItem collection,
@@ -83,6 +91,20 @@ public class HibCollectionItemDetails implements CollectionItemDetails {
         return creationDate;
     }
 
+    /**
+     * @return change sequence of the collection when the item was last
+     *         added or changed, null if that happened before the
+     *         sequence was kept
+     * @see HibCollectionSyncState
+     */
+    public Long getChangeSequence() {
+        return changeSequence;
+    }
+
+    public void setChangeSequence(Long changeSequence) {
+        this.changeSequence = changeSequence;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if(obj==null)
@@ -0,0 +1,56 @@
+package org.osaf.cosmo.model.hibernate;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import org.hibernate.annotations.NamedQueries;
+import org.hibernate.annotations.NamedQuery;
+
+/**
+ * Lease on a collection, held by one node (and thread) until it is
+ * released or it expires.  Used by
+ * {@link org.osaf.cosmo.service.lock.DatabaseLockManager} to serialise
+ * collection updates across nodes sharing a database.
+ */
+@Entity
+@Table(name="cosmo_collection_lock")
+@NamedQueries({
+    @NamedQuery(name = "collectionLock.takeOver.expired", query = "update HibCollectionLock l set l.owner=:owner, l.expires=:expires where l.collectionUid=:uid and l.expires<:now"),
+    @NamedQuery(name = "collectionLock.delete.by.uid.owner", query = "delete from HibCollectionLock l where l.collectionUid=:uid and l.owner=:owner")
+})
+public class HibCollectionLock {
+
+    @Id
+    @Column(name = "collectionuid", length=255, nullable = false)
+    private String collectionUid;
+
+    @Column(name = "owner", length=255, nullable = false)
+    private String owner;
+
+    /** Time in millis at which the lease expires */
+    @Column(name = "expires", nullable = false)
+    private long expires;
+
+    public HibCollectionLock() {
+    }
+
+    public HibCollectionLock(String collectionUid, String owner, long expires) {
+        this.collectionUid = collectionUid;
+        this.owner = owner;
+        this.expires = expires;
+    }
+
+    public String getCollectionUid() {
+        return collectionUid;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public long getExpires() {
+        return expires;
+    }
+}
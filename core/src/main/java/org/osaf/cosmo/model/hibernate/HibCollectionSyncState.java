@@ -0,0 +1,103 @@
+package org.osaf.cosmo.model.hibernate;
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import org.hibernate.annotations.NamedQueries;
+import org.hibernate.annotations.NamedQuery;
+import org.hibernate.annotations.Type;
+
+/**
+ * Change sequence of a collection.  The sequence is advanced for every
+ * item added to, changed in or removed from the collection, and the
+ * membership row or tombstone of the item records the value it was
+ * advanced to.  Writers advance it holding a row lock until they
+ * commit, so changes to a collection become visible in sequence order.
+ * <p>
+ * Tombstones older than the retention window are purged (see
+ * {@link org.osaf.cosmo.dao.hibernate.TombstoneCompactor}); the highest
+ * change sequence and removal time purged are kept, as sync tokens and
+ * timestamps before them can no longer tell which items were removed.
+ * <p>
+ * Kept apart from the collection itself so that advancing it neither
+ * bumps the collection's version nor invalidates cached items.
+ */
+@Entity
+@Table(name="cosmo_collection_sync")
+@NamedQueries({
+    @NamedQuery(name = "collectionSync.uids.by.collection", query = "select i.uid from HibCollectionItemDetails d join d.primaryKey.item i where d.primaryKey.collection.id=:collectionId"),
+    @NamedQuery(name = "collectionSync.changedUids.by.collection.sequence", query = "select i.uid from HibCollectionItemDetails d join d.primaryKey.item i where d.primaryKey.collection.id=:collectionId and d.changeSequence>:since and d.changeSequence<=:until"),
+    @NamedQuery(name = "collectionSync.removedUids.by.collection.sequence", query = "select ts.itemUid from HibItemTombstone ts where ts.item.id=:collectionId and ts.changeSequence>:since and ts.changeSequence<=:until"),
+    @NamedQuery(name = "collectionSync.delete.by.collections", query = "delete from HibCollectionSyncState s where s.collectionId in (:collectionIds)"),
+    @NamedQuery(name = "collectionSync.insert.missing", query = "insert into HibCollectionSyncState (collectionId, changeSequence, purgedSequence) select c.id, 0L, 0L from HibCollectionItem c where not exists (select s.collectionId from HibCollectionSyncState s where s.collectionId=c.id)"),
+    @NamedQuery(name = "collectionSync.insert.missing.by.collection", query = "insert into HibCollectionSyncState (collectionId, changeSequence, purgedSequence) select c.id, 0L, 0L from HibCollectionItem c where c.id=:collectionId and not exists (select s.collectionId from HibCollectionSyncState s where s.collectionId=c.id)")
+})
+public class HibCollectionSyncState {
+
+    @Id
+    @Column(name = "collectionid", nullable = false)
+    private Long collectionId;
+
+    @Column(name = "changeseq", nullable = false)
+    private long changeSequence;
+
+    @Column(name = "purgedseq", nullable = false)
+    private long purgedSequence;
+
+    @Column(name = "purgedtime")
+    @Type(type="long_timestamp")
+    private Date purgedTimestamp;
+
+    public HibCollectionSyncState() {
+    }
+
+    public HibCollectionSyncState(Long collectionId) {
+        this.collectionId = collectionId;
+    }
+
+    public Long getCollectionId() {
+        return collectionId;
+    }
+
+    public long getChangeSequence() {
+        return changeSequence;
+    }
+
+    /**
+     * @return highest change sequence of the purged tombstones
+     */
+    public long getPurgedSequence() {
+        return purgedSequence;
+    }
+
+    /**
+     * @return latest removal time of the purged tombstones, null if none
+     *         were purged
+     */
+    public Date getPurgedTimestamp() {
+        return purgedTimestamp;
+    }
+
+    /**
+     * Record that tombstones up to a change sequence and removal time
+     * were purged.
+     * @param sequence highest change sequence of the purged tombstones
+     * @param timestamp latest removal time of the purged tombstones
+     */
+    public void purgedThrough(long sequence, Date timestamp) {
+        purgedSequence = Math.max(purgedSequence, sequence);
+        if (purgedTimestamp == null || timestamp.after(purgedTimestamp))
+            purgedTimestamp = timestamp;
+    }
+
+    /**
+     * @return the advanced change sequence
+     */
+    public long nextChangeSequence() {
+        return ++changeSequence;
+    }
+}
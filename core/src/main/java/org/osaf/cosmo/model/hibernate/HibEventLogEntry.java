@@ -19,22 +19,35 @@ import java.util.Date;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.Index;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.NamedQueries;
 import org.hibernate.annotations.NamedQuery;
 import org.hibernate.annotations.Type;
 
 /**
  * Persistent event log entry.
+ * <p>
+ * Item change entries (see {@link org.osaf.cosmo.model.ItemChangeRecord})
+ * have the collection id in <code>id1</code>, the item id in
+ * <code>id2</code>, the item uid in <code>uid1</code>, the item display
+ * name in <code>strval1</code> and who made the change in
+ * <code>strval2</code>.
  */
 @Entity
-@Table(name="cosmo_event_log")
-@NamedQuery(
-    name = "logEntry.by.collection.date",
-    query = "from HibEventLogEntry e where id1=:parentId and entryDate between :startDate and :endDate"
+@Table(
+    name="cosmo_event_log",
+    indexes={@Index(name="idx_eventlog_entrydate", columnList="entrydate")}
 )
+@NamedQueries({
+    @NamedQuery(name = "logEntry.by.collection.date", query = "from HibEventLogEntry e where id1=:parentId and entryDate between :startDate and :endDate order by entryDate, id"),
+    @NamedQuery(name = "logEntry.delete.by.collections", query = "delete from HibEventLogEntry e where id1 in (:parentIds)")
+})
 public class HibEventLogEntry extends BaseModelObject {
 
+    public static final String AUTH_TYPE_USER = "user";
+
     @Column(name = "entrydate")
     @Type(type="long_timestamp")
     private Date entryDate = new Date();
@@ -24,6 +24,7 @@ import org.hibernate.annotations.CascadeType;
 import org.hibernate.annotations.NamedQueries;
 import org.hibernate.annotations.NamedQuery;
 import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 import org.hibernate.validator.constraints.Length;
 import org.osaf.cosmo.model.*;
 
@@ -55,6 +56,7 @@ import java.util.Map.Entry;
         discriminatorType=DiscriminatorType.STRING,
         length=16)
 @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@NaturalIdCache
 @NamedQueries({
     @NamedQuery(name = "item.by.ownerId.parentId.name", query = "select item from HibItem item join item.parentDetails pd where item.owner.id=:ownerid and pd.primaryKey.collection.id=:parentid and item.name=:name"),
     @NamedQuery(name = "item.by.ownerId.nullParent.name", query = "select item from HibItem item where item.owner.id=:ownerid and size(item.parentDetails)=0 and item.name=:name"),
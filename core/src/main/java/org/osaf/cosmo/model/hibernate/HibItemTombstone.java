@@ -35,6 +35,9 @@ public class HibItemTombstone extends HibTombstone implements ItemTombstone {
     @Column(name="itemuid", length=255)
     private String itemUid = null;
 
+    @Column(name="changeseq")
+    private Long changeSequence = null;
+
     public HibItemTombstone() {
     }
     
@@ -57,6 +60,19 @@ public class HibItemTombstone extends HibTombstone implements ItemTombstone {
         this.itemUid = itemUid;
     }
     
+    /**
+     * @return change sequence of the collection when the item was
+     *         removed from it
+     * @see HibCollectionSyncState
+     */
+    public Long getChangeSequence() {
+        return changeSequence;
+    }
+
+    public void setChangeSequence(Long changeSequence) {
+        this.changeSequence = changeSequence;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == null || !(obj instanceof ItemTombstone))
@@ -0,0 +1,48 @@
+package org.osaf.cosmo.model.hibernate;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import org.hibernate.annotations.NamedQueries;
+import org.hibernate.annotations.NamedQuery;
+
+/**
+ * Marks the indexed busy periods of an item in a calendar collection as
+ * out of date, because the item was added to, changed in or removed
+ * from the collection since it was indexed.  Until the item is indexed
+ * again free/busy queries evaluate it directly.
+ */
+@Entity
+@Table(name="cosmo_busy_stale", indexes = {
+        @Index(name = "idx_busystale_item", columnList = "collectionid, itemid")
+})
+@NamedQueries({
+    @NamedQuery(name = "staleBusyItem.itemIds.by.collection", query = "select distinct s.itemId from HibStaleBusyItem s where s.collectionId=:collectionId"),
+    @NamedQuery(name = "staleBusyItem.delete.by.collections", query = "delete from HibStaleBusyItem s where s.collectionId in (:collectionIds)")
+})
+public class HibStaleBusyItem extends BaseModelObject {
+
+    @Column(name = "collectionid", nullable = false)
+    private Long collectionId;
+
+    @Column(name = "itemid", nullable = false)
+    private Long itemId;
+
+    public HibStaleBusyItem() {
+    }
+
+    public HibStaleBusyItem(Long collectionId, Long itemId) {
+        this.collectionId = collectionId;
+        this.itemId = itemId;
+    }
+
+    public Long getCollectionId() {
+        return collectionId;
+    }
+
+    public Long getItemId() {
+        return itemId;
+    }
+}
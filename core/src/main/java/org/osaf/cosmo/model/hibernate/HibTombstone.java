@@ -22,6 +22,7 @@ import javax.persistence.DiscriminatorColumn;
 import javax.persistence.DiscriminatorType;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
+import javax.persistence.Index;
 import javax.persistence.Inheritance;
 import javax.persistence.InheritanceType;
 import javax.persistence.JoinColumn;
@@ -39,7 +40,13 @@ import org.osaf.cosmo.model.Tombstone;
  */
 @Entity
 @Inheritance(strategy=InheritanceType.SINGLE_TABLE)
-@Table(name="cosmo_tombstones")
+@Table(
+    name="cosmo_tombstones",
+    indexes={
+        @Index(name="idx_tombstone_changeseq", columnList="itemid, changeseq"),
+        @Index(name="idx_tombstone_removedate", columnList="removedate")
+    }
+)
 @DiscriminatorColumn(
         name="tombstonetype",
         discriminatorType=DiscriminatorType.STRING,
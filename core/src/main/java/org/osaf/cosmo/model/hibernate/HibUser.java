@@ -25,6 +25,7 @@ import org.hibernate.annotations.CascadeType;
 import org.hibernate.annotations.NamedQueries;
 import org.hibernate.annotations.NamedQuery;
 import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 import org.hibernate.validator.constraints.Email;
 import org.hibernate.validator.constraints.Length;
 import org.osaf.cosmo.model.CollectionItem;
@@ -54,6 +55,7 @@ indexes = {
         @Index(name="idx_activationid", columnList="activationid")
 })
 @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@NaturalIdCache
 @NamedQueries({
     @NamedQuery(name = "user.byUsername", query = "from HibUser where username=:username"),
     @NamedQuery(name = "user.byUsername.ignorecase", query = "from HibUser where lower(username)=lower(:username)"),
@@ -0,0 +1,55 @@
+package org.osaf.cosmo.server;
+
+import java.util.Map;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Exposes {@link StatusSnapshot}s of the server, including the timings
+ * recorded in a <code>MeterRegistry</code>, as an MBean for the
+ * <code>MBeanExporter</code> to pick up.
+ */
+@ManagedResource(objectName = "cosmo:name=Status",
+                 description = "Cosmo server status")
+public class StatusMonitor {
+
+    private final MeterRegistry meterRegistry;
+
+    public StatusMonitor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @return snapshot of the server status now
+     */
+    public StatusSnapshot snapshot() {
+        return new StatusSnapshot(meterRegistry);
+    }
+
+    @ManagedOperation(description = "Server status as name=value lines")
+    public String report() {
+        return snapshot().toString();
+    }
+
+    @ManagedAttribute(description = "Call counts and latencies (ms) of service and DAO methods")
+    public Map<String, Number> getMetrics() {
+        return snapshot().getMetrics();
+    }
+
+    @ManagedAttribute(description = "Used JVM memory (KB)")
+    public long getUsedMemory() {
+        return snapshot().getUsedMemory();
+    }
+
+    @ManagedAttribute(description = "Max JVM memory (KB)")
+    public long getMaxMemory() {
+        return snapshot().getMaxMemory();
+    }
+
+    public MeterRegistry getMeterRegistry() {
+        return meterRegistry;
+    }
+}
@@ -15,25 +15,85 @@
  */
 package org.osaf.cosmo.server;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.osaf.cosmo.aop.MetricsInterceptor;
+
 /**
  * Encapsulates a view in time of the server status.
+ * <p>
+ * Besides JVM memory, a snapshot taken from a <code>MeterRegistry</code>
+ * includes the timers named <code>cosmo.*</code> recorded by
+ * {@link MetricsInterceptor}.  For each it has the number of calls and
+ * the mean, maximum and percentile latencies in milliseconds, keyed by
+ * the timer name, class, method, outcome and any exception, eg
+ * <code>cosmo.service.StandardContentService.createContent.success.p95</code>
+ * or <code>cosmo.dao.ContentDaoImpl.createContent.error.ModelValidationException.count</code>.
  */
 public class StatusSnapshot {
 
+    public static final String METRIC_PREFIX = "cosmo.";
+
+    private static final String[] KEY_TAGS = {
+        MetricsInterceptor.TAG_CLASS, MetricsInterceptor.TAG_METHOD,
+        MetricsInterceptor.TAG_OUTCOME, MetricsInterceptor.TAG_EXCEPTION
+    };
+
     private final long totalMemory;
     private final long freeMemory;
     private final long usedMemory;
     private final long maxMemory;
+    private final SortedMap<String, Number> metrics = new TreeMap<>();
 
     /**
      */
     public StatusSnapshot() {
+        this(null);
+    }
+
+    /**
+     * @param meterRegistry registry to include timers from, may be null
+     */
+    public StatusSnapshot(MeterRegistry meterRegistry) {
         Runtime runtime = Runtime.getRuntime();
 
         totalMemory = runtime.totalMemory() / 1024;
         freeMemory = runtime.freeMemory() / 1024;
         usedMemory = totalMemory - freeMemory;
         maxMemory = runtime.maxMemory() / 1024;
+
+        if (meterRegistry != null) {
+            for (Meter meter : meterRegistry.getMeters())
+                if (meter instanceof Timer && meter.getId().getName().startsWith(METRIC_PREFIX))
+                    addTimer((Timer) meter);
+        }
+    }
+
+    private void addTimer(Timer timer) {
+        Meter.Id id = timer.getId();
+        StringBuilder key = new StringBuilder(id.getName());
+        for (String tag : KEY_TAGS) {
+            String value = id.getTag(tag);
+            if (value != null && ! value.equals("none"))
+                key.append('.').append(value);
+        }
+
+        HistogramSnapshot snapshot = timer.takeSnapshot();
+        metrics.put(key + ".count", snapshot.count());
+        metrics.put(key + ".mean", snapshot.mean(TimeUnit.MILLISECONDS));
+        metrics.put(key + ".max", snapshot.max(TimeUnit.MILLISECONDS));
+        for (ValueAtPercentile percentile : snapshot.percentileValues())
+            metrics.put(key + ".p" + Math.round(percentile.percentile() * 100),
+                        percentile.value(TimeUnit.MILLISECONDS));
     }
 
     /**
@@ -46,6 +106,9 @@ public class StatusSnapshot {
         buf.append("jvm.memory.used=").append(usedMemory).append("\n");
         buf.append("jvm.memory.free=").append(freeMemory).append("\n");
 
+        for (Map.Entry<String, Number> metric : metrics.entrySet())
+            buf.append(metric.getKey()).append("=").append(metric.getValue()).append("\n");
+
         return buf.toString();
     }
 
@@ -82,4 +145,11 @@ public class StatusSnapshot {
     public long getMaxMemory() {
         return maxMemory;
     }
+
+    /**
+     * @return the call counts and latencies of the Cosmo timers, by key
+     */
+    public Map<String, Number> getMetrics() {
+        return Collections.unmodifiableMap(metrics);
+    }
 }
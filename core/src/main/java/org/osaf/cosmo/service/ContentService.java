@@ -18,8 +18,10 @@ package org.osaf.cosmo.service;
 import net.fortuna.ical4j.model.DateTime;
 import org.osaf.cosmo.model.*;
 import org.osaf.cosmo.model.filter.ItemFilter;
+import org.osaf.cosmo.util.KeysetPage;
 
 import java.util.Date;
+import java.util.List;
 import java.util.Set;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -139,10 +141,64 @@ public interface ContentService extends Service {
      * @param timestamp timestamp
      * @return children of collection that have been updated since
      *         timestamp, or all children if timestamp is null
+     * @throws org.osaf.cosmo.model.SyncTokenExpiredException if the
+     *         timestamp predates the tombstones kept for the collection,
+     *         so the children removed since can't all be found
      */
     @Transactional(readOnly = true)
     Set<ContentItem> loadChildren(CollectionItem collection, Date timestamp);
 
+    /**
+     * Load a page of the children of a collection, ordered by name.  The
+     * page continues after the cursor of the previous page, so every page
+     * costs the same to load.
+     * @param collection collection
+     * @param cursor cursor of the previous page, null for the first page
+     * @param pageSize maximum number of children in the page
+     * @return page of children of collection
+     * @throws IllegalArgumentException if the cursor is invalid
+     */
+    @Transactional(readOnly = true)
+    KeysetPage<ContentItem> loadChildrenPage(CollectionItem collection,
+                                             String cursor, int pageSize);
+
+    /**
+     * Find the changes to the children of a collection since a given
+     * date, so that a client can fetch just what changed instead of
+     * reloading all children.  To follow a collection, pass the
+     * <code>until</code> of the previous call as <code>since</code>;
+     * changes made exactly at that date are returned by both calls.
+     * @param collection collection
+     * @param since date of the earliest changes to return (inclusive)
+     * @param until date of the latest changes to return (inclusive),
+     *              or null for now
+     * @return the items added to, changed in and removed from the
+     *         collection, oldest first
+     */
+    @Transactional(readOnly = true)
+    List<ItemChangeRecord> getItemChangeRecords(CollectionItem collection,
+                                                Date since, Date until);
+
+    /**
+     * Find the children of a collection added, changed or removed since
+     * a sync token was handed out for it.  Unlike
+     * {@link #getItemChangeRecords(CollectionItem, Date, Date)} this
+     * doesn't depend on clocks: every change to a collection advances
+     * its change sequence, and the token is a position in it.  To follow
+     * a collection, pass the token of the previous changes.
+     * @param collection collection
+     * @param syncToken opaque sync token handed out for the collection,
+     *                  or null to get the uids of all children
+     * @return uids of the children added or changed and removed since
+     *         the token, and the token to pass next time
+     * @throws InvalidSyncTokenException if the token can't be used to
+     *         sync the collection, the client has to sync it again in
+     *         full; a {@link SyncTokenExpiredException} if the token
+     *         predates the tombstones kept for the collection
+     */
+    @Transactional(readOnly = true)
+    CollectionChanges getChangesSince(CollectionItem collection, String syncToken);
+
     /**
      * Create a new collection.
      *
@@ -18,6 +18,7 @@ package org.osaf.cosmo.service;
 import java.util.Set;
 
 import org.osaf.cosmo.model.User;
+import org.osaf.cosmo.util.KeysetPage;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.DataRetrievalFailureException;
 import org.springframework.transaction.annotation.Transactional;
@@ -34,6 +35,25 @@ public interface UserService extends Service {
     @Transactional(readOnly = true)
     Set<User> getUsers();
 
+    /**
+     * Returns a page of user accounts in the given order, using keyset
+     * pagination: the page continues after the cursor of the previous
+     * page, so every page costs the same to fetch.  Users sharing a sort
+     * value are ordered by id, so pages never overlap or skip users.
+     *
+     * @param sortType order of the users; ADMIN, ACTIVATED and LOCKED
+     * are not supported
+     * @param ascending true for ascending order
+     * @param cursor cursor of the previous page, null for the first page
+     * @param pageSize maximum number of users in the page
+     *
+     * @throws IllegalArgumentException if the cursor is invalid or was
+     * made for another order
+     */
+    @Transactional(readOnly = true)
+    KeysetPage<User> getUsers(User.SortType sortType, boolean ascending,
+                              String cursor, int pageSize);
+
 
     /**
      * Returns the user account identified by the given username.
@@ -122,6 +142,20 @@ public interface UserService extends Service {
      */
     User updateUser(User user);
 
+    /**
+     * Returns the user account identified by the given username if the
+     * given raw password matches its stored password, rehashing the
+     * stored password if it was hashed in a weaker way than new
+     * passwords are.
+     *
+     * @param username the username of the account
+     * @param password the raw password
+     * @return the account, or null if there is no such account or the
+     * password doesn't match
+     */
+    User authenticate(String username,
+                      String password);
+
     /**
      * Removes a user account from the repository.
      *
@@ -25,10 +25,12 @@ import org.osaf.cosmo.model.*;
 import org.osaf.cosmo.model.filter.ItemFilter;
 import org.osaf.cosmo.service.ContentService;
 import org.osaf.cosmo.service.lock.LockManager;
+import org.osaf.cosmo.util.KeysetPage;
 
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -305,6 +307,67 @@ public class StandardContentService implements ContentService {
         return contentDao.loadChildren(collection, timestamp);
     }
 
+    /**
+     * Load a page of the children of a collection, ordered by name.
+     *
+     * @param collection
+     *            collection
+     * @param cursor
+     *            cursor of the previous page, null for the first page
+     * @param pageSize
+     *            maximum number of children in the page
+     * @return page of children of collection
+     */
+    public KeysetPage<ContentItem> loadChildrenPage(CollectionItem collection,
+            String cursor, int pageSize) {
+        return contentDao.loadChildrenPage(collection, cursor, pageSize);
+    }
+
+    /**
+     * Find the changes to the children of a collection since a given
+     * date.
+     *
+     * @param collection
+     *            collection
+     * @param since
+     *            date of the earliest changes to return
+     * @param until
+     *            date of the latest changes to return, or null for now
+     * @return the items added to, changed in and removed from the collection,
+     *         oldest first
+     */
+    public List<ItemChangeRecord> getItemChangeRecords(CollectionItem collection,
+            java.util.Date since, java.util.Date until) {
+        if (log.isDebugEnabled())
+            log.debug("getting changes to collection " + collection.getUid()
+                    + " since " + since);
+        return contentDao.findItemChangeRecords(collection, since,
+                until != null ? until : new java.util.Date());
+    }
+
+    /**
+     * Find the children of a collection added, changed or removed since
+     * a sync token was handed out for it.
+     *
+     * @param collection
+     *            collection
+     * @param syncToken
+     *            opaque sync token handed out for the collection, or null
+     *            to get the uids of all children
+     * @return uids of the children added or changed and removed since the
+     *         token, and the token to pass next time
+     * @throws InvalidSyncTokenException
+     *             if the token can't be used to sync the collection
+     */
+    public CollectionChanges getChangesSince(CollectionItem collection,
+            String syncToken) {
+        if (log.isDebugEnabled())
+            log.debug("getting changes to collection " + collection.getUid()
+                    + " since sync token " + syncToken);
+        SyncToken token = syncToken != null ? SyncToken.parse(syncToken, collection) : null;
+        return contentDao.findChangesSince(collection, token);
+    }
+
     /**
      * Create a new collection.
      *
@@ -569,8 +632,7 @@ public class StandardContentService implements ContentService {
             throw new CollectionLockedException("unable to obtain collection lock");
 
         try {
-            for(ContentItem content : contentItems)
-                contentDao.createContent(parent, content);
+            contentDao.createContentItems(parent, contentItems);
 
             contentDao.updateCollectionTimestamp(parent);
         } finally {
@@ -603,14 +665,7 @@ public class StandardContentService implements ContentService {
 
         try {
 
-           for(ContentItem content: contentItems) {
-               if(content.getCreationDate()==null)
-                   contentDao.createContent(parents, content);
-               else if(content.getIsActive()==Boolean.FALSE)
-                   contentDao.removeContent(content);
-               else
-                   contentDao.updateContent(content);
-           }
+           contentDao.updateContentItems(parents, contentItems);
 
            // update collections
            for(CollectionItem parent : locks)
@@ -17,7 +17,6 @@ package org.osaf.cosmo.service.impl;
 
 import java.security.MessageDigest;
 import java.util.Set;
-import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -31,21 +30,33 @@ import org.osaf.cosmo.service.OverlordDeletionException;
 import org.osaf.cosmo.service.ServiceEvent;
 import org.osaf.cosmo.service.ServiceListener;
 import org.osaf.cosmo.service.UserService;
+import org.osaf.cosmo.service.password.MessageDigestPasswordEncoder;
+import org.osaf.cosmo.service.password.PasswordEncoder;
+import org.osaf.cosmo.util.KeysetPage;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.DataRetrievalFailureException;
 
 /**
  * Standard implementation of {@link UserService}.
+ * <p>
+ * Passwords are hashed with the configured {@link PasswordEncoder}.  The
+ * default configuration, <code>BaseCosmoConfig</code>, hashes new
+ * passwords with PBKDF2 where earlier versions used an unsalted MD5
+ * digest.  Stored MD5 hashes still match, and are hashed again with
+ * PBKDF2 when their users next authenticate.  Without an encoder set,
+ * the service keeps hashing with the message digest algorithm.
  */
 public class StandardUserService extends BaseService implements UserService {
     private static final Log log = LogFactory.getLog(StandardUserService.class);
 
     /**
-     * The service uses MD5 if no digest algorithm is explicitly set.
+     * The service uses MD5 if neither a password encoder nor a digest
+     * algorithm is explicitly set.
      */
     public static final String DEFAULT_DIGEST_ALGORITHM = "MD5";
 
-    private MessageDigest digest;
+    private PasswordEncoder passwordEncoder;
+    private MessageDigestPasswordEncoder legacyEncoder;
     private String digestAlgorithm;
     private ContentDao contentDao;
     private UserDao userDao;
@@ -61,6 +72,22 @@ public class StandardUserService extends BaseService implements UserService {
         return userDao.getUsers();
     }
 
+    /**
+     * Returns a page of user accounts in the given order, using keyset
+     * pagination.
+     *
+     * @param sortType order of the users
+     * @param ascending true for ascending order
+     * @param cursor cursor of the previous page, null for the first page
+     * @param pageSize maximum number of users in the page
+     */
+    public KeysetPage<User> getUsers(User.SortType sortType, boolean ascending,
+                                     String cursor, int pageSize) {
+        if (log.isDebugEnabled())
+            log.debug("getting page of users by " + sortType);
+        return userDao.getUsers(sortType, ascending, cursor, pageSize);
+    }
+
     /**
      * Returns the user account identified by the given username.
      *
@@ -193,7 +220,7 @@ public class StandardUserService extends BaseService implements UserService {
                 log.debug("... changing username to " + user.getUsername());
         }
 
-        if (user.getPassword().length() < 32) {
+        if (! passwordEncoder.isEncodedBy(user.getPassword())) {
             user.validateRawPassword();
             user.setPassword(digestPassword(user.getPassword()));
         }
@@ -214,6 +241,34 @@ public class StandardUserService extends BaseService implements UserService {
         return newUser;
     }
 
+    /**
+     * Returns the user account identified by the given username if the
+     * password matches its stored password.  If the stored password was
+     * hashed in a weaker way than the password encoder now uses, it is
+     * hashed again and the account updated.
+     *
+     * @param username the username of the account
+     * @param password the raw password
+     * @return the account, or null if there is no such account or the
+     * password doesn't match
+     */
+    public User authenticate(String username,
+                             String password) {
+        if (log.isDebugEnabled())
+            log.debug("authenticating user " + username);
+        User user = userDao.getUser(username);
+        if (user == null || ! passwordEncoder.matches(password, user.getPassword()))
+            return null;
+
+        if (passwordEncoder.upgradeEncoding(user.getPassword())) {
+            if (log.isDebugEnabled())
+                log.debug("upgrading password hash of user " + username);
+            user.setPassword(passwordEncoder.encode(password));
+            user = userDao.updateUser(user);
+        }
+        return user;
+    }
+
     /**
      * Removes the user account identified by the given username from
      * the repository.
@@ -303,16 +358,17 @@ public class StandardUserService extends BaseService implements UserService {
         if (userDao == null) {
             throw new IllegalStateException("userDao is required");
         }
-        if (digestAlgorithm == null) {
-            digestAlgorithm = DEFAULT_DIGEST_ALGORITHM;
-        }
-
-        try {
-            digest = MessageDigest.getInstance(digestAlgorithm);
-        } catch (Exception e) {
-            throw new RuntimeException("cannot get digest for algorithm " +
-                                               digestAlgorithm, e);
+        if (passwordEncoder == null) {
+            if (digestAlgorithm == null) {
+                digestAlgorithm = DEFAULT_DIGEST_ALGORITHM;
+            }
+            passwordEncoder = new MessageDigestPasswordEncoder(digestAlgorithm);
         }
+        if (passwordEncoder instanceof MessageDigestPasswordEncoder)
+            legacyEncoder = (MessageDigestPasswordEncoder) passwordEncoder;
+        else
+            legacyEncoder = new MessageDigestPasswordEncoder(
+                digestAlgorithm != null ? digestAlgorithm : DEFAULT_DIGEST_ALGORITHM);
     }
 
     /**
@@ -326,20 +382,39 @@ public class StandardUserService extends BaseService implements UserService {
     // our methods
 
     /**
-     * Digests the given password using the set message digest and hex
-     * encodes it.
+     * Hashes the given password using the password encoder.
      */
     protected String digestPassword(String password) {
         if (password == null) {
             return password;
         }
-        return new String(Hex.encodeHex(digest.digest(password.getBytes())));
+        return passwordEncoder.encode(password);
     }
 
     /**
+     * Returns the message digest that passwords were hashed with before
+     * password encoders, for the calling thread.
+     *
+     * @deprecated passwords are hashed with the password encoder, which
+     * may not be a message digest; use {@link #getPasswordEncoder()}
      */
+    @Deprecated
     public MessageDigest getDigest() {
-        return this.digest;
+        return legacyEncoder.getDigest();
+    }
+
+    /**
+     */
+    public PasswordEncoder getPasswordEncoder() {
+        return this.passwordEncoder;
+    }
+
+    /**
+     * Sets the encoder used to hash and check passwords.  If not set,
+     * passwords are hashed with the message digest algorithm.
+     */
+    public void setPasswordEncoder(PasswordEncoder passwordEncoder) {
+        this.passwordEncoder = passwordEncoder;
     }
 
     /**
@@ -0,0 +1,157 @@
+package org.osaf.cosmo.service.lock;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.osaf.cosmo.model.CollectionItem;
+
+/**
+ * An implementation of <code>LockManager</code>
+ * that supports locking within a single JVM without
+ * a global monitor.
+ * Once a thread obtains a lock, it owns
+ * the lock until the thread unlocks it.  A thread that
+ * attempts to unlock something it doesn't own will
+ * result in a RuntimeException.
+ *
+ * Locks are kept in a <code>ConcurrentHashMap</code> keyed
+ * by collection uid, and count the threads holding or waiting
+ * on them.  The last thread to release a lock removes it from
+ * the map, so there is never a cleanup scan and threads
+ * locking different collections don't contend with each other.
+ *
+ * @see LockManager
+ * @see SingleVMLockManager
+ */
+public class ConcurrentLockManager implements LockManager {
+
+    /**
+     * Locks currently held or waited on, mapped by uid
+     */
+    private final ConcurrentHashMap<String, CollectionLock> locks = new ConcurrentHashMap<>();
+
+    /**
+     * Check if a collection is locked
+     * @param collection
+     * @return true if collection is locked
+     */
+    public boolean isLocked(CollectionItem collection) {
+        CollectionLock lock = locks.get(collection.getUid());
+        return lock != null && lock.isLocked();
+    }
+
+    /**
+     * Check if a collection is locked by the calling thread
+     * @param collection
+     * @return true if the calling thread holds the collection lock
+     */
+    public boolean isLockedByCurrentThread(CollectionItem collection) {
+        CollectionLock lock = locks.get(collection.getUid());
+        return lock != null && lock.isHeldByCurrentThread();
+    }
+
+    /**
+     * Return the number of threads waiting on collection lock
+     * @param collection
+     * @return number of threads waiting on collection lock
+     */
+    public int getNumWaitingThreads(CollectionItem collection) {
+        CollectionLock lock = locks.get(collection.getUid());
+        return lock == null ? 0 : lock.getQueueLength();
+    }
+
+    /**
+     * Return the current number of locks in memory.
+     * @return number of locks currently held or waited on
+     */
+    public int getNumLocksInMemory() {
+        return locks.size();
+    }
+
+    /* (non-Javadoc)
+     * @see org.osaf.cosmo.service.lock.LockManager#lockCollection(org.osaf.cosmo.model.CollectionItem)
+     */
+    public void lockCollection(CollectionItem collection) {
+        lockCollection(collection, -1);
+    }
+
+    /* (non-Javadoc)
+     * @see org.osaf.cosmo.service.lock.LockManager#lockCollection(org.osaf.cosmo.model.CollectionItem, long)
+     */
+    public boolean lockCollection(CollectionItem collection, long timeout) {
+        String uid = collection.getUid();
+        CollectionLock lock = reference(uid);
+
+        // Attempt to acquire the lock.
+        // This will block until thread can acquire the lock, or
+        // until timeout milliseconds have passed if timeout is >= 0
+        boolean acquired = false;
+        try {
+            if(timeout<0) {
+                lock.lock();
+                acquired = true;
+            } else {
+                acquired = lock.tryLock(timeout, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("thread interrupted, no lock acquired");
+        } finally {
+            if(!acquired)
+                release(uid, lock);
+        }
+
+        return acquired;
+    }
+
+    /* (non-Javadoc)
+     * @see org.osaf.cosmo.service.lock.LockManager#unlockCollection(org.osaf.cosmo.model.CollectionItem)
+     */
+    public void unlockCollection(CollectionItem collection) {
+        String uid = collection.getUid();
+        CollectionLock lock = locks.get(uid);
+
+        // unlock if there is a lock to unlock
+        if(lock!=null) {
+            if(!lock.isHeldByCurrentThread())
+                throw new RuntimeException("Current thread does not own lock");
+            lock.unlock();
+            release(uid, lock);
+        }
+    }
+
+    /**
+     * Get the lock for a uid, creating it if necessary, and count
+     * the calling thread as a user of it.
+     */
+    private CollectionLock reference(String uid) {
+        return locks.compute(uid, (key, lock) -> {
+            if (lock == null)
+                lock = new CollectionLock();
+            lock.users++;
+            return lock;
+        });
+    }
+
+    /**
+     * Stop counting the calling thread as a user of the lock, removing
+     * it from the map if no other thread holds or waits on it.
+     */
+    private void release(String uid, CollectionLock lock) {
+        locks.computeIfPresent(uid, (key, current) -> {
+            if (current != lock)
+                return current;
+            return --current.users == 0 ? null : current;
+        });
+    }
+
+    /**
+     * ReentrantLock that counts the number of lockCollection() calls
+     * that are holding or waiting on it.  The count is only changed
+     * inside the map's compute methods, which are atomic per key.
+     */
+    static class CollectionLock extends ReentrantLock {
+        int users = 0;
+    }
+}
@@ -0,0 +1,285 @@
+package org.osaf.cosmo.service.lock;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.osaf.cosmo.model.CollectionItem;
+import org.osaf.cosmo.model.hibernate.HibCollectionLock;
+import org.springframework.dao.DataAccessException;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * An implementation of <code>LockManager</code> that supports
+ * locking across several JVMs sharing the same database.
+ * <p>
+ * Threads in this JVM are serialised with a
+ * {@link ConcurrentLockManager}.  The thread that gets the local
+ * lock then takes a lease on the collection by inserting a row in
+ * <code>cosmo_collection_lock</code> (or taking over a row whose lease
+ * has expired) in its own transaction, retrying every
+ * <code>pollMillis</code> until the timeout.  A node that dies holding
+ * a lease blocks the collection for at most <code>leaseMillis</code>,
+ * which must be longer than any update done under the lock.  Lease
+ * times come from each node's clock, so node clocks must be kept in
+ * step to well within the lease time.
+ * <p>
+ * If <code>unlockCollection</code> is called inside a transaction, the
+ * lease is kept until that transaction completes, so other nodes can't
+ * read the collection before the changes made under the lock are
+ * committed.
+ * <p>
+ * Requires an <code>EntityManagerFactory</code> and the
+ * <code>PlatformTransactionManager</code> for it, and
+ * <code>init()</code> to be called before use.
+ *
+ * @see LockManager
+ */
+public class DatabaseLockManager implements LockManager {
+    private static final Log log =
+        LogFactory.getLog(DatabaseLockManager.class);
+
+    public static final long DEFAULT_LEASE_MILLIS = 120000;
+    public static final long DEFAULT_POLL_MILLIS = 100;
+
+    private long leaseMillis = DEFAULT_LEASE_MILLIS;
+    private long pollMillis = DEFAULT_POLL_MILLIS;
+    private String nodeId = UUID.randomUUID().toString();
+
+    private EntityManagerFactory entityManagerFactory;
+    private PlatformTransactionManager transactionManager;
+
+    private EntityManager entityManager;
+    private TransactionTemplate leaseTransaction;
+
+    private final ConcurrentLockManager localLocks = new ConcurrentLockManager();
+
+    /**
+     * Leases held by this node, mapped by uid.  Only the thread holding
+     * the local lock for a uid touches its lease.
+     */
+    private final ConcurrentHashMap<String, Lease> leases = new ConcurrentHashMap<>();
+
+    /**
+     * Initializes the lock manager, sanity checking required properties.
+     */
+    public void init() {
+        if (entityManagerFactory == null)
+            throw new IllegalStateException("entityManagerFactory is required");
+        if (transactionManager == null)
+            throw new IllegalStateException("transactionManager is required");
+
+        entityManager = SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory);
+        leaseTransaction = new TransactionTemplate(transactionManager);
+        leaseTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /* (non-Javadoc)
+     * @see org.osaf.cosmo.service.lock.LockManager#lockCollection(org.osaf.cosmo.model.CollectionItem)
+     */
+    public void lockCollection(CollectionItem collection) {
+        lockCollection(collection, -1);
+    }
+
+    /* (non-Javadoc)
+     * @see org.osaf.cosmo.service.lock.LockManager#lockCollection(org.osaf.cosmo.model.CollectionItem, long)
+     */
+    public boolean lockCollection(CollectionItem collection, long timeout) {
+        long deadline = timeout < 0 ? Long.MAX_VALUE : System.currentTimeMillis() + timeout;
+
+        if (!localLocks.lockCollection(collection, timeout))
+            return false;
+
+        String uid = collection.getUid();
+        Lease lease = leases.get(uid);
+
+        // nested lock by the thread already holding the lease
+        if (lease != null) {
+            lease.holds++;
+            return true;
+        }
+
+        String owner = nodeId + ":" + UUID.randomUUID();
+        boolean acquired = false;
+        try {
+            while (true) {
+                if (tryAcquire(uid, owner)) {
+                    leases.put(uid, new Lease(owner));
+                    acquired = true;
+                    return true;
+                }
+
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                    return false;
+                Thread.sleep(Math.min(pollMillis, remaining));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("thread interrupted, no lock acquired");
+        } finally {
+            if (!acquired)
+                localLocks.unlockCollection(collection);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.osaf.cosmo.service.lock.LockManager#unlockCollection(org.osaf.cosmo.model.CollectionItem)
+     */
+    public void unlockCollection(final CollectionItem collection) {
+        if (!localLocks.isLockedByCurrentThread(collection))
+            throw new RuntimeException("Current thread does not own lock");
+
+        final String uid = collection.getUid();
+        final Lease lease = leases.get(uid);
+
+        if (lease == null || --lease.holds > 0) {
+            localLocks.unlockCollection(collection);
+            return;
+        }
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            releaseLease(uid, lease);
+            localLocks.unlockCollection(collection);
+            return;
+        }
+
+        // keep the lease until the changes made under it are visible
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                try {
+                    // the lock may have been taken again in the same transaction
+                    if (leases.get(uid) == lease && lease.holds == 0)
+                        releaseLease(uid, lease);
+                } finally {
+                    localLocks.unlockCollection(collection);
+                }
+            }
+        });
+    }
+
+    /**
+     * Check if a collection is locked by a thread in this JVM
+     * @param collection
+     * @return true if collection is locked by this node
+     */
+    public boolean isLocked(CollectionItem collection) {
+        return localLocks.isLocked(collection);
+    }
+
+    public long getLeaseMillis() {
+        return leaseMillis;
+    }
+
+    /**
+     * @param leaseMillis time after which a lock that hasn't been released
+     *                    can be taken by another node
+     */
+    public void setLeaseMillis(long leaseMillis) {
+        this.leaseMillis = leaseMillis;
+    }
+
+    public long getPollMillis() {
+        return pollMillis;
+    }
+
+    /**
+     * @param pollMillis time to wait between attempts to take a lease
+     *                   held by another node
+     */
+    public void setPollMillis(long pollMillis) {
+        this.pollMillis = pollMillis;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @param nodeId identifies this node in the lock table, defaults to
+     *               a random id
+     */
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public void setEntityManagerFactory(EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
+    /**
+     * Take the lease if no other node holds it, or if the lease held
+     * has expired.
+     */
+    private boolean tryAcquire(final String uid, final String owner) {
+        try {
+            return Boolean.TRUE.equals(leaseTransaction.execute(status -> {
+                long now = System.currentTimeMillis();
+                int updated = entityManager.createNamedQuery("collectionLock.takeOver.expired")
+                        .setParameter("owner", owner)
+                        .setParameter("expires", now + leaseMillis)
+                        .setParameter("uid", uid)
+                        .setParameter("now", now)
+                        .executeUpdate();
+                if (updated == 1) {
+                    log.debug("took over expired lock on " + uid);
+                    return true;
+                }
+
+                if (entityManager.find(HibCollectionLock.class, uid) != null)
+                    return false;
+
+                entityManager.persist(new HibCollectionLock(uid, owner, now + leaseMillis));
+                entityManager.flush();
+                return true;
+            }));
+        } catch (PersistenceException | DataAccessException | TransactionException e) {
+            // another node inserted its lease first
+            if (log.isDebugEnabled())
+                log.debug("lost race for lock on " + uid + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void releaseLease(final String uid, final Lease lease) {
+        leases.remove(uid, lease);
+        try {
+            leaseTransaction.executeWithoutResult(status ->
+                entityManager.createNamedQuery("collectionLock.delete.by.uid.owner")
+                        .setParameter("uid", uid)
+                        .setParameter("owner", lease.owner)
+                        .executeUpdate());
+        } catch (PersistenceException | DataAccessException | TransactionException e) {
+            log.warn("unable to release lock on " + uid + ", it will expire", e);
+        }
+    }
+
+    /**
+     * Lease held by this node, with the number of lockCollection() calls
+     * holding it.
+     */
+    static class Lease {
+        final String owner;
+        int holds = 1;
+
+        Lease(String owner) {
+            this.owner = owner;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.osaf.cosmo.service.password;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Encodes new passwords with one encoder while still matching the
+ * hashes of others, so that stored hashes can be moved to a stronger
+ * algorithm as users log in.  A hash is matched by the first encoder,
+ * starting with the current one, that recognises its format, and
+ * needs upgrading if the current encoder didn't produce it or says so.
+ */
+public class DelegatingPasswordEncoder implements PasswordEncoder {
+
+    private final PasswordEncoder current;
+    private final List<PasswordEncoder> encoders = new ArrayList<>();
+
+    /**
+     * @param current encoder for new passwords
+     * @param legacy encoders of hashes that may still be stored
+     */
+    public DelegatingPasswordEncoder(PasswordEncoder current,
+                                     PasswordEncoder... legacy) {
+        this.current = current;
+        encoders.add(current);
+        encoders.addAll(Arrays.asList(legacy));
+    }
+
+    public String encode(String rawPassword) {
+        return current.encode(rawPassword);
+    }
+
+    public boolean matches(String rawPassword, String encodedPassword) {
+        PasswordEncoder encoder = getEncoder(encodedPassword);
+        return encoder != null && encoder.matches(rawPassword, encodedPassword);
+    }
+
+    public boolean isEncodedBy(String encodedPassword) {
+        return getEncoder(encodedPassword) != null;
+    }
+
+    public boolean upgradeEncoding(String encodedPassword) {
+        return !current.isEncodedBy(encodedPassword)
+            || current.upgradeEncoding(encodedPassword);
+    }
+
+    private PasswordEncoder getEncoder(String encodedPassword) {
+        for (PasswordEncoder encoder : encoders)
+            if (encoder.isEncodedBy(encodedPassword))
+                return encoder;
+        return null;
+    }
+
+    public PasswordEncoder getCurrent() {
+        return current;
+    }
+}
@@ -0,0 +1,87 @@
+package org.osaf.cosmo.service.password;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * Encodes passwords as the hex encoded, unsalted message digest of the
+ * password, as Cosmo always has.  Kept to check the hashes stored by
+ * earlier versions; use {@link Pbkdf2PasswordEncoder} for new ones.
+ * <p>
+ * <code>MessageDigest</code> isn't thread-safe, so each thread gets a
+ * digest of its own.
+ */
+public class MessageDigestPasswordEncoder implements PasswordEncoder {
+
+    private final String algorithm;
+    private final int encodedLength;
+    private final ThreadLocal<MessageDigest> digests;
+
+    /**
+     * @param algorithm message digest algorithm, eg MD5
+     * @throws IllegalArgumentException if the algorithm isn't available
+     */
+    public MessageDigestPasswordEncoder(String algorithm) {
+        this.algorithm = algorithm;
+        this.encodedLength = newDigest().getDigestLength() * 2;
+        this.digests = ThreadLocal.withInitial(this::newDigest);
+    }
+
+    private MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("cannot get digest for algorithm " + algorithm, e);
+        }
+    }
+
+    public String encode(String rawPassword) {
+        if (rawPassword == null)
+            return null;
+        return new String(Hex.encodeHex(digest(rawPassword)));
+    }
+
+    public boolean matches(String rawPassword, String encodedPassword) {
+        if (rawPassword == null || !isEncodedBy(encodedPassword))
+            return false;
+        try {
+            return MessageDigest.isEqual(digest(rawPassword),
+                    Hex.decodeHex(encodedPassword.toCharArray()));
+        } catch (DecoderException e) {
+            return false;
+        }
+    }
+
+    public boolean isEncodedBy(String encodedPassword) {
+        return encodedPassword != null
+            && encodedPassword.length() == encodedLength
+            && encodedPassword.matches("[0-9a-fA-F]+");
+    }
+
+    /**
+     * @return false, as there is nothing weaker to upgrade from
+     */
+    public boolean upgradeEncoding(String encodedPassword) {
+        return false;
+    }
+
+    // the platform charset is what passwords have always been digested in
+    private byte[] digest(String rawPassword) {
+        return digests.get().digest(rawPassword.getBytes(Charset.defaultCharset()));
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @return the digest of the calling thread
+     */
+    public MessageDigest getDigest() {
+        return digests.get();
+    }
+}
@@ -0,0 +1,37 @@
+package org.osaf.cosmo.service.password;
+
+/**
+ * Hashes user passwords for storage and checks raw passwords against
+ * stored hashes.
+ * <p>
+ * Implementations must be safe to use from many threads at once.
+ */
+public interface PasswordEncoder {
+
+    /**
+     * @param rawPassword password as entered by the user
+     * @return hash of the password to store
+     */
+    public String encode(String rawPassword);
+
+    /**
+     * @param rawPassword password as entered by the user
+     * @param encodedPassword stored hash
+     * @return true if the stored hash is a hash of the password
+     */
+    public boolean matches(String rawPassword, String encodedPassword);
+
+    /**
+     * @param encodedPassword stored hash
+     * @return true if the hash is in the format this encoder produces,
+     *         whatever the parameters it was produced with
+     */
+    public boolean isEncodedBy(String encodedPassword);
+
+    /**
+     * @param encodedPassword stored hash that matched
+     * @return true if the password should be encoded again, as the
+     *         hash is weaker than what <code>encode</code> produces now
+     */
+    public boolean upgradeEncoding(String encodedPassword);
+}
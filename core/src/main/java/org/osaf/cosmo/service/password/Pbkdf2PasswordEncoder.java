@@ -0,0 +1,136 @@
+package org.osaf.cosmo.service.password;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.spec.KeySpec;
+import java.util.Base64;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Encodes passwords with PBKDF2, salted and with a tunable number of
+ * iterations, as
+ * <code>{pbkdf2}<i>iterations</i>$<i>salt</i>$<i>hash</i></code> with
+ * salt and hash Base64 encoded.
+ * <p>
+ * Hashes produced with fewer iterations than currently configured still
+ * match, and are reported by {@link #upgradeEncoding(String)} so that
+ * raising <code>iterations</code> takes effect as users log in.
+ * <p>
+ * <code>SecretKeyFactory</code> isn't thread-safe, so each thread gets
+ * a factory of its own.
+ */
+public class Pbkdf2PasswordEncoder implements PasswordEncoder {
+
+    public static final String PREFIX = "{pbkdf2}";
+    public static final String DEFAULT_ALGORITHM = "PBKDF2WithHmacSHA256";
+    public static final int DEFAULT_ITERATIONS = 310000;
+
+    private static final int SALT_LENGTH = 16;
+    private static final int HASH_BITS = 256;
+
+    private final String algorithm;
+    private final int iterations;
+    private final SecureRandom random = new SecureRandom();
+    private final ThreadLocal<SecretKeyFactory> factories;
+
+    public Pbkdf2PasswordEncoder() {
+        this(DEFAULT_ITERATIONS);
+    }
+
+    public Pbkdf2PasswordEncoder(int iterations) {
+        this(DEFAULT_ALGORITHM, iterations);
+    }
+
+    /**
+     * @param algorithm PBKDF2 <code>SecretKeyFactory</code> algorithm
+     * @param iterations iterations for new hashes
+     * @throws IllegalArgumentException if the algorithm isn't available
+     */
+    public Pbkdf2PasswordEncoder(String algorithm, int iterations) {
+        if (iterations < 1)
+            throw new IllegalArgumentException("iterations must be at least 1");
+        this.algorithm = algorithm;
+        this.iterations = iterations;
+        newFactory();
+        this.factories = ThreadLocal.withInitial(this::newFactory);
+    }
+
+    private SecretKeyFactory newFactory() {
+        try {
+            return SecretKeyFactory.getInstance(algorithm);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("cannot get key factory for algorithm " + algorithm, e);
+        }
+    }
+
+    public String encode(String rawPassword) {
+        if (rawPassword == null)
+            return null;
+        byte[] salt = new byte[SALT_LENGTH];
+        random.nextBytes(salt);
+        Base64.Encoder base64 = Base64.getEncoder();
+        return PREFIX + iterations + "$" + base64.encodeToString(salt) + "$"
+            + base64.encodeToString(hash(rawPassword, salt, iterations));
+    }
+
+    public boolean matches(String rawPassword, String encodedPassword) {
+        if (rawPassword == null || !isEncodedBy(encodedPassword))
+            return false;
+        String[] parts = split(encodedPassword);
+        if (parts == null)
+            return false;
+        try {
+            Base64.Decoder base64 = Base64.getDecoder();
+            return MessageDigest.isEqual(base64.decode(parts[2]),
+                    hash(rawPassword, base64.decode(parts[1]), Integer.parseInt(parts[0])));
+        } catch (IllegalArgumentException e) {
+            // bad number or Base64
+            return false;
+        }
+    }
+
+    public boolean isEncodedBy(String encodedPassword) {
+        return encodedPassword != null && encodedPassword.startsWith(PREFIX);
+    }
+
+    public boolean upgradeEncoding(String encodedPassword) {
+        String[] parts = split(encodedPassword);
+        try {
+            return parts == null || Integer.parseInt(parts[0]) < iterations;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    // iterations, salt and hash
+    private static String[] split(String encodedPassword) {
+        if (encodedPassword == null || !encodedPassword.startsWith(PREFIX))
+            return null;
+        String[] parts = encodedPassword.substring(PREFIX.length()).split("\\$");
+        return parts.length == 3 ? parts : null;
+    }
+
+    private byte[] hash(String rawPassword, byte[] salt, int iterations) {
+        if (iterations < 1)
+            throw new IllegalArgumentException("bad iteration count " + iterations);
+        PBEKeySpec spec = new PBEKeySpec(rawPassword.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return factories.get().generateSecret((KeySpec) spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("cannot hash password with " + algorithm, e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+}
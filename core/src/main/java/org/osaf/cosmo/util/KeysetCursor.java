@@ -0,0 +1,66 @@
+package org.osaf.cosmo.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Encodes the sort key values of the last element of a page as an opaque
+ * continuation cursor, and decodes them again.  The cursor includes the
+ * sort it was made for, so a cursor can't be used with a different sort.
+ */
+public final class KeysetCursor {
+
+    private static final String SEPARATOR = ".";
+
+    private KeysetCursor() {
+    }
+
+    /**
+     * @param sort description of the sort, for example "username:asc"
+     * @param values sort key values of the last element of a page
+     * @return opaque cursor
+     */
+    public static String encode(String sort, List<String> values) {
+        StringBuilder sb = new StringBuilder(encodePart(sort));
+        for (String value : values)
+            sb.append(SEPARATOR).append(encodePart(value));
+        return sb.toString();
+    }
+
+    /**
+     * @param cursor cursor made by {@link #encode(String, List)}
+     * @param sort description of the sort the cursor is used with
+     * @param count number of sort key values
+     * @return sort key values
+     * @throws IllegalArgumentException if the cursor is malformed or
+     *         was made for another sort
+     */
+    public static List<String> decode(String cursor, String sort, int count) {
+        String[] parts = cursor.split("\\" + SEPARATOR, -1);
+        if (parts.length != count + 1)
+            throw new IllegalArgumentException("invalid cursor " + cursor);
+
+        List<String> decoded = new ArrayList<>(parts.length);
+        try {
+            for (String part : parts)
+                decoded.add(decodePart(part));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("invalid cursor " + cursor, e);
+        }
+
+        if (!sort.equals(decoded.get(0)))
+            throw new IllegalArgumentException("cursor " + cursor + " is not for sort " + sort);
+        return decoded.subList(1, decoded.size());
+    }
+
+    private static String encodePart(String part) {
+        return Base64.getUrlEncoder().withoutPadding()
+            .encodeToString(part.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodePart(String part) {
+        return new String(Base64.getUrlDecoder().decode(part), StandardCharsets.UTF_8);
+    }
+}
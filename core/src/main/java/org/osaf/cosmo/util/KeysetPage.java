@@ -0,0 +1,48 @@
+package org.osaf.cosmo.util;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A page of results fetched by keyset (seek method) pagination.  Unlike
+ * a <code>PagedList</code> it doesn't know the total or its page number;
+ * instead it carries an opaque cursor that continues after its last
+ * element, so fetching any page costs the same as fetching the first.
+ */
+public class KeysetPage<T> {
+
+    private final List<T> items;
+    private final String nextCursor;
+
+    /**
+     * @param items elements of the page
+     * @param nextCursor cursor for the next page, null if this is the
+     *        last page
+     */
+    public KeysetPage(List<T> items, String nextCursor) {
+        this.items = Collections.unmodifiableList(items);
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * @return elements of the page, in sort order
+     */
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * @return opaque cursor to fetch the next page with, null if this is
+     *         the last page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * @return true if there are more pages
+     */
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
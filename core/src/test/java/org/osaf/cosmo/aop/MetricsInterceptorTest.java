@@ -0,0 +1,101 @@
+package org.osaf.cosmo.aop;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import junit.framework.TestCase;
+
+import org.osaf.cosmo.server.StatusMonitor;
+import org.osaf.cosmo.server.StatusSnapshot;
+import org.springframework.aop.framework.ProxyFactory;
+
+/**
+ * Test MetricsInterceptor
+ */
+public class MetricsInterceptorTest extends TestCase {
+
+    public interface EchoService {
+        String echo(String value);
+    }
+
+    public static class EchoServiceImpl implements EchoService {
+        public String echo(String value) {
+            if (value == null)
+                throw new IllegalArgumentException("null value");
+            return value;
+        }
+    }
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private EchoService service;
+
+    protected void setUp() {
+        MetricsInterceptor interceptor = new MetricsInterceptor();
+        interceptor.setMeterRegistry(registry);
+        service = proxy(interceptor);
+    }
+
+    private static EchoService proxy(MetricsInterceptor interceptor) {
+        ProxyFactory factory = new ProxyFactory(new EchoServiceImpl());
+        factory.addAdvice(interceptor);
+        return (EchoService) factory.getProxy();
+    }
+
+    public void testRecordsCallsAndErrors() {
+        for (int i = 0; i < 10; i++)
+            Assert.assertEquals("x", service.echo("x"));
+        try {
+            service.echo(null);
+            fail("exception swallowed");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        Timer success = registry.get(MetricsInterceptor.SERVICE_METRIC)
+            .tag(MetricsInterceptor.TAG_CLASS, "EchoServiceImpl")
+            .tag(MetricsInterceptor.TAG_METHOD, "echo")
+            .tag(MetricsInterceptor.TAG_OUTCOME, "success")
+            .timer();
+        Assert.assertEquals(10, success.count());
+
+        Timer error = registry.get(MetricsInterceptor.SERVICE_METRIC)
+            .tag(MetricsInterceptor.TAG_OUTCOME, "error")
+            .tag(MetricsInterceptor.TAG_EXCEPTION, "IllegalArgumentException")
+            .timer();
+        Assert.assertEquals(1, error.count());
+    }
+
+    public void testRegistryLookedUpOnFirstCall() {
+        int[] lookups = new int[1];
+        MetricsInterceptor interceptor = new MetricsInterceptor();
+        interceptor.setMeterRegistrySupplier(() -> {
+            lookups[0]++;
+            return registry;
+        });
+        EchoService lazyService = proxy(interceptor);
+        Assert.assertEquals(0, lookups[0]);
+
+        lazyService.echo("x");
+        lazyService.echo("y");
+        Assert.assertEquals(1, lookups[0]);
+        Assert.assertEquals(2, registry.get(MetricsInterceptor.SERVICE_METRIC)
+            .tag(MetricsInterceptor.TAG_CLASS, "EchoServiceImpl").timer().count());
+    }
+
+    public void testStatusSnapshot() {
+        service.echo("x");
+        service.echo("y");
+
+        StatusSnapshot snapshot = new StatusMonitor(registry).snapshot();
+        String key = "cosmo.service.EchoServiceImpl.echo.success";
+        Assert.assertEquals(2L, snapshot.getMetrics().get(key + ".count"));
+        Assert.assertTrue(snapshot.getMetrics().containsKey(key + ".p95"));
+        Assert.assertTrue(snapshot.getMetrics().containsKey(key + ".max"));
+        Assert.assertTrue(snapshot.toString().contains(key + ".count=2\n"));
+        Assert.assertTrue(snapshot.toString().contains("jvm.memory.used="));
+
+        // memory only
+        Assert.assertTrue(new StatusSnapshot().getMetrics().isEmpty());
+    }
+}
@@ -0,0 +1,143 @@
+package org.osaf.cosmo.calendar;
+
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import org.junit.Assert;
+import junit.framework.TestCase;
+import net.fortuna.ical4j.data.CalendarBuilder;
+import net.fortuna.ical4j.model.Calendar;
+import net.fortuna.ical4j.model.Component;
+import net.fortuna.ical4j.model.Date;
+import net.fortuna.ical4j.model.DateTime;
+import net.fortuna.ical4j.model.TimeZone;
+import net.fortuna.ical4j.model.TimeZoneRegistry;
+import net.fortuna.ical4j.model.TimeZoneRegistryFactory;
+import net.fortuna.ical4j.model.component.VEvent;
+
+/**
+ * Test CompactInstanceList against InstanceList.
+ */
+public class CompactInstanceListTest extends TestCase {
+
+    private static final TimeZoneRegistry TIMEZONE_REGISTRY =
+                TimeZoneRegistryFactory.getInstance().createRegistry();
+
+    public void testFloatingRecurring() throws Exception {
+        assertSameInstances("floating_recurr_event.ics", null, false,
+                new DateTime("20060101T140000"), new DateTime("20060108T140000"));
+    }
+
+    public void testFloatingRecurringWithTimezone() throws Exception {
+        TimeZone tz = TIMEZONE_REGISTRY.getTimeZone("America/New_York");
+        assertSameInstances("floating_recurr_event.ics", tz, true,
+                new DateTime("20060101T190000Z"), new DateTime("20060108T190000Z"));
+    }
+
+    public void testAllDayRecurringWithMods() throws Exception {
+        TimeZone tz = TIMEZONE_REGISTRY.getTimeZone("America/Chicago");
+        assertSameInstances("allday_weekly_recurring_with_mods.ics", tz, true,
+                new DateTime("20070101T000000Z"), new DateTime("20070201T000000Z"));
+        assertSameInstances("allday_weekly_recurring_with_mods.ics", tz, false,
+                new DateTime("20070101T000000Z"), new DateTime("20070201T000000Z"));
+    }
+
+    public void testRecurringWithExdates() throws Exception {
+        assertSameInstances("recurring_with_exdates.ics", null, false,
+                new DateTime("20070509T090000Z"), new DateTime("20070609T090000Z"));
+    }
+
+    public void testRecurringWithRdates() throws Exception {
+        assertSameInstances("recurring_with_rdates.ics", null, false,
+                new DateTime("20070509T090000Z"), new DateTime("20070609T090000Z"));
+    }
+
+    public void testRecurringWithExrule() throws Exception {
+        assertSameInstances("recurring_with_exrule.ics", null, false,
+                new DateTime("20070509T090000Z"), new DateTime("20070609T090000Z"));
+    }
+
+    public void testInstanceBeforeStartRange() throws Exception {
+        assertSameInstances("eventwithtimezone3.ics", null, false,
+                new DateTime("20070509T090000Z"), new DateTime("20070511T090000Z"));
+    }
+
+    public void testIndexOf() throws Exception {
+        Calendar calendar = getCalendar("floating_recurr_event.ics");
+        CompactInstanceList instances = new CompactInstanceList();
+        addToInstanceList(calendar, instances, new DateTime("20060101T140000"),
+                new DateTime("20060108T140000"));
+
+        Assert.assertTrue(instances.size() > 0);
+        for (int i = 0; i < instances.size(); i++) {
+            Assert.assertEquals(i, instances.indexOf(instances.getRidTime(i)));
+            Assert.assertEquals(instances.getRidTime(i), instances.getRid(i).getTime());
+        }
+        Assert.assertEquals(-1, instances.indexOf(instances.getRidTime(0) + 1));
+    }
+
+    private void assertSameInstances(String name, TimeZone tz, boolean utc,
+            Date start, Date end) throws Exception {
+        Calendar calendar = getCalendar(name);
+
+        InstanceList expected = new InstanceList();
+        CompactInstanceList actual = new CompactInstanceList();
+        expected.setUTC(utc);
+        actual.setUTC(utc);
+        if (tz != null) {
+            expected.setTimezone(tz);
+            actual.setTimezone(tz);
+        }
+
+        addToInstanceList(calendar, expected, start, end);
+        addToInstanceList(calendar, actual, start, end);
+
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected.size(), actual.size());
+
+        Iterator<Entry<String, Instance>> it = expected.entrySet().iterator();
+        for (int i = 0; i < actual.size(); i++) {
+            Entry<String, Instance> entry = it.next();
+            Instance instance = actual.getInstance(i);
+            Assert.assertEquals(entry.getKey(), instance.getRid().toString());
+            Assert.assertEquals(entry.getValue().getStart().toString(),
+                    instance.getStart().toString());
+            Assert.assertEquals(entry.getValue().getEnd().toString(),
+                    instance.getEnd().toString());
+            Assert.assertEquals(entry.getValue().isOverridden(), actual.isOverridden(i));
+            Assert.assertSame(entry.getValue().getComp(), actual.getComponent(i));
+        }
+    }
+
+    private static void addToInstanceList(Calendar calendar,
+            InstanceList instances, Date start, Date end) {
+        for (Component comp : calendar.getComponents().getComponents(Component.VEVENT)) {
+            VEvent event = (VEvent) comp;
+            if (event.getRecurrenceId() == null)
+                instances.addComponent(event, start, end);
+            else
+                instances.addOverride(event, start, end);
+        }
+    }
+
+    private static void addToInstanceList(Calendar calendar,
+            CompactInstanceList instances, Date start, Date end) {
+        for (Component comp : calendar.getComponents().getComponents(Component.VEVENT)) {
+            VEvent event = (VEvent) comp;
+            if (event.getRecurrenceId() == null)
+                instances.addComponent(event, start, end);
+            else
+                instances.addOverride(event, start, end);
+        }
+    }
+
+    protected Calendar getCalendar(String name) throws Exception {
+        CalendarBuilder cb = new CalendarBuilder();
+        InputStream in = getClass().getClassLoader().getResourceAsStream("instancelist/" + name);
+        if (in == null) {
+            throw new IllegalStateException("resource " + name + " not found");
+        }
+        return cb.build(in);
+    }
+}
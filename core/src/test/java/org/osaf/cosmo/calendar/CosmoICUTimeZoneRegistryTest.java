@@ -0,0 +1,109 @@
+package org.osaf.cosmo.calendar;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+import net.fortuna.ical4j.model.DateTime;
+import net.fortuna.ical4j.model.TimeZone;
+import org.junit.Assert;
+import org.osaf.cosmo.calendar.util.TimeZoneUtils;
+
+/**
+ * Test CosmoICUTimeZoneRegistry
+ */
+public class CosmoICUTimeZoneRegistryTest extends TestCase {
+
+    public void testGetTimeZone() {
+        CosmoICUTimeZoneRegistry registry = new CosmoICUTimeZoneRegistry();
+        TimeZone tz = registry.getTimeZone("America/Chicago");
+        Assert.assertNotNull(tz);
+        Assert.assertEquals("America/Chicago", tz.getID());
+
+        // shared between registries
+        Assert.assertSame(tz, new CosmoICUTimeZoneRegistry().getTimeZone("America/Chicago"));
+
+        Assert.assertNull(registry.getTimeZone("blah"));
+        Assert.assertNull(registry.getTimeZone(null));
+    }
+
+    public void testConcurrentFirstLookups() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<TimeZone>> lookups = new ArrayList<>();
+            for (int i = 0; i < 32; i++)
+                lookups.add(() -> new CosmoICUTimeZoneRegistry().getTimeZone("Australia/Adelaide"));
+
+            TimeZone first = null;
+            for (Future<TimeZone> result : executor.invokeAll(lookups)) {
+                TimeZone tz = result.get();
+                Assert.assertNotNull(tz);
+                if (first == null)
+                    first = tz;
+                Assert.assertSame(first, tz);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testRegisteredTimeZoneWins() {
+        CosmoICUTimeZoneRegistry registry = new CosmoICUTimeZoneRegistry();
+        TimeZone tz = new CosmoICUTimeZoneRegistry().getTimeZone("Europe/London");
+        TimeZone registered = new TimeZone(tz.getVTimeZone());
+        registry.register(registered);
+        Assert.assertSame(registered, registry.getTimeZone("Europe/London"));
+
+        registry.clear();
+        Assert.assertSame(tz, registry.getTimeZone("Europe/London"));
+    }
+
+    public void testSnapshot() throws Exception {
+        File file = File.createTempFile("timezones", ".ics");
+        try {
+            // as run by the timezoneSnapshot task
+            CosmoICUTimeZoneRegistry.main(new String[] { file.getPath() });
+
+            Map<String, TimeZone> cache = new HashMap<>();
+            try (InputStream in = new FileInputStream(file)) {
+                Assert.assertEquals(cache.size(),
+                        CosmoICUTimeZoneRegistry.loadSnapshot(in, cache));
+            }
+
+            // warming up from the snapshot leaves nothing to convert
+            for (String id : TimeZoneUtils.getTimeZoneIds()) {
+                if (!cache.containsKey(id))
+                    Assert.assertNull(id, TimeZoneUtils.getVTimeZone(id));
+            }
+
+            // loaded zones match the ones converted from icu
+            CosmoICUTimeZoneRegistry converted = new CosmoICUTimeZoneRegistry();
+            CosmoICUTimeZoneRegistry loaded = new CosmoICUTimeZoneRegistry();
+            for (String id : new String[] { "America/Chicago", "Europe/London",
+                    "Australia/Adelaide", "Asia/Tokyo" }) {
+                loaded.register(cache.get(id));
+                TimeZone tz = loaded.getTimeZone(id);
+                Assert.assertSame(cache.get(id), tz);
+                TimeZone expected = converted.getTimeZone(id);
+                Assert.assertEquals(id, expected.getRawOffset(), tz.getRawOffset());
+                for (String date : new String[] { "20070101T120000Z",
+                        "20070701T120000Z", "20300701T120000Z" }) {
+                    long time = new DateTime(date).getTime();
+                    Assert.assertEquals(id + " " + date, expected.getOffset(time),
+                            tz.getOffset(time));
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -30,6 +30,8 @@ import org.osaf.cosmo.eim.schema.EimValueConverter;
 import org.osaf.cosmo.model.*;
 import org.osaf.cosmo.model.mock.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.time.Duration;
 import java.util.Iterator;
@@ -224,6 +226,43 @@ public class EntityConverterTest extends TestCase {
         Assert.assertEquals(1, fullCal.getComponents(Component.VTODO).size());
     }
 
+    public void testWriteCollection() throws Exception {
+
+        Calendar c1 = getCalendar("eventwithtimezone1.ics");
+        Calendar c2 = getCalendar("vtodo.ics");
+        Calendar c3 = getCalendar("eventwithtimezone1.ics");
+        c3.getComponent(Component.VEVENT).getProperties().getProperty(Property.UID).setValue("another");
+        NoteItem note1 = converter.convertEventCalendar(c1).iterator().next();
+        NoteItem note2 = converter.convertTaskCalendar(c2);
+        NoteItem note3 = converter.convertEventCalendar(c3).iterator().next();
+
+        MockCollectionItem collection = new MockCollectionItem();
+        collection.addStamp(new MockCalendarCollectionStamp(collection));
+        collection.addChild(note1);
+        collection.addChild(note2);
+        collection.addChild(note3);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertTrue(converter.writeCollection(collection, collection.getChildren(), out));
+
+        Calendar fullCal = new CalendarBuilder().build(
+                new ByteArrayInputStream(out.toByteArray()));
+        fullCal.validate();
+
+        // VTIMEZONE first and only once, then VTODO and VEVENTs
+        Assert.assertEquals(4, fullCal.getComponents().size());
+        Assert.assertEquals(Component.VTIMEZONE, fullCal.getComponents().get(0).getName());
+        Assert.assertEquals(1, fullCal.getComponents(Component.VTIMEZONE).size());
+        Assert.assertEquals(2, fullCal.getComponents(Component.VEVENT).size());
+        Assert.assertEquals(1, fullCal.getComponents(Component.VTODO).size());
+
+        // not a calendar collection
+        out.reset();
+        Assert.assertFalse(converter.writeCollection(new MockCollectionItem(),
+                collection.getChildren(), out));
+        Assert.assertEquals(0, out.size());
+    }
+
     public void testConvertTask() throws Exception {
         TimeZoneRegistry registry =
             TimeZoneRegistryFactory.getInstance().createRegistry();
@@ -0,0 +1,115 @@
+package org.osaf.cosmo.calendar;
+
+import java.io.InputStream;
+
+import org.junit.Assert;
+import junit.framework.TestCase;
+import net.fortuna.ical4j.data.CalendarBuilder;
+import net.fortuna.ical4j.model.Calendar;
+import net.fortuna.ical4j.model.Component;
+import net.fortuna.ical4j.model.Date;
+import net.fortuna.ical4j.model.DateTime;
+
+/**
+ * Test ExpansionCache
+ */
+public class ExpansionCacheTest extends TestCase {
+
+    private static final DateTime MAY = new DateTime("20070501T000000Z");
+    private static final DateTime AUGUST = new DateTime("20070801T000000Z");
+
+    public void testExactRange() throws Exception {
+        ExpansionCache cache = new ExpansionCache();
+        CompactInstanceList instances = expand("recurring_with_exdates.ics", MAY, AUGUST);
+
+        Assert.assertNull(cache.get(1L, 1, MAY, AUGUST, null));
+        cache.put(1L, 1, MAY, AUGUST, null, instances);
+        Assert.assertSame(instances, cache.get(1L, 1, MAY, AUGUST, null));
+        Assert.assertEquals(1, cache.getCachedItemCount());
+
+        // other versions and ranges aren't
+        Assert.assertNull(cache.get(1L, 1, MAY, new DateTime("20070901T000000Z"), null));
+        Assert.assertNull(cache.get(2L, 1, MAY, AUGUST, null));
+
+        // a new version evicts the old
+        Assert.assertNull(cache.get(1L, 2, MAY, AUGUST, null));
+        Assert.assertEquals(0, cache.getCachedItemCount());
+    }
+
+    public void testNarrowedRange() throws Exception {
+        ExpansionCache cache = new ExpansionCache();
+        cache.put(1L, 1, MAY, AUGUST, null,
+                expand("recurring_with_exdates.ics", MAY, AUGUST));
+
+        // weekly from 20070508T101500Z for an hour; ranges starting and
+        // ending at, inside and between instances
+        assertNarrowed(cache, "20070509T090000Z", "20070609T090000Z");
+        assertNarrowed(cache, "20070529T101500Z", "20070605T111500Z");
+        assertNarrowed(cache, "20070529T103000Z", "20070605T103000Z");
+        assertNarrowed(cache, "20070529T111500Z", "20070605T101500Z");
+        assertNarrowed(cache, "20070517T000000Z", "20070518T000000Z");
+    }
+
+    public void testAllDayRangeNotNarrowed() throws Exception {
+        ExpansionCache cache = new ExpansionCache();
+        cache.put(1L, 1, MAY, AUGUST, null,
+                expand("allday_recurring.ics", MAY, AUGUST));
+
+        Assert.assertNotNull(cache.get(1L, 1, MAY, AUGUST, null));
+        Assert.assertNull(cache.get(1L, 1, new DateTime("20070509T090000Z"),
+                new DateTime("20070609T090000Z"), null));
+    }
+
+    public void testEviction() throws Exception {
+        ExpansionCache cache = new ExpansionCache();
+        CompactInstanceList instances = expand("recurring_with_exdates.ics", MAY, AUGUST);
+
+        cache.setMaxCachedItems(1);
+        cache.put(1L, 1, MAY, AUGUST, null, instances);
+        cache.put(2L, 1, MAY, AUGUST, null, instances);
+        Assert.assertEquals(1, cache.getCachedItemCount());
+        Assert.assertNull(cache.get(1L, 1, MAY, AUGUST, null));
+
+        cache.put(2L, 1, MAY, AUGUST, null, instances);
+        cache.evict(2L);
+        Assert.assertEquals(0, cache.getCachedItemCount());
+
+        cache.setMaxCachedItems(0);
+        cache.put(1L, 1, MAY, AUGUST, null, instances);
+        Assert.assertEquals(0, cache.getCachedItemCount());
+    }
+
+    private void assertNarrowed(ExpansionCache cache, String start, String end)
+            throws Exception {
+        DateTime rangeStart = new DateTime(start);
+        DateTime rangeEnd = new DateTime(end);
+        CompactInstanceList expected = expand("recurring_with_exdates.ics",
+                rangeStart, rangeEnd);
+        CompactInstanceList actual = cache.get(1L, 1, rangeStart, rangeEnd, null);
+
+        Assert.assertNotNull(actual);
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(expected.getRidTime(i), actual.getRidTime(i));
+            Assert.assertEquals(expected.getStartTime(i), actual.getStartTime(i));
+            Assert.assertEquals(expected.getEndTime(i), actual.getEndTime(i));
+        }
+    }
+
+    private CompactInstanceList expand(String name, Date start, Date end)
+            throws Exception {
+        CompactInstanceList instances = new CompactInstanceList();
+        for (Component comp : getCalendar(name).getComponents().getComponents(Component.VEVENT))
+            instances.addComponent(comp, start, end);
+        return instances;
+    }
+
+    protected Calendar getCalendar(String name) throws Exception {
+        CalendarBuilder cb = new CalendarBuilder();
+        InputStream in = getClass().getClassLoader().getResourceAsStream("instancelist/" + name);
+        if (in == null) {
+            throw new IllegalStateException("resource " + name + " not found");
+        }
+        return cb.build(in);
+    }
+}
@@ -22,8 +22,12 @@ import junit.framework.TestCase;
 import net.fortuna.ical4j.data.CalendarBuilder;
 import net.fortuna.ical4j.model.Calendar;
 import net.fortuna.ical4j.model.Component;
+import net.fortuna.ical4j.model.Property;
 import net.fortuna.ical4j.model.TimeZone;
 import net.fortuna.ical4j.model.component.VTimeZone;
+import net.fortuna.ical4j.model.property.TzId;
+
+import org.osaf.cosmo.calendar.util.TimeZoneUtils;
 
 /**
  * Test TimeZoneTranslator
@@ -64,6 +68,33 @@ public class TimeZoneTranslatorTest extends TestCase {
         Assert.assertEquals("America/Los_Angeles", olsonTz.getID());
     }
 
+    public void testTranslateNormalisedAlias() {
+        TimeZoneTranslator translator = TimeZoneTranslator.getInstance();
+
+        TimeZone olsonTz = translator.translateToOlsonTz("  (GMT-08:00) pacific time (US &  Canada)/tijuana ");
+        Assert.assertNotNull(olsonTz);
+        Assert.assertEquals("America/Los_Angeles", olsonTz.getID());
+
+        olsonTz = translator.translateToOlsonTz("america/los_angeles");
+        Assert.assertNotNull(olsonTz);
+        Assert.assertEquals("America/Los_Angeles", olsonTz.getID());
+
+        // remembered misses still miss
+        Assert.assertNull(translator.translateToOlsonTz("Bogus"));
+        Assert.assertNull(translator.translateToOlsonTz("Bogus"));
+    }
+
+    public void testTranslateByRules() throws Exception {
+        TimeZoneTranslator translator = TimeZoneTranslator.getInstance();
+        VTimeZone vtz = TimeZoneUtils.getVTimeZone("America/Chicago");
+        ((TzId) vtz.getProperty(Property.TZID)).setValue("My Central Zone");
+
+        TimeZone olsonTz = translator.translateToOlsonTz(new TimeZone(vtz));
+        Assert.assertNotNull(olsonTz);
+        // of the zones with Chicago's rules, the one most aliases point to
+        Assert.assertEquals("America/Chicago", olsonTz.getID());
+    }
+
     private TimeZone getTimeZone(String filename) throws Exception {
         CalendarBuilder cb = new CalendarBuilder();
         FileInputStream fis = new FileInputStream(baseDir + filename);
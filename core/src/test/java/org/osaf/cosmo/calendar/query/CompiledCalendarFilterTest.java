@@ -0,0 +1,174 @@
+package org.osaf.cosmo.calendar.query;
+
+import java.io.InputStream;
+
+import org.junit.Assert;
+import junit.framework.TestCase;
+import net.fortuna.ical4j.data.CalendarBuilder;
+import net.fortuna.ical4j.model.Calendar;
+import net.fortuna.ical4j.model.DateTime;
+import net.fortuna.ical4j.model.Period;
+
+/**
+ * Test CompiledCalendarFilter and CalendarFilterCompiler
+ */
+public class CompiledCalendarFilterTest extends TestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        System.setProperty("ical4j.unfolding.relaxed", "true");
+        System.setProperty("ical4j.parsing.relaxed", "true");
+        System.setProperty("ical4j.validation.relaxed", "true");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        System.clearProperty("ical4j.unfolding.relaxed");
+        System.clearProperty("ical4j.parsing.relaxed");
+        System.clearProperty("ical4j.validation.relaxed");
+    }
+
+    public void testMatchesLikeEvaluater() throws Exception {
+        CalendarFilterEvaluater evaluater = new CalendarFilterEvaluater();
+        Calendar calendar = getCalendar("cal1.ics");
+
+        TextMatchFilter textFilter = new TextMatchFilter("Visible");
+        CalendarFilter filter = createSummaryFilter(textFilter);
+        assertMatches(evaluater, calendar, filter, true);
+
+        textFilter.setValue("ViSiBle");
+        assertMatches(evaluater, calendar, filter, true);
+
+        textFilter.setCollation(TextMatchFilter.COLLATION_OCTET);
+        assertMatches(evaluater, calendar, filter, false);
+
+        textFilter.setNegateCondition(true);
+        assertMatches(evaluater, calendar, filter, true);
+
+        filter.getFilter().setName("VTODO");
+        assertMatches(evaluater, calendar, filter, false);
+    }
+
+    public void testAlarmTimeRange() throws Exception {
+        CalendarFilterEvaluater evaluater = new CalendarFilterEvaluater();
+        Calendar calendar = getCalendar("event_with_alarm.ics");
+
+        CalendarFilter filter = new CalendarFilter();
+        ComponentFilter compFilter = new ComponentFilter("VCALENDAR");
+        filter.setFilter(compFilter);
+        ComponentFilter eventFilter = new ComponentFilter("VEVENT");
+        ComponentFilter alarmFilter = new ComponentFilter("VALARM");
+        compFilter.getComponentFilters().add(eventFilter);
+        eventFilter.getComponentFilters().add(alarmFilter);
+
+        // alarm relative to the start of its event
+        TimeRangeFilter timeRangeFilter = new TimeRangeFilter(new Period(
+                new DateTime("20060101T220000Z"), new DateTime("20060101T230000Z")));
+        alarmFilter.setTimeRangeFilter(timeRangeFilter);
+        assertMatches(evaluater, calendar, filter, true);
+
+        timeRangeFilter.setPeriod(new Period(
+                new DateTime("20060101T020000Z"), new DateTime("20060101T030000Z")));
+        assertMatches(evaluater, calendar, filter, false);
+    }
+
+    public void testCompiledFilterIgnoresLaterChanges() throws Exception {
+        Calendar calendar = getCalendar("cal1.ics");
+
+        TextMatchFilter textFilter = new TextMatchFilter("Visible");
+        CalendarFilter filter = createSummaryFilter(textFilter);
+        CompiledCalendarFilter compiled = CompiledCalendarFilter.compile(filter);
+
+        textFilter.setValue("XXX");
+        Assert.assertTrue(compiled.matches(calendar));
+        Assert.assertFalse(CompiledCalendarFilter.compile(filter).matches(calendar));
+    }
+
+    public void testCompilerCachesByShape() throws Exception {
+        CalendarFilterCompiler compiler = new CalendarFilterCompiler();
+
+        CompiledCalendarFilter compiled =
+            compiler.compile(createSummaryFilter(new TextMatchFilter("Visible")));
+        Assert.assertSame(compiled,
+                compiler.compile(createSummaryFilter(new TextMatchFilter("Visible"))));
+        Assert.assertEquals(1, compiler.getCachedFilterCount());
+
+        TextMatchFilter negated = new TextMatchFilter("Visible");
+        negated.setNegateCondition(true);
+        Assert.assertNotSame(compiled, compiler.compile(createSummaryFilter(negated)));
+        Assert.assertNotSame(compiled,
+                compiler.compile(createSummaryFilter(new TextMatchFilter("visible"))));
+        Assert.assertEquals(3, compiler.getCachedFilterCount());
+
+        // least recently used is evicted
+        compiler.setMaxCachedFilters(1);
+        compiler.compile(createSummaryFilter(new TextMatchFilter("Visible")));
+        compiler.compile(createSummaryFilter(negated));
+        Assert.assertEquals(1, compiler.getCachedFilterCount());
+        Assert.assertNotSame(compiled,
+                compiler.compile(createSummaryFilter(new TextMatchFilter("Visible"))));
+
+        compiler.setMaxCachedFilters(0);
+        compiler.compile(createSummaryFilter(new TextMatchFilter("Visible")));
+        Assert.assertEquals(0, compiler.getCachedFilterCount());
+    }
+
+    public void testCompilerRemembersFilterInstance() throws Exception {
+        CalendarFilterCompiler compiler = new CalendarFilterCompiler();
+        compiler.setMaxCachedFilters(1);
+
+        CalendarFilter filter = createSummaryFilter(new TextMatchFilter("Visible"));
+        CompiledCalendarFilter compiled = compiler.compile(filter);
+
+        // the same instance is found without its shape
+        compiler.compile(createSummaryFilter(new TextMatchFilter("visible")));
+        Assert.assertEquals(1, compiler.getCachedFilterCount());
+        Assert.assertSame(compiled, compiler.compile(filter));
+    }
+
+    public void testKeyDistinguishesTimeRanges() throws Exception {
+        CalendarFilter filter1 = createSummaryFilter(null);
+        CalendarFilter filter2 = createSummaryFilter(null);
+        Assert.assertEquals(CalendarFilterCompiler.getKey(filter1),
+                CalendarFilterCompiler.getKey(filter2));
+
+        filter1.getFilter().setTimeRangeFilter(new TimeRangeFilter(new Period(
+                new DateTime("20060101T000000Z"), new DateTime("20060102T000000Z"))));
+        filter2.getFilter().setTimeRangeFilter(new TimeRangeFilter(new Period(
+                new DateTime("20060101T000000Z"), new DateTime("20060103T000000Z"))));
+        Assert.assertFalse(CalendarFilterCompiler.getKey(filter1).equals(
+                CalendarFilterCompiler.getKey(filter2)));
+    }
+
+    private void assertMatches(CalendarFilterEvaluater evaluater, Calendar calendar,
+                               CalendarFilter filter, boolean expected) {
+        Assert.assertEquals(expected, evaluater.evaluate(calendar, filter));
+        Assert.assertEquals(expected, CompiledCalendarFilter.compile(filter).matches(calendar));
+    }
+
+    /*
+     * VCALENDAR/VEVENT/SUMMARY filter, matching the text if given
+     */
+    private CalendarFilter createSummaryFilter(TextMatchFilter textFilter) {
+        CalendarFilter filter = new CalendarFilter();
+        ComponentFilter compFilter = new ComponentFilter("VCALENDAR");
+        ComponentFilter eventFilter = new ComponentFilter("VEVENT");
+        filter.setFilter(compFilter);
+        compFilter.getComponentFilters().add(eventFilter);
+        PropertyFilter propFilter = new PropertyFilter("SUMMARY");
+        propFilter.setTextMatchFilter(textFilter);
+        eventFilter.getPropFilters().add(propFilter);
+        return filter;
+    }
+
+    protected Calendar getCalendar(String name) throws Exception {
+        CalendarBuilder cb = new CalendarBuilder();
+        InputStream in = getClass().getClassLoader().getResourceAsStream(name);
+        if (in == null) {
+            throw new IllegalStateException("resource " + name + " not found");
+        }
+        return cb.build(in);
+    }
+}
@@ -18,6 +18,8 @@ package org.osaf.cosmo.calendar.util;
 import org.junit.Assert;
 import junit.framework.TestCase;
 import net.fortuna.ical4j.model.DateTime;
+import net.fortuna.ical4j.model.Property;
+import net.fortuna.ical4j.model.property.TzId;
 import net.fortuna.ical4j.model.component.VTimeZone;
 
 /**
@@ -49,4 +51,22 @@ public class TimeZoneUtilsTest extends TestCase {
 
         Assert.assertFalse(vtz1.equals(vtz2));
     }
+
+    public void testGetEquivalentTimeZoneId() throws Exception {
+        VTimeZone vtz = TimeZoneUtils.getVTimeZone("America/Chicago");
+        TzId tzId = (TzId) vtz.getProperty(Property.TZID);
+        tzId.setValue("Custom Central");
+
+        String id = TimeZoneUtils.getEquivalentTimeZoneId(vtz);
+        Assert.assertNotNull(id);
+        DateTime winter = new DateTime("20300101T100000Z");
+        DateTime summer = new DateTime("20300701T100000Z");
+        java.util.TimeZone chicago = TimeZoneUtils.getTimeZone("America/Chicago");
+        java.util.TimeZone equivalent = TimeZoneUtils.getTimeZone(id);
+        Assert.assertEquals(chicago.getOffset(winter.getTime()), equivalent.getOffset(winter.getTime()));
+        Assert.assertEquals(chicago.getOffset(summer.getTime()), equivalent.getOffset(summer.getTime()));
+
+        // same rules, same answer
+        Assert.assertEquals(id, TimeZoneUtils.getEquivalentTimeZoneId(TimeZoneUtils.getVTimeZone("America/Chicago")));
+    }
 }
@@ -0,0 +1,153 @@
+package org.osaf.cosmo.dao.hibernate;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManagerFactory;
+
+import net.fortuna.ical4j.model.DateTime;
+import net.fortuna.ical4j.model.Period;
+import org.junit.Assert;
+import org.junit.Test;
+import org.osaf.cosmo.calendar.BusyPeriods;
+import org.osaf.cosmo.eim.schema.EimValueConverter;
+import org.osaf.cosmo.model.CalendarCollectionStamp;
+import org.osaf.cosmo.model.CollectionItem;
+import org.osaf.cosmo.model.ContentItem;
+import org.osaf.cosmo.model.EventStamp;
+import org.osaf.cosmo.model.NoteItem;
+import org.osaf.cosmo.model.User;
+import org.osaf.cosmo.model.hibernate.HibCalendarCollectionStamp;
+import org.osaf.cosmo.model.hibernate.HibCollectionItem;
+import org.osaf.cosmo.model.hibernate.HibEventStamp;
+import org.osaf.cosmo.model.hibernate.HibNoteItem;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * Test FreeBusyIndexer
+ */
+public class FreeBusyIndexerTest extends AbstractHibernateDaoTestCase {
+
+    private static final DateTimeFormatter DATE_FORMAT =
+        DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    @Autowired
+    protected UserDaoImpl userDao;
+    @Autowired
+    protected ContentDaoImpl contentDao;
+    @Autowired
+    protected CalendarDaoImpl calendarDao;
+    @Autowired
+    protected EntityManagerFactory entityManagerFactory;
+    @Autowired
+    protected PlatformTransactionManager transactionManager;
+
+    @Test
+    public void testIndexBusyPeriods() throws Exception {
+        User user = helper.getUser(userDao, contentDao, "testuser");
+        CollectionItem root = contentDao.getRootItem(user);
+        String tomorrow = LocalDate.now(ZoneOffset.UTC).plusDays(1).format(DATE_FORMAT);
+
+        CollectionItem calendar = new HibCollectionItem();
+        calendar.setName("busy");
+        calendar.setOwner(user);
+        CalendarCollectionStamp ccs = new HibCalendarCollectionStamp();
+        calendar.addStamp(ccs);
+        calendar = contentDao.createCollection(root, calendar);
+
+        // a daily event on three days
+        NoteItem item = new HibNoteItem();
+        item.setName("standup");
+        item.setOwner(user);
+        HibEventStamp event = new HibEventStamp(item);
+        event.createCalendar();
+        event.setStartDate(new DateTime(tomorrow + "T100000Z"));
+        event.setEndDate(new DateTime(tomorrow + "T110000Z"));
+        event.setRecurrenceRules(EimValueConverter.toICalRecurs(
+                "FREQ=DAILY;COUNT=3"));
+        item.addStamp(event);
+        String uid = contentDao.createContent(calendar, item).getUid();
+        clearSession();
+
+        Period period = new Period(new DateTime(tomorrow + "T000000Z"),
+                new DateTime(tomorrow + "T235959Z"));
+
+        // not indexed yet
+        calendar = (CollectionItem) contentDao.findItemByUid(calendar.getUid());
+        Assert.assertNull(calendarDao.findBusyPeriods(calendar, period));
+
+        FreeBusyIndexer indexer = createIndexer();
+        Assert.assertEquals(1, indexer.index());
+        clearSession();
+        Assert.assertEquals(3L, countBusyPeriods());
+
+        calendar = (CollectionItem) contentDao.findItemByUid(calendar.getUid());
+        assertBusy(calendarDao.findBusyPeriods(calendar, period), tomorrow + "T100000Z", tomorrow + "T110000Z");
+        clearSession();
+
+        // changes are seen before they are indexed
+        item = (NoteItem) contentDao.findItemByUid(uid);
+        EventStamp stamp = (EventStamp) item.getStamp(EventStamp.class);
+        stamp.setStartDate(new DateTime(tomorrow + "T140000Z"));
+        stamp.setEndDate(new DateTime(tomorrow + "T150000Z"));
+        contentDao.updateContent(item);
+        clearSession();
+
+        calendar = (CollectionItem) contentDao.findItemByUid(calendar.getUid());
+        assertBusy(calendarDao.findBusyPeriods(calendar, period), tomorrow + "T140000Z", tomorrow + "T150000Z");
+        clearSession();
+
+        Assert.assertEquals(1, indexer.index());
+        clearSession();
+        Assert.assertEquals(0L, entityManager.createQuery(
+                "select count(s) from HibStaleBusyItem s", Long.class).getSingleResult().longValue());
+
+        calendar = (CollectionItem) contentDao.findItemByUid(calendar.getUid());
+        assertBusy(calendarDao.findBusyPeriods(calendar, period), tomorrow + "T140000Z", tomorrow + "T150000Z");
+
+        // beyond the window
+        DateTime later = new DateTime(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(400));
+        later.setUtc(true);
+        Assert.assertNull(calendarDao.findBusyPeriods(calendar,
+                new Period(later, new DateTime(later.getTime() + TimeUnit.DAYS.toMillis(1)))));
+        clearSession();
+
+        // removed items are free
+        contentDao.removeContent((ContentItem) contentDao.findItemByUid(uid));
+        clearSession();
+        calendar = (CollectionItem) contentDao.findItemByUid(calendar.getUid());
+        Assert.assertTrue(calendarDao.findBusyPeriods(calendar, period).getBusyPeriods().isEmpty());
+        clearSession();
+
+        Assert.assertEquals(0, indexer.index());
+        clearSession();
+        Assert.assertEquals(0L, countBusyPeriods());
+    }
+
+    private void assertBusy(BusyPeriods busy, String start, String end) throws Exception {
+        Assert.assertNotNull(busy);
+        Assert.assertEquals(1, busy.getBusyPeriods().size());
+        Period period = busy.getBusyPeriods().iterator().next();
+        Assert.assertEquals(new DateTime(start).getTime(), period.getStart().getTime());
+        Assert.assertEquals(new DateTime(end).getTime(), period.getEnd().getTime());
+        Assert.assertTrue(busy.getBusyTentativePeriods().isEmpty());
+    }
+
+    private long countBusyPeriods() {
+        return entityManager.createQuery("select count(p) from HibBusyPeriod p", Long.class)
+            .getSingleResult();
+    }
+
+    private FreeBusyIndexer createIndexer() {
+        FreeBusyIndexer indexer = new FreeBusyIndexer();
+        indexer.setIntervalMillis(0);
+        indexer.setBatchSize(1);
+        indexer.setEntityManagerFactory(entityManagerFactory);
+        indexer.setTransactionManager(transactionManager);
+        indexer.init();
+        return indexer;
+    }
+}
@@ -461,6 +461,50 @@ public class HibernateCalendarDaoTest extends AbstractHibernateDaoTestCase {
         verifyUidInSet(queryEvents, "test3uid:20200526T081500Z");
     }
 
+    @Test
+    public void testCalendarQueryingMovedModification() throws Exception {
+        CollectionItem calendar = generateCalendar("test", "testuser");
+        CollectionItem root = contentDao.getRootItem(getUser(userDao, "testuser"));
+
+        calendar = contentDao.createCollection(root, calendar);
+
+        NoteItem event = generateEvent("test3.ics", "eventwithtimezone3.ics", "testuser");
+        NoteItem master = (NoteItem) contentDao.createContent(calendar, event);
+
+        // moved a year before the first occurrence of the series
+        event = generateEventException("mod.ics", "eventmodwithtimezone.ics", "testuser");
+        event.setModifies(master);
+        contentDao.createContent(calendar, event);
+
+        // STATUS can't be translated, so the time range is only used
+        // to narrow down the first pass
+        CalendarFilter filter = new CalendarFilter();
+        ComponentFilter compFilter = new ComponentFilter("VCALENDAR");
+        ComponentFilter eventFilter = new ComponentFilter("VEVENT");
+        filter.setFilter(compFilter);
+        compFilter.getComponentFilters().add(eventFilter);
+        eventFilter.setTimeRangeFilter(new TimeRangeFilter(new Period(
+                new DateTime("20060501T010000Z"), new DateTime("20060601T010000Z"))));
+        PropertyFilter propFilter = new PropertyFilter("STATUS");
+        propFilter.setTextMatchFilter(new TextMatchFilter("CONFIRMED"));
+        eventFilter.getPropFilters().add(propFilter);
+
+        clearSession();
+
+        calendar = (CollectionItem) contentDao.findItemByUid(calendar.getUid());
+
+        // the master is only found through its modification
+        Set<ICalendarItem> queryEvents = calendarDao.findCalendarItems(calendar, filter);
+        Assert.assertEquals(1, queryEvents.size());
+        Assert.assertEquals("test3.ics", queryEvents.iterator().next().getName());
+
+        // Should match none
+        eventFilter.setTimeRangeFilter(new TimeRangeFilter(new Period(
+                new DateTime("20060401T010000Z"), new DateTime("20060501T010000Z"))));
+        queryEvents = calendarDao.findCalendarItems(calendar, filter);
+        Assert.assertEquals(0, queryEvents.size());
+    }
+
     private User getUser(UserDao userDao, String username) {
         return helper.getUser(userDao, contentDao, username);
     }
@@ -25,10 +25,13 @@ import org.osaf.cosmo.calendar.util.CalendarUtils;
 import org.osaf.cosmo.dao.UserDao;
 import org.osaf.cosmo.model.*;
 import org.osaf.cosmo.model.hibernate.*;
+import org.osaf.cosmo.util.KeysetPage;
 import org.osaf.cosmo.xml.DomWriter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.w3c.dom.Element;
 
+import javax.persistence.EntityManagerFactory;
 import javax.validation.ConstraintViolationException;
 import javax.xml.parsers.DocumentBuilderFactory;
 import java.math.BigDecimal;
@@ -42,6 +45,12 @@ public class HibernateContentDaoTest extends AbstractHibernateDaoTestCase {
     @Autowired
     protected ContentDaoImpl contentDao;
 
+    @Autowired
+    protected EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    protected PlatformTransactionManager transactionManager;
+
     public HibernateContentDaoTest() {
         super();
     }
@@ -135,6 +144,293 @@ public class HibernateContentDaoTest extends AbstractHibernateDaoTestCase {
 
     }
 
+    @Test
+    public void testContentDaoCreateAndUpdateContentItems() throws Exception {
+        User user = getUser(userDao, "testuser");
+        CollectionItem root = contentDao.getRootItem(user);
+
+        Set<ContentItem> notes = new LinkedHashSet<>();
+        for (int i = 0; i < 30; i++) {
+            NoteItem note = generateTestNote("bulk" + i, "testuser");
+            note.setIcalUid("bulkicaluid" + i);
+            notes.add(note);
+        }
+
+        contentDao.createContentItems(root, notes);
+        clearSession();
+
+        Assert.assertEquals(30, contentDao.loadChildren(root, null).size());
+
+        Set<CollectionItem> parents = new HashSet<>();
+        parents.add(root);
+        Set<ContentItem> updates = new LinkedHashSet<>();
+        NoteItem updated = (NoteItem) contentDao.findItemByUid(notes.iterator().next().getUid());
+        updated.setDisplayName("updated");
+        updates.add(updated);
+        ContentItem removed = (ContentItem) contentDao.findItemByPath("/testuser/bulk1");
+        removed.setIsActive(false);
+        updates.add(removed);
+        NoteItem created = generateTestNote("bulk30", "testuser");
+        updates.add(created);
+
+        contentDao.updateContentItems(parents, updates);
+        clearSession();
+
+        Assert.assertEquals("updated", contentDao.findItemByUid(updated.getUid()).getDisplayName());
+        Assert.assertNull(contentDao.findItemByUid(removed.getUid()));
+        Assert.assertNotNull(contentDao.findItemByPath("/testuser/bulk30"));
+        Assert.assertEquals(30, contentDao.loadChildren(root, null).size());
+    }
+
+    @Test
+    public void testContentDaoCreateContentItemsDuplicateIcalUid() {
+        User user = getUser(userDao, "testuser");
+        CollectionItem root = contentDao.getRootItem(user);
+
+        // neither item is flushed before the other is checked
+        Set<ContentItem> notes = new LinkedHashSet<>();
+        NoteItem note1 = generateTestNote("note1", "testuser");
+        note1.setIcalUid("icaluid");
+        notes.add(note1);
+        NoteItem note2 = generateTestNote("note2", "testuser");
+        note2.setIcalUid("icaluid");
+        notes.add(note2);
+
+        try {
+            contentDao.createContentItems(root, notes);
+            Assert.fail("able to create duplicate icaluid");
+        } catch (IcalUidInUseException ignored) {}
+    }
+
+    @Test
+    public void testContentDaoIterateChildren() throws Exception {
+        User user = getUser(userDao, "testuser");
+        CollectionItem root = contentDao.getRootItem(user);
+
+        Set<ContentItem> notes = new LinkedHashSet<>();
+        for (int i = 0; i < 7; i++)
+            notes.add(generateTestNote("paged" + i, "testuser"));
+        contentDao.createContentItems(root, notes);
+        clearSession();
+
+        root = contentDao.getRootItem(user);
+        Iterable<ContentItem> children = contentDao.iterateChildren(root, 3);
+        Set<String> names = new HashSet<>();
+        for (ContentItem child : children) {
+            Assert.assertTrue(names.add(child.getName()));
+            Assert.assertNotNull(child.getStamps());
+        }
+        Assert.assertEquals(7, names.size());
+
+        // can be iterated again
+        int count = 0;
+        for (ContentItem ignored : children)
+            count++;
+        Assert.assertEquals(7, count);
+
+        // a page size of the collection size
+        count = 0;
+        for (ContentItem ignored : contentDao.iterateChildren(root, 7))
+            count++;
+        Assert.assertEquals(7, count);
+    }
+
+    @Test
+    public void testContentDaoLoadChildrenPage() throws Exception {
+        User user = getUser(userDao, "testuser");
+        CollectionItem root = contentDao.getRootItem(user);
+
+        Set<ContentItem> notes = new LinkedHashSet<>();
+        for (int i = 6; i >= 0; i--)
+            notes.add(generateTestNote("paged" + i, "testuser"));
+        contentDao.createContentItems(root, notes);
+        clearSession();
+
+        root = contentDao.getRootItem(user);
+        List<String> names = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            KeysetPage<ContentItem> page = contentDao.loadChildrenPage(root, cursor, 3);
+            Assert.assertTrue(page.getItems().size() <= 3);
+            for (ContentItem child : page.getItems())
+                names.add(child.getName());
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        Assert.assertEquals(3, pages);
+        Assert.assertEquals(Arrays.asList("paged0", "paged1", "paged2", "paged3",
+                "paged4", "paged5", "paged6"), names);
+
+        // a full last page has no cursor
+        KeysetPage<ContentItem> page = contentDao.loadChildrenPage(root, null, 7);
+        Assert.assertEquals(7, page.getItems().size());
+        Assert.assertFalse(page.hasNext());
+
+        try {
+            contentDao.loadChildrenPage(root, "garbage", 3);
+            Assert.fail("able to page with an invalid cursor");
+        } catch (IllegalArgumentException e) {}
+    }
+
+    @Test
+    public void testContentDaoItemChangeRecords() throws Exception {
+        User user = getUser(userDao, "testuser");
+        CollectionItem root = contentDao.getRootItem(user);
+
+        CollectionItem a = new HibCollectionItem();
+        a.setName("a");
+        a.setOwner(user);
+        a = contentDao.createCollection(root, a);
+
+        Date start = new Date(0);
+        Date end = new Date(Long.MAX_VALUE / 2);
+        Assert.assertTrue(contentDao.findItemChangeRecords(a, start, end).isEmpty());
+
+        ContentItem item = contentDao.createContent(a, generateTestNote("changed", "testuser"));
+        clearSession();
+
+        item = (ContentItem) contentDao.findItemByUid(item.getUid());
+        item.setDisplayName("changed again");
+        contentDao.updateContent(item);
+        clearSession();
+
+        item = (ContentItem) contentDao.findItemByUid(item.getUid());
+        contentDao.removeContent(item);
+        clearSession();
+
+        a = (CollectionItem) contentDao.findItemByUid(a.getUid());
+        List<ItemChangeRecord> records = contentDao.findItemChangeRecords(a, start, end);
+        Assert.assertEquals(3, records.size());
+        Assert.assertEquals(ItemChangeRecord.Action.ITEM_ADDED, records.get(0).getAction());
+        Assert.assertEquals(ItemChangeRecord.Action.ITEM_CHANGED, records.get(1).getAction());
+        Assert.assertEquals("changed again", records.get(1).getItemDisplayName());
+        Assert.assertEquals(ItemChangeRecord.Action.ITEM_REMOVED, records.get(2).getAction());
+        for (ItemChangeRecord record : records) {
+            Assert.assertEquals(item.getUid(), record.getItemUuid());
+            Assert.assertEquals("testuser", record.getModifiedBy());
+            Assert.assertNotNull(record.getDate());
+        }
+
+        // only the root collection saw its child being added
+        Assert.assertEquals(1, contentDao.findItemChangeRecords(root, start, end).size());
+
+        // nothing after the last change
+        Date after = new Date(records.get(2).getDate().getTime() + 1);
+        Assert.assertTrue(contentDao.findItemChangeRecords(a, after, end).isEmpty());
+
+        // removing the collection removes its log
+        Long id = ((HibCollectionItem) a).getId();
+        contentDao.removeCollection(a);
+        clearSession();
+        Assert.assertEquals(0L, entityManager.createQuery(
+                "select count(e) from HibEventLogEntry e where e.id1=:id", Long.class)
+            .setParameter("id", id).getSingleResult().longValue());
+    }
+
+    @Test
+    public void testContentDaoChangesSince() throws Exception {
+        User user = getUser(userDao, "testuser");
+        CollectionItem root = contentDao.getRootItem(user);
+
+        CollectionItem a = new HibCollectionItem();
+        a.setName("a");
+        a.setOwner(user);
+        a = contentDao.createCollection(root, a);
+
+        SyncToken initial = contentDao.getSyncToken(a);
+        Assert.assertTrue(contentDao.findChangesSince(a, null).getChangedUids().isEmpty());
+
+        ContentItem item1 = contentDao.createContent(a, generateTestNote("item1", "testuser"));
+        ContentItem item2 = contentDao.createContent(a, generateTestNote("item2", "testuser"));
+        clearSession();
+
+        a = (CollectionItem) contentDao.findItemByUid(a.getUid());
+        CollectionChanges changes = contentDao.findChangesSince(a, initial);
+        Assert.assertEquals(2, changes.getChangedUids().size());
+        Assert.assertTrue(changes.getChangedUids().contains(item1.getUid()));
+        Assert.assertTrue(changes.getChangedUids().contains(item2.getUid()));
+        Assert.assertTrue(changes.getRemovedUids().isEmpty());
+        Assert.assertEquals(contentDao.getSyncToken(a), changes.getSyncToken());
+
+        SyncToken token = changes.getSyncToken();
+        Assert.assertTrue(token.getSequence() > initial.getSequence());
+
+        item1 = (ContentItem) contentDao.findItemByUid(item1.getUid());
+        item1.setDisplayName("changed");
+        contentDao.updateContent(item1);
+        contentDao.removeContent((ContentItem) contentDao.findItemByUid(item2.getUid()));
+        clearSession();
+
+        a = (CollectionItem) contentDao.findItemByUid(a.getUid());
+        changes = contentDao.findChangesSince(a, token);
+        Assert.assertEquals(Collections.singleton(item1.getUid()), changes.getChangedUids());
+        Assert.assertEquals(Collections.singleton(item2.getUid()), changes.getRemovedUids());
+        Assert.assertTrue(changes.getSyncToken().getSequence() > token.getSequence());
+
+        // nothing changed since
+        token = changes.getSyncToken();
+        changes = contentDao.findChangesSince(a, token);
+        Assert.assertTrue(changes.getChangedUids().isEmpty());
+        Assert.assertTrue(changes.getRemovedUids().isEmpty());
+        Assert.assertEquals(token, changes.getSyncToken());
+
+        // no token, all children
+        changes = contentDao.findChangesSince(a, null);
+        Assert.assertEquals(Collections.singleton(item1.getUid()), changes.getChangedUids());
+
+        try {
+            contentDao.findChangesSince(a, new SyncToken(root.getUid(), 0));
+            Assert.fail("able to sync with a token of another collection");
+        } catch (InvalidSyncTokenException e) {}
+
+        try {
+            contentDao.findChangesSince(a, new SyncToken(a.getUid(), token.getSequence() + 1));
+            Assert.fail("able to sync with a token ahead of the collection");
+        } catch (InvalidSyncTokenException e) {}
+    }
+
+    @Test
+    public void testCollectionSyncStateBackfill() throws Exception {
+        User user = getUser(userDao, "testuser");
+        CollectionItem root = contentDao.getRootItem(user);
+        Long rootId = ((HibItem) root).getId();
+        Assert.assertNotNull(entityManager.find(HibCollectionSyncState.class, rootId));
+
+        CollectionItem a = new HibCollectionItem();
+        a.setName("a");
+        a.setOwner(user);
+        a = contentDao.createCollection(root, a);
+        Long id = ((HibItem) a).getId();
+
+        // a collection from before change sequences were kept
+        entityManager.createQuery("delete from HibCollectionSyncState s where s.collectionId=:id")
+            .setParameter("id", id).executeUpdate();
+        clearSession();
+
+        CollectionSyncStateBackfill backfill = new CollectionSyncStateBackfill();
+        backfill.setEntityManagerFactory(entityManagerFactory);
+        backfill.setTransactionManager(transactionManager);
+        Assert.assertEquals(1, backfill.backfill());
+        Assert.assertEquals(0, backfill.backfill());
+
+        a = (CollectionItem) contentDao.findItemByUid(a.getUid());
+        contentDao.createContent(a, generateTestNote("item1", "testuser"));
+        clearSession();
+        Assert.assertEquals(1L, entityManager.find(HibCollectionSyncState.class, id).getChangeSequence());
+
+        // a collection created by an older server after the backfill ran
+        entityManager.createQuery("delete from HibCollectionSyncState s where s.collectionId=:id")
+            .setParameter("id", id).executeUpdate();
+        clearSession();
+
+        a = (CollectionItem) contentDao.findItemByUid(a.getUid());
+        contentDao.createContent(a, generateTestNote("item2", "testuser"));
+        clearSession();
+        Assert.assertEquals(1L, entityManager.find(HibCollectionSyncState.class, id).getChangeSequence());
+    }
+
     @Test
     public void testContentDaoInvalidContentEmptyName() throws Exception {
 
@@ -949,6 +1245,69 @@ public class HibernateContentDaoTest extends AbstractHibernateDaoTestCase {
         Assert.assertTrue(queryItem instanceof ContentItem);
     }
 
+    @Test
+    public void testFindItemByPathAfterRenameAndRemove() throws Exception {
+        User testuser2 = getUser(userDao, "testuser2");
+        CollectionItem root = contentDao.getRootItem(testuser2);
+
+        CollectionItem a = new HibCollectionItem();
+        a.setName("a");
+        a.setOwner(testuser2);
+        a = contentDao.createCollection(root, a);
+
+        CollectionItem b = new HibCollectionItem();
+        b.setName("b");
+        b.setOwner(testuser2);
+        b = contentDao.createCollection(a, b);
+
+        ContentItem d = generateTestContent("d", "testuser2");
+        d = contentDao.createContent(b, d);
+
+        clearSession();
+
+        DefaultItemPathTranslator translator =
+            (DefaultItemPathTranslator) contentDao.getItemPathTranslator();
+        translator.setMaxCachedPaths(100);
+        try {
+            verifyFindItemByPathAfterRenameAndRemove(a, b, d);
+        } finally {
+            translator.setMaxCachedPaths(DefaultItemPathTranslator.DEFAULT_MAX_CACHED_PATHS);
+        }
+    }
+
+    private void verifyFindItemByPathAfterRenameAndRemove(CollectionItem a,
+            CollectionItem b, ContentItem d) throws Exception {
+        // resolve twice so that the second lookup comes from the path cache
+        Assert.assertEquals(d.getUid(), contentDao.findItemByPath("/testuser2/a/b/d").getUid());
+        Assert.assertEquals(d.getUid(), contentDao.findItemByPath("/testuser2/a/b/d").getUid());
+        Assert.assertEquals(b.getUid(), contentDao.findItemByPath("/testuser2/a/b").getUid());
+
+        // renaming a parent must invalidate the paths beneath it
+        a = (CollectionItem) contentDao.findItemByUid(a.getUid());
+        a.setName("x");
+        contentDao.updateCollection(a);
+
+        clearSession();
+
+        Assert.assertNull(contentDao.findItemByPath("/testuser2/a/b/d"));
+        Assert.assertEquals(d.getUid(), contentDao.findItemByPath("/testuser2/x/b/d").getUid());
+
+        contentDao.removeItemByPath("/testuser2/x/b/d");
+
+        clearSession();
+
+        Assert.assertNull(contentDao.findItemByPath("/testuser2/x/b/d"));
+        Assert.assertNotNull(contentDao.findItemByPath("/testuser2/x/b"));
+
+        // a parent renamed without evicting its paths, as by another node
+        entityManager.createQuery("update HibItem i set i.name='y' where i.uid=:uid")
+            .setParameter("uid", a.getUid()).executeUpdate();
+        clearSession();
+
+        Assert.assertNull(contentDao.findItemByPath("/testuser2/x/b"));
+        Assert.assertEquals(b.getUid(), contentDao.findItemByPath("/testuser2/y/b").getUid());
+    }
+
     @Test
     public void testItemDaoCopy() throws Exception {
         User testuser2 = getUser(userDao, "testuser2");
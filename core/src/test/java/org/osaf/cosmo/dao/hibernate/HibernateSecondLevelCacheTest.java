@@ -0,0 +1,100 @@
+package org.osaf.cosmo.dao.hibernate;
+
+import java.util.Properties;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Assert;
+import org.junit.Test;
+import org.osaf.cosmo.model.CollectionItem;
+import org.osaf.cosmo.model.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.orm.jpa.persistenceunit.DefaultPersistenceUnitManager;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Test that the second-level cache configuration of the eccoPU persistence
+ * unit (see META-INF/cosmo-persistence.xml) serves repeated lookups once
+ * the cache is enabled, as for a single node deployment.  Each step
+ * commits, as the cache is only populated once a transaction completes.
+ */
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class HibernateSecondLevelCacheTest extends AbstractSpringDaoTestCase {
+
+    private static final String USERNAME = "cacheuser";
+
+    @Autowired
+    protected UserDaoImpl userDao;
+    @Autowired
+    protected ContentDaoImpl contentDao;
+    @Autowired
+    protected EntityManagerFactory entityManagerFactory;
+    @Autowired
+    protected PlatformTransactionManager transactionManager;
+
+    private final HibernateTestHelper helper = new HibernateTestHelper();
+
+    @DynamicPropertySource
+    static void persistenceUnitProperties(DynamicPropertyRegistry registry) {
+        Properties properties = loadPersistenceUnitProperties();
+        // the cache is off unless enabled
+        properties.setProperty("hibernate.cache.use_second_level_cache", "true");
+        properties.setProperty("hibernate.cache.use_query_cache", "true");
+        properties.setProperty("hibernate.generate_statistics", "true");
+        for (String name : properties.stringPropertyNames())
+            registry.add("spring.jpa.properties." + name, () -> properties.getProperty(name));
+    }
+
+    private static Properties loadPersistenceUnitProperties() {
+        DefaultPersistenceUnitManager manager = new DefaultPersistenceUnitManager();
+        manager.setPersistenceXmlLocation("classpath:META-INF/cosmo-persistence.xml");
+        manager.afterPropertiesSet();
+        return manager.obtainPersistenceUnitInfo("eccoPU").getProperties();
+    }
+
+    @Test
+    public void testRepeatedLookupsDontQuery() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Statistics stats = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        try {
+            String rootUid = tx.execute(status -> {
+                User user = helper.getUser(userDao, contentDao, USERNAME);
+                return contentDao.getRootItem(user).getUid();
+            });
+
+            // first lookups may have to go to the database
+            tx.executeWithoutResult(status -> {
+                Assert.assertNotNull(userDao.getUser(USERNAME));
+                Assert.assertNotNull(contentDao.findItemByUid(rootUid));
+            });
+
+            stats.clear();
+            tx.executeWithoutResult(status -> {
+                Assert.assertNotNull(userDao.getUser(USERNAME));
+                Assert.assertEquals(rootUid, contentDao.findItemByUid(rootUid).getUid());
+            });
+
+            Assert.assertEquals(0, stats.getPrepareStatementCount());
+            Assert.assertTrue(stats.getSecondLevelCacheHitCount() >= 2);
+            Assert.assertTrue(stats.getNaturalIdCacheHitCount() >= 2);
+        } finally {
+            tx.executeWithoutResult(status -> {
+                User user = userDao.getUser(USERNAME);
+                if (user != null) {
+                    CollectionItem root = contentDao.getRootItem(user);
+                    if (root != null)
+                        contentDao.removeCollection(root);
+                    userDao.removeUser(USERNAME);
+                }
+            });
+        }
+    }
+}
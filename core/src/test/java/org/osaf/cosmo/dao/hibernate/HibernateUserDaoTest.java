@@ -22,11 +22,16 @@ import org.osaf.cosmo.model.DuplicateEmailException;
 import org.osaf.cosmo.model.DuplicateUsernameException;
 import org.osaf.cosmo.model.User;
 import org.osaf.cosmo.model.hibernate.HibUser;
+import org.osaf.cosmo.util.KeysetPage;
 import org.osaf.cosmo.util.PageCriteria;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 public class HibernateUserDaoTest extends AbstractHibernateDaoTestCase {
@@ -282,6 +287,48 @@ public class HibernateUserDaoTest extends AbstractHibernateDaoTestCase {
         clearSession();
     }
 
+    @Test
+    public void testKeysetPagedUsers() {
+        for (int i = 1; i <= 5; i++)
+            helper.createDummyUser(userDao, i);
+        clearSession();
+
+        List<String> usernames = new ArrayList<>();
+        for (User user : userDao.getUsers())
+            usernames.add(user.getUsername());
+        Collections.sort(usernames);
+
+        Assert.assertEquals(usernames, pageUsernames(User.SortType.USERNAME, true));
+
+        Collections.reverse(usernames);
+        Assert.assertEquals(usernames, pageUsernames(User.SortType.USERNAME, false));
+
+        // every user once, whatever the order
+        Assert.assertEquals(usernames.size(),
+                new HashSet<>(pageUsernames(User.SortType.NAME, true)).size());
+        Assert.assertEquals(usernames.size(),
+                new HashSet<>(pageUsernames(User.SortType.CREATED, false)).size());
+
+        String cursor = userDao.getUsers(User.SortType.USERNAME, true, null, 2).getNextCursor();
+        Assert.assertNotNull(cursor);
+        try {
+            userDao.getUsers(User.SortType.EMAIL, true, cursor, 2);
+            Assert.fail("able to use a cursor with another order");
+        } catch (IllegalArgumentException e) {}
+    }
+
+    private List<String> pageUsernames(User.SortType sortType, boolean ascending) {
+        List<String> usernames = new ArrayList<>();
+        String cursor = null;
+        do {
+            KeysetPage<User> page = userDao.getUsers(sortType, ascending, cursor, 2);
+            for (User user : page.getItems())
+                usernames.add(user.getUsername());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return usernames;
+    }
+
     @Test
     public void testPaginatedUsers() {
         User user1 = helper.createDummyUser(userDao, 1);
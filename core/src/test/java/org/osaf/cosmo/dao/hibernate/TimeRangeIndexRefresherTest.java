@@ -0,0 +1,103 @@
+package org.osaf.cosmo.dao.hibernate;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+import javax.persistence.EntityManagerFactory;
+
+import net.fortuna.ical4j.model.DateTime;
+import org.junit.Assert;
+import org.junit.Test;
+import org.osaf.cosmo.eim.schema.EimValueConverter;
+import org.osaf.cosmo.model.CollectionItem;
+import org.osaf.cosmo.model.ContentItem;
+import org.osaf.cosmo.model.EventStamp;
+import org.osaf.cosmo.model.NoteItem;
+import org.osaf.cosmo.model.User;
+import org.osaf.cosmo.model.hibernate.HibEventStamp;
+import org.osaf.cosmo.model.hibernate.HibNoteItem;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * Test TimeRangeIndexRefresher
+ */
+public class TimeRangeIndexRefresherTest extends AbstractHibernateDaoTestCase {
+
+    private static final DateTimeFormatter DATE_FORMAT =
+        DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    @Autowired
+    protected UserDaoImpl userDao;
+    @Autowired
+    protected ContentDaoImpl contentDao;
+    @Autowired
+    protected EntityManagerFactory entityManagerFactory;
+    @Autowired
+    protected PlatformTransactionManager transactionManager;
+
+    @Test
+    public void testRefreshStaleIndex() throws Exception {
+        User user = helper.getUser(userDao, contentDao, "testuser");
+        CollectionItem root = contentDao.getRootItem(user);
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+
+        // bounded series that ends well beyond the expansion horizon
+        NoteItem item = new HibNoteItem();
+        item.setName("recurring");
+        item.setOwner(user);
+        HibEventStamp event = new HibEventStamp(item);
+        event.createCalendar();
+        event.setStartDate(new DateTime(today.minusDays(7).format(DATE_FORMAT) + "T100000Z"));
+        event.setEndDate(new DateTime(today.minusDays(7).format(DATE_FORMAT) + "T110000Z"));
+        event.setRecurrenceRules(EimValueConverter.toICalRecurs(
+                "FREQ=DAILY;UNTIL=" + today.plusYears(5).format(DATE_FORMAT) + "T100000Z"));
+        item.addStamp(event);
+
+        ContentItem newItem = contentDao.createContent(root, item);
+        clearSession();
+
+        String indexed = getEvent(newItem.getUid()).getTimeRangeIndex().getEndDate();
+        String horizon = today.plusMonths(11).format(DATE_FORMAT);
+        Assert.assertTrue(indexed.compareTo(horizon) > 0);
+
+        // index calculated by a server that has been running for months
+        String stale = today.plusDays(3).format(DATE_FORMAT) + "T110000Z";
+        entityManager.createNativeQuery(
+                "update cosmo_event_stamp set enddate=:endDate where stampid=:id")
+            .setParameter("endDate", stale)
+            .setParameter("id", event.getId())
+            .executeUpdate();
+        clearSession();
+        Assert.assertEquals(stale, getEvent(newItem.getUid()).getTimeRangeIndex().getEndDate());
+        clearSession();
+
+        TimeRangeIndexRefresher refresher = createRefresher();
+        Assert.assertEquals(1, refresher.refresh());
+        clearSession();
+
+        HibEventStamp refreshed = getEvent(newItem.getUid());
+        Assert.assertEquals(indexed, refreshed.getTimeRangeIndex().getEndDate());
+        Assert.assertTrue(refreshed.getTimeRangeIndex().getIsRecurring());
+        clearSession();
+
+        // nothing left to do
+        Assert.assertEquals(0, refresher.refresh());
+    }
+
+    private HibEventStamp getEvent(String uid) {
+        ContentItem item = (ContentItem) contentDao.findItemByUid(uid);
+        return (HibEventStamp) item.getStamp(EventStamp.class);
+    }
+
+    private TimeRangeIndexRefresher createRefresher() {
+        TimeRangeIndexRefresher refresher = new TimeRangeIndexRefresher();
+        refresher.setIntervalMillis(0);
+        refresher.setBatchSize(1);
+        refresher.setEntityManagerFactory(entityManagerFactory);
+        refresher.setTransactionManager(transactionManager);
+        refresher.init();
+        return refresher;
+    }
+}
@@ -0,0 +1,162 @@
+package org.osaf.cosmo.dao.hibernate;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.osaf.cosmo.model.CollectionChanges;
+import org.osaf.cosmo.model.CollectionItem;
+import org.osaf.cosmo.model.ContentItem;
+import org.osaf.cosmo.model.NoteItem;
+import org.osaf.cosmo.model.SyncToken;
+import org.osaf.cosmo.model.SyncTokenExpiredException;
+import org.osaf.cosmo.model.User;
+import org.osaf.cosmo.model.hibernate.HibCollectionItem;
+import org.osaf.cosmo.model.hibernate.HibNoteItem;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * Test TombstoneCompactor
+ */
+public class TombstoneCompactorTest extends AbstractHibernateDaoTestCase {
+
+    @Autowired
+    protected UserDaoImpl userDao;
+    @Autowired
+    protected ContentDaoImpl contentDao;
+    @Autowired
+    protected EntityManagerFactory entityManagerFactory;
+    @Autowired
+    protected PlatformTransactionManager transactionManager;
+
+    @Test
+    public void testCompactExpiredTombstones() throws Exception {
+        User user = helper.getUser(userDao, contentDao, "testuser");
+        CollectionItem root = contentDao.getRootItem(user);
+
+        CollectionItem collection = new HibCollectionItem();
+        collection.setName("churn");
+        collection.setOwner(user);
+        collection = contentDao.createCollection(root, collection);
+
+        SyncToken initial = contentDao.getSyncToken(collection);
+        String[] uids = new String[3];
+        for (int i = 0; i < uids.length; i++)
+            uids[i] = contentDao.createContent(collection, createNote("note" + i, user)).getUid();
+        clearSession();
+
+        // two removals long ago, one just now
+        removeContent(uids[0]);
+        removeContent(uids[1]);
+        entityManager.createQuery("update HibItemTombstone ts set ts.timestamp=:date")
+            .setParameter("date", new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(60)))
+            .executeUpdate();
+        clearSession();
+        collection = (CollectionItem) contentDao.findItemByUid(collection.getUid());
+        SyncToken beforeLastRemoval = contentDao.getSyncToken(collection);
+        removeContent(uids[2]);
+        clearSession();
+
+        Assert.assertEquals(3L, countTombstones(collection));
+
+        TombstoneCompactor compactor = createCompactor();
+        Assert.assertEquals(2, compactor.compact());
+        clearSession();
+        Assert.assertEquals(1L, countTombstones(collection));
+
+        // tokens from before the purged removals need a full resync
+        collection = (CollectionItem) contentDao.findItemByUid(collection.getUid());
+        try {
+            contentDao.findChangesSince(collection, initial);
+            Assert.fail("able to sync with a token predating purged tombstones");
+        } catch (SyncTokenExpiredException e) {}
+
+        // as do timestamps
+        try {
+            contentDao.loadChildren(collection,
+                    new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(90)));
+            Assert.fail("able to load children since before purged tombstones");
+        } catch (SyncTokenExpiredException e) {}
+
+        // later tokens and timestamps are still good
+        CollectionChanges changes = contentDao.findChangesSince(collection, beforeLastRemoval);
+        Assert.assertEquals(Collections.singleton(uids[2]), changes.getRemovedUids());
+        Assert.assertTrue(contentDao.loadChildren(collection,
+                new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1))).isEmpty());
+        clearSession();
+
+        // nothing left to do
+        Assert.assertEquals(0, compactor.compact());
+    }
+
+    @Test
+    public void testPurgeExpiredEventLogEntries() throws Exception {
+        User user = helper.getUser(userDao, contentDao, "testuser");
+        CollectionItem root = contentDao.getRootItem(user);
+
+        CollectionItem collection = new HibCollectionItem();
+        collection.setName("log");
+        collection.setOwner(user);
+        collection = contentDao.createCollection(root, collection);
+
+        // two changes long ago, one just now
+        contentDao.createContent(collection, createNote("note0", user));
+        contentDao.createContent(collection, createNote("note1", user));
+        clearSession();
+        entityManager.createQuery("update HibEventLogEntry e set e.entryDate=:date")
+            .setParameter("date", new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(60)))
+            .executeUpdate();
+        collection = (CollectionItem) contentDao.findItemByUid(collection.getUid());
+        contentDao.createContent(collection, createNote("note2", user));
+        clearSession();
+
+        Assert.assertEquals(3L, countLogEntries());
+
+        TombstoneCompactor compactor = createCompactor();
+        Assert.assertEquals(2, compactor.purgeEventLog());
+        clearSession();
+        Assert.assertEquals(1L, countLogEntries());
+
+        // nothing left to do
+        Assert.assertEquals(0, compactor.purgeEventLog());
+    }
+
+    private long countLogEntries() {
+        return entityManager.createQuery("select count(e) from HibEventLogEntry e", Long.class)
+            .getSingleResult();
+    }
+
+    private void removeContent(String uid) {
+        contentDao.removeContent((ContentItem) contentDao.findItemByUid(uid));
+    }
+
+    private long countTombstones(CollectionItem collection) {
+        return entityManager.createQuery(
+                "select count(ts) from HibItemTombstone ts where ts.item.uid=:uid", Long.class)
+            .setParameter("uid", collection.getUid())
+            .getSingleResult();
+    }
+
+    private NoteItem createNote(String name, User user) {
+        NoteItem note = new HibNoteItem();
+        note.setName(name);
+        note.setDisplayName(name);
+        note.setOwner(user);
+        return note;
+    }
+
+    private TombstoneCompactor createCompactor() {
+        TombstoneCompactor compactor = new TombstoneCompactor();
+        compactor.setIntervalMillis(0);
+        compactor.setBatchSize(1);
+        compactor.setEntityManagerFactory(entityManagerFactory);
+        compactor.setTransactionManager(transactionManager);
+        compactor.init();
+        return compactor;
+    }
+}
@@ -22,6 +22,7 @@ import net.fortuna.ical4j.model.Period;
 
 import org.osaf.cosmo.calendar.query.CalendarFilter;
 import org.osaf.cosmo.calendar.query.ComponentFilter;
+import org.osaf.cosmo.calendar.query.IsNotDefinedFilter;
 import org.osaf.cosmo.calendar.query.PropertyFilter;
 import org.osaf.cosmo.calendar.query.TextMatchFilter;
 import org.osaf.cosmo.calendar.query.TimeRangeFilter;
@@ -34,6 +35,7 @@ import org.osaf.cosmo.model.filter.ILikeExpression;
 import org.osaf.cosmo.model.filter.ItemFilter;
 import org.osaf.cosmo.model.filter.LikeExpression;
 import org.osaf.cosmo.model.filter.NoteItemFilter;
+import org.osaf.cosmo.model.filter.NullExpression;
 import org.osaf.cosmo.model.filter.StampFilter;
 import org.osaf.cosmo.model.hibernate.HibCollectionItem;
 
@@ -137,6 +139,105 @@ public class CalendarFilterConverterTest extends TestCase {
         Assert.assertEquals(true, sf.isMissing());
     }
 
+    public void testGetFirstPassEventFilter() throws Exception {
+        CollectionItem calendar = new HibCollectionItem();
+        calendar.setUid("calendar");
+        CalendarFilter calFilter = new CalendarFilter();
+        ComponentFilter rootComp = new ComponentFilter();
+        rootComp.setName("VCALENDAR");
+        calFilter.setFilter(rootComp);
+        ComponentFilter eventComp = new ComponentFilter();
+        eventComp.setName("VEVENT");
+        rootComp.getComponentFilters().add(eventComp);
+
+        Period period = new Period(new DateTime("20070101T100000Z"), new DateTime("20070201T100000Z"));
+        eventComp.setTimeRangeFilter(new TimeRangeFilter(period));
+
+        PropertyFilter uidFilter = new PropertyFilter("UID");
+        uidFilter.setTextMatchFilter(new TextMatchFilter("uid"));
+        eventComp.getPropFilters().add(uidFilter);
+
+        PropertyFilter categoriesFilter = new PropertyFilter("CATEGORIES");
+        categoriesFilter.setTextMatchFilter(new TextMatchFilter("work"));
+        eventComp.getPropFilters().add(categoriesFilter);
+
+        try {
+            converter.translateToItemFilter(calendar, calFilter);
+            Assert.fail("shouldn't get here");
+        } catch(IllegalArgumentException e) {}
+
+        // the UID selects the master, whatever the time range of its
+        // modifications
+        NoteItemFilter noteFilter = (NoteItemFilter) converter.getFirstPassFilter(calendar, calFilter);
+        Assert.assertNotNull(noteFilter);
+        Assert.assertFalse(noteFilter.getIsModification().booleanValue());
+        Assert.assertTrue(noteFilter.getIcalUid() instanceof ILikeExpression);
+        verifyFilterExpressionValue(noteFilter.getIcalUid(), "uid");
+        Assert.assertNull(noteFilter.getDisplayName());
+
+        EventStampFilter sf = (EventStampFilter) noteFilter.getStampFilter(EventStampFilter.class);
+        Assert.assertNotNull(sf);
+        Assert.assertNull(sf.getPeriod());
+
+        // negated text-matches aren't narrowed down, so the time range
+        // is matched by masters and modifications alike
+        uidFilter.getTextMatchFilter().setNegateCondition(true);
+        noteFilter = (NoteItemFilter) converter.getFirstPassFilter(calendar, calFilter);
+        Assert.assertNull(noteFilter.getIcalUid());
+        Assert.assertNull(noteFilter.getIsModification());
+
+        sf = (EventStampFilter) noteFilter.getStampFilter(EventStampFilter.class);
+        Assert.assertEquals("20070101T100000Z", sf.getPeriod().getStart().toString());
+        Assert.assertEquals("false", noteFilter.getFilterProperty(
+                EventStampFilter.PROPERTY_DO_TIMERANGE_SECOND_PASS));
+
+        // a calendar can't be both an event and a task
+        ComponentFilter taskComp = new ComponentFilter();
+        taskComp.setName("VTODO");
+        rootComp.getComponentFilters().add(taskComp);
+        Assert.assertNull(converter.getFirstPassFilter(calendar, calFilter));
+    }
+
+    public void testGetFirstPassTaskFilter() throws Exception {
+        CollectionItem calendar = new HibCollectionItem();
+        calendar.setUid("calendar");
+        CalendarFilter calFilter = new CalendarFilter();
+        ComponentFilter rootComp = new ComponentFilter();
+        rootComp.setName("VCALENDAR");
+        calFilter.setFilter(rootComp);
+        ComponentFilter taskComp = new ComponentFilter();
+        taskComp.setName("VTODO");
+        rootComp.getComponentFilters().add(taskComp);
+
+        Period period = new Period(new DateTime("20070101T100000Z"), new DateTime("20070201T100000Z"));
+        taskComp.setTimeRangeFilter(new TimeRangeFilter(period));
+
+        PropertyFilter summaryFilter = new PropertyFilter("SUMMARY");
+        TextMatchFilter summaryMatch = new TextMatchFilter("summary");
+        summaryMatch.setCaseless(false);
+        summaryFilter.setTextMatchFilter(summaryMatch);
+        taskComp.getPropFilters().add(summaryFilter);
+
+        PropertyFilter descFilter = new PropertyFilter("DESCRIPTION");
+        descFilter.setTextMatchFilter(new TextMatchFilter("desc"));
+        taskComp.getPropFilters().add(descFilter);
+
+        NoteItemFilter noteFilter = (NoteItemFilter) converter.getFirstPassFilter(calendar, calFilter);
+        Assert.assertNotNull(noteFilter);
+        Assert.assertTrue(noteFilter.getDisplayName() instanceof LikeExpression);
+        verifyFilterExpressionValue(noteFilter.getDisplayName(), "summary");
+        Assert.assertTrue(noteFilter.getBody() instanceof ILikeExpression);
+        verifyFilterExpressionValue(noteFilter.getBody(), "desc");
+        Assert.assertEquals(1, noteFilter.getStampFilters().size());
+        Assert.assertTrue(noteFilter.getStampFilters().get(0).isMissing());
+
+        summaryFilter.setTextMatchFilter(null);
+        summaryFilter.setIsNotDefinedFilter(new IsNotDefinedFilter());
+        noteFilter = (NoteItemFilter) converter.getFirstPassFilter(calendar, calFilter);
+        Assert.assertTrue(noteFilter.getDisplayName() instanceof NullExpression);
+        Assert.assertFalse(((NullExpression) noteFilter.getDisplayName()).isNegated());
+    }
+
     private void verifyFilterExpressionValue(FilterCriteria fc, Object value) {
         FilterExpression fe = (FilterExpression) fc;
         Assert.assertTrue(fe.getValue().equals(value));
@@ -193,7 +193,26 @@ public class StandardItemFilterProcessorTest extends AbstractHibernateDaoTestCas
         filter.setParent(parent);
         filter.getStampFilters().add(eventFilter);
         TypedQuery<?> query =  queryBuilder.buildQuery(getSession(), filter);
-        Assert.assertEquals("select i from HibNoteItem i join i.parentDetails pd, HibBaseEventStamp es where pd.primaryKey.collection=:parent and es.item=i and ( (es.timeRangeIndex.isFloating=true and es.timeRangeIndex.startDate < '20070201T040000' and es.timeRangeIndex.endDate > '20070101T040000') or (es.timeRangeIndex.isFloating=false and es.timeRangeIndex.startDate < '20070201T100000Z' and es.timeRangeIndex.endDate > '20070101T100000Z') or (es.timeRangeIndex.startDate=es.timeRangeIndex.endDate and (es.timeRangeIndex.startDate='20070101T040000' or es.timeRangeIndex.startDate='20070101T100000Z')))", getQueryString(query));
+        Assert.assertEquals("select i from HibNoteItem i join i.parentDetails pd, HibBaseEventStamp es where pd.primaryKey.collection=:parent and es.item=i and ( (es.timeRangeIndex.isFloating=true and es.timeRangeIndex.startDate < :floatEnd and es.timeRangeIndex.endDate > :floatStart) or (es.timeRangeIndex.isFloating=false and es.timeRangeIndex.startDate < :utcEnd and es.timeRangeIndex.endDate > :utcStart) or (es.timeRangeIndex.startDate=es.timeRangeIndex.endDate and (es.timeRangeIndex.startDate=:floatStart or es.timeRangeIndex.startDate=:utcStart)))", getQueryString(query));
+        Assert.assertEquals("20070101T040000", query.getParameterValue("floatStart"));
+        Assert.assertEquals("20070201T040000", query.getParameterValue("floatEnd"));
+        Assert.assertEquals("20070101T100000Z", query.getParameterValue("utcStart"));
+        Assert.assertEquals("20070201T100000Z", query.getParameterValue("utcEnd"));
+    }
+
+    @Test
+    public void testEventStampTimeRangeQueryIsValueIndependent() throws Exception {
+        NoteItemFilter filter = new NoteItemFilter();
+        EventStampFilter eventFilter = new EventStampFilter();
+        eventFilter.setPeriod(new Period(new DateTime("20070101T100000Z"), new DateTime("20070201T100000Z")));
+        filter.getStampFilters().add(eventFilter);
+        String first = getQueryString(queryBuilder.buildQuery(getSession(), filter));
+
+        eventFilter.setPeriod(new Period(new DateTime("20080301T000000Z"), new DateTime("20080302T000000Z")));
+        String second = getQueryString(queryBuilder.buildQuery(getSession(), filter));
+
+        // same filter shape must give the same query so the plan is reused
+        Assert.assertEquals(first, second);
     }
 
     @Test
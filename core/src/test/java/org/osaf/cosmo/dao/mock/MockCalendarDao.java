@@ -20,7 +20,9 @@ import java.util.Set;
 
 import net.fortuna.ical4j.model.Calendar;
 import net.fortuna.ical4j.model.DateTime;
+import net.fortuna.ical4j.model.Period;
 
+import org.osaf.cosmo.calendar.BusyPeriods;
 import org.osaf.cosmo.calendar.EntityConverter;
 import org.osaf.cosmo.calendar.query.CalendarFilter;
 import org.osaf.cosmo.calendar.query.CalendarFilterEvaluater;
@@ -104,5 +106,10 @@ public class MockCalendarDao extends MockItemDao implements CalendarDao {
         throw new UnsupportedOperationException();
     }
 
+    public BusyPeriods findBusyPeriods(CollectionItem collection, Period period) {
+        // no index, always evaluate the items
+        return null;
+    }
+
 
 }
@@ -15,21 +15,30 @@
  */
 package org.osaf.cosmo.dao.mock;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.osaf.cosmo.dao.ContentDao;
+import org.osaf.cosmo.model.CollectionChanges;
 import org.osaf.cosmo.model.CollectionItem;
 import org.osaf.cosmo.model.ContentItem;
 import org.osaf.cosmo.model.Item;
+import org.osaf.cosmo.model.ItemChangeRecord;
 import org.osaf.cosmo.model.ModelValidationException;
+import org.osaf.cosmo.model.SyncToken;
 import org.osaf.cosmo.model.UidInUseException;
 import org.osaf.cosmo.model.User;
 import org.osaf.cosmo.model.mock.MockCollectionItem;
 import org.osaf.cosmo.model.mock.MockItem;
+import org.osaf.cosmo.util.KeysetCursor;
+import org.osaf.cosmo.util.KeysetPage;
 import org.springframework.dao.ConcurrencyFailureException;
 
 /**
@@ -275,4 +284,37 @@ public class MockContentDao extends MockItemDao implements ContentDao {
         return items;
     }
 
+    public KeysetPage<ContentItem> loadChildrenPage(CollectionItem collection,
+                                                    String cursor, int pageSize) {
+        // pages by position, which is good enough for a fixed set of children
+        List<ContentItem> children = new ArrayList<>(loadChildren(collection, null));
+        children.sort(Comparator.comparing(ContentItem::getName));
+
+        int from = cursor != null
+            ? Integer.parseInt(KeysetCursor.decode(cursor, "name", 1).get(0)) : 0;
+        int to = Math.min(from + pageSize, children.size());
+        String next = to < children.size()
+            ? KeysetCursor.encode("name", Collections.singletonList(Integer.toString(to))) : null;
+        return new KeysetPage<>(children.subList(from, to), next);
+    }
+
+    public List<ItemChangeRecord> findItemChangeRecords(CollectionItem collection,
+                                                        Date start, Date end) {
+        // changes aren't logged
+        return new ArrayList<>();
+    }
+
+    public SyncToken getSyncToken(CollectionItem collection) {
+        // changes aren't sequenced
+        return new SyncToken(collection.getUid(), 0);
+    }
+
+    public CollectionChanges findChangesSince(CollectionItem collection, SyncToken token) {
+        Set<String> uids = new HashSet<>();
+        if (token == null) {
+            for (Item item : collection.getChildren())
+                uids.add(item.getUid());
+        }
+        return new CollectionChanges(getSyncToken(collection), uids, new HashSet<>());
+    }
 }
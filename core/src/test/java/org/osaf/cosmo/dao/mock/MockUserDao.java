@@ -16,6 +16,8 @@
 package org.osaf.cosmo.dao.mock;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -33,6 +35,8 @@ import org.osaf.cosmo.model.User;
 import org.osaf.cosmo.model.mock.MockAuditableObject;
 import org.osaf.cosmo.model.mock.MockUser;
 import org.osaf.cosmo.util.ArrayPagedList;
+import org.osaf.cosmo.util.KeysetCursor;
+import org.osaf.cosmo.util.KeysetPage;
 import org.osaf.cosmo.util.PageCriteria;
 import org.osaf.cosmo.util.PagedList;
 
@@ -96,6 +100,26 @@ public class MockUserDao implements UserDao {
         return tmp;
     }
 
+    /**
+     */
+    public KeysetPage<User> getUsers(User.SortType sortType, boolean ascending,
+                                     String cursor, int pageSize) {
+        // pages by position, which is good enough for a fixed set of users
+        List<User> users = new ArrayList<>(usernameIdx.values());
+        Comparator<User> order = sortType == User.SortType.EMAIL
+            ? Comparator.comparing(User::getEmail)
+            : Comparator.comparing(User::getUsername);
+        users.sort(ascending ? order : order.reversed());
+
+        String sort = sortType + ":" + ascending;
+        int from = cursor != null
+            ? Integer.parseInt(KeysetCursor.decode(cursor, sort, 1).get(0)) : 0;
+        int to = Math.min(from + pageSize, users.size());
+        String next = to < users.size()
+            ? KeysetCursor.encode(sort, Collections.singletonList(Integer.toString(to))) : null;
+        return new KeysetPage<>(users.subList(from, to), next);
+    }
+
     /**
      */
     public User getUser(String username) {
@@ -15,13 +15,24 @@
  */
 package org.osaf.cosmo.eim.eimml;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Random;
 
 import junit.framework.TestCase;
 
+import org.apache.commons.io.IOUtils;
 import org.assertj.core.api.Assertions;
 import org.osaf.cosmo.TestHelper;
+import org.osaf.cosmo.eim.BlobField;
+import org.osaf.cosmo.eim.ClobField;
+import org.osaf.cosmo.eim.EimRecord;
+import org.osaf.cosmo.eim.EimRecordField;
 import org.osaf.cosmo.eim.EimRecordSet;
+import org.osaf.cosmo.eim.TextField;
 
 /**
  * Test Case for {@link EimmlStreamReader}.
@@ -54,4 +65,99 @@ public class EimmlStreamReaderTest extends TestCase
 
         assertFalse("Reader thinks it has another recordset", reader.hasNext());
     }
+
+    public void testStreamLargeValues() throws Exception {
+        byte[] blob = new byte[100000];
+        new Random(1).nextBytes(blob);
+        char[] chars = new char[50001];
+        Arrays.fill(chars, 'x');
+        String clob = new String(chars);
+
+        String eimml = writeRecordSets(blob, clob, 3);
+
+        EimmlStreamReader reader = new EimmlStreamReader(new StringReader(eimml));
+        for (int i = 0; i < 3; i++) {
+            EimRecordSet recordset = reader.nextRecordSetStart();
+            assertEquals("uuid" + i, recordset.getUuid());
+            assertTrue(recordset.getRecords().isEmpty());
+
+            EimRecord record = reader.nextRecord();
+            assertNotNull(record);
+            assertEquals("ns1", record.getPrefix());
+
+            EimRecordField field = reader.nextField();
+            assertEquals("uuid" + i, ((TextField) field).getText());
+            assertEquals(1, record.getKey().getFields().size());
+
+            field = reader.nextField();
+            assertTrue(Arrays.equals(blob, IOUtils.toByteArray(((BlobField) field).getBlob())));
+
+            // only the start of the clob is read
+            field = reader.nextField();
+            char[] start = new char[10];
+            assertEquals(10, ((ClobField) field).getClob().read(start));
+
+            // skips the rest of the clob
+            field = reader.nextField();
+            assertEquals("after", ((TextField) field).getText());
+            assertNull(reader.nextField());
+            assertEquals(3, record.getFields().size());
+
+            // second record is skipped entirely
+            if (i == 1)
+                continue;
+
+            record = reader.nextRecord();
+            assertNotNull(record);
+            field = reader.nextField();
+            assertEquals(clob, IOUtils.toString(((ClobField) field).getClob()));
+            assertNull(reader.nextField());
+            assertNull(reader.nextRecord());
+        }
+        assertNull(reader.nextRecordSetStart());
+        assertFalse(reader.hasNext());
+
+        // whole recordsets are the same
+        reader = new EimmlStreamReader(new StringReader(eimml));
+        EimRecordSet recordset = reader.nextRecordSet();
+        assertEquals(2, recordset.getRecords().size());
+        EimRecord record = recordset.getRecords().get(0);
+        BlobField blobField = (BlobField) record.getFields().get(0);
+        assertTrue(Arrays.equals(blob, IOUtils.toByteArray(blobField.getBlob())));
+        ClobField clobField = (ClobField) recordset.getRecords().get(1).getFields().get(0);
+        assertEquals(clob, IOUtils.toString(clobField.getClob()));
+
+        assertTrue(reader.hasNext());
+        assertNotNull(reader.nextRecordSetStart());
+        // skips the rest of the recordset
+        assertTrue(reader.hasNext());
+        assertEquals("uuid2", reader.nextRecordSet().getUuid());
+        assertFalse(reader.hasNext());
+    }
+
+    private String writeRecordSets(byte[] blob, String clob, int count) throws Exception {
+        StringWriter out = new StringWriter();
+        EimmlStreamWriter writer = new EimmlStreamWriter(out);
+        writer.writeStartDocument();
+        writer.writeCollection("collection", null, null);
+        for (int i = 0; i < count; i++) {
+            EimRecordSet recordset = new EimRecordSet();
+            recordset.setUuid("uuid" + i);
+
+            EimRecord record1 = new EimRecord("ns1", "cosmo:test:ns1");
+            record1.addKeyField(new TextField("uuid", "uuid" + i));
+            record1.addField(new BlobField("blob", new ByteArrayInputStream(blob)));
+            record1.addField(new ClobField("clob", new StringReader(clob)));
+            record1.addField(new TextField("after", "after"));
+            recordset.addRecord(record1);
+
+            EimRecord record2 = new EimRecord("ns2", "cosmo:test:ns2");
+            record2.addField(new ClobField("clob", new StringReader(clob)));
+            recordset.addRecord(record2);
+
+            writer.writeRecordSet(recordset);
+        }
+        writer.close();
+        return out.toString();
+    }
 }
@@ -0,0 +1,56 @@
+package org.osaf.cosmo.hibernate;
+
+import java.io.InputStream;
+import java.io.Serializable;
+
+import junit.framework.TestCase;
+import net.fortuna.ical4j.model.Calendar;
+import net.fortuna.ical4j.model.Component;
+import net.fortuna.ical4j.model.component.VEvent;
+import net.fortuna.ical4j.model.property.Summary;
+import org.hibernate.type.descriptor.java.MutabilityPlan;
+import org.junit.Assert;
+import org.osaf.cosmo.calendar.util.CalendarUtils;
+
+/**
+ * Test CalendarClobType snapshots and dirty checking.
+ */
+public class CalendarClobTypeTest extends TestCase {
+
+    CalendarClobType type = new CalendarClobType();
+
+    public void testSnapshotDirtyChecking() throws Exception {
+        Calendar calendar = getCalendar("cal1.ics");
+        MutabilityPlan<Calendar> plan = type.getMutabilityPlan();
+
+        Calendar snapshot = plan.deepCopy(calendar);
+        Assert.assertTrue(snapshot instanceof CalendarClobType.CalendarSnapshot);
+        Assert.assertSame(snapshot, plan.deepCopy(snapshot));
+        Assert.assertTrue(type.isEqual(snapshot, calendar));
+
+        // change the calendar in place, as the model does
+        VEvent event = (VEvent) calendar.getComponent(Component.VEVENT);
+        event.getProperties().remove(event.getProperty(Summary.SUMMARY));
+        event.getProperties().add(new Summary("changed"));
+
+        Assert.assertFalse(type.isEqual(snapshot, calendar));
+        Assert.assertTrue(type.isEqual(plan.deepCopy(calendar), calendar));
+    }
+
+    public void testAssembleDisassemble() throws Exception {
+        Calendar calendar = getCalendar("cal1.ics");
+        MutabilityPlan<Calendar> plan = type.getMutabilityPlan();
+
+        Serializable cached = plan.disassemble(calendar);
+        Calendar assembled = plan.assemble(cached);
+
+        Assert.assertFalse(assembled instanceof CalendarClobType.CalendarSnapshot);
+        Assert.assertNotSame(calendar, assembled);
+        Assert.assertEquals(calendar, assembled);
+    }
+
+    private Calendar getCalendar(String name) throws Exception {
+        InputStream in = getClass().getClassLoader().getResourceAsStream(name);
+        return CalendarUtils.parseCalendar(in);
+    }
+}
@@ -0,0 +1,52 @@
+package org.osaf.cosmo.model;
+
+import junit.framework.TestCase;
+
+import org.junit.Assert;
+import org.osaf.cosmo.model.mock.MockCollectionItem;
+
+/**
+ * Test SyncToken
+ */
+public class SyncTokenTest extends TestCase {
+
+    public void testFormatAndParse() {
+        CollectionItem collection = createCollection("collection-1");
+
+        SyncToken token = new SyncToken("collection-1", 42);
+        String formatted = token.format();
+        Assert.assertFalse(formatted.contains("42"));
+        Assert.assertFalse(formatted.contains("collection-1"));
+
+        SyncToken parsed = SyncToken.parse(formatted, collection);
+        Assert.assertEquals(token, parsed);
+        Assert.assertEquals(42, parsed.getSequence());
+        Assert.assertEquals("collection-1", parsed.getCollectionUid());
+    }
+
+    public void testParseTokenOfOtherCollection() {
+        String formatted = new SyncToken("collection-1", 3).format();
+        try {
+            SyncToken.parse(formatted, createCollection("collection-2"));
+            fail("able to use a token of another collection");
+        } catch (InvalidSyncTokenException e) {
+        }
+    }
+
+    public void testParseMalformedToken() {
+        CollectionItem collection = createCollection("collection-1");
+        for (String token : new String[] { "", "not a token", "MTpub3RhbnVtYmVyOmNvbGxlY3Rpb24tMQ", "Mjox" }) {
+            try {
+                SyncToken.parse(token, collection);
+                fail("able to parse " + token);
+            } catch (InvalidSyncTokenException e) {
+            }
+        }
+    }
+
+    private CollectionItem createCollection(String uid) {
+        CollectionItem collection = new MockCollectionItem();
+        collection.setUid(uid);
+        return collection;
+    }
+}
@@ -129,6 +129,65 @@ public class EventStampInterceptorTest extends TestCase {
         Assert.assertEquals("20070213T084500", index.getEndDate());
     }
 
+    public void testTemporalChangeDetection() throws Exception {
 
+        HibNoteItem master = new HibNoteItem();
+        HibEventStamp eventStamp = new HibEventStamp(master);
+        eventStamp.createCalendar();
+        eventStamp.setStartDate(new DateTime("20070212T074500"));
+        eventStamp.setEndDate(new DateTime("20070212T094500"));
+        eventStamp.setRecurrenceRules(EimValueConverter.toICalRecurs("FREQ=DAILY;"));
+        master.addStamp(eventStamp);
+
+        String previous = eventStamp.getEventCalendar().toString();
+
+        // non-temporal change
+        eventStamp.setSummary("a much longer summary that will need to be folded when serialized because it is long");
+        eventStamp.setLocation("somewhere");
+        Assert.assertFalse(EventStampInterceptor.hasTemporalChange(previous, eventStamp.getEventCalendar()));
+
+        // recurrence change
+        eventStamp.setRecurrenceRules(EimValueConverter.toICalRecurs("FREQ=WEEKLY;"));
+        Assert.assertTrue(EventStampInterceptor.hasTemporalChange(previous, eventStamp.getEventCalendar()));
+
+        previous = eventStamp.getEventCalendar().toString();
+        eventStamp.setEndDate(new DateTime("20070212T104500"));
+        Assert.assertTrue(EventStampInterceptor.hasTemporalChange(previous, eventStamp.getEventCalendar()));
+
+        Assert.assertTrue(EventStampInterceptor.hasTemporalChange(null, eventStamp.getEventCalendar()));
+        Assert.assertFalse(EventStampInterceptor.hasTemporalChange(null, null));
+    }
+
+    public void testOnFlushDirtyReusesIndex() throws Exception {
+
+        HibNoteItem master = new HibNoteItem();
+        HibEventStamp eventStamp = new HibEventStamp(master);
+        eventStamp.createCalendar();
+        eventStamp.setStartDate(new DateTime("20070212T074500"));
+        eventStamp.setEndDate(new DateTime("20070212T094500"));
+        master.addStamp(eventStamp);
+        eventStamp.setTimeRangeIndex(interceptor.calculateEventStampIndexes(eventStamp));
+
+        String[] propertyNames = new String[] {"eventCalendar", "timeRangeIndex"};
+        Object[] previousState = new Object[] {
+                eventStamp.getEventCalendar().toString(), eventStamp.getTimeRangeIndex()};
+
+        eventStamp.setSummary("new summary");
+        Object[] currentState = new Object[] {
+                eventStamp.getEventCalendar(), eventStamp.getTimeRangeIndex()};
+        Assert.assertFalse(interceptor.onFlushDirty(eventStamp, null, currentState,
+                previousState, propertyNames, null));
+        Assert.assertSame(eventStamp.getTimeRangeIndex(), currentState[1]);
+
+        eventStamp.setEndDate(new DateTime("20070212T104500"));
+        Assert.assertTrue(interceptor.onFlushDirty(eventStamp, null, currentState,
+                previousState, propertyNames, null));
+        HibEventTimeRangeIndex index = (HibEventTimeRangeIndex) currentState[1];
+        Assert.assertEquals("20070212T104500", index.getEndDate());
+
+        // no snapshot available, always recalculate
+        Assert.assertTrue(interceptor.onFlushDirty(eventStamp, null, currentState,
+                null, propertyNames, null));
+    }
 
 }
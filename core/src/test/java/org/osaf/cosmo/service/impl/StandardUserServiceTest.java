@@ -24,6 +24,9 @@ import org.osaf.cosmo.dao.mock.MockContentDao;
 import org.osaf.cosmo.dao.mock.MockDaoStorage;
 import org.osaf.cosmo.dao.mock.MockUserDao;
 import org.osaf.cosmo.model.User;
+import org.osaf.cosmo.service.password.DelegatingPasswordEncoder;
+import org.osaf.cosmo.service.password.MessageDigestPasswordEncoder;
+import org.osaf.cosmo.service.password.Pbkdf2PasswordEncoder;
 import org.springframework.dao.DataRetrievalFailureException;
 
 /**
@@ -205,4 +208,44 @@ public class StandardUserServiceTest extends TestCase {
         // tests hex
         assertTrue("Digest not hex encoded", digested.matches("^[0-9a-f]+$"));
     }
+
+    /**
+     */
+    public void testAuthenticate() {
+        User u1 = testHelper.makeDummyUser();
+        String password = u1.getPassword();
+        service.createUser(u1);
+
+        assertNotNull(service.authenticate(u1.getUsername(), password));
+        assertNull(service.authenticate(u1.getUsername(), password + "x"));
+        assertNull(service.authenticate("nosuchuser", password));
+    }
+
+    /**
+     */
+    public void testAuthenticateUpgradesPassword() {
+        User u1 = testHelper.makeDummyUser();
+        String password = u1.getPassword();
+        service.createUser(u1);
+        String md5 = userDao.getUser(u1.getUsername()).getPassword();
+        assertEquals(32, md5.length());
+
+        Pbkdf2PasswordEncoder pbkdf2 = new Pbkdf2PasswordEncoder(1000);
+        service.setPasswordEncoder(new DelegatingPasswordEncoder(pbkdf2,
+                new MessageDigestPasswordEncoder("MD5")));
+
+        // a failed attempt leaves the hash alone
+        assertNull(service.authenticate(u1.getUsername(), password + "x"));
+        assertEquals(md5, userDao.getUser(u1.getUsername()).getPassword());
+
+        User user = service.authenticate(u1.getUsername(), password);
+        assertNotNull(user);
+        String upgraded = userDao.getUser(u1.getUsername()).getPassword();
+        assertTrue("Password not rehashed", pbkdf2.isEncodedBy(upgraded));
+        assertTrue(pbkdf2.matches(password, upgraded));
+
+        // already upgraded
+        assertNotNull(service.authenticate(u1.getUsername(), password));
+        assertEquals(upgraded, userDao.getUser(u1.getUsername()).getPassword());
+    }
 }
@@ -0,0 +1,164 @@
+package org.osaf.cosmo.service.lock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import junit.framework.TestCase;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.osaf.cosmo.model.CollectionItem;
+import org.osaf.cosmo.model.hibernate.HibCollectionItem;
+
+/**
+ * Test ConcurrentLockManager
+ */
+public class ConcurrentLockManagerTest extends TestCase {
+
+    private static final Log log = LogFactory.getLog(ConcurrentLockManagerTest.class);
+
+    ConcurrentLockManager lockManager = new ConcurrentLockManager();
+
+    public void testLockAndUnlock() throws Exception {
+        CollectionItem col = collection("1");
+
+        Assert.assertTrue(lockManager.lockCollection(col, 100));
+        Assert.assertTrue(lockManager.isLocked(col));
+        Assert.assertEquals(1, lockManager.getNumLocksInMemory());
+
+        // reentrant
+        Assert.assertTrue(lockManager.lockCollection(col, 0));
+        lockManager.unlockCollection(col);
+        Assert.assertTrue(lockManager.isLocked(col));
+        lockManager.unlockCollection(col);
+
+        // released locks are removed straight away
+        Assert.assertFalse(lockManager.isLocked(col));
+        Assert.assertEquals(0, lockManager.getNumLocksInMemory());
+    }
+
+    public void testContention() throws Exception {
+        final CollectionItem col = collection("1");
+        lockManager.lockCollection(col);
+
+        final boolean[] result = new boolean[1];
+        Thread t = new Thread(() -> result[0] = lockManager.lockCollection(collection("1"), 100));
+        t.start();
+        t.join();
+
+        // another thread can't get the lock, and its failed attempt
+        // doesn't leave anything behind
+        Assert.assertFalse(result[0]);
+        Assert.assertEquals(1, lockManager.getNumLocksInMemory());
+
+        // a different collection isn't affected
+        Thread t2 = new Thread(() -> {
+            CollectionItem other = collection("2");
+            result[0] = lockManager.lockCollection(other, 0);
+            lockManager.unlockCollection(other);
+        });
+        t2.start();
+        t2.join();
+        Assert.assertTrue(result[0]);
+
+        // should not be able to unlock something we don't own
+        Thread t3 = new Thread(() -> {
+            try {
+                lockManager.unlockCollection(collection("1"));
+                result[0] = false;
+            } catch (RuntimeException e) {
+                result[0] = true;
+            }
+        });
+        t3.start();
+        t3.join();
+        Assert.assertTrue(result[0]);
+
+        lockManager.unlockCollection(col);
+        Assert.assertEquals(0, lockManager.getNumLocksInMemory());
+    }
+
+    public void testMultiThreaded() throws Exception {
+        long single = 0;
+        for (int threads = 1; threads <= 8; threads *= 2) {
+            long opsPerSecond = runThreads(threads, 500);
+            if (threads == 1)
+                single = opsPerSecond;
+            log.info(threads + " threads: " + opsPerSecond + " lock/unlock per second ("
+                    + (single == 0 ? 0 : opsPerSecond * 100 / single) + "% of 1 thread)");
+            Assert.assertTrue(opsPerSecond > 0);
+        }
+    }
+
+    /**
+     * Run threads that lock their own collection, and every so often a
+     * shared one, checking that the shared counter loses no updates.
+     * @return lock/unlock pairs per second across all threads
+     */
+    private long runThreads(int numThreads, long millis) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicLong ops = new AtomicLong();
+        final long[] shared = new long[1];
+        final long[] expectedShared = new long[numThreads];
+        final long[] end = new long[1];
+        List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < numThreads; i++) {
+            final int n = i;
+            Thread t = new Thread(() -> {
+                CollectionItem own = collection("own" + n);
+                CollectionItem common = collection("shared");
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long count = 0;
+                while (System.currentTimeMillis() < end[0]) {
+                    lockManager.lockCollection(own);
+                    lockManager.unlockCollection(own);
+                    if (++count % 16 == 0) {
+                        lockManager.lockCollection(common);
+                        try {
+                            shared[0]++;
+                        } finally {
+                            lockManager.unlockCollection(common);
+                        }
+                        expectedShared[n]++;
+                    }
+                }
+                ops.addAndGet(count);
+            });
+            t.start();
+            threads.add(t);
+        }
+
+        end[0] = System.currentTimeMillis() + millis;
+        start.countDown();
+        for (Thread t : threads)
+            t.join();
+
+        long expected = 0;
+        for (long e : expectedShared)
+            expected += e;
+
+        lockManager.lockCollection(collection("shared"));
+        try {
+            Assert.assertEquals(expected, shared[0]);
+        } finally {
+            lockManager.unlockCollection(collection("shared"));
+        }
+        Assert.assertEquals(0, lockManager.getNumLocksInMemory());
+
+        return ops.get() * 1000 / millis;
+    }
+
+    private static CollectionItem collection(String uid) {
+        CollectionItem col = new HibCollectionItem();
+        col.setUid(uid);
+        return col;
+    }
+}
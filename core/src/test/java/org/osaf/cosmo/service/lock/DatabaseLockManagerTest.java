@@ -0,0 +1,105 @@
+package org.osaf.cosmo.service.lock;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.osaf.cosmo.dao.hibernate.AbstractSpringDaoTestCase;
+import org.osaf.cosmo.model.CollectionItem;
+import org.osaf.cosmo.model.hibernate.HibCollectionItem;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Test DatabaseLockManager against the embedded database, using
+ * several lock managers to stand in for several nodes.
+ */
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class DatabaseLockManagerTest extends AbstractSpringDaoTestCase {
+
+    @Autowired
+    protected EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    protected PlatformTransactionManager transactionManager;
+
+    @Test
+    public void testLockAcrossNodes() {
+        DatabaseLockManager node1 = createNode("node1");
+        DatabaseLockManager node2 = createNode("node2");
+        CollectionItem col = collection("db-lock-1");
+
+        Assert.assertTrue(node1.lockCollection(col, 100));
+        Assert.assertTrue(node1.isLocked(col));
+
+        // nested locks on the same node don't need another lease
+        Assert.assertTrue(node1.lockCollection(col, 0));
+        node1.unlockCollection(col);
+
+        // other node has to wait
+        Assert.assertFalse(node2.lockCollection(col, 250));
+
+        // but not for a different collection
+        CollectionItem other = collection("db-lock-2");
+        Assert.assertTrue(node2.lockCollection(other, 0));
+        node2.unlockCollection(other);
+
+        node1.unlockCollection(col);
+        Assert.assertFalse(node1.isLocked(col));
+
+        Assert.assertTrue(node2.lockCollection(col, 0));
+        Assert.assertFalse(node1.lockCollection(col, 0));
+        node2.unlockCollection(col);
+    }
+
+    @Test
+    public void testExpiredLease() throws Exception {
+        DatabaseLockManager node1 = createNode("node1");
+        DatabaseLockManager node2 = createNode("node2");
+        DatabaseLockManager node3 = createNode("node3");
+        node1.setLeaseMillis(200);
+        CollectionItem col = collection("db-lock-3");
+
+        Assert.assertTrue(node1.lockCollection(col, 0));
+
+        // node1 "dies" and its lease is taken over once expired
+        Thread.sleep(300);
+        Assert.assertTrue(node2.lockCollection(col, 0));
+
+        // releasing the expired lease leaves the new one alone
+        node1.unlockCollection(col);
+        Assert.assertFalse(node3.lockCollection(col, 0));
+
+        node2.unlockCollection(col);
+        Assert.assertTrue(node3.lockCollection(col, 0));
+        node3.unlockCollection(col);
+    }
+
+    @Test
+    public void testUnlockNotOwned() {
+        DatabaseLockManager node1 = createNode("node1");
+        try {
+            node1.unlockCollection(collection("db-lock-4"));
+            Assert.fail("able to unlock something we don't own");
+        } catch (RuntimeException expected) {
+        }
+    }
+
+    private DatabaseLockManager createNode(String nodeId) {
+        DatabaseLockManager lockManager = new DatabaseLockManager();
+        lockManager.setNodeId(nodeId);
+        lockManager.setPollMillis(20);
+        lockManager.setEntityManagerFactory(entityManagerFactory);
+        lockManager.setTransactionManager(transactionManager);
+        lockManager.init();
+        return lockManager;
+    }
+
+    private static CollectionItem collection(String uid) {
+        CollectionItem col = new HibCollectionItem();
+        col.setUid(uid);
+        return col;
+    }
+}
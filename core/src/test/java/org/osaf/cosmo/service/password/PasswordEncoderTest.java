@@ -0,0 +1,146 @@
+package org.osaf.cosmo.service.password;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import junit.framework.TestCase;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Test PasswordEncoder implementations
+ */
+public class PasswordEncoderTest extends TestCase {
+
+    private static final Log log = LogFactory.getLog(PasswordEncoderTest.class);
+
+    // keeps the tests quick
+    private static final int ITERATIONS = 1000;
+
+    public void testMessageDigest() {
+        MessageDigestPasswordEncoder encoder = new MessageDigestPasswordEncoder("MD5");
+
+        // what earlier versions stored
+        Assert.assertEquals("5f4dcc3b5aa765d61d8327deb882cf99", encoder.encode("password"));
+        Assert.assertTrue(encoder.matches("password", "5f4dcc3b5aa765d61d8327deb882cf99"));
+        Assert.assertTrue(encoder.matches("password", "5F4DCC3B5AA765D61D8327DEB882CF99"));
+        Assert.assertFalse(encoder.matches("Password", "5f4dcc3b5aa765d61d8327deb882cf99"));
+        Assert.assertFalse(encoder.matches("password", "password"));
+        Assert.assertFalse(encoder.upgradeEncoding("5f4dcc3b5aa765d61d8327deb882cf99"));
+        Assert.assertNull(encoder.encode(null));
+
+        try {
+            new MessageDigestPasswordEncoder("bogus");
+            fail("bogus algorithm accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testPbkdf2() {
+        Pbkdf2PasswordEncoder encoder = new Pbkdf2PasswordEncoder(ITERATIONS);
+
+        String encoded = encoder.encode("password");
+        Assert.assertTrue(encoded.startsWith("{pbkdf2}" + ITERATIONS + "$"));
+        Assert.assertTrue(encoder.matches("password", encoded));
+        Assert.assertFalse(encoder.matches("Password", encoded));
+        Assert.assertFalse(encoder.upgradeEncoding(encoded));
+
+        // salted
+        Assert.assertFalse(encoded.equals(encoder.encode("password")));
+
+        // raising the iterations still matches, and asks for an upgrade
+        Pbkdf2PasswordEncoder stronger = new Pbkdf2PasswordEncoder(ITERATIONS * 2);
+        Assert.assertTrue(stronger.matches("password", encoded));
+        Assert.assertTrue(stronger.upgradeEncoding(encoded));
+
+        Assert.assertFalse(encoder.matches("password", "5f4dcc3b5aa765d61d8327deb882cf99"));
+        Assert.assertFalse(encoder.matches("password", "{pbkdf2}x$y$z"));
+        Assert.assertFalse(encoder.matches("password", "{pbkdf2}0$AAAA$AAAA"));
+    }
+
+    public void testDelegating() {
+        MessageDigestPasswordEncoder md5 = new MessageDigestPasswordEncoder("MD5");
+        Pbkdf2PasswordEncoder pbkdf2 = new Pbkdf2PasswordEncoder(ITERATIONS);
+        DelegatingPasswordEncoder encoder = new DelegatingPasswordEncoder(pbkdf2, md5);
+
+        String legacy = md5.encode("password");
+        Assert.assertTrue(encoder.matches("password", legacy));
+        Assert.assertTrue(encoder.upgradeEncoding(legacy));
+
+        String encoded = encoder.encode("password");
+        Assert.assertTrue(pbkdf2.isEncodedBy(encoded));
+        Assert.assertTrue(encoder.matches("password", encoded));
+        Assert.assertFalse(encoder.upgradeEncoding(encoded));
+
+        Assert.assertFalse(encoder.isEncodedBy("password"));
+        Assert.assertFalse(encoder.matches("password", "password"));
+    }
+
+    public void testMultiThreaded() throws Exception {
+        PasswordEncoder md5 = new MessageDigestPasswordEncoder("MD5");
+        PasswordEncoder pbkdf2 = new Pbkdf2PasswordEncoder(ITERATIONS);
+        for (int threads = 1; threads <= 8; threads *= 2) {
+            log.info(threads + " threads: MD5 " + runThreads(md5, threads, 300)
+                    + ", PBKDF2 " + runThreads(pbkdf2, threads, 300) + " hashes per second");
+        }
+    }
+
+    /**
+     * Run threads that each hash and check their own passwords, counting
+     * any hash that doesn't check out.
+     * @return encode/match pairs per second across all threads
+     */
+    private long runThreads(final PasswordEncoder encoder,
+                            int numThreads,
+                            long millis) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicLong ops = new AtomicLong();
+        final AtomicInteger failures = new AtomicInteger();
+        final long[] end = new long[1];
+        List<Thread> threads = new ArrayList<>();
+
+        // what a single thread makes of the passwords
+        final String[] expected = new String[16];
+        for (int i = 0; i < expected.length; i++)
+            expected[i] = encoder.encode("password" + i);
+
+        for (int i = 0; i < numThreads; i++) {
+            final int n = i;
+            Thread t = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long count = 0;
+                while (System.currentTimeMillis() < end[0]) {
+                    int p = (int) ((n + count) % expected.length);
+                    String raw = "password" + p;
+                    if (!encoder.matches(raw, encoder.encode(raw))
+                            || !encoder.matches(raw, expected[p])
+                            || encoder.matches(raw + "x", expected[p]))
+                        failures.incrementAndGet();
+                    count++;
+                }
+                ops.addAndGet(count);
+            });
+            t.start();
+            threads.add(t);
+        }
+
+        end[0] = System.currentTimeMillis() + millis;
+        start.countDown();
+        for (Thread t : threads)
+            t.join();
+
+        Assert.assertEquals(0, failures.get());
+        Assert.assertTrue(ops.get() > 0);
+        return ops.get() * 1000 / millis;
+    }
+}
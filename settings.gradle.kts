@@ -2,3 +2,6 @@ rootProject.name = "cosmo-core-parent"
 
 include(":cosmo-core")
 project(":cosmo-core").projectDir = file("core")
+
+include(":cosmo-benchmarks")
+project(":cosmo-benchmarks").projectDir = file("benchmarks")